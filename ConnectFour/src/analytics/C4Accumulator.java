@@ -0,0 +1,202 @@
+package analytics;
+
+import java.util.Arrays;
+
+/**
+ * Aggregation keyed by a primitive long, counting the values added under each
+ * key and summing them. Keys and values are kept in flat arrays with open
+ * addressing, so adding a value neither boxes nor allocates once the table
+ * is large enough.
+ * 
+ * An accumulator is only used by one thread; accumulators filled by several
+ * threads are merged once they are done.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4Accumulator {
+
+	private long[] keys, counts, sums;
+	private boolean[] used; // slots holding a key
+	private int size; // number of keys
+	private int mask; // capacity - 1, the capacity being a power of 2
+
+	/**
+	 * Creates an empty C4Accumulator
+	 */
+	public C4Accumulator() {
+		allocate(16);
+	}
+
+	/**
+	 * Adds a value under a key
+	 * 
+	 * @param key
+	 *            Key the value is aggregated under
+	 * @param value
+	 *            Value added to the key's sum
+	 */
+	public void add(long key, long value) {
+		add(key, 1, value);
+	}
+
+	/**
+	 * Merges another accumulator into this one
+	 * 
+	 * @param other
+	 *            Accumulator to be merged
+	 */
+	public void merge(C4Accumulator other) {
+		for (int i = 0; i < other.keys.length; i++)
+			if (other.used[i])
+				add(other.keys[i], other.counts[i], other.sums[i]);
+	}
+
+	/**
+	 * Returns the number of keys
+	 * 
+	 * @return Number of distinct keys added
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns every key, in ascending order
+	 * 
+	 * @return Keys added
+	 */
+	public long[] getKeys() {
+		long[] result = new long[size];
+		int count = 0;
+		for (int i = 0; i < keys.length; i++)
+			if (used[i])
+				result[count++] = keys[i];
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * Returns the number of values added under a key
+	 * 
+	 * @param key
+	 *            Key of the values
+	 * @return Number of values, 0 if the key was never added
+	 */
+	public long getCount(long key) {
+		int slot = find(key);
+		return slot < 0 ? 0 : counts[slot];
+	}
+
+	/**
+	 * Returns the sum of the values added under a key
+	 * 
+	 * @param key
+	 *            Key of the values
+	 * @return Sum of the values, 0 if the key was never added
+	 */
+	public long getSum(long key) {
+		int slot = find(key);
+		return slot < 0 ? 0 : sums[slot];
+	}
+
+	/**
+	 * Returns the average of the values added under a key
+	 * 
+	 * @param key
+	 *            Key of the values
+	 * @return Average of the values, 0 if the key was never added
+	 */
+	public double getAverage(long key) {
+		int slot = find(key);
+		return slot < 0 ? 0 : (double) sums[slot] / counts[slot];
+	}
+
+	/**
+	 * Adds a count and a sum under a key
+	 * 
+	 * @param key
+	 *            Key the values are aggregated under
+	 * @param count
+	 *            Number of values added
+	 * @param sum
+	 *            Sum of the values added
+	 */
+	private void add(long key, long count, long sum) {
+		int slot = slot(key);
+		while (used[slot]) {
+			if (keys[slot] == key) {
+				counts[slot] += count;
+				sums[slot] += sum;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		used[slot] = true;
+		keys[slot] = key;
+		counts[slot] = count;
+		sums[slot] = sum;
+
+		// keep the table at most half full
+		if (++size > keys.length / 2)
+			grow();
+	}
+
+	/**
+	 * Returns the slot of a key
+	 * 
+	 * @param key
+	 *            Key searched
+	 * @return Slot of the key, -1 if the key was never added
+	 */
+	private int find(long key) {
+		int slot = slot(key);
+		while (used[slot]) {
+			if (keys[slot] == key)
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the first slot probed for a key
+	 * 
+	 * @param key
+	 *            Key to be hashed
+	 * @return Slot of the table
+	 */
+	private int slot(long key) {
+		long hash = key * 0x9e3779b97f4a7c15L;
+		return (int) (hash ^ hash >>> 32) & mask;
+	}
+
+	/**
+	 * Doubles the capacity of the table
+	 */
+	private void grow() {
+		long[] oldKeys = keys, oldCounts = counts, oldSums = sums;
+		boolean[] oldUsed = used;
+
+		allocate(oldKeys.length * 2);
+		for (int i = 0; i < oldKeys.length; i++)
+			if (oldUsed[i])
+				add(oldKeys[i], oldCounts[i], oldSums[i]);
+	}
+
+	/**
+	 * Allocates an empty table
+	 * 
+	 * @param capacity
+	 *            Number of slots, a power of 2
+	 */
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		counts = new long[capacity];
+		sums = new long[capacity];
+		used = new boolean[capacity];
+		mask = capacity - 1;
+		size = 0;
+	}
+}
@@ -0,0 +1,148 @@
+package analytics;
+
+import gameLogic.C4Position;
+
+import java.io.File;
+import java.io.IOException;
+
+import archive.C4ArchiveReader;
+
+/**
+ * Answers questions about the games of an archive from the command line.
+ * 
+ * Usage: C4AnalyticsApp archive (first-move | length-by-engine |
+ * lost-openings [plies] [count])
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4AnalyticsApp {
+
+	/**
+	 * Main method to run a query
+	 * 
+	 * @param args
+	 *            Archive file, query and its optional arguments
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.out.println("Usage: C4AnalyticsApp archive (first-move | "
+					+ "length-by-engine | lost-openings [plies] [count])");
+			return;
+		}
+
+		C4ArchiveReader reader;
+		try {
+			reader = new C4ArchiveReader(new File(args[0]));
+		} catch (IOException e) {
+			System.out.println("Error opening archive: " + e.getMessage());
+			return;
+		}
+
+		try {
+			C4ArchiveScanner scanner = new C4ArchiveScanner();
+			long start = System.nanoTime();
+
+			if (args[1].equals("first-move")) {
+				C4Accumulator result = scanner.scan(reader,
+						C4Queries.winRateByFirstMove());
+				System.out.println("Column\tGames\tFirst player win rate");
+				for (long col : result.getKeys())
+					System.out.printf("%d\t%d\t%.1f%%%n", col,
+							result.getCount(col),
+							100 * result.getAverage(col));
+			} else if (args[1].equals("length-by-engine")) {
+				C4Accumulator result = scanner.scan(reader,
+						C4Queries.averageLengthByEngine());
+				System.out.println("Engine\tGames\tAverage plies");
+				for (long engine : result.getKeys())
+					System.out.printf("%d\t%d\t%.2f%n", engine,
+							result.getCount(engine),
+							result.getAverage(engine));
+			} else if (args[1].equals("lost-openings")) {
+				int plies = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+				int count = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+				printLostOpenings(scanner.scan(reader,
+						C4Queries.openingsLostToEngine(plies)), count);
+			} else {
+				System.out.println("Unknown query " + args[1]);
+				return;
+			}
+
+			System.out.printf("Scanned %d games in %d ms%n", reader
+					.getRecordCount(), (System.nanoTime() - start) / 1000000);
+		} finally {
+			try {
+				reader.close();
+			} catch (IOException e) {
+				System.out.println("Error closing archive.");
+			}
+		}
+	}
+
+	/**
+	 * Prints the openings that lost the most games to the AI
+	 * 
+	 * @param result
+	 *            Result of the lost openings query
+	 * @param count
+	 *            Number of openings printed
+	 */
+	private static void printLostOpenings(C4Accumulator result, int count) {
+		long[] keys = result.getKeys();
+
+		// partial selection of the openings with the most losses
+		for (int i = 0; i < Math.min(count, keys.length); i++) {
+			int worst = i;
+			for (int j = i + 1; j < keys.length; j++)
+				if (result.getSum(keys[j]) > result.getSum(keys[worst]))
+					worst = j;
+			long key = keys[worst];
+			keys[worst] = keys[i];
+			keys[i] = key;
+
+			System.out.printf("Lost %d of %d games (%.1f%%)%n", result
+					.getSum(key), result.getCount(key),
+					100 * result.getAverage(key));
+			System.out.println(drawPosition(key));
+		}
+	}
+
+	/**
+	 * Draws the position of a key, X for the player who moved first and O for
+	 * the AI
+	 * 
+	 * @param key
+	 *            Key of a position
+	 * @return Board of the position, row by row from the top
+	 */
+	private static String drawPosition(long key) {
+		// in each column, the highest bit of the key sits right above the
+		// stones and the bits below it are the stones of the player to move
+		int[] heights = new int[C4Position.WIDTH];
+		int stones = 0;
+		for (int col = 0; col < C4Position.WIDTH; col++) {
+			long column = key >>> col * (C4Position.HEIGHT + 1)
+					& (1L << C4Position.HEIGHT + 1) - 1;
+			heights[col] = 63 - Long.numberOfLeadingZeros(column);
+			stones += heights[col];
+		}
+
+		// the player to move moved first if an even number of stones is played
+		char toMove = stones % 2 == 0 ? 'X' : 'O';
+		char other = toMove == 'X' ? 'O' : 'X';
+
+		StringBuilder board = new StringBuilder();
+		for (int row = C4Position.HEIGHT - 1; row >= 0; row--) {
+			for (int col = 0; col < C4Position.WIDTH; col++) {
+				long cell = 1L << col * (C4Position.HEIGHT + 1) + row;
+				if (row >= heights[col])
+					board.append('.');
+				else
+					board.append((key & cell) != 0 ? toMove : other);
+			}
+			board.append('\n');
+		}
+		return board.toString();
+	}
+}
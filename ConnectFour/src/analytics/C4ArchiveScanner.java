@@ -0,0 +1,100 @@
+package analytics;
+
+import gameLogic.C4Position;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+import archive.C4ArchiveCursor;
+import archive.C4ArchiveReader;
+
+/**
+ * Runs a query over every game of an archive in parallel. The archive's
+ * segments are split among the threads of a fork-join pool; each thread
+ * decompresses its own segments, replays the games on its own bitboard
+ * position and aggregates into its own accumulator, and the accumulators are
+ * merged as the tasks join. Threads share nothing while scanning.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4ArchiveScanner {
+
+	private ForkJoinPool pool;
+
+	/**
+	 * Creates a C4ArchiveScanner using every core of the machine
+	 */
+	public C4ArchiveScanner() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a C4ArchiveScanner running on a specific pool
+	 * 
+	 * @param pool
+	 *            Pool scanning the segments
+	 */
+	public C4ArchiveScanner(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Runs a query over every game of an archive
+	 * 
+	 * @param reader
+	 *            Reader of the archive
+	 * @param query
+	 *            Query asked of every game
+	 * @return Aggregation of the query over the archive
+	 */
+	public C4Accumulator scan(C4ArchiveReader reader, C4Query query) {
+		return pool.invoke(new ScanTask(new C4GameSpliterator(reader), query));
+	}
+
+	/**
+	 * Task scanning a range of segments, split in two until a single segment
+	 * is left
+	 */
+	private static class ScanTask extends RecursiveTask<C4Accumulator> {
+		private static final long serialVersionUID = 1L;
+
+		private final C4GameSpliterator games;
+		private final C4Query query;
+
+		private ScanTask(C4GameSpliterator games, C4Query query) {
+			this.games = games;
+			this.query = query;
+		}
+
+		@Override
+		protected C4Accumulator compute() {
+			C4GameSpliterator prefix = (C4GameSpliterator) games.trySplit();
+			if (prefix != null) {
+				ScanTask left = new ScanTask(prefix, query);
+				left.fork();
+				C4Accumulator result = new ScanTask(games, query).compute();
+				result.merge(left.join());
+				return result;
+			}
+
+			final C4Accumulator accumulator = new C4Accumulator();
+			final C4Position position = new C4Position();
+			final int replayPlies = query.getReplayPlies();
+
+			games.forEachRemaining(new Consumer<C4ArchiveCursor>() {
+				public void accept(C4ArchiveCursor game) {
+					position.reset();
+					int plies = Math.min(replayPlies, game.getPlyCount());
+					for (int i = 0; i < plies
+							&& position.canPlay(game.getMove(i)); i++)
+						position.play(game.getMove(i));
+
+					query.accept(game, position, accumulator);
+				}
+			});
+			return accumulator;
+		}
+	}
+}
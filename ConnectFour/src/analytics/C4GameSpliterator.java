@@ -0,0 +1,116 @@
+package analytics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import archive.C4ArchiveCursor;
+import archive.C4ArchiveReader;
+
+/**
+ * Spliterator over the games of a range of segments of an archive. It splits
+ * on segment boundaries, so each part decompresses its own segments.
+ * 
+ * Every game is handed out as the same cursor, moved to the next game, so no
+ * object is created per game. A consumer must copy what it keeps out of the
+ * cursor before returning.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4GameSpliterator implements Spliterator<C4ArchiveCursor> {
+
+	private C4ArchiveReader reader;
+	private int firstSegment, endSegment;
+	private long remainingRecords;
+
+	// cursor over the range, opened on the first game read, which prevents
+	// further splitting
+	private C4ArchiveCursor cursor;
+
+	/**
+	 * Creates a C4GameSpliterator over every game of an archive
+	 * 
+	 * @param reader
+	 *            Reader of the archive
+	 */
+	public C4GameSpliterator(C4ArchiveReader reader) {
+		this(reader, 0, reader.getSegmentCount());
+	}
+
+	/**
+	 * Creates a C4GameSpliterator over a range of segments
+	 * 
+	 * @param reader
+	 *            Reader of the archive
+	 * @param firstSegment
+	 *            Index of the first segment read
+	 * @param endSegment
+	 *            Index of the segment after the last one read
+	 */
+	public C4GameSpliterator(C4ArchiveReader reader, int firstSegment,
+			int endSegment) {
+		this.reader = reader;
+		this.firstSegment = firstSegment;
+		this.endSegment = endSegment;
+		for (int i = firstSegment; i < endSegment; i++)
+			remainingRecords += reader.getSegmentRecordCount(i);
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super C4ArchiveCursor> action) {
+		if (cursor == null)
+			cursor = reader.openCursor(firstSegment, endSegment);
+
+		try {
+			if (!cursor.next())
+				return false;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		remainingRecords--;
+		action.accept(cursor);
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(Consumer<? super C4ArchiveCursor> action) {
+		while (tryAdvance(action))
+			;
+	}
+
+	@Override
+	public Spliterator<C4ArchiveCursor> trySplit() {
+		if (cursor != null || endSegment - firstSegment < 2)
+			return null;
+
+		// hand out the first half of the segments
+		int middle = (firstSegment + endSegment) >>> 1;
+		C4GameSpliterator prefix = new C4GameSpliterator(reader,
+				firstSegment, middle);
+		firstSegment = middle;
+		remainingRecords -= prefix.remainingRecords;
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+		return remainingRecords;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL | SIZED | SUBSIZED | IMMUTABLE;
+	}
+
+	/**
+	 * Returns the number of segments left to split
+	 * 
+	 * @return Number of segments of the range
+	 */
+	public int getSegmentCount() {
+		return endSegment - firstSegment;
+	}
+}
@@ -0,0 +1,92 @@
+package analytics;
+
+import gameLogic.C4Position;
+import archive.C4ArchiveCursor;
+import archive.C4GameRecord;
+
+/**
+ * Queries commonly asked of the game archive.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4Queries {
+
+	private C4Queries() {
+	}
+
+	/**
+	 * Win rate of the first player by the column of the first move. Keyed by
+	 * column, the sum counts the games the first player won.
+	 * 
+	 * @return Query of the win rate by first move
+	 */
+	public static C4Query winRateByFirstMove() {
+		return new C4Query() {
+			public int getReplayPlies() {
+				return 0;
+			}
+
+			public void accept(C4ArchiveCursor game, C4Position position,
+					C4Accumulator accumulator) {
+				if (game.getPlyCount() == 0
+						|| game.getOutcome() == C4GameRecord.ABANDONED)
+					return;
+
+				accumulator.add(game.getMove(0),
+						game.getOutcome() == C4GameRecord.FIRST_PLAYER_WON
+								? 1 : 0);
+			}
+		};
+	}
+
+	/**
+	 * Length of the games by engine configuration. Keyed by engine
+	 * configuration, the sum adds up the plies of its games.
+	 * 
+	 * @return Query of the average game length per engine
+	 */
+	public static C4Query averageLengthByEngine() {
+		return new C4Query() {
+			public int getReplayPlies() {
+				return 0;
+			}
+
+			public void accept(C4ArchiveCursor game, C4Position position,
+					C4Accumulator accumulator) {
+				accumulator.add(game.getEngineConfig(), game.getPlyCount());
+			}
+		};
+	}
+
+	/**
+	 * Openings played against the AI and how often they lost. Games reaching
+	 * the same position after the opening's moves are counted together
+	 * whatever the order of the moves. Keyed by the position's key, the sum
+	 * counts the games the AI won.
+	 * 
+	 * @param plies
+	 *            Number of moves of an opening
+	 * @return Query of the openings lost to the AI
+	 */
+	public static C4Query openingsLostToEngine(final int plies) {
+		return new C4Query() {
+			public int getReplayPlies() {
+				return plies;
+			}
+
+			public void accept(C4ArchiveCursor game, C4Position position,
+					C4Accumulator accumulator) {
+				// the player always moves first against the AI
+				if (game.getEngineConfig() == C4GameRecord.HUMAN_OPPONENT
+						|| game.getPlyCount() < plies
+						|| game.getOutcome() == C4GameRecord.ABANDONED)
+					return;
+
+				accumulator.add(position.getKey(),
+						game.getOutcome() == C4GameRecord.SECOND_PLAYER_WON
+								? 1 : 0);
+			}
+		};
+	}
+}
@@ -0,0 +1,38 @@
+package analytics;
+
+import gameLogic.C4Position;
+import archive.C4ArchiveCursor;
+
+/**
+ * Question asked of every game of an archive. The scanner calls the query
+ * once per game, from several threads at once, each with its own position and
+ * accumulator, so a query must not keep any state of its own.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public interface C4Query {
+
+	/**
+	 * Returns how many moves of each game the scanner replays on the position
+	 * before handing the game to the query. Queries that only look at the
+	 * moves and outcome return 0 and skip the replay.
+	 * 
+	 * @return Number of plies replayed, at most 42
+	 */
+	int getReplayPlies();
+
+	/**
+	 * Adds a game to the query's aggregation
+	 * 
+	 * @param game
+	 *            Cursor on the game
+	 * @param position
+	 *            Position after the game's first moves, as many as requested
+	 *            or as the game has
+	 * @param accumulator
+	 *            Accumulator of the thread scanning the game
+	 */
+	void accept(C4ArchiveCursor game, C4Position position,
+			C4Accumulator accumulator);
+}
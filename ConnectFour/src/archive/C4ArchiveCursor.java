@@ -0,0 +1,295 @@
+package archive;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Cursor iterating the games of a range of segments of an archive. Only the
+ * segment being read is decompressed, and the current game is decoded into
+ * buffers reused from one game to the next, so nothing is allocated per game
+ * unless it is copied out with toRecord().
+ * 
+ * A cursor must only be used by one thread.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.2
+ */
+public class C4ArchiveCursor {
+
+	private C4ArchiveReader reader;
+	private int nextSegment, endSegment;
+
+	// decompressed columns of the current segment, and the position of the
+	// next value in each column
+	private byte[] segment;
+	private int[] columnPositions;
+	private int remainingRecords;
+
+	// bits of the moves column read but not yet decoded
+	private long moveBits;
+	private int moveBitCount;
+
+	// current game
+	private byte[] moves;
+	private int plyCount, outcome, engineConfig;
+	private long startTime, endTime, seed;
+
+	// whether the archive stores every seed in 8 bytes, and otherwise the
+	// key of the current segment's seeds
+	private boolean fullSeeds;
+	private long seedKey;
+
+	private Inflater inflater;
+
+	/**
+	 * Creates a C4ArchiveCursor object over a range of segments
+	 * 
+	 * @param reader
+	 *            Reader of the archive
+	 * @param firstSegment
+	 *            Index of the first segment read
+	 * @param endSegment
+	 *            Index of the segment after the last one read
+	 */
+	C4ArchiveCursor(C4ArchiveReader reader, int firstSegment, int endSegment) {
+		this.reader = reader;
+		this.nextSegment = firstSegment;
+		this.endSegment = endSegment;
+		this.segment = new byte[C4ArchiveFormat.SEGMENT_TARGET_SIZE];
+		this.columnPositions = new int[reader.getColumnCount()];
+		this.fullSeeds = reader.getVersion()
+				== C4ArchiveFormat.VERSION_WITH_FULL_SEEDS;
+		this.moves = new byte[42];
+		this.inflater = new Inflater();
+	}
+
+	/**
+	 * Moves to the next game
+	 * 
+	 * @return True if the cursor is on a game, false if every game was read
+	 * @throws IOException
+	 *             If the archive could not be read or is corrupted
+	 */
+	public boolean next() throws IOException {
+		while (remainingRecords == 0) {
+			if (nextSegment == endSegment) {
+				inflater.end();
+				return false;
+			}
+			loadSegment(nextSegment++);
+		}
+		remainingRecords--;
+
+		startTime += C4ArchiveFormat.unZigZag(readVarLong(
+				C4ArchiveFormat.START_TIMES));
+		endTime = startTime
+				+ C4ArchiveFormat.unZigZag(readVarLong(
+						C4ArchiveFormat.DURATIONS));
+
+		int pliesAndOutcome = (int) readVarLong(
+				C4ArchiveFormat.PLIES_AND_OUTCOMES);
+		plyCount = pliesAndOutcome >>> C4ArchiveFormat.OUTCOME_BITS;
+		outcome = pliesAndOutcome & (1 << C4ArchiveFormat.OUTCOME_BITS) - 1;
+		engineConfig = (int) readVarLong(C4ArchiveFormat.ENGINE_CONFIGS);
+		if (columnPositions.length <= C4ArchiveFormat.SEEDS)
+			seed = 0;
+		else if (fullSeeds)
+			seed = readLong(C4ArchiveFormat.SEEDS);
+		else
+			seed = C4GameRecord.deriveSeed(seedKey
+					+ C4ArchiveFormat.unZigZag(readVarLong(
+							C4ArchiveFormat.SEEDS)), startTime);
+
+		if (plyCount > moves.length)
+			throw new IOException("Archive is corrupted.");
+
+		// unpack the moves, 3 bits each
+		int position = columnPositions[C4ArchiveFormat.MOVES];
+		for (int i = 0; i < plyCount; i++) {
+			if (moveBitCount < C4ArchiveFormat.BITS_PER_MOVE) {
+				moveBits |= (segment[position++] & 0xffL) << moveBitCount;
+				moveBitCount += 8;
+			}
+			moves[i] = (byte) (moveBits & 0x7);
+			moveBits >>>= C4ArchiveFormat.BITS_PER_MOVE;
+			moveBitCount -= C4ArchiveFormat.BITS_PER_MOVE;
+		}
+		columnPositions[C4ArchiveFormat.MOVES] = position;
+
+		return true;
+	}
+
+	/**
+	 * Returns the number of moves of the current game
+	 * 
+	 * @return Number of plies
+	 */
+	public int getPlyCount() {
+		return plyCount;
+	}
+
+	/**
+	 * Returns a move of the current game
+	 * 
+	 * @param ply
+	 *            Index of the move
+	 * @return Column played
+	 */
+	public int getMove(int ply) {
+		if (ply >= plyCount)
+			throw new IndexOutOfBoundsException("No such move.");
+		return moves[ply];
+	}
+
+	/**
+	 * Returns the outcome of the current game
+	 * 
+	 * @return Outcome of the game
+	 */
+	public int getOutcome() {
+		return outcome;
+	}
+
+	/**
+	 * Returns the engine configuration of the current game
+	 * 
+	 * @return Engine configuration
+	 */
+	public int getEngineConfig() {
+		return engineConfig;
+	}
+
+	/**
+	 * Returns the time the current game started
+	 * 
+	 * @return Start time in milliseconds since the epoch
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * Returns the time the current game ended
+	 * 
+	 * @return End time in milliseconds since the epoch
+	 */
+	public long getEndTime() {
+		return endTime;
+	}
+
+	/**
+	 * Returns the seed of the engine's random moves in the current game
+	 * 
+	 * @return Seed of the game, 0 if none or if the archive has no seeds
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Copies the current game out of the cursor
+	 * 
+	 * @return Record of the current game
+	 */
+	public C4GameRecord toRecord() {
+		byte[] copy = new byte[plyCount];
+		System.arraycopy(moves, 0, copy, 0, plyCount);
+		return new C4GameRecord(copy, outcome, engineConfig, startTime,
+				endTime, seed);
+	}
+
+	/**
+	 * Reads and decompresses a segment
+	 * 
+	 * @param index
+	 *            Index of the segment
+	 * @throws IOException
+	 *             If the segment could not be read or is corrupted
+	 */
+	private void loadSegment(int index) throws IOException {
+		long offset = reader.getSegmentOffset(index);
+		int headerSize = C4ArchiveFormat
+				.segmentHeaderSize(columnPositions.length);
+		ByteBuffer header = reader.read(offset, headerSize);
+
+		remainingRecords = header.getInt();
+		startTime = header.getLong();
+
+		int length = 0;
+		for (int i = 0; i < columnPositions.length; i++) {
+			columnPositions[i] = length;
+			length += header.getInt();
+		}
+		int compressedLength = header.getInt();
+
+		if (segment.length < length)
+			segment = new byte[length];
+
+		ByteBuffer compressed = reader.read(offset + headerSize,
+				compressedLength);
+		inflater.reset();
+		inflater.setInput(compressed.array(), 0, compressedLength);
+		try {
+			int inflated = 0;
+			while (inflated < length && !inflater.finished()) {
+				int count = inflater.inflate(segment, inflated, length
+						- inflated);
+				if (count == 0 && inflater.needsInput())
+					break;
+				inflated += count;
+			}
+			if (inflated != length)
+				throw new IOException("Archive segment " + index
+						+ " is corrupted.");
+		} catch (DataFormatException e) {
+			throw new IOException("Archive segment " + index
+					+ " is corrupted.", e);
+		}
+
+		moveBits = 0;
+		moveBitCount = 0;
+		if (columnPositions.length > C4ArchiveFormat.SEEDS && !fullSeeds)
+			seedKey = readLong(C4ArchiveFormat.SEEDS);
+	}
+
+	/**
+	 * Reads an 8 byte value from a column of the current segment
+	 * 
+	 * @param column
+	 *            Column read
+	 * @return Value read
+	 */
+	private long readLong(int column) {
+		int position = columnPositions[column];
+		long value = 0;
+		for (int i = 0; i < 8; i++)
+			value = value << 8 | (segment[position++] & 0xff);
+		columnPositions[column] = position;
+		return value;
+	}
+
+	/**
+	 * Reads a variable length value from a column of the current segment
+	 * 
+	 * @param column
+	 *            Column read
+	 * @return Value read
+	 */
+	private long readVarLong(int column) {
+		int position = columnPositions[column];
+		long value = 0;
+		int shift = 0;
+		byte b;
+
+		do {
+			b = segment[position++];
+			value |= (long) (b & 0x7f) << shift;
+			shift += 7;
+		} while (b < 0);
+
+		columnPositions[column] = position;
+		return value;
+	}
+}
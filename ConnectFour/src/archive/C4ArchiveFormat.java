@@ -0,0 +1,136 @@
+package archive;
+
+/**
+ * Layout of a game archive file, shared by the writer and the reader.
+ * 
+ * An archive starts with a header (magic "C4AR", version) followed by
+ * segments and ends with a footer indexing the segments. Every segment holds
+ * a block of games stored column by column, each column holding one field of
+ * every game of the segment, so similar values sit next to each other when
+ * the block is compressed:
+ * 
+ * start times (varint, zig-zag delta from the previous game, the first game
+ * from the segment's base time), durations (varint), plies and outcome
+ * (varint, plies shifted left by 3 bits), engine configurations (varint),
+ * moves (3 bits per ply, packed back to back from the lowest bit) and seeds.
+ * 
+ * A server draws one key when it starts and gives each game the key plus a
+ * mix of its start time as seed (see C4GameRecord.deriveSeed), so the seeds
+ * column starts with the key of the segment's first game (8 bytes) and then
+ * holds, for each game, the zig-zag difference between its key and the
+ * segment's (varint), a single zero byte for every game of the same server.
+ * 
+ * Segment on disk: record count (int), base time (long), length of each of
+ * the six columns (int), compressed length (int), then the columns deflated
+ * as one block. Archives of version 2 store every seed in 8 bytes instead,
+ * and archives of version 1 have no seeds column, their games being read
+ * with a seed of 0.
+ * 
+ * Footer: segment count (int), then for each segment its offset (long),
+ * record count (int) and base time (long), then the total record count
+ * (long). The file ends with the offset of the footer (long) and the magic
+ * "C4AF". An archive whose writer did not close it has no footer, the reader
+ * then recovers the segments written so far by scanning them.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.2
+ */
+final class C4ArchiveFormat {
+
+	// magic numbers of the header and of the end of the file
+	static final int MAGIC = 0x43344152, TRAILER_MAGIC = 0x43344146;
+
+	static final short VERSION = 3, VERSION_WITH_FULL_SEEDS = 2,
+			VERSION_WITHOUT_SEEDS = 1;
+
+	// size of the header and of the trailer
+	static final int HEADER_SIZE = 6, TRAILER_SIZE = 12;
+
+	// size of an entry of the footer's index
+	static final int INDEX_ENTRY_SIZE = 20;
+
+	// columns of a segment
+	static final int START_TIMES = 0, DURATIONS = 1, PLIES_AND_OUTCOMES = 2,
+			ENGINE_CONFIGS = 3, MOVES = 4, SEEDS = 5, COLUMN_COUNT = 6;
+
+	// bits used by a move and by the outcome of a game
+	static final int BITS_PER_MOVE = 3, OUTCOME_BITS = 3;
+
+	// uncompressed size after which a segment is written out
+	static final int SEGMENT_TARGET_SIZE = 256 * 1024;
+
+	private C4ArchiveFormat() {
+	}
+
+	/**
+	 * Returns the number of columns of the segments of an archive version
+	 * 
+	 * @param version
+	 *            Version of the archive
+	 * @return Number of columns
+	 */
+	static int columnCount(short version) {
+		return version == VERSION_WITHOUT_SEEDS ? SEEDS : COLUMN_COUNT;
+	}
+
+	/**
+	 * Returns the size of a segment's header
+	 * 
+	 * @param columnCount
+	 *            Number of columns of the segments
+	 * @return Size in bytes
+	 */
+	static int segmentHeaderSize(int columnCount) {
+		return 16 + 4 * columnCount;
+	}
+
+	/**
+	 * Returns the key a game's seed was derived from, the inverse of
+	 * C4GameRecord.deriveSeed
+	 * 
+	 * @param seed
+	 *            Seed of the game
+	 * @param startTime
+	 *            Time the game started
+	 * @return Key of the seed
+	 */
+	static long seedKey(long seed, long startTime) {
+		return seed - mix(startTime);
+	}
+
+	/**
+	 * Mixes the bits of a value, a one to one mapping taking close values far
+	 * apart (the finalizer of SplittableRandom)
+	 * 
+	 * @param value
+	 *            Value mixed
+	 * @return Mixed value
+	 */
+	static long mix(long value) {
+		value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+		value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+		return value ^ (value >>> 31);
+	}
+
+	/**
+	 * Zig-zag encodes a signed value so small negative values stay small
+	 * 
+	 * @param value
+	 *            Signed value
+	 * @return Encoded value
+	 */
+	static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	/**
+	 * Decodes a zig-zag encoded value
+	 * 
+	 * @param value
+	 *            Encoded value
+	 * @return Signed value
+	 */
+	static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
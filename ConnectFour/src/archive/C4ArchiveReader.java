@@ -0,0 +1,280 @@
+package archive;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reader of a game archive. Opening an archive only reads its index, games
+ * are read through cursors which decompress one segment at a time, so an
+ * archive of millions of games is iterated in constant memory.
+ * 
+ * The reader is thread-safe: each thread opens its own cursor, possibly over
+ * its own range of segments, and cursors read the file independently.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.2
+ */
+public class C4ArchiveReader implements Closeable {
+
+	private FileChannel channel;
+
+	// version of the format and number of columns of the segments, which
+	// depends on the version
+	private short version;
+	private int columnCount;
+
+	// index of the segments
+	private long[] segmentOffsets, segmentBaseTimes;
+	private int[] segmentRecordCounts;
+	private int segmentCount;
+	private long recordCount;
+
+	/**
+	 * Creates a C4ArchiveReader object reading an archive
+	 * 
+	 * @param file
+	 *            File of the archive
+	 * @throws IOException
+	 *             If the file could not be read or is not an archive
+	 */
+	public C4ArchiveReader(File file) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+		try {
+			ByteBuffer header = read(0, C4ArchiveFormat.HEADER_SIZE);
+			if (header.getInt() != C4ArchiveFormat.MAGIC)
+				throw new IOException(file + " is not a game archive.");
+			short version = header.getShort();
+			if (version != C4ArchiveFormat.VERSION
+					&& version != C4ArchiveFormat.VERSION_WITH_FULL_SEEDS
+					&& version != C4ArchiveFormat.VERSION_WITHOUT_SEEDS)
+				throw new IOException("Unsupported archive version.");
+			this.version = version;
+			columnCount = C4ArchiveFormat.columnCount(version);
+
+			if (!readFooter())
+				recoverSegments();
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the number of games in the archive
+	 * 
+	 * @return Number of games
+	 */
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * Returns the number of segments in the archive
+	 * 
+	 * @return Number of segments
+	 */
+	public int getSegmentCount() {
+		return segmentCount;
+	}
+
+	/**
+	 * Returns the version of the archive's format
+	 * 
+	 * @return Version of the archive
+	 */
+	short getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the number of columns of the archive's segments
+	 * 
+	 * @return Number of columns, fewer for archives without seeds
+	 */
+	int getColumnCount() {
+		return columnCount;
+	}
+
+	/**
+	 * Returns the number of games in a segment
+	 * 
+	 * @param segment
+	 *            Index of the segment
+	 * @return Number of games in the segment
+	 */
+	public int getSegmentRecordCount(int segment) {
+		return segmentRecordCounts[segment];
+	}
+
+	/**
+	 * Returns the start time of the first game of a segment
+	 * 
+	 * @param segment
+	 *            Index of the segment
+	 * @return Start time in milliseconds since the epoch
+	 */
+	public long getSegmentBaseTime(int segment) {
+		return segmentBaseTimes[segment];
+	}
+
+	/**
+	 * Opens a cursor over every game of the archive
+	 * 
+	 * @return Cursor positioned before the first game
+	 */
+	public C4ArchiveCursor openCursor() {
+		return openCursor(0, segmentCount);
+	}
+
+	/**
+	 * Opens a cursor over the games of a range of segments
+	 * 
+	 * @param firstSegment
+	 *            Index of the first segment read
+	 * @param endSegment
+	 *            Index of the segment after the last one read
+	 * @return Cursor positioned before the first game of the range
+	 */
+	public C4ArchiveCursor openCursor(int firstSegment, int endSegment) {
+		if (firstSegment < 0 || endSegment > segmentCount
+				|| firstSegment > endSegment)
+			throw new IndexOutOfBoundsException("Invalid segment range.");
+
+		return new C4ArchiveCursor(this, firstSegment, endSegment);
+	}
+
+	/**
+	 * Closes the archive file
+	 * 
+	 * @throws IOException
+	 *             If the file could not be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Returns the offset in the file of a segment
+	 * 
+	 * @param segment
+	 *            Index of the segment
+	 * @return Offset of the segment
+	 */
+	long getSegmentOffset(int segment) {
+		return segmentOffsets[segment];
+	}
+
+	/**
+	 * Reads bytes of the file at a specific offset. Positional reads do not
+	 * move the channel's position, so cursors may read concurrently.
+	 * 
+	 * @param offset
+	 *            Offset of the first byte read
+	 * @param length
+	 *            Number of bytes read
+	 * @return Buffer holding the bytes, positioned at its start
+	 * @throws IOException
+	 *             If the file could not be read or ends before the bytes
+	 */
+	ByteBuffer read(long offset, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining())
+			if (channel.read(buffer, offset + buffer.position()) == -1)
+				throw new EOFException("Archive is truncated.");
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Reads the index of the segments from the footer
+	 * 
+	 * @return True if the footer was read, false if the archive has none
+	 * @throws IOException
+	 *             If the file could not be read
+	 */
+	private boolean readFooter() throws IOException {
+		long size = channel.size();
+		if (size < C4ArchiveFormat.HEADER_SIZE + C4ArchiveFormat.TRAILER_SIZE)
+			return false;
+
+		ByteBuffer trailer = read(size - C4ArchiveFormat.TRAILER_SIZE,
+				C4ArchiveFormat.TRAILER_SIZE);
+		long footerOffset = trailer.getLong();
+		if (trailer.getInt() != C4ArchiveFormat.TRAILER_MAGIC
+				|| footerOffset < C4ArchiveFormat.HEADER_SIZE
+				|| footerOffset > size - C4ArchiveFormat.TRAILER_SIZE)
+			return false;
+
+		ByteBuffer footer = read(footerOffset, (int) (size
+				- C4ArchiveFormat.TRAILER_SIZE - footerOffset));
+		segmentCount = footer.getInt();
+		segmentOffsets = new long[segmentCount];
+		segmentBaseTimes = new long[segmentCount];
+		segmentRecordCounts = new int[segmentCount];
+
+		for (int i = 0; i < segmentCount; i++) {
+			segmentOffsets[i] = footer.getLong();
+			segmentRecordCounts[i] = footer.getInt();
+			segmentBaseTimes[i] = footer.getLong();
+		}
+		recordCount = footer.getLong();
+		return true;
+	}
+
+	/**
+	 * Rebuilds the index of an archive that was not closed by walking its
+	 * segments. A segment cut short by the end of the file is dropped.
+	 * 
+	 * @throws IOException
+	 *             If the file could not be read
+	 */
+	private void recoverSegments() throws IOException {
+		long size = channel.size();
+		long offset = C4ArchiveFormat.HEADER_SIZE;
+
+		segmentOffsets = new long[16];
+		segmentBaseTimes = new long[16];
+		segmentRecordCounts = new int[16];
+		segmentCount = 0;
+		recordCount = 0;
+
+		int headerSize = C4ArchiveFormat.segmentHeaderSize(columnCount);
+		while (offset + headerSize <= size) {
+			ByteBuffer header = read(offset, headerSize);
+			int records = header.getInt();
+			long baseTime = header.getLong();
+			header.position(header.position() + 4 * columnCount);
+			int compressedLength = header.getInt();
+
+			long next = offset + headerSize + compressedLength;
+			if (records <= 0 || compressedLength < 0 || next > size)
+				break;
+
+			if (segmentCount == segmentOffsets.length) {
+				segmentOffsets = Arrays.copyOf(segmentOffsets,
+						segmentCount * 2);
+				segmentBaseTimes = Arrays.copyOf(segmentBaseTimes,
+						segmentCount * 2);
+				segmentRecordCounts = Arrays.copyOf(segmentRecordCounts,
+						segmentCount * 2);
+			}
+			segmentOffsets[segmentCount] = offset;
+			segmentBaseTimes[segmentCount] = baseTime;
+			segmentRecordCounts[segmentCount] = records;
+			segmentCount++;
+			recordCount += records;
+			offset = next;
+		}
+
+		System.out.println("Archive was not closed, recovered "
+				+ recordCount + " games.");
+	}
+}
@@ -0,0 +1,296 @@
+package archive;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Streaming writer of a game archive. Games are appended one at a time and
+ * buffered column by column until the segment is large enough, then the
+ * segment is compressed and written out. Only the segment being filled is
+ * held in memory, however many games are written.
+ * 
+ * The writer is not thread-safe, games coming from several threads must be
+ * handed to it by a single thread.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.2
+ */
+public class C4ArchiveWriter {
+
+	private DataOutputStream out;
+	private long position; // offset in the file of the next segment
+
+	// columns of the segment being filled
+	private ColumnBuffer[] columns;
+	private int segmentRecords; // games in the segment being filled
+	private long baseTime, previousStartTime;
+	private long seedKey; // key of the seeds of the segment being filled
+
+	// bits of moves not yet flushed to the moves column
+	private long pendingMoveBits;
+	private int pendingMoveBitCount;
+
+	// index of the segments written so far, grown as needed
+	private long[] segmentOffsets, segmentBaseTimes;
+	private int[] segmentRecordCounts;
+	private int segmentCount;
+	private long recordCount;
+
+	private Deflater deflater;
+	private ColumnBuffer joined; // columns joined before compression
+	private byte[] compressed;
+	private boolean closed;
+
+	/**
+	 * Creates a C4ArchiveWriter object writing a new archive, replacing the
+	 * file if it exists
+	 * 
+	 * @param file
+	 *            File of the archive
+	 * @throws IOException
+	 *             If the file could not be created
+	 */
+	public C4ArchiveWriter(File file) throws IOException {
+		out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file), 64 * 1024));
+		out.writeInt(C4ArchiveFormat.MAGIC);
+		out.writeShort(C4ArchiveFormat.VERSION);
+		position = C4ArchiveFormat.HEADER_SIZE;
+
+		columns = new ColumnBuffer[C4ArchiveFormat.COLUMN_COUNT];
+		for (int i = 0; i < columns.length; i++)
+			columns[i] = new ColumnBuffer();
+
+		segmentOffsets = new long[16];
+		segmentBaseTimes = new long[16];
+		segmentRecordCounts = new int[16];
+		deflater = new Deflater(Deflater.BEST_COMPRESSION);
+		joined = new ColumnBuffer();
+		compressed = new byte[C4ArchiveFormat.SEGMENT_TARGET_SIZE];
+	}
+
+	/**
+	 * Appends a game to the archive
+	 * 
+	 * @param record
+	 *            Game to be archived
+	 * @throws IOException
+	 *             If a full segment could not be written
+	 */
+	public void write(C4GameRecord record) throws IOException {
+		if (closed)
+			throw new IOException("Archive is closed.");
+
+		if (record.getOutcome() < 0
+				|| record.getOutcome() >= 1 << C4ArchiveFormat.OUTCOME_BITS)
+			throw new IllegalArgumentException("Invalid outcome.");
+
+		if (segmentRecords == 0) {
+			baseTime = record.getStartTime();
+			previousStartTime = baseTime;
+
+			// the seeds of the segment are stored relative to the first one's
+			// key, which those of the same server share
+			seedKey = C4ArchiveFormat.seedKey(record.getSeed(), baseTime);
+			columns[C4ArchiveFormat.SEEDS].writeLong(seedKey);
+		}
+
+		byte[] moves = record.getMoves();
+
+		columns[C4ArchiveFormat.START_TIMES].writeVarLong(C4ArchiveFormat
+				.zigZag(record.getStartTime() - previousStartTime));
+		columns[C4ArchiveFormat.DURATIONS].writeVarLong(C4ArchiveFormat
+				.zigZag(record.getEndTime() - record.getStartTime()));
+		columns[C4ArchiveFormat.PLIES_AND_OUTCOMES].writeVarLong(moves.length
+				<< C4ArchiveFormat.OUTCOME_BITS | record.getOutcome());
+		columns[C4ArchiveFormat.ENGINE_CONFIGS].writeVarLong(record
+				.getEngineConfig() & 0xffffffffL);
+		long key = C4ArchiveFormat.seedKey(record.getSeed(),
+				record.getStartTime());
+		columns[C4ArchiveFormat.SEEDS].writeVarLong(C4ArchiveFormat
+				.zigZag(key - seedKey));
+
+		// pack the moves back to back, 3 bits each
+		ColumnBuffer moveColumn = columns[C4ArchiveFormat.MOVES];
+		for (byte move : moves) {
+			if (move < 0 || move > 6)
+				throw new IllegalArgumentException(
+						"Move must be between columns 0 and 6.");
+
+			pendingMoveBits |= (long) move << pendingMoveBitCount;
+			pendingMoveBitCount += C4ArchiveFormat.BITS_PER_MOVE;
+			if (pendingMoveBitCount >= 8) {
+				moveColumn.write((int) pendingMoveBits);
+				pendingMoveBits >>>= 8;
+				pendingMoveBitCount -= 8;
+			}
+		}
+
+		previousStartTime = record.getStartTime();
+		segmentRecords++;
+		recordCount++;
+
+		if (getSegmentSize() >= C4ArchiveFormat.SEGMENT_TARGET_SIZE)
+			flushSegment();
+	}
+
+	/**
+	 * Returns the number of games written so far
+	 * 
+	 * @return Number of games in the archive
+	 */
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * Writes the last segment and the footer, then closes the file
+	 * 
+	 * @throws IOException
+	 *             If the file could not be written
+	 */
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+
+		try {
+			flushSegment();
+
+			long footerOffset = position;
+			out.writeInt(segmentCount);
+			for (int i = 0; i < segmentCount; i++) {
+				out.writeLong(segmentOffsets[i]);
+				out.writeInt(segmentRecordCounts[i]);
+				out.writeLong(segmentBaseTimes[i]);
+			}
+			out.writeLong(recordCount);
+			out.writeLong(footerOffset);
+			out.writeInt(C4ArchiveFormat.TRAILER_MAGIC);
+		} finally {
+			deflater.end();
+			out.close();
+		}
+	}
+
+	/**
+	 * Returns the uncompressed size of the segment being filled
+	 * 
+	 * @return Size in bytes
+	 */
+	private int getSegmentSize() {
+		int size = 0;
+		for (ColumnBuffer column : columns)
+			size += column.length;
+		return size;
+	}
+
+	/**
+	 * Compresses the segment being filled and writes it out
+	 * 
+	 * @throws IOException
+	 *             If the segment could not be written
+	 */
+	private void flushSegment() throws IOException {
+		if (segmentRecords == 0)
+			return;
+
+		// flush the bits of the last moves
+		if (pendingMoveBitCount > 0) {
+			columns[C4ArchiveFormat.MOVES].write((int) pendingMoveBits);
+			pendingMoveBits = 0;
+			pendingMoveBitCount = 0;
+		}
+
+		int compressedLength = deflate();
+
+		if (segmentCount == segmentOffsets.length) {
+			segmentOffsets = Arrays.copyOf(segmentOffsets, segmentCount * 2);
+			segmentBaseTimes = Arrays.copyOf(segmentBaseTimes,
+					segmentCount * 2);
+			segmentRecordCounts = Arrays.copyOf(segmentRecordCounts,
+					segmentCount * 2);
+		}
+		segmentOffsets[segmentCount] = position;
+		segmentBaseTimes[segmentCount] = baseTime;
+		segmentRecordCounts[segmentCount] = segmentRecords;
+		segmentCount++;
+
+		out.writeInt(segmentRecords);
+		out.writeLong(baseTime);
+		for (ColumnBuffer column : columns)
+			out.writeInt(column.length);
+		out.writeInt(compressedLength);
+		out.write(compressed, 0, compressedLength);
+		position += C4ArchiveFormat
+				.segmentHeaderSize(C4ArchiveFormat.COLUMN_COUNT)
+				+ compressedLength;
+
+		for (ColumnBuffer column : columns)
+			column.length = 0;
+		segmentRecords = 0;
+	}
+
+	/**
+	 * Deflates the columns of the segment as a single block
+	 * 
+	 * @return Length of the compressed block
+	 */
+	private int deflate() {
+		// the deflater only takes one input at a time, so join the columns
+		joined.length = 0;
+		for (ColumnBuffer column : columns)
+			joined.write(column.bytes, column.length);
+		deflater.reset();
+		deflater.setInput(joined.bytes, 0, joined.length);
+		deflater.finish();
+
+		int length = 0;
+		while (!deflater.finished()) {
+			if (length == compressed.length)
+				compressed = Arrays.copyOf(compressed, length * 2);
+			length += deflater.deflate(compressed, length, compressed.length
+					- length);
+		}
+		return length;
+	}
+
+	/**
+	 * Growable buffer holding one column of the segment being filled
+	 */
+	private static class ColumnBuffer {
+		private byte[] bytes = new byte[4096];
+		private int length;
+
+		private void write(int b) {
+			if (length == bytes.length)
+				bytes = Arrays.copyOf(bytes, length * 2);
+			bytes[length++] = (byte) b;
+		}
+
+		private void write(byte[] b, int count) {
+			while (length + count > bytes.length)
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			System.arraycopy(b, 0, bytes, length, count);
+			length += count;
+		}
+
+		private void writeLong(long value) {
+			for (int shift = 56; shift >= 0; shift -= 8)
+				write((int) (value >>> shift));
+		}
+
+		private void writeVarLong(long value) {
+			while ((value & ~0x7fL) != 0) {
+				write((int) (value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			write((int) value);
+		}
+	}
+}
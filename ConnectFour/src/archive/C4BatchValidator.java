@@ -0,0 +1,286 @@
+package archive;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Validates game records in bulk, on every core. Records come either from an
+ * archive or from a text file with one record per line: the columns played,
+ * numbered 1 to 7, then a space and the declared outcome (1 first player
+ * won, 2 second player won, 3 draw, 4 unfinished), for example "4455661 1".
+ * 
+ * The input is split in parts validated in parallel by the tasks of a
+ * fork-join pool, text files on line boundaries and archives on segment
+ * boundaries. Text is parsed straight from the mapped file and each task
+ * keeps a single validator, so a valid record costs no allocation at all;
+ * only errors are allocated.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4BatchValidator {
+
+	// size of the parts of a text file validated by a single task
+	private static final int TEXT_PART_SIZE = 1024 * 1024;
+
+	// largest region of a text file mapped at once
+	private static final int REGION_SIZE = 512 * 1024 * 1024;
+
+	private ForkJoinPool pool;
+
+	/**
+	 * Creates a C4BatchValidator using every core of the machine
+	 */
+	public C4BatchValidator() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a C4BatchValidator running on a specific pool
+	 * 
+	 * @param pool
+	 *            Pool validating the records
+	 */
+	public C4BatchValidator(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Validates the records of a text file
+	 * 
+	 * @param file
+	 *            Text file with one record per line
+	 * @return Report of the validation
+	 * @throws IOException
+	 *             If the file could not be read
+	 */
+	public C4ValidationReport validateText(File file) throws IOException {
+		C4ValidationReport report = new C4ValidationReport();
+
+		FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			long position = 0;
+
+			// map the file one region at a time, each ending on a line
+			while (position < size) {
+				long length = Math.min(REGION_SIZE, size - position);
+				MappedByteBuffer region = channel.map(
+						FileChannel.MapMode.READ_ONLY, position, length);
+
+				int end = (int) length;
+				if (position + length < size) {
+					while (end > 0 && region.get(end - 1) != '\n')
+						end--;
+					if (end == 0)
+						throw new IOException("Line too long at offset "
+								+ position);
+				}
+
+				report.append(validateText(region, 0, end));
+				position += end;
+			}
+		} finally {
+			channel.close();
+		}
+		return report;
+	}
+
+	/**
+	 * Validates the records of text held in a buffer
+	 * 
+	 * @param text
+	 *            Buffer holding whole lines
+	 * @param start
+	 *            Index of the first byte of the text
+	 * @param end
+	 *            Index after the last byte of the text
+	 * @return Report of the validation
+	 */
+	public C4ValidationReport validateText(ByteBuffer text, int start, int end) {
+		return pool.invoke(new TextTask(text, start, end));
+	}
+
+	/**
+	 * Validates every game of an archive
+	 * 
+	 * @param reader
+	 *            Reader of the archive
+	 * @return Report of the validation
+	 * @throws IOException
+	 *             If the archive could not be read
+	 */
+	public C4ValidationReport validateArchive(C4ArchiveReader reader)
+			throws IOException {
+		try {
+			return pool.invoke(new ArchiveTask(reader, 0, reader
+					.getSegmentCount()));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Task validating the lines of a part of a text buffer, split in two
+	 * until the part is small enough
+	 */
+	private static class TextTask extends RecursiveTask<C4ValidationReport> {
+		private static final long serialVersionUID = 1L;
+
+		private final ByteBuffer text;
+		private final int start, end;
+
+		private TextTask(ByteBuffer text, int start, int end) {
+			this.text = text;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected C4ValidationReport compute() {
+			if (end - start > TEXT_PART_SIZE) {
+				// split after the end of the line crossing the middle
+				int middle = start + (end - start) / 2;
+				while (middle < end && text.get(middle - 1) != '\n')
+					middle++;
+
+				if (middle < end) {
+					TextTask first = new TextTask(text, start, middle);
+					first.fork();
+					C4ValidationReport second = new TextTask(text, middle,
+							end).compute();
+					C4ValidationReport report = first.join();
+					report.append(second);
+					return report;
+				}
+			}
+			return validateLines();
+		}
+
+		/**
+		 * Parses and validates the lines of the part
+		 * 
+		 * @return Report of the part, records numbered from the part's start
+		 */
+		private C4ValidationReport validateLines() {
+			C4ValidationReport report = new C4ValidationReport();
+			C4RecordValidator validator = new C4RecordValidator();
+
+			boolean blank = true; // nothing read on the line yet
+			boolean malformed = false;
+			boolean inMoves = true; // reading moves, not the outcome
+			int outcome = -1;
+
+			for (int i = start; i <= end; i++) {
+				byte b = i < end ? text.get(i) : (byte) '\n';
+
+				if (b == '\n') {
+					// a last line without a newline still counts
+					if (i == end && blank)
+						break;
+
+					report.lineRead();
+					if (!blank) {
+						int error = malformed || outcome < 0
+								? C4RecordValidator.MALFORMED
+								: validator.finish(outcome);
+						boolean valid = error == C4RecordValidator.VALID;
+						report.recordRead(valid);
+						if (!valid)
+							report.getErrors().add(new C4ValidationError(
+									report.getLineCount(), error,
+									error == C4RecordValidator.MALFORMED
+											? 0 : validator.getErrorPly()));
+					}
+
+					validator.reset();
+					blank = true;
+					malformed = false;
+					inMoves = true;
+					outcome = -1;
+					continue;
+				}
+
+				if (b == '\r')
+					continue;
+
+				boolean space = b == ' ' || b == '\t';
+				if (space) {
+					if (!blank)
+						inMoves = false;
+				} else if (inMoves && b >= '1' && b <= '7') {
+					validator.play(b - '1');
+				} else if (!inMoves && outcome < 0 && b >= '0' && b <= '9') {
+					outcome = b - '0';
+				} else
+					malformed = true;
+
+				if (!space)
+					blank = false;
+			}
+			return report;
+		}
+	}
+
+	/**
+	 * Task validating the games of a range of segments of an archive, split
+	 * in two until a single segment is left
+	 */
+	private static class ArchiveTask extends
+			RecursiveTask<C4ValidationReport> {
+		private static final long serialVersionUID = 1L;
+
+		private final C4ArchiveReader reader;
+		private final int firstSegment, endSegment;
+
+		private ArchiveTask(C4ArchiveReader reader, int firstSegment,
+				int endSegment) {
+			this.reader = reader;
+			this.firstSegment = firstSegment;
+			this.endSegment = endSegment;
+		}
+
+		@Override
+		protected C4ValidationReport compute() {
+			if (endSegment - firstSegment > 1) {
+				int middle = (firstSegment + endSegment) >>> 1;
+				ArchiveTask first = new ArchiveTask(reader, firstSegment,
+						middle);
+				first.fork();
+				C4ValidationReport second = new ArchiveTask(reader, middle,
+						endSegment).compute();
+				C4ValidationReport report = first.join();
+				report.append(second);
+				return report;
+			}
+
+			C4ValidationReport report = new C4ValidationReport();
+			C4RecordValidator validator = new C4RecordValidator();
+			C4ArchiveCursor game = reader.openCursor(firstSegment, endSegment);
+
+			try {
+				while (game.next()) {
+					report.lineRead();
+					int error = validator.validate(game);
+					boolean valid = error == C4RecordValidator.VALID;
+					report.recordRead(valid);
+					if (!valid)
+						report.getErrors().add(new C4ValidationError(
+								report.getLineCount(), error,
+								validator.getErrorPly()));
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return report;
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package archive;
+
+/**
+ * Record of a finished game kept in the game archive: the columns played in
+ * order, the outcome, the engine the game was played against, when it was
+ * played and the seed of the engine's random moves.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.2
+ */
+public class C4GameRecord {
+
+	// outcome of the game, the first player is the one who moved first
+	public static final int FIRST_PLAYER_WON = 1, SECOND_PLAYER_WON = 2,
+			DRAW = 3, ABANDONED = 4;
+
+	// engine configuration of a game between two human players, and of a game
+	// against the built-in AI
+	public static final int HUMAN_OPPONENT = 0, DEFAULT_ENGINE = 1;
+
+	// engine configuration of a game against the searching AI, to which the
+	// maximum search depth is added
+	public static final int SEARCH_ENGINE = 0x100;
+
+	private byte[] moves; // columns played, in order
+	private int outcome;
+	private int engineConfig;
+	private long startTime, endTime; // milliseconds since the epoch
+	private long seed; // seed of the engine's random moves, 0 if none
+
+	/**
+	 * Creates a C4GameRecord object without a seed
+	 * 
+	 * @param moves
+	 *            Columns played in order, each between 0 and 6
+	 * @param outcome
+	 *            Outcome of the game
+	 * @param engineConfig
+	 *            Engine configuration the game was played against
+	 * @param startTime
+	 *            Time the game started, in milliseconds since the epoch
+	 * @param endTime
+	 *            Time the game ended, in milliseconds since the epoch
+	 */
+	public C4GameRecord(byte[] moves, int outcome, int engineConfig,
+			long startTime, long endTime) {
+		this(moves, outcome, engineConfig, startTime, endTime, 0);
+	}
+
+	/**
+	 * Creates a C4GameRecord object
+	 * 
+	 * @param moves
+	 *            Columns played in order, each between 0 and 6
+	 * @param outcome
+	 *            Outcome of the game
+	 * @param engineConfig
+	 *            Engine configuration the game was played against
+	 * @param startTime
+	 *            Time the game started, in milliseconds since the epoch
+	 * @param endTime
+	 *            Time the game ended, in milliseconds since the epoch
+	 * @param seed
+	 *            Seed of the engine's random moves, 0 if none
+	 */
+	public C4GameRecord(byte[] moves, int outcome, int engineConfig,
+			long startTime, long endTime, long seed) {
+		if (moves.length > 42)
+			throw new IllegalArgumentException(
+					"A game has at most 42 moves.");
+
+		this.moves = moves;
+		this.outcome = outcome;
+		this.engineConfig = engineConfig;
+		this.startTime = startTime;
+		this.endTime = endTime;
+		this.seed = seed;
+	}
+
+	/**
+	 * Returns the columns played in order
+	 * 
+	 * @return Moves of the game
+	 */
+	public byte[] getMoves() {
+		return moves;
+	}
+
+	/**
+	 * Returns the number of moves played
+	 * 
+	 * @return Number of plies of the game
+	 */
+	public int getPlyCount() {
+		return moves.length;
+	}
+
+	/**
+	 * Returns the outcome of the game
+	 * 
+	 * @return Outcome of the game
+	 */
+	public int getOutcome() {
+		return outcome;
+	}
+
+	/**
+	 * Returns the engine configuration the game was played against
+	 * 
+	 * @return Engine configuration
+	 */
+	public int getEngineConfig() {
+		return engineConfig;
+	}
+
+	/**
+	 * Returns the time the game started
+	 * 
+	 * @return Start time in milliseconds since the epoch
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * Returns the time the game ended
+	 * 
+	 * @return End time in milliseconds since the epoch
+	 */
+	public long getEndTime() {
+		return endTime;
+	}
+
+	/**
+	 * Returns the seed of a game started at some time by a server drawing its
+	 * seeds from a key. The archive stores a seed derived from the key of the
+	 * segment's other games in a single byte, instead of 8 for any other.
+	 * Games started in the same millisecond share their seed.
+	 * 
+	 * @param key
+	 *            Key of the server's seeds
+	 * @param startTime
+	 *            Time the game started
+	 * @return Seed of the game
+	 */
+	public static long deriveSeed(long key, long startTime) {
+		return key + C4ArchiveFormat.mix(startTime);
+	}
+
+	/**
+	 * Returns the seed of the engine's random moves, which replays the game
+	 * with the player's moves
+	 * 
+	 * @return Seed of the game, 0 if none
+	 */
+	public long getSeed() {
+		return seed;
+	}
+}
@@ -0,0 +1,215 @@
+package archive;
+
+import gameLogic.C4Position;
+
+/**
+ * Replays a game record and checks it: every move must be legal, no move may
+ * follow the win or the draw, and the declared result must be the result of
+ * the moves. Moves are fed one at a time, so records can be validated while
+ * they are parsed, and the validator is reset between records instead of
+ * being created again, so validating a record allocates nothing.
+ * 
+ * A validator must only be used by one thread.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4RecordValidator {
+
+	// result of a validation
+	public static final int VALID = 0, ILLEGAL_COLUMN = 1, COLUMN_FULL = 2,
+			MOVES_AFTER_END = 3, UNFINISHED = 4, WRONG_RESULT = 5,
+			INVALID_RESULT = 6, MALFORMED = 7;
+
+	private C4Position position;
+
+	private int plies; // moves fed so far
+	private int error; // first error found, VALID if none
+	private int errorPly; // ply at which the error was found
+
+	// ply that won or filled the board, 0 while the game goes on, and the
+	// outcome it gave
+	private int endPly, outcome;
+
+	/**
+	 * Creates a C4RecordValidator ready for a first record
+	 */
+	public C4RecordValidator() {
+		position = new C4Position();
+		reset();
+	}
+
+	/**
+	 * Starts a new record
+	 */
+	public void reset() {
+		position.reset();
+		plies = 0;
+		error = VALID;
+		errorPly = 0;
+		endPly = 0;
+		outcome = C4GameRecord.ABANDONED;
+	}
+
+	/**
+	 * Feeds the next move of the record
+	 * 
+	 * @param col
+	 *            Column played, between 0 and 6
+	 * @return False if the record is already known to be invalid, in which
+	 *         case the rest of its moves may be skipped
+	 */
+	public boolean play(int col) {
+		if (error != VALID)
+			return false;
+
+		plies++;
+		if (endPly != 0)
+			return fail(MOVES_AFTER_END, plies);
+		if (col < 0 || col >= C4Position.WIDTH)
+			return fail(ILLEGAL_COLUMN, plies);
+		if (!position.canPlay(col))
+			return fail(COLUMN_FULL, plies);
+
+		boolean win = position.isWinningMove(col);
+		position.play(col);
+
+		if (win) {
+			endPly = plies;
+			outcome = plies % 2 == 1 ? C4GameRecord.FIRST_PLAYER_WON
+					: C4GameRecord.SECOND_PLAYER_WON;
+		} else if (position.isFull()) {
+			endPly = plies;
+			outcome = C4GameRecord.DRAW;
+		}
+		return true;
+	}
+
+	/**
+	 * Ends the record and checks its declared result
+	 * 
+	 * @param declaredOutcome
+	 *            Outcome declared by the record, ABANDONED for a game that was
+	 *            not played to its end
+	 * @return VALID, or the first error found in the record
+	 */
+	public int finish(int declaredOutcome) {
+		if (error != VALID)
+			return error;
+
+		if (declaredOutcome < C4GameRecord.FIRST_PLAYER_WON
+				|| declaredOutcome > C4GameRecord.ABANDONED)
+			fail(INVALID_RESULT, plies);
+		else if (declaredOutcome != C4GameRecord.ABANDONED && endPly == 0)
+			fail(UNFINISHED, plies);
+		else if (declaredOutcome != outcome)
+			fail(WRONG_RESULT, endPly);
+		return error;
+	}
+
+	/**
+	 * Validates a whole record
+	 * 
+	 * @param moves
+	 *            Columns played in order
+	 * @param length
+	 *            Number of moves
+	 * @param declaredOutcome
+	 *            Outcome declared by the record
+	 * @return VALID, or the first error found in the record
+	 */
+	public int validate(byte[] moves, int length, int declaredOutcome) {
+		reset();
+		for (int i = 0; i < length && play(moves[i]); i++)
+			;
+		return finish(declaredOutcome);
+	}
+
+	/**
+	 * Validates the game a cursor of an archive is on
+	 * 
+	 * @param game
+	 *            Cursor on the game
+	 * @return VALID, or the first error found in the game
+	 */
+	public int validate(C4ArchiveCursor game) {
+		reset();
+		for (int i = 0; i < game.getPlyCount() && play(game.getMove(i)); i++)
+			;
+		return finish(game.getOutcome());
+	}
+
+	/**
+	 * Returns the ply at which the error was found: the illegal move, the
+	 * first move after the end, or the ply that ended the game when the
+	 * declared result is wrong
+	 * 
+	 * @return Ply of the error, counting from 1
+	 */
+	public int getErrorPly() {
+		return errorPly;
+	}
+
+	/**
+	 * Returns the ply that won or filled the board
+	 * 
+	 * @return Last ply of the game, 0 if the game did not end
+	 */
+	public int getEndPly() {
+		return endPly;
+	}
+
+	/**
+	 * Returns the outcome of the moves fed so far
+	 * 
+	 * @return Outcome of the game, ABANDONED if it did not end
+	 */
+	public int getOutcome() {
+		return outcome;
+	}
+
+	/**
+	 * Returns a description of a validation result
+	 * 
+	 * @param error
+	 *            Result of a validation
+	 * @return Description of the result
+	 */
+	public static String describe(int error) {
+		switch (error) {
+		case VALID:
+			return "valid";
+		case ILLEGAL_COLUMN:
+			return "column out of range";
+		case COLUMN_FULL:
+			return "column already full";
+		case MOVES_AFTER_END:
+			return "move after the end of the game";
+		case UNFINISHED:
+			return "game did not end but a result was declared";
+		case WRONG_RESULT:
+			return "declared result does not match the moves";
+		case INVALID_RESULT:
+			return "unknown result";
+		case MALFORMED:
+			return "record could not be read";
+		default:
+			return "unknown error";
+		}
+	}
+
+	/**
+	 * Records the first error of the record
+	 * 
+	 * @param code
+	 *            Error found
+	 * @param ply
+	 *            Ply at which it was found
+	 * @return False, the record being invalid
+	 */
+	private boolean fail(int code, int ply) {
+		error = code;
+		errorPly = ply;
+		return false;
+	}
+}
@@ -0,0 +1,163 @@
+package archive;
+
+import gameExceptions.C4InvalidMoveException;
+import gameLogic.C4Game;
+import gameLogic.C4Solver;
+import gameLogic.C4TranspositionTable;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Replays archived games against the AI from their seed: the player's moves
+ * are played again and the AI is asked for each of its moves, which must be
+ * the archived ones. Games against the simple AI replay exactly. Games
+ * against the searching AI are searched to their full depth with a table of
+ * their own, so they only replay exactly if the server reached that depth.
+ * 
+ * Usage: C4ReplayApp archive [-seed hex] [-limit n] [-verbose]
+ * 
+ * Games between players and games archived without a seed are skipped.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4ReplayApp {
+
+	// size of the table of a replayed search and its time budget, enough for
+	// any depth to be reached
+	private static final int TABLE_BITS = 20;
+	private static final long SEARCH_MILLIS = 24 * 60 * 60 * 1000L;
+
+	/**
+	 * Main method to replay the games of an archive
+	 * 
+	 * @param args
+	 *            Archive to replay, followed by any of the options -seed hex
+	 *            (only the game with that seed), -limit n (at most n games)
+	 *            and -verbose (every game replayed is listed)
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.out
+					.println("Usage: C4ReplayApp archive [-seed hex] [-limit n] [-verbose]");
+			return;
+		}
+
+		File file = new File(args[0]);
+		long seed = 0;
+		long limit = Long.MAX_VALUE;
+		boolean verbose = false;
+
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("-seed"))
+				seed = Long.parseUnsignedLong(args[++i], 16);
+			else if (args[i].equals("-limit"))
+				limit = Long.parseLong(args[++i]);
+			else if (args[i].equals("-verbose"))
+				verbose = true;
+			else {
+				System.out.println("Unknown option " + args[i]);
+				return;
+			}
+		}
+
+		long replayed = 0, identical = 0, skipped = 0, index = -1;
+		try {
+			C4ArchiveReader reader = new C4ArchiveReader(file);
+			try {
+				C4ArchiveCursor cursor = reader.openCursor();
+				while (replayed < limit && cursor.next()) {
+					index++;
+					if (seed != 0 && cursor.getSeed() != seed)
+						continue;
+					if (cursor.getSeed() == 0
+							|| cursor.getEngineConfig() == C4GameRecord.HUMAN_OPPONENT) {
+						skipped++;
+						continue;
+					}
+
+					C4GameRecord record = cursor.toRecord();
+					int divergence = replay(record);
+					replayed++;
+					if (divergence < 0)
+						identical++;
+
+					if (divergence >= 0 || verbose)
+						System.out.println(describe(index, record, divergence));
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			System.out.println("Error reading " + file + ": " + e.getMessage());
+			return;
+		}
+
+		System.out.println(replayed + " games replayed, " + identical
+				+ " identical, " + (replayed - identical) + " diverged, "
+				+ skipped + " skipped");
+	}
+
+	/**
+	 * Replays a game against the AI from its seed
+	 * 
+	 * @param record
+	 *            Game to replay
+	 * @return Ply at which the AI played another move than the archived
+	 *         one, -1 if the whole game was played again
+	 */
+	static int replay(C4GameRecord record) {
+		byte[] moves = record.getMoves();
+		C4Game game = new C4Game(record.getSeed());
+		int depth = record.getEngineConfig() >= C4GameRecord.SEARCH_ENGINE
+				? record.getEngineConfig() - C4GameRecord.SEARCH_ENGINE
+				: 0;
+		C4Solver solver = depth > 0
+				? new C4Solver(new C4TranspositionTable(TABLE_BITS))
+				: null;
+
+		try {
+			for (int ply = 0; ply < moves.length; ply++) {
+				// the player moves first, the AI answers
+				if ((ply & 1) == 0) {
+					if (!game.makeMove(moves[ply], C4Game.PLAYER_ID))
+						return ply;
+					continue;
+				}
+
+				byte[] reply = depth > 0
+						? game.searchMakeMove(solver, depth, SEARCH_MILLIS)
+						: game.artificialIntelligenceMakeMove();
+				if (reply[1] != moves[ply])
+					return ply;
+			}
+		} catch (C4InvalidMoveException e) {
+			return 0;
+		}
+		return -1;
+	}
+
+	/**
+	 * Describes the replay of a game
+	 * 
+	 * @param index
+	 *            Index of the game in the archive
+	 * @param record
+	 *            Game replayed
+	 * @param divergence
+	 *            Ply at which the replay diverged, -1 if it did not
+	 * @return Line describing the replay
+	 */
+	private static String describe(long index, C4GameRecord record,
+			int divergence) {
+		StringBuilder moves = new StringBuilder();
+		for (byte move : record.getMoves())
+			moves.append(move + 1);
+
+		String line = "game " + index + " seed "
+				+ Long.toHexString(record.getSeed()) + " moves " + moves;
+		return divergence < 0 ? line + ": identical" : line
+				+ ": diverged at ply " + (divergence + 1);
+	}
+}
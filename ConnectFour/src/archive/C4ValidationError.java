@@ -0,0 +1,75 @@
+package archive;
+
+/**
+ * Error found in a record by the batch validator.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4ValidationError {
+
+	private long record; // number of the record, counting from 1
+	private int code; // error found, one of C4RecordValidator's results
+	private int ply; // ply at which the error was found, 0 if none applies
+
+	/**
+	 * Creates a C4ValidationError object
+	 * 
+	 * @param record
+	 *            Number of the record, counting from 1
+	 * @param code
+	 *            Error found
+	 * @param ply
+	 *            Ply at which the error was found
+	 */
+	public C4ValidationError(long record, int code, int ply) {
+		this.record = record;
+		this.code = code;
+		this.ply = ply;
+	}
+
+	/**
+	 * Returns the number of the record, which for a text file is its line
+	 * 
+	 * @return Number of the record, counting from 1
+	 */
+	public long getRecord() {
+		return record;
+	}
+
+	/**
+	 * Returns the error found
+	 * 
+	 * @return One of the results of C4RecordValidator
+	 */
+	public int getCode() {
+		return code;
+	}
+
+	/**
+	 * Returns the ply at which the error was found
+	 * 
+	 * @return Ply of the error counting from 1, 0 if none applies
+	 */
+	public int getPly() {
+		return ply;
+	}
+
+	/**
+	 * Moves the error further in the input, once the number of records read
+	 * before the part it was found in is known
+	 * 
+	 * @param records
+	 *            Number of records before the part
+	 */
+	void shift(long records) {
+		record += records;
+	}
+
+	@Override
+	public String toString() {
+		return "Record " + record + ": "
+				+ C4RecordValidator.describe(code)
+				+ (ply > 0 ? " at ply " + ply : "");
+	}
+}
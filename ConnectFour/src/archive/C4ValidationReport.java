@@ -0,0 +1,96 @@
+package archive;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of validating a batch of records: how many were read, how many
+ * were valid, and the errors of the others in the order of the input.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4ValidationReport {
+
+	private long recordCount, validCount;
+	private long lineCount; // lines read, blank ones included
+	private List<C4ValidationError> errors;
+
+	/**
+	 * Creates an empty C4ValidationReport
+	 */
+	C4ValidationReport() {
+		errors = new ArrayList<C4ValidationError>();
+	}
+
+	/**
+	 * Returns the number of records read
+	 * 
+	 * @return Number of records
+	 */
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * Returns the number of valid records
+	 * 
+	 * @return Number of records without error
+	 */
+	public long getValidCount() {
+		return validCount;
+	}
+
+	/**
+	 * Returns the errors found, in the order of the records
+	 * 
+	 * @return Errors of the invalid records
+	 */
+	public List<C4ValidationError> getErrors() {
+		return errors;
+	}
+
+	/**
+	 * Counts a record
+	 * 
+	 * @param valid
+	 *            True if the record is valid
+	 */
+	void recordRead(boolean valid) {
+		recordCount++;
+		if (valid)
+			validCount++;
+	}
+
+	/**
+	 * Counts a line of a text file
+	 */
+	void lineRead() {
+		lineCount++;
+	}
+
+	/**
+	 * Returns the number of lines read, or of records for an archive
+	 * 
+	 * @return Number of lines
+	 */
+	long getLineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * Appends the report of the part of the input that follows this one
+	 * 
+	 * @param next
+	 *            Report of the next part
+	 */
+	void append(C4ValidationReport next) {
+		for (C4ValidationError error : next.errors) {
+			error.shift(lineCount);
+			errors.add(error);
+		}
+		recordCount += next.recordCount;
+		validCount += next.validCount;
+		lineCount += next.lineCount;
+	}
+}
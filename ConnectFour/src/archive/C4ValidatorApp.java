@@ -0,0 +1,65 @@
+package archive;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Validates submitted game records from the command line. Files ending in
+ * .c4a are read as archives, anything else as text with one record per line.
+ * 
+ * Usage: C4ValidatorApp file [maximum errors shown]
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4ValidatorApp {
+
+	/**
+	 * Main method to validate a file of records
+	 * 
+	 * @param args
+	 *            File to validate and the optional number of errors shown
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.out.println("Usage: C4ValidatorApp file [maximum errors shown]");
+			return;
+		}
+
+		File file = new File(args[0]);
+		int maximumErrors = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		C4BatchValidator validator = new C4BatchValidator();
+		C4ValidationReport report;
+		long start = System.nanoTime();
+
+		try {
+			if (file.getName().endsWith(".c4a")) {
+				C4ArchiveReader reader = new C4ArchiveReader(file);
+				try {
+					report = validator.validateArchive(reader);
+				} finally {
+					reader.close();
+				}
+			} else
+				report = validator.validateText(file);
+		} catch (IOException e) {
+			System.out.println("Error reading " + file + ": " + e.getMessage());
+			return;
+		}
+
+		long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+
+		List<C4ValidationError> errors = report.getErrors();
+		for (int i = 0; i < Math.min(maximumErrors, errors.size()); i++)
+			System.out.println(errors.get(i));
+		if (errors.size() > maximumErrors)
+			System.out.println("... " + (errors.size() - maximumErrors)
+					+ " more errors");
+
+		System.out.println(report.getRecordCount() + " records, "
+				+ report.getValidCount() + " valid, " + errors.size()
+				+ " invalid, validated in " + millis + " ms ("
+				+ report.getRecordCount() * 1000 / millis + " records/s)");
+	}
+}
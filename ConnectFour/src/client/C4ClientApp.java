@@ -1,5 +1,9 @@
 package client;
 
+import gui.C4GUI;
+
+import java.util.concurrent.Executor;
+
 import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
 
@@ -7,7 +11,7 @@ import javax.swing.SwingUtilities;
  * Runs a Connect Four game on the client side.
  * 
  * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
- * @version 1.4
+ * @version 1.5
  */
 public class C4ClientApp {
 
@@ -17,13 +21,44 @@ public class C4ClientApp {
 			+ "([01]?\\d\\d?|2[0-4]\\d|25[0-5])\\."
 			+ "([01]?\\d\\d?|2[0-4]\\d|25[0-5])$";
 
+	// runs the model on the Swing event dispatch thread, with the GUI
+	private static final Executor EVENT_DISPATCH_THREAD = new Executor() {
+		public void execute(Runnable task) {
+			SwingUtilities.invokeLater(task);
+		}
+	};
+
+	// strength of the engine played offline, the deepest search in plies and
+	// the time budget of a move
+	private static final int DEFAULT_OFFLINE_DEPTH = 12;
+	private static final long DEFAULT_OFFLINE_MILLIS = 500;
+
 	/**
 	 * Main method that runs the application
 	 * 
 	 * @param args
+	 *            Optional -offline [depth [millis]] to play against an engine
+	 *            running in the client instead of a server, depth 0 playing
+	 *            the simple AI
 	 */
 	public static void main(String[] args) {
 
+		if (args.length > 0 && args[0].equals("-offline")) {
+			final int depth = args.length > 1 ? Integer.parseInt(args[1])
+					: DEFAULT_OFFLINE_DEPTH;
+			final long millis = args.length > 2 ? Long.parseLong(args[2])
+					: DEFAULT_OFFLINE_MILLIS;
+
+			// no server to ask for, play against the local engine
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					C4GUI.showFirstGameDialog(new C4Model(depth, millis,
+							EVENT_DISPATCH_THREAD));
+				}
+			});
+			return;
+		}
+
 		SwingUtilities.invokeLater(new Runnable() {
 			public void run() {
 				String serverIP;
@@ -44,7 +79,8 @@ public class C4ClientApp {
 						}
 						// create model if the IP address is valid
 						else if (serverIP.matches(IP_ADDRESS_REG_EXP)) {
-							new C4Model(serverIP, 50000);
+							C4GUI.showFirstGameDialog(new C4Model(serverIP,
+									50000, EVENT_DISPATCH_THREAD));
 						}
 						// if inputed string is not a valid IP
 						else {
@@ -8,19 +8,56 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
 import java.net.SocketException;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * Communicates between the server and client. Receives and inteprets messages
  * sent from the server. Also, sends messages from the client to the server.
  * 
+ * Nothing blocks the caller: outgoing messages are queued for a writer thread
+ * and a reader thread receives every message from the server, including those
+ * the server pushes on its own, and hands them to the model on the executor
+ * the model runs on. A message received also completes the oldest request
+ * it can answer, judged by its type: a move is answered by a move or by the
+ * player's win, a new game or quit by 0x01, and other requests by a message
+ * of their own type. Messages answering no pending request, such as the
+ * moves and results of a match or analysis frames, only go to the model.
+ * 
  * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
- * @version 1.5
+ * @version 1.9
  */
-public class C4ClientDataComm {
+public class C4ClientDataComm implements C4Transport {
 	private static final int MAXIMUM_MESSAGE_SIZE = 2;
+
+	// length of the analysis frames, which start with 0x08
+	private static final int ANALYSIS_MESSAGE_SIZE = 4;
+
+	// length of the resume token frames, which start with 0x09 0x00, and of
+	// the resume request carrying the token back
+	private static final int RESUME_MESSAGE_SIZE = 10;
 	private Socket serverSocket;
 	private C4Model model;
 
+	// executor the model runs on, receiving the server's messages
+	private Executor modelExecutor;
+
+	// messages waiting to be written by the writer thread
+	private BlockingQueue<OutgoingMessage> outgoingMessages;
+
+	// requests waiting for their reply, in the order they were sent
+	private ConcurrentLinkedQueue<OutgoingMessage> pendingReplies;
+
+	// boolean indicating the connection is being closed on purpose
+	private volatile boolean closing;
+
+	// boolean indicating the connection to the server is up
+	private volatile boolean connected;
+
 	/**
 	 * Creates a C4ClientDataComm object that creates a socket to the server and
 	 * handle to the model that will be sending specific messages and responding
@@ -32,139 +69,295 @@ public class C4ClientDataComm {
 	 *            Port number of the server
 	 * @param model
 	 *            Model object that will be communicating through this object
+	 * @param modelExecutor
+	 *            Executor the model runs on, the server's messages are handed
+	 *            to the model on it
 	 */
-	public C4ClientDataComm(String serverIP, int port, C4Model model) {
+	public C4ClientDataComm(String serverIP, int port, C4Model model,
+			Executor modelExecutor) {
+		this.model = model;
+		this.modelExecutor = modelExecutor;
+		this.outgoingMessages = new LinkedBlockingQueue<OutgoingMessage>();
+		this.pendingReplies = new ConcurrentLinkedQueue<OutgoingMessage>();
+
 		try {
 			// create a socket for the server
 			this.serverSocket = new Socket(serverIP, port);
+			this.serverSocket.setTcpNoDelay(true);
+			this.connected = true;
 		} catch (IOException e) {
 			System.out.println("Error connecting to server");
+			return;
 		}
-		this.model = model;
+
+		startThread("C4ClientWriter", new Runnable() {
+			public void run() {
+				writeMessages();
+			}
+		});
+		startThread("C4ClientReader", new Runnable() {
+			public void run() {
+				readMessages();
+			}
+		});
 	}
 
 	/**
-	 * Sends a byte array containing a message to the server.
+	 * Queues a byte array containing a message to be sent to the server and
+	 * returns immediately.
 	 * 
 	 * @param message
 	 *            Array of bytes containing the message that will be sent to the
 	 *            server
+	 * @param expectsReply
+	 *            True if the server answers this message with a reply, false
+	 *            if it only answers later with pushed messages, if at all
+	 * @return Future completed with the server's reply, or with the message
+	 *         once written if no reply is expected
 	 * @throws C4InvalidMessageException
 	 *             If the message client try to send is invalid
-	 * @throws C4InvalidMoveException
-	 *             If the move the client is attempting to make is invalid
 	 */
-	public void sendMessage(byte[] message) throws C4InvalidMessageException,
-			C4InvalidMoveException {
+	public CompletableFuture<byte[]> sendMessage(byte[] message,
+			boolean expectsReply) throws C4InvalidMessageException {
 
-		// throw an exception if the message does not respect the fixed length
-		if (message.length != MAXIMUM_MESSAGE_SIZE)
+		// throw an exception if the message does not respect the fixed length,
+		// only a resume request being longer
+		if (message.length != MAXIMUM_MESSAGE_SIZE
+				&& !(message.length == RESUME_MESSAGE_SIZE
+						&& message[0] == 0x09 && message[1] == 0x01))
 			throw new C4InvalidMessageException(
 					"Messages must be a length of 2 bytes.");
 
+		CompletableFuture<byte[]> result = new CompletableFuture<byte[]>();
+
+		if (!connected) {
+			result.completeExceptionally(new SocketException(
+					"Not connected to server"));
+			return result;
+		}
+
+		outgoingMessages.add(new OutgoingMessage(message, expectsReply,
+				result));
+		return result;
+	}
+
+	/**
+	 * Closes the connection to the server once the last message was sent
+	 */
+	public void close() {
+		closing = true;
+		try {
+			if (serverSocket != null)
+				serverSocket.close();
+		} catch (IOException e) {
+			System.out.println("Error closing connection to server.");
+		}
+	}
+
+	/**
+	 * Loop of the writer thread, sending queued messages in order
+	 */
+	private void writeMessages() {
 		try {
-			// sends the byte array to the server
 			OutputStream out = serverSocket.getOutputStream();
-			out.write(message);
 
-			// receive the message that the server will send in response
-			receiveMessage();
+			for (;;) {
+				OutgoingMessage message = outgoingMessages.take();
+
+				// register the reply before writing so it cannot arrive first
+				if (message.expectsReply)
+					pendingReplies.add(message);
+
+				out.write(message.bytes);
+
+				if (!message.expectsReply)
+					message.result.complete(message.bytes);
+			}
+		} catch (IOException e) {
+			connectionLost(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Loop of the reader thread, receiving every message sent from the server
+	 * and handing it to the model on the model's executor.
+	 */
+	private void readMessages() {
+		try {
+			InputStream in = serverSocket.getInputStream();
+
+			for (;;) {
+				byte[] header = new byte[MAXIMUM_MESSAGE_SIZE];
+
+				// receive message from server into a byte array, analysis and
+				// resume frames being longer than the other messages
+				readFully(in, header, 0);
+				final byte[] byteBuffer;
+				if (header[0] == 0x08)
+					byteBuffer = readRest(in, header, ANALYSIS_MESSAGE_SIZE);
+				else if (header[0] == 0x09 && header[1] == 0x00)
+					byteBuffer = readRest(in, header, RESUME_MESSAGE_SIZE);
+				else if (header[0] == 0x09 && header[1] == 0x01) {
+					// the resumed game's moves follow their count
+					byte[] count = new byte[1];
+					readFully(in, count, 0);
+					byteBuffer = readRest(in, header, header.length + 1
+							+ (count[0] & 0xff));
+					byteBuffer[header.length] = count[0];
+				} else
+					byteBuffer = header;
 
+				// send the message for interpretation on the model's executor,
+				// then complete the request it answers
+				modelExecutor.execute(new Runnable() {
+					public void run() {
+						try {
+							model.interpretMessage(byteBuffer);
+						} catch (C4InvalidMessageException
+								| C4InvalidMoveException e) {
+							System.out.println(e.getMessage());
+						}
+					}
+				});
+
+				// complete the oldest request the message answers, if any
+				for (Iterator<OutgoingMessage> pending = pendingReplies
+						.iterator(); pending.hasNext();) {
+					OutgoingMessage request = pending.next();
+					if (answers(byteBuffer, request.bytes)) {
+						pending.remove();
+						request.result.complete(byteBuffer);
+						break;
+					}
+				}
+			}
 		} catch (IOException e) {
-			System.out.println("Error sending packet");
-		} catch (C4InvalidMessageException e) {
-			System.out.println(e.getMessage());
+			connectionLost(e);
 		}
 	}
 
 	/**
-	 * Interprets the message that the will be sent from the server.
+	 * Returns whether a message from the server can be the reply to a request
 	 * 
 	 * @param message
-	 *            Array of bytes containing the message that will be received
-	 *            from the server
-	 * @throws C4InvalidMessageException
-	 *             If message client is trying to interpret is invalid
-	 * @throws C4InvalidMoveException
-	 *             If move server is attempting to make is invalid
+	 *            Message received from the server
+	 * @param request
+	 *            Request waiting for its reply
+	 * @return True if the message is of a type answering the request
 	 */
-	public void interpretMessage(byte[] message)
-			throws C4InvalidMessageException, C4InvalidMoveException {
-
-		// throw an exception if the message does not respect the fixed length
-		if (message.length != MAXIMUM_MESSAGE_SIZE)
-			throw new C4InvalidMessageException(
-					"Messages must be of 2 byte length.");
-
-		// get a handle to the first byte that determines the type of message
-		// being sent
-		byte firstByte = message[0];
-
-		// interpretation of messages
-		if (firstByte == 0x00)
-			// server makes a move, send the 2nd byte to the model indicating
-			// where the move was made
-			model.receiveServerMove(message[1]);
-		else if (firstByte == 0x02) {
-			// displays a dialog indicating that the player has won, prompt
-			// asking to play a new game
-			model.showGameOverDialog("Congratulations! You have won!\nWould you like to play again?");
-		} else if (firstByte == 0x03) {
-			// server wins, send its final move and display a dialog
-			model.serverMoveGameOver(message[1]);
-		} else if (firstByte == 0x04) {
-			// a draw between players has been made, send final move and display
-			// dialog
-			model.serverMoveDraw(message[1]);
-		} else if (firstByte == 0x01) {
-			if (message[1] == 0x01)
-				// user wants to play a new game, create a new game
-				model.createNewGame();
-			else if (message[1] == 0x02)
-				// user does not want to play anymore, close the application
-				model.disposeViewWindow();
-			else
-				// if 2nd byte doesn't match a 0x01 or 0x02, throw an exception
-				throw new C4InvalidMessageException("Invalid message: "
-						+ message.toString());
-		} else
-			// first byte does not match the above criteria, throw an exception
-			throw new C4InvalidMessageException(
-					"Invalid first byte in message.");
+	private static boolean answers(byte[] message, byte[] request) {
+		if (request[0] == 0x00)
+			// the AI's move, or the player's winning move
+			return message[0] == 0x00 || message[0] == 0x03
+					|| message[0] == 0x04
+					|| (message[0] == 0x02 && message[1] == 0x00);
+		else if (request[0] == 0x02)
+			// new game or end of the session
+			return message[0] == 0x01;
+		else if (request[0] == 0x09)
+			// token for 0x09 0x00, resumed game or unknown token for 0x09 0x01
+			return message[0] == 0x09
+					&& (message[1] == 0x00) == (request[1] == 0x00);
+		else
+			return message[0] == request[0];
 	}
 
 	/**
-	 * Receives a message being sent from the server.
+	 * Reads from the server until a buffer is full
 	 * 
-	 * @throws C4InvalidMessageException
-	 *             If message that is being received is invalid
-	 * @throws C4InvalidMoveException
-	 *             If move trying to attempt is invalid
+	 * @param in
+	 *            Input stream of the socket
+	 * @param buffer
+	 *            Buffer receiving the bytes
+	 * @param offset
+	 *            Number of bytes of the buffer already received
+	 * @throws IOException
+	 *             If the connection is closed before the buffer is full
 	 */
-	public void receiveMessage() throws C4InvalidMessageException,
-			C4InvalidMoveException {
-		byte[] byteBuffer = new byte[MAXIMUM_MESSAGE_SIZE];
-		InputStream in;
-		int receivedMessageSize, totalBytesReceived = 0;
+	private static void readFully(InputStream in, byte[] buffer, int offset)
+			throws IOException {
+		int receivedMessageSize, totalBytesReceived = offset;
 
-		try {
-			in = serverSocket.getInputStream();
-
-			// receive message from server into a byte array
-			while (totalBytesReceived < MAXIMUM_MESSAGE_SIZE) {
-				if ((receivedMessageSize = in.read(byteBuffer,
-						totalBytesReceived, MAXIMUM_MESSAGE_SIZE
-								- totalBytesReceived)) == -1)
-					throw new SocketException("Connection closed prematurely");
-				totalBytesReceived += receivedMessageSize;
-			}
-			// send the message for interpretation
-			interpretMessage(byteBuffer);
+		while (totalBytesReceived < buffer.length) {
+			if ((receivedMessageSize = in.read(buffer, totalBytesReceived,
+					buffer.length - totalBytesReceived)) == -1)
+				throw new SocketException("Connection closed prematurely");
+			totalBytesReceived += receivedMessageSize;
+		}
+	}
 
-		} catch (IOException e) {
+	/**
+	 * Reads the rest of a message longer than its header
+	 * 
+	 * @param in
+	 *            Input stream of the socket
+	 * @param header
+	 *            First bytes of the message, already received
+	 * @param length
+	 *            Length of the whole message
+	 * @return Message, its bytes after the header being received unless it
+	 *         is a resumed game, whose move count the caller fills in
+	 * @throws IOException
+	 *             If the connection is closed before the message is received
+	 */
+	private static byte[] readRest(InputStream in, byte[] header, int length)
+			throws IOException {
+		byte[] message = new byte[length];
+		System.arraycopy(header, 0, message, 0, header.length);
+		int offset = header.length;
+		if (header[0] == 0x09 && header[1] == 0x01)
+			offset++;
+		readFully(in, message, offset);
+		return message;
+	}
+
+	/**
+	 * Fails every request waiting for a reply once the connection is lost
+	 * 
+	 * @param cause
+	 *            Error that ended the connection
+	 */
+	private void connectionLost(IOException cause) {
+		connected = false;
+		if (!closing)
 			System.out.println("Error receiving message in client.");
-		}
 
+		OutgoingMessage message;
+		while ((message = pendingReplies.poll()) != null)
+			message.result.completeExceptionally(cause);
+		while ((message = outgoingMessages.poll()) != null)
+			message.result.completeExceptionally(cause);
+	}
+
+	/**
+	 * Starts a daemon thread of the connection
+	 * 
+	 * @param name
+	 *            Name of the thread
+	 * @param task
+	 *            Loop run by the thread
+	 */
+	private static void startThread(String name, Runnable task) {
+		Thread thread = new Thread(task, name);
+		thread.setDaemon(true);
+		thread.start();
 	}
 
+	/**
+	 * Message queued for the writer thread
+	 */
+	private static class OutgoingMessage {
+		private final byte[] bytes;
+		private final boolean expectsReply;
+		private final CompletableFuture<byte[]> result;
+
+		private OutgoingMessage(byte[] bytes, boolean expectsReply,
+				CompletableFuture<byte[]> result) {
+			this.bytes = bytes;
+			this.expectsReply = expectsReply;
+			this.result = result;
+		}
+	}
 }
@@ -0,0 +1,273 @@
+package client;
+
+/**
+ * Change of a game reported by C4Model to its listener. An event is
+ * immutable and carries everything the view needs, so it can be handed to
+ * another thread and read without looking back at the model.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.1
+ */
+public final class C4GameEvent {
+
+	// kinds of event
+	public static final int MOVE_PLAYED = 0, GAME_RESET = 1, GAME_OVER = 2,
+			SHUTDOWN = 3, COLUMN_SCORED = 4, ANALYSIS_FINISHED = 5;
+
+	// side that played a move
+	public static final int PLAYER = 0, OPPONENT = 1;
+
+	// outcome of a game that is over, from the player's point of view
+	public static final int WON = 0, LOST = 1, DRAW = 2, OPPONENT_LEFT = 3;
+
+	private final int type;
+	private final int side, column, row; // move played
+	private final int outcome; // game over
+	private final boolean match; // game against another player
+
+	// column scored by an analysis
+	private final int score, depth, pliesToEnd;
+	private final boolean decided;
+
+	/**
+	 * Creates a C4GameEvent
+	 * 
+	 * @param type
+	 *            Kind of event
+	 * @param side
+	 *            Side that played the move, 0 if not a move
+	 * @param column
+	 *            Column of the move, 0 if not a move
+	 * @param row
+	 *            Row of the move from the bottom, 0 if not a move
+	 * @param outcome
+	 *            Outcome of the game, 0 if not a game over
+	 * @param match
+	 *            True if the game is against another player
+	 */
+	private C4GameEvent(int type, int side, int column, int row, int outcome,
+			boolean match) {
+		this(type, side, column, row, outcome, match, 0, 0, 0, false);
+	}
+
+	/**
+	 * Creates a C4GameEvent, possibly of a column scored
+	 * 
+	 * @param type
+	 *            Kind of event
+	 * @param side
+	 *            Side that played the move, 0 if not a move
+	 * @param column
+	 *            Column of the move or scored, 0 if neither
+	 * @param row
+	 *            Row of the move from the bottom, 0 if not a move
+	 * @param outcome
+	 *            Outcome of the game, 0 if not a game over
+	 * @param match
+	 *            True if the game is against another player
+	 * @param score
+	 *            Score of the column, 0 if not a column scored
+	 * @param depth
+	 *            Plies searched to score the column, 0 if not a column scored
+	 * @param pliesToEnd
+	 *            Plies until the decided game ends, 0 if not decided
+	 * @param decided
+	 *            True if the column's score is exact
+	 */
+	private C4GameEvent(int type, int side, int column, int row, int outcome,
+			boolean match, int score, int depth, int pliesToEnd,
+			boolean decided) {
+		this.type = type;
+		this.side = side;
+		this.column = column;
+		this.row = row;
+		this.outcome = outcome;
+		this.match = match;
+		this.score = score;
+		this.depth = depth;
+		this.pliesToEnd = pliesToEnd;
+		this.decided = decided;
+	}
+
+	/**
+	 * Creates the event of a token played
+	 * 
+	 * @param side
+	 *            PLAYER or OPPONENT
+	 * @param column
+	 *            Column played
+	 * @param row
+	 *            Row the token landed in, 0 at the bottom
+	 * @param match
+	 *            True if the game is against another player
+	 * @return Event of the move
+	 */
+	static C4GameEvent movePlayed(int side, int column, int row, boolean match) {
+		return new C4GameEvent(MOVE_PLAYED, side, column, row, 0, match);
+	}
+
+	/**
+	 * Creates the event of an empty board for a new game
+	 * 
+	 * @param match
+	 *            True if the new game is against another player
+	 * @return Event of the reset
+	 */
+	static C4GameEvent gameReset(boolean match) {
+		return new C4GameEvent(GAME_RESET, 0, 0, 0, 0, match);
+	}
+
+	/**
+	 * Creates the event of a game that is over
+	 * 
+	 * @param outcome
+	 *            WON, LOST, DRAW or OPPONENT_LEFT
+	 * @param match
+	 *            True if the game was against another player
+	 * @return Event of the end of the game
+	 */
+	static C4GameEvent gameOver(int outcome, boolean match) {
+		return new C4GameEvent(GAME_OVER, 0, 0, 0, outcome, match);
+	}
+
+	/**
+	 * Creates the event of a column scored by an analysis of the position
+	 * 
+	 * @param column
+	 *            Column scored
+	 * @param score
+	 *            Score of the column for the player, positive if it wins
+	 * @param depth
+	 *            Plies searched
+	 * @param pliesToEnd
+	 *            Plies until the game is won or lost, 0 if not decided
+	 * @param decided
+	 *            True if the score is exact
+	 * @return Event of the column scored
+	 */
+	static C4GameEvent columnScored(int column, int score, int depth,
+			int pliesToEnd, boolean decided) {
+		return new C4GameEvent(COLUMN_SCORED, 0, column, 0, 0, false, score,
+				depth, pliesToEnd, decided);
+	}
+
+	/**
+	 * Creates the event of the end of an analysis
+	 * 
+	 * @return Event of the end of the analysis
+	 */
+	static C4GameEvent analysisFinished() {
+		return new C4GameEvent(ANALYSIS_FINISHED, 0, 0, 0, 0, false);
+	}
+
+	/**
+	 * Creates the event of the application closing
+	 * 
+	 * @return Event of the shutdown
+	 */
+	static C4GameEvent shutdown() {
+		return new C4GameEvent(SHUTDOWN, 0, 0, 0, 0, false);
+	}
+
+	/**
+	 * Returns the kind of event
+	 * 
+	 * @return MOVE_PLAYED, GAME_RESET, GAME_OVER, SHUTDOWN, COLUMN_SCORED or
+	 *         ANALYSIS_FINISHED
+	 */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * Returns the side that played a move
+	 * 
+	 * @return PLAYER or OPPONENT
+	 */
+	public int getSide() {
+		return side;
+	}
+
+	/**
+	 * Returns the column of a move or of a column scored
+	 * 
+	 * @return Column between 0 and 6
+	 */
+	public int getColumn() {
+		return column;
+	}
+
+	/**
+	 * Returns the row a move's token landed in
+	 * 
+	 * @return Row between 0 at the bottom and 5
+	 */
+	public int getRow() {
+		return row;
+	}
+
+	/**
+	 * Returns the cell of a move, row by row from the top left of the board
+	 * 
+	 * @return Index of the cell between 0 and 41
+	 */
+	public int getPosition() {
+		return (5 - row) * 7 + column;
+	}
+
+	/**
+	 * Returns the outcome of a game that is over
+	 * 
+	 * @return WON, LOST, DRAW or OPPONENT_LEFT
+	 */
+	public int getOutcome() {
+		return outcome;
+	}
+
+	/**
+	 * Returns whether the game is against another player
+	 * 
+	 * @return True in a match, false against the server's AI
+	 */
+	public boolean isMatch() {
+		return match;
+	}
+
+	/**
+	 * Returns the score of a column scored, positive if the player wins by
+	 * playing it, negative if they lose and 0 if it draws or is not decided
+	 * 
+	 * @return Score of the column
+	 */
+	public int getScore() {
+		return score;
+	}
+
+	/**
+	 * Returns the number of plies searched to score a column
+	 * 
+	 * @return Depth of the search
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Returns the number of plies until the game is won or lost by playing a
+	 * column scored, counting the winning move
+	 * 
+	 * @return Distance to the end, 0 if drawn or not decided
+	 */
+	public int getPliesToEnd() {
+		return pliesToEnd;
+	}
+
+	/**
+	 * Returns whether the score of a column scored is exact
+	 * 
+	 * @return True if the score will not change with a deeper search
+	 */
+	public boolean isDecided() {
+		return decided;
+	}
+}
@@ -0,0 +1,23 @@
+package client;
+
+import java.util.List;
+
+/**
+ * Listener of the changes of a C4Model's game. Events are delivered in
+ * batches on the model's executor: every event published while the previous
+ * batch was being delivered comes in the next batch, so a burst of events is
+ * handled, and painted, at once.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public interface C4GameListener {
+
+	/**
+	 * Handles the events published since the previous batch
+	 * 
+	 * @param events
+	 *            Events in the order they happened, never empty
+	 */
+	void gameChanged(List<C4GameEvent> events);
+}
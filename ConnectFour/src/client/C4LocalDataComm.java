@@ -0,0 +1,312 @@
+package client;
+
+import gameExceptions.C4InvalidCheckWinException;
+import gameExceptions.C4InvalidMessageException;
+import gameExceptions.C4InvalidMoveException;
+import gameLogic.C4AnalysisListener;
+import gameLogic.C4Analyzer;
+import gameLogic.C4Game;
+import gameLogic.C4Position;
+import gameLogic.C4Solver;
+import gameLogic.C4TranspositionTable;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Plays the server's side of a game inside the client, without any network
+ * round trip. Messages are answered the way C4ServerSession answers them, by
+ * an engine thread running the same game logic, so the model cannot tell it
+ * from a server. Searching never runs on the model's thread.
+ * 
+ * Matches against other players need a server and are refused. Analyses
+ * run on a pool of their own, as on the server, sharing the AI's table.
+ * Games are not parked either, nothing outlives the client.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.2
+ */
+public class C4LocalDataComm implements C4Transport {
+	private static final int MAXIMUM_MESSAGE_SIZE = 2;
+
+	// size of the transposition table of the searching AI, 8 MB
+	private static final int TABLE_BITS = 20;
+
+	private C4Model model;
+
+	// executor the model runs on, receiving the engine's messages
+	private Executor modelExecutor;
+
+	// thread playing the engine's side, one message at a time in order
+	private ExecutorService engine;
+
+	// game played, only touched by the engine thread
+	private C4Game game;
+
+	// depth and time budget of the searching AI, depth 0 plays the simple AI
+	private int searchDepth;
+	private long searchMillis;
+	private C4Solver solver; // created on the first searching move
+
+	// table shared by the AI and the analyses, created on first use
+	private C4TranspositionTable table;
+
+	// analyzer of the player's positions, created on the first analysis,
+	// and the analysis under way
+	private C4Analyzer analyzer;
+	private volatile C4Analyzer.Analysis analysis;
+
+	// time budget of an analysis when the model does not give one
+	private static final long DEFAULT_ANALYSIS_MILLIS = 200;
+
+	/**
+	 * Creates a C4LocalDataComm object with its engine thread
+	 * 
+	 * @param searchDepth
+	 *            Deepest search of the AI in plies, 0 for the simple AI
+	 * @param searchMillis
+	 *            Time budget of a searching AI move
+	 * @param model
+	 *            Model object that will be communicating through this object
+	 * @param modelExecutor
+	 *            Executor the model runs on, the engine's messages are handed
+	 *            to the model on it
+	 */
+	public C4LocalDataComm(int searchDepth, long searchMillis, C4Model model,
+			Executor modelExecutor) {
+		this.searchDepth = searchDepth;
+		this.searchMillis = searchMillis;
+		this.model = model;
+		this.modelExecutor = modelExecutor;
+		this.engine = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "C4LocalEngine");
+				thread.setDaemon(true);
+				// searching must not slow down painting
+				thread.setPriority(Thread.NORM_PRIORITY - 1);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Queues a message for the engine and returns immediately.
+	 * 
+	 * @param message
+	 *            Array of bytes containing the message
+	 * @param expectsReply
+	 *            True if the message calls for a reply
+	 * @return Future completed with the engine's reply, or with the message
+	 *         once handled if no reply is expected
+	 * @throws C4InvalidMessageException
+	 *             If the message does not respect the fixed length
+	 */
+	public CompletableFuture<byte[]> sendMessage(final byte[] message,
+			final boolean expectsReply) throws C4InvalidMessageException {
+
+		// throw an exception if the message does not respect the fixed length
+		if (message.length != MAXIMUM_MESSAGE_SIZE)
+			throw new C4InvalidMessageException(
+					"Messages must be a length of 2 bytes.");
+
+		final CompletableFuture<byte[]> result = new CompletableFuture<byte[]>();
+
+		if (engine.isShutdown()) {
+			result.completeExceptionally(new C4InvalidMessageException(
+					"Engine is closed."));
+			return result;
+		}
+
+		engine.execute(new Runnable() {
+			public void run() {
+				final byte[] reply;
+				try {
+					reply = interpretMessage(message);
+				} catch (C4InvalidMessageException | C4InvalidMoveException e) {
+					result.completeExceptionally(e);
+					return;
+				}
+
+				// hand the reply to the model, then complete the request
+				if (reply != null)
+					deliver(reply);
+				result.complete(expectsReply ? reply : message);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Stops the engine once the last message was handled
+	 */
+	public void close() {
+		stopAnalysis();
+		engine.shutdown();
+	}
+
+	/**
+	 * Hands a message of the engine to the model on the model's executor
+	 * 
+	 * @param message
+	 *            Message for the model
+	 */
+	private void deliver(final byte[] message) {
+		modelExecutor.execute(new Runnable() {
+			public void run() {
+				try {
+					model.interpretMessage(message);
+				} catch (C4InvalidMessageException | C4InvalidMoveException e) {
+					System.out.println(e.getMessage());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Answers a message as the server would, on the engine thread
+	 * 
+	 * @param message
+	 *            Message from the model
+	 * @return Reply to the model, null if the message calls for none
+	 * @throws C4InvalidMessageException
+	 *             If the message is invalid
+	 * @throws C4InvalidMoveException
+	 *             If the move is not legal
+	 */
+	private byte[] interpretMessage(byte[] message)
+			throws C4InvalidMessageException, C4InvalidMoveException {
+		byte firstByte = message[0];
+
+		// the position analysed is about to change or is asked for again
+		stopAnalysis();
+
+		if (firstByte == 0x00) {
+			if (game == null)
+				throw new C4InvalidMoveException("No game is being played.");
+
+			// user makes a move at a specified column
+			if (!game.makeMove(message[1], C4Game.PLAYER_ID))
+				throw new C4InvalidMoveException("Column is full.");
+			try {
+				if (game.checkFourConnected(
+						game.getRowInColumn(message[1]) - 1, message[1]))
+					// user has won
+					return new byte[] { 0x02, 0x00 };
+			} catch (C4InvalidCheckWinException e) {
+				System.out.println(e.getMessage());
+			}
+
+			// engine makes a move in response to user's play
+			return makeAIMove();
+		} else if (firstByte == 0x02) {
+			if (message[1] == 0x00) {
+				// user wants to play a new game, reset the GUI
+				game = new C4Game();
+				return new byte[] { 0x01, 0x01 };
+			} else if (message[1] == 0x01) {
+				// user does not want to play again, close the application
+				game = null;
+				return new byte[] { 0x01, 0x02 };
+			} else
+				throw new C4InvalidMessageException("Invalid message.");
+		} else if (firstByte == 0x08) {
+			// model asks for the score of every column, pushed as they come
+			startAnalysis((message[1] & 0xff) * 10L);
+			return null;
+		} else if (firstByte == 0x05)
+			throw new C4InvalidMessageException(
+					"Playing another player needs a server.");
+		else if (firstByte == 0x09)
+			throw new C4InvalidMessageException(
+					"Resuming a game needs a server.");
+		else
+			throw new C4InvalidMessageException(
+					"Invalid first byte in message.");
+	}
+
+	/**
+	 * Makes the engine's move with the simple or the searching AI
+	 * 
+	 * @return Message with the column played, see C4Game
+	 * @throws C4InvalidMoveException
+	 *             If the board is full
+	 */
+	private byte[] makeAIMove() throws C4InvalidMoveException {
+		if (searchDepth <= 0)
+			return game.artificialIntelligenceMakeMove();
+
+		if (solver == null)
+			solver = new C4Solver(getTable());
+		return game.searchMakeMove(solver, searchDepth, searchMillis);
+	}
+
+	/**
+	 * Starts analysing the game, pushing the scores of the columns to the
+	 * model in the server's analysis frames. A game that is over is not
+	 * analysed, the analysis ending right away.
+	 * 
+	 * @param timeMillis
+	 *            Time budget of the analysis, 0 for the default
+	 */
+	private void startAnalysis(long timeMillis) {
+		final byte[] endFrame = new byte[] { 0x08, 0x07, 0x00, 0x00 };
+
+		C4Position position = game != null ? game.getPosition() : null;
+		if (position == null || position.isWon() || position.isFull()) {
+			deliver(endFrame);
+			return;
+		}
+
+		if (analyzer == null)
+			analyzer = new C4Analyzer(getTable(),
+					Executors.newFixedThreadPool(Runtime.getRuntime()
+							.availableProcessors(), new ThreadFactory() {
+						public Thread newThread(Runnable task) {
+							Thread thread = new Thread(task, "C4LocalAnalyzer");
+							thread.setDaemon(true);
+							thread.setPriority(Thread.NORM_PRIORITY - 1);
+							return thread;
+						}
+					}));
+
+		analysis = analyzer.analyze(position,
+				timeMillis > 0 ? timeMillis : DEFAULT_ANALYSIS_MILLIS,
+				new C4AnalysisListener() {
+					public void columnScored(int col, int score, int depth,
+							boolean decided) {
+						deliver(new byte[] { 0x08,
+								(byte) (col | (decided ? 0x08 : 0)),
+								(byte) score, (byte) depth });
+					}
+
+					public void analysisFinished() {
+						deliver(endFrame);
+					}
+				});
+	}
+
+	/**
+	 * Cancels the analysis under way, if any
+	 */
+	private void stopAnalysis() {
+		C4Analyzer.Analysis current = analysis;
+		if (current != null) {
+			analysis = null;
+			current.cancel();
+		}
+	}
+
+	/**
+	 * Returns the table shared by the AI and the analyses
+	 * 
+	 * @return Transposition table
+	 */
+	private C4TranspositionTable getTable() {
+		if (table == null)
+			table = new C4TranspositionTable(TABLE_BITS);
+		return table;
+	}
+}
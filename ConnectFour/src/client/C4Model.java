@@ -2,31 +2,101 @@ package client;
 
 import gameExceptions.C4InvalidMessageException;
 import gameExceptions.C4InvalidMoveException;
-import gui.C4GUI;
-
-import java.util.Observable;
-
-import javax.swing.JOptionPane;
+import gameLogic.C4Analyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
 /**
- * Connect Four model that notifies the view when there has been a visual change
- * in the game. The controller communicates with this class to send messages to
- * the server for various actions.
+ * Connect Four model that notifies its listener when there has been a visual
+ * change in the game. The controller communicates with this class to send
+ * messages to the server for various actions.
+ * 
+ * The model runs on a single executor, the Swing event dispatch thread for
+ * the GUI: its methods must be called on it, and messages from the server and
+ * events for the listener are handed to it. Events are queued without locking
+ * and delivered in batches, so the model itself needs no Swing and can be
+ * driven without a view.
+ * 
+ * Online, the model asks the server for the resume token of each game against
+ * the AI and saves it in the user's home directory until the game ends, so a
+ * game cut short by a lost connection can be resumed by the next client.
  * 
  * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
- * @version 1.7
+ * @version 2.2
  */
-public class C4Model extends Observable {
+public class C4Model {
+
+	// reports a message that could not be sent or was not answered
+	private static final Function<Throwable, byte[]> REPORT_ERROR = new Function<Throwable, byte[]>() {
+		public byte[] apply(Throwable e) {
+			System.out.println("Error communicating with server: "
+					+ e.getMessage());
+			return null;
+		}
+	};
+
+	// transport connecting the model to the server or the local engine
+	private C4Transport dataComm;
 
-	// data comm object connected to the model
-	private C4ClientDataComm dataComm;
+	// length of every message of the protocol but the analysis frames
+	private static final int MAXIMUM_MESSAGE_SIZE = 2,
+			ANALYSIS_MESSAGE_SIZE = 4, RESUME_MESSAGE_SIZE = 10;
 
-	// byte array containing information of what the last played move was
-	private int[] previousMove;
+	// file holding the resume token of the unfinished game, in hexadecimal
+	private static final File RESUME_TOKEN_FILE = new File(
+			System.getProperty("user.home"), ".connectfour-resume");
 
 	// array containing the number of markers in each column of the game board
 	private int[] colCtrs;
 
+	// rating bucket sent when looking for another player
+	private static final byte DEFAULT_RATING = 3;
+
+	// boolean indicating a move was sent and the AI's reply is awaited
+	private boolean awaitingReply;
+
+	// booleans indicating a match against another player is being played and
+	// whether it is the player's turn in it
+	private boolean inMatch, playerTurn;
+
+	// column clicked while waiting for the other side, played once the other
+	// side has moved, -1 if none. Only the last click is kept, and it is not
+	// drawn until played: its row depends on the other side's move
+	private int queuedMove;
+
+	// executor the model runs on and delivers its events on
+	private final Executor executor;
+
+	// listener of the game, null if nobody listens
+	private volatile C4GameListener listener;
+
+	// boolean indicating the model plays through a server
+	private boolean online;
+
+	// boolean indicating every position of the player is analysed, and the
+	// time budget of each analysis
+	private boolean hintMode;
+	private long hintMillis;
+
+	// boolean indicating an analysis was asked for and is not finished, the
+	// scores of any other analysis being ignored
+	private boolean analysisPending;
+
+	// events waiting to be delivered, and whether a delivery is scheduled
+	private final ConcurrentLinkedQueue<C4GameEvent> pendingEvents;
+	private final AtomicBoolean deliveryScheduled;
+	private final Runnable deliverEvents;
+
 	/**
 	 * Creates a C4Model object, creating the data comm object that will send
 	 * and receive its messages.
@@ -35,27 +105,163 @@ public class C4Model extends Observable {
 	 *            IP address of the server
 	 * @param port
 	 *            Port number of the server
+	 * @param executor
+	 *            Executor the model runs on, receiving the server's messages
+	 *            and delivering events to the listener
 	 */
-	public C4Model(String serverIP, int port) {
-		dataComm = new C4ClientDataComm(serverIP, port, this);
+	public C4Model(String serverIP, int port, Executor executor) {
+		this(executor);
+		dataComm = new C4ClientDataComm(serverIP, port, this, executor);
+		online = true;
+	}
+
+	/**
+	 * Creates a C4Model object playing against an engine running in the
+	 * client, without any server.
+	 * 
+	 * @param searchDepth
+	 *            Deepest search of the engine in plies, 0 for the simple AI
+	 * @param searchMillis
+	 *            Time budget of a searching engine move
+	 * @param executor
+	 *            Executor the model runs on, receiving the engine's messages
+	 *            and delivering events to the listener
+	 */
+	public C4Model(int searchDepth, long searchMillis, Executor executor) {
+		this(executor);
+		dataComm = new C4LocalDataComm(searchDepth, searchMillis, this,
+				executor);
+	}
+
+	/**
+	 * Creates a C4Model object without its transport
+	 * 
+	 * @param executor
+	 *            Executor the model runs on
+	 */
+	private C4Model(Executor executor) {
+		this.executor = executor;
+		this.pendingEvents = new ConcurrentLinkedQueue<C4GameEvent>();
+		this.deliveryScheduled = new AtomicBoolean();
+		this.deliverEvents = new Runnable() {
+			public void run() {
+				deliverEvents();
+			}
+		};
+
 		colCtrs = new int[7];
-		previousMove = new int[2];
+		queuedMove = -1;
+	}
 
-		// display dialog prompting user for the first game
-		showFirstGameDialog();
+	/**
+	 * Returns whether the model plays through a server, which other players
+	 * can be matched against
+	 * 
+	 * @return True if connected to a server, false against the local engine
+	 */
+	public boolean isOnline() {
+		return online;
 	}
 
 	/**
-	 * Returns the last played move of either server or player.
+	 * Sets the listener told of the changes of the game
 	 * 
-	 * @return Last played move of the game
+	 * @param listener
+	 *            Listener of the game, null for none
 	 */
-	public int[] getPreviousMove() {
-		return this.previousMove;
+	public void setListener(C4GameListener listener) {
+		this.listener = listener;
 	}
 
 	/**
-	 * Sends the user's specified move to the game, updates view accordingly
+	 * Interprets a message sent from the server or the local engine.
+	 * 
+	 * @param message
+	 *            Array of bytes containing the message that will be received
+	 *            from the other side
+	 * @throws C4InvalidMessageException
+	 *             If message client is trying to interpret is invalid
+	 * @throws C4InvalidMoveException
+	 *             If move server is attempting to make is invalid
+	 */
+	public void interpretMessage(byte[] message)
+			throws C4InvalidMessageException, C4InvalidMoveException {
+
+		// get a handle to the first byte that determines the type of message
+		// being sent
+		byte firstByte = message[0];
+
+		// throw an exception if the message does not respect the fixed length
+		if (message.length != expectedLength(message))
+			throw new C4InvalidMessageException(
+					"Messages must be of 2 byte length.");
+
+		// interpretation of messages
+		if (firstByte == 0x00)
+			// server makes a move, the 2nd byte indicates
+			// where the move was made
+			receiveServerMove(message[1]);
+		else if (firstByte == 0x02) {
+			// the player has won, the view asks to play a new game
+			gameOver(C4GameEvent.WON);
+		} else if (firstByte == 0x03) {
+			// server wins, send its final move, the view is told the game is
+			// over
+			serverMoveGameOver(message[1]);
+		} else if (firstByte == 0x04) {
+			// a draw between players has been made, send final move, the view
+			// is told the game is over
+			serverMoveDraw(message[1]);
+		} else if (firstByte == 0x01) {
+			if (message[1] == 0x01)
+				// user wants to play a new game, create a new game
+				createNewGame();
+			else if (message[1] == 0x02)
+				// user does not want to play anymore, close the application
+				disposeViewWindow();
+			else
+				// if 2nd byte doesn't match a 0x01 or 0x02, throw an exception
+				throw new C4InvalidMessageException("Invalid message: "
+						+ message.toString());
+		} else if (firstByte == 0x06) {
+			// paired with another player, 2nd byte tells who moves first
+			startMatch(message[1] == 0x00);
+		} else if (firstByte == 0x07) {
+			if (message[1] == 0x00)
+				// player filled the board, the match is a draw
+				gameOver(C4GameEvent.DRAW);
+			else
+				// the opponent left the match
+				gameOver(C4GameEvent.OPPONENT_LEFT);
+		} else if (firstByte == 0x08) {
+			// score of a column, or the end of the analysis
+			receiveAnalysis(message);
+		} else if (firstByte == 0x09) {
+			if (message[1] == 0x00)
+				// token to resume the game with, kept until the game ends
+				saveResumeToken(message);
+			else if (message[1] == 0x01)
+				// parked game resumed, its moves follow
+				resumedGame(message);
+			else {
+				// the game was not parked or has expired, play another
+				System.out.println("Unfinished game could not be resumed.");
+				deleteResumeToken();
+				sendForNewGame();
+			}
+		} else
+			// first byte does not match the above criteria, throw an exception
+			throw new C4InvalidMessageException(
+					"Invalid first byte in message.");
+	}
+
+	/**
+	 * Sends the user's specified move to the game, updates view accordingly.
+	 * The move is shown right away without waiting for the server. If it is
+	 * not the player's turn yet, the move is queued and played as soon as the
+	 * other side has moved. Only one move is queued, a later click replacing
+	 * it, and a queued move is not drawn until it is played, since the row it
+	 * lands on depends on the other side's move.
 	 * 
 	 * @param col
 	 *            Column at which the user's move was played
@@ -67,29 +273,39 @@ public class C4Model extends Observable {
 	public void sendMove(int col) throws C4InvalidMoveException,
 			C4InvalidMessageException {
 
-		// the column where the move is being played is full, throw an exception
-		if (colCtrs[col] == 6)
-			throw new C4InvalidMoveException("Invalid move made by client.");
-
 		// throw exception if server makes a move out of game board's indices
 		if (col < 0 || col > 6)
 			throw new C4InvalidMoveException("Client has made an invalid move.");
 
-		previousMove[0] = 0; // specifies the color of the button will be red
+		// the column where the move is being played is full, throw an exception
+		if (colCtrs[col] == 6)
+			throw new C4InvalidMoveException("Invalid move made by client.");
+
+		// other side is still thinking, play this move once it has moved
+		if (awaitingReply || (inMatch && !playerTurn)) {
+			queuedMove = col;
+			return;
+		}
 
-		// specifies the exact button whose display will be changed
-		previousMove[1] = 41 - 7 * colCtrs[col] - (6 - col);
+		// the position analysed is gone
+		analysisPending = false;
 
-		// increase number of tokens in the column
+		// send event for view to be updated, then increase number of tokens
+		// in the column
+		publish(C4GameEvent.movePlayed(C4GameEvent.PLAYER, col, colCtrs[col],
+				inMatch));
 		colCtrs[col]++;
 
-		// send message for view to be updated
-		setChanged();
-		notifyObservers();
-
-		// send message to game where the user made their move
-		dataComm.sendMessage(new byte[] { 0x00, ((byte) col) });
+		// send message to game where the user made their move, against the AI
+		// the server replies with its move, in a match the opponent's move is
+		// pushed when they play it
+		if (inMatch)
+			playerTurn = false;
+		else
+			awaitingReply = true;
 
+		dataComm.sendMessage(new byte[] { 0x00, ((byte) col) }, !inMatch)
+				.exceptionally(REPORT_ERROR);
 	}
 
 	/**
@@ -101,26 +317,122 @@ public class C4Model extends Observable {
 	 *             If the move being received is invalid
 	 */
 	public void receiveServerMove(byte b) throws C4InvalidMoveException {
+		placeServerMove(b);
+
+		// player's turn again, play the move clicked while waiting
+		if (queuedMove >= 0) {
+			int col = queuedMove;
+			queuedMove = -1;
+			try {
+				sendMove(col);
+			} catch (C4InvalidMoveException | C4InvalidMessageException e) {
+				// column filled up in the meantime, let the player pick again
+				System.out.println(e.getMessage());
+			}
+		} else if (hintMode && !inMatch)
+			requestAnalysis(hintMillis);
+	}
 
-		// the column where the move is being played is full, throw an exception
-		if (colCtrs[b] == 6)
-			throw new C4InvalidMoveException("Invalid move made by server.");
+	/**
+	 * Asks for the score of every column of the player's position against
+	 * the AI. The scores come as COLUMN_SCORED events, better ones as the
+	 * analysis deepens, until ANALYSIS_FINISHED. Playing a move abandons the
+	 * analysis.
+	 * 
+	 * @param timeMillis
+	 *            Time budget of the analysis, up to 2550 ms
+	 */
+	public void requestAnalysis(long timeMillis) {
+		if (inMatch || awaitingReply)
+			return;
+
+		analysisPending = true;
+		try {
+			// the budget is sent in units of 10 ms
+			dataComm.sendMessage(
+					new byte[] { 0x08,
+							(byte) Math.min(255, Math.max(1, timeMillis / 10)) },
+					false).exceptionally(REPORT_ERROR);
+		} catch (C4InvalidMessageException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * Sets whether every position of the player against the AI is analysed
+	 * as soon as it is their turn, analysing the current one right away
+	 * 
+	 * @param hintMode
+	 *            True to analyse every position of the player
+	 * @param timeMillis
+	 *            Time budget of each analysis
+	 */
+	public void setHintMode(boolean hintMode, long timeMillis) {
+		this.hintMode = hintMode;
+		this.hintMillis = timeMillis;
+		if (hintMode)
+			requestAnalysis(timeMillis);
+		else
+			analysisPending = false;
+	}
+
+	/**
+	 * Receives the score of a column or the end of an analysis, updates view
+	 * accordingly
+	 * 
+	 * @param message
+	 *            Analysis frame: 0x08, column with flags, score and depth
+	 */
+	private void receiveAnalysis(byte[] message) {
+		// scores of an abandoned analysis
+		if (!analysisPending)
+			return;
+
+		int col = message[1] & 0x07;
+		if (col == 7) {
+			analysisPending = false;
+			publish(C4GameEvent.analysisFinished());
+			return;
+		}
+
+		int moveCount = 0;
+		for (int c : colCtrs)
+			moveCount += c;
+
+		boolean decided = (message[1] & 0x08) != 0;
+		int score = message[2];
+		publish(C4GameEvent.columnScored(col, score, message[3] & 0xff,
+				decided ? C4Analyzer.getPliesToEnd(moveCount, score) : 0,
+				decided));
+	}
+
+	/**
+	 * Places the other side's token on the board, updates view accordingly
+	 * 
+	 * @param b
+	 *            Byte containing the column where the server made its move
+	 * @throws C4InvalidMoveException
+	 *             If the move being received is invalid
+	 */
+	private void placeServerMove(byte b) throws C4InvalidMoveException {
 
 		// throw exception if server makes a move out of game board's indices
 		if (b < 0 || b > 6)
 			throw new C4InvalidMoveException("Server has made an invalid move.");
 
-		previousMove[0] = 1; // specifies the color of the button will be black
-
-		// specifies the exact button whose display will be changed
-		previousMove[1] = 41 - 7 * colCtrs[b] - (6 - b);
+		// the column where the move is being played is full, throw an exception
+		if (colCtrs[b] == 6)
+			throw new C4InvalidMoveException("Invalid move made by server.");
 
-		// increase number of tokens in the column
+		// send event for view to be updated, then increase number of tokens
+		// in the column
+		publish(C4GameEvent.movePlayed(C4GameEvent.OPPONENT, b, colCtrs[b],
+				inMatch));
 		colCtrs[b]++;
 
-		// send message for view to be updated
-		setChanged();
-		notifyObservers();
+		// the other side has moved, it is the player's turn
+		awaitingReply = false;
+		playerTurn = true;
 	}
 
 	/**
@@ -132,12 +444,11 @@ public class C4Model extends Observable {
 	public void serverMoveDraw(byte b) {
 		try {
 			// receive server's last move
-			receiveServerMove(b);
+			placeServerMove(b);
 		} catch (C4InvalidMoveException e) {
 			System.out.println(e.getMessage());
 		}
-		// display dialog that game is a draw, prompt for new game
-		showGameOverDialog("This game is a draw, board is full\nWould you like to try again?");
+		gameOver(C4GameEvent.DRAW);
 	}
 
 	/**
@@ -149,139 +460,297 @@ public class C4Model extends Observable {
 	public void serverMoveGameOver(byte b) {
 		try {
 			// receive server's last move
-			receiveServerMove(b);
+			placeServerMove(b);
 		} catch (C4InvalidMoveException e) {
 			System.out.println(e.getMessage());
 		}
-		// display dialog that server has won, prompt for new game
-		showGameOverDialog("Server is victorious!\nWould you like to make another attempt?");
+		gameOver(C4GameEvent.LOST);
 	}
 
 	/**
-	 * Displays a confirm dialog asking if user wants to exit. Yes, game is
-	 * ended and exited. No, game continues for playing.
+	 * Ends the game, telling the view how it ended. The view then asks for
+	 * another game or ends the game.
+	 * 
+	 * @param outcome
+	 *            Outcome of the game from the player's point of view
 	 */
-	public void showExitGameDialog() {
-		int result = JOptionPane.showConfirmDialog(null,
-				"Are you sure you want to exit?", "End Game",
-				JOptionPane.YES_NO_OPTION, JOptionPane.PLAIN_MESSAGE);
-
-		if (result == JOptionPane.YES_OPTION) {
-			// sends message to server to end the game
-			sendForEndGame();
-		} else {
-			// continue playing
-		}
+	public void gameOver(int outcome) {
+		// game is over, nothing is awaited anymore
+		deleteResumeToken();
+		awaitingReply = false;
+		queuedMove = -1;
+		analysisPending = false;
+		publish(C4GameEvent.gameOver(outcome, inMatch));
+	}
 
+	/**
+	 * Starts another game of the same kind as the one that ended, against
+	 * another player if it was a match
+	 */
+	public void playAgain() {
+		if (inMatch)
+			sendForMatch();
+		else
+			sendForNewGame();
 	}
 
 	/**
-	 * Displays a confirm dialog indicating a game has ended with a specific
-	 * text. Prompts the user if they want to play a new game or not.
-	 * 
-	 * @param text
-	 *            Message to be displayed in the dialog window
+	 * Sends a specific message to the server communicating it wants to begin a
+	 * new game
 	 */
-	public void showGameOverDialog(String text) {
-		int result = JOptionPane.showConfirmDialog(null, text, "Game Over",
-				JOptionPane.YES_NO_OPTION, JOptionPane.PLAIN_MESSAGE);
+	public void sendForNewGame() {
+		try {
+			// send server a message to start a new game
+			dataComm.sendMessage(new byte[] { 0x02, 0x00 }, true).exceptionally(
+					REPORT_ERROR);
+		} catch (C4InvalidMessageException e) {
+			System.out.println(e.getMessage());
+		}
 
-		if (result == JOptionPane.YES_OPTION) {
-			// send message to server to start a new game
-			sendForNewGame();
-		} else {
-			// send message to server to end the game
-			sendForEndGame();
+	}
+
+	/**
+	 * Sends a specific message to the server communicating it wants to play
+	 * against another player. The match starts when the server pairs the
+	 * player with an opponent.
+	 */
+	public void sendForMatch() {
+		try {
+			// send server a message to join the lobby
+			dataComm.sendMessage(new byte[] { 0x05, DEFAULT_RATING }, false)
+					.exceptionally(REPORT_ERROR);
+		} catch (C4InvalidMessageException e) {
+			System.out.println(e.getMessage());
 		}
 	}
 
 	/**
-	 * Displays a confirm dialog prompting the user if they want to play a new
-	 * game.
+	 * Sends a specific message to the server communicating it wants to end the
+	 * game
 	 */
-	public void showNewGameDialog() {
-		int result = JOptionPane.showConfirmDialog(null,
-				"Are you sure you want to play a new game?", "New Game",
-				JOptionPane.YES_NO_OPTION, JOptionPane.PLAIN_MESSAGE);
+	public void sendForEndGame() {
+		// the game is given up, it cannot be resumed
+		deleteResumeToken();
 
-		if (result == JOptionPane.YES_OPTION) {
-			// sends message to server to start a new game
-			sendForNewGame();
-		} else {
-			// continue playing
+		try {
+			// send server a message to end the game
+			dataComm.sendMessage(new byte[] { 0x02, 0x01 }, true).exceptionally(
+					REPORT_ERROR);
+		} catch (C4InvalidMessageException e) {
+			System.out.println(e.getMessage());
 		}
+
 	}
 
 	/**
-	 * Displays a confirm dialog the first time the game application is run.
-	 * Prompts the user if they want to play the game.
+	 * Creates a new Connect Four game, resetting the view and all essential
+	 * class variables
 	 */
-	private void showFirstGameDialog() {
-		int result = JOptionPane.showConfirmDialog(null,
-				"Are you sure you want to play Connect Four?", "Play Game?",
-				JOptionPane.YES_NO_OPTION, JOptionPane.PLAIN_MESSAGE);
-
-		if (result == JOptionPane.YES_OPTION) {
-			// create the GUI and display it
-			C4GUI gui = new C4GUI(this);
+	public void createNewGame() {
+		colCtrs = new int[7];
+		awaitingReply = false;
+		inMatch = false;
+		queuedMove = -1;
+		analysisPending = false;
+		publish(C4GameEvent.gameReset(false));
+
+		// ask for the token to resume the game with if the connection is lost
+		if (online)
+			sendForResumeToken();
+
+		// the player moves first
+		if (hintMode)
+			requestAnalysis(hintMillis);
+	}
 
-			// add the model as an observer to the view
-			this.addObserver(gui);
+	/**
+	 * Resumes an unfinished game parked by the server. The server replies with
+	 * the moves of the game, or asks for a new game if it is gone.
+	 * 
+	 * @param token
+	 *            Resume token of the game, see getSavedResumeToken
+	 */
+	public void resumeGame(long token) {
+		byte[] message = new byte[RESUME_MESSAGE_SIZE];
+		message[0] = 0x09;
+		message[1] = 0x01;
+		for (int i = 0; i < 8; i++)
+			message[2 + i] = (byte) (token >>> 56 - 8 * i);
 
-			// send message to server to start a new game
-			sendForNewGame();
-		} else {
-			// send message to server to end the game
-			sendForEndGame();
+		try {
+			dataComm.sendMessage(message, true).exceptionally(REPORT_ERROR);
+		} catch (C4InvalidMessageException e) {
+			System.out.println(e.getMessage());
 		}
+	}
 
+	/**
+	 * Returns the resume token of the unfinished game saved by the last
+	 * client, if any
+	 * 
+	 * @return Resume token, 0 if no game is unfinished
+	 */
+	public static long getSavedResumeToken() {
+		try {
+			if (!RESUME_TOKEN_FILE.isFile())
+				return 0;
+			return Long.parseUnsignedLong(new String(Files
+					.readAllBytes(RESUME_TOKEN_FILE.toPath()),
+					StandardCharsets.US_ASCII).trim(), 16);
+		} catch (IOException | NumberFormatException e) {
+			return 0;
+		}
 	}
 
 	/**
-	 * Sends a specific message to the server communicating it wants to begin a
-	 * new game
+	 * Asks the server for the token of the game against the AI
 	 */
-	private void sendForNewGame() {
+	private void sendForResumeToken() {
 		try {
-			// send server a message to start a new game
-			dataComm.sendMessage(new byte[] { 0x02, 0x00 });
-		} catch (C4InvalidMessageException | C4InvalidMoveException e) {
+			dataComm.sendMessage(new byte[] { 0x09, 0x00 }, true)
+					.exceptionally(REPORT_ERROR);
+		} catch (C4InvalidMessageException e) {
 			System.out.println(e.getMessage());
 		}
+	}
 
+	/**
+	 * Saves the resume token sent by the server, the game being resumable
+	 * by the next client if this one goes away before it ends
+	 * 
+	 * @param message
+	 *            Message 0x09 0x00 followed by the token, 0 if none
+	 */
+	private void saveResumeToken(byte[] message) {
+		long token = 0;
+		for (int i = 2; i < RESUME_MESSAGE_SIZE; i++)
+			token = token << 8 | (message[i] & 0xff);
+
+		if (token == 0) {
+			deleteResumeToken();
+			return;
+		}
+		try {
+			Files.write(RESUME_TOKEN_FILE.toPath(), Long.toHexString(token)
+					.getBytes(StandardCharsets.US_ASCII));
+		} catch (IOException e) {
+			System.out.println("Error saving resume token: " + e.getMessage());
+		}
 	}
 
 	/**
-	 * Sends a specific message to the server communicating it wants to end the
-	 * game
+	 * Deletes the saved resume token, the game having ended
 	 */
-	private void sendForEndGame() {
+	private void deleteResumeToken() {
+		if (online)
+			RESUME_TOKEN_FILE.delete();
+	}
 
-		try {
-			// send server a message to end the game
-			dataComm.sendMessage(new byte[] { 0x02, 0x01 });
-		} catch (C4InvalidMessageException | C4InvalidMoveException e) {
-			System.out.println(e.getMessage());
+	/**
+	 * Replays a resumed game on the view, the player having moved first
+	 * 
+	 * @param message
+	 *            Message 0x09 0x01 with the number of moves and the moves
+	 * @throws C4InvalidMoveException
+	 *             If a move of the game is not on the board
+	 */
+	private void resumedGame(byte[] message) throws C4InvalidMoveException {
+		colCtrs = new int[7];
+		awaitingReply = false;
+		inMatch = false;
+		queuedMove = -1;
+		analysisPending = false;
+		publish(C4GameEvent.gameReset(false));
+
+		for (int i = 3; i < message.length; i++) {
+			int col = message[i];
+			if (col < 0 || col > 6 || colCtrs[col] == 6)
+				throw new C4InvalidMoveException("Invalid move in resumed game.");
+			publish(C4GameEvent.movePlayed((i & 1) == 1 ? C4GameEvent.PLAYER
+					: C4GameEvent.OPPONENT, col, colCtrs[col], false));
+			colCtrs[col]++;
 		}
 
+		// the player moves next, the token stays the same
+		if (hintMode)
+			requestAnalysis(hintMillis);
 	}
 
 	/**
-	 * Creates a new Connect Four game, resetting the view and all essential
-	 * class variables
+	 * Returns the length a message from the other side must have
+	 * 
+	 * @param message
+	 *            Message received
+	 * @return Expected length of the message
 	 */
-	public void createNewGame() {
-		previousMove = new int[2];
+	private static int expectedLength(byte[] message) {
+		if (message[0] == 0x08)
+			return ANALYSIS_MESSAGE_SIZE;
+		if (message[0] == 0x09 && message[1] == 0x00)
+			return RESUME_MESSAGE_SIZE;
+		if (message[0] == 0x09 && message[1] == 0x01 && message.length > 2)
+			return 3 + (message[2] & 0xff);
+		return MAXIMUM_MESSAGE_SIZE;
+	}
+
+	/**
+	 * Starts a match against another player, resetting the view
+	 * 
+	 * @param playerFirst
+	 *            True if the player makes the first move of the match
+	 */
+	public void startMatch(boolean playerFirst) {
 		colCtrs = new int[7];
-		setChanged();
-		notifyObservers("reset");// reset tells gui to reset all buttons
+		awaitingReply = false;
+		inMatch = true;
+		playerTurn = playerFirst;
+		queuedMove = -1;
+		analysisPending = false;
+		publish(C4GameEvent.gameReset(true));
 	}
 
 	/**
 	 * Closes the view connected to the model
 	 */
 	public void disposeViewWindow() {
-		setChanged();
-		notifyObservers("close"); // closes the game window
+		dataComm.close();
+		publish(C4GameEvent.shutdown()); // closes the game window
+	}
+
+	/**
+	 * Queues an event for the listener, scheduling a delivery on the executor
+	 * unless one is already scheduled
+	 * 
+	 * @param event
+	 *            Event to deliver
+	 */
+	private void publish(C4GameEvent event) {
+		pendingEvents.add(event);
+		if (deliveryScheduled.compareAndSet(false, true))
+			executor.execute(deliverEvents);
+	}
+
+	/**
+	 * Delivers every queued event to the listener in one batch. Moves followed
+	 * by a reset in the same batch are dropped, since they would be wiped out
+	 * before being seen.
+	 */
+	private void deliverEvents() {
+		// events published from now on schedule another delivery
+		deliveryScheduled.set(false);
+
+		List<C4GameEvent> batch = new ArrayList<C4GameEvent>();
+		C4GameEvent event;
+		while ((event = pendingEvents.poll()) != null) {
+			if (event.getType() == C4GameEvent.GAME_RESET)
+				for (int i = batch.size() - 1; i >= 0; i--)
+					if (batch.get(i).getType() == C4GameEvent.MOVE_PLAYED)
+						batch.remove(i);
+			batch.add(event);
+		}
+
+		C4GameListener listener = this.listener;
+		if (listener != null && !batch.isEmpty())
+			listener.gameChanged(Collections.unmodifiableList(batch));
 	}
 }
@@ -0,0 +1,327 @@
+package client;
+
+import gameExceptions.C4InvalidMessageException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.BiConsumer;
+
+/**
+ * Plays many games against the server's AI over a single connection, for
+ * bots and load tests. The connection is switched to a multiplexed session
+ * (see C4MultiplexSession) and each game opened on it gets a transport of its
+ * own, whose 2 byte messages are framed with the game's ID.
+ * 
+ * The server only ever replies in a multiplexed session, so the transports
+ * have no model: the replies are read from the futures their messages return.
+ * A message the server refuses completes its future exceptionally.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4MultiplexDataComm {
+	private static final int MAXIMUM_MESSAGE_SIZE = 2;
+
+	// length of every frame once the connection is multiplexed
+	private static final int FRAME_SIZE = 4;
+
+	// number of game IDs a connection can use
+	private static final int MAXIMUM_GAMES = 1 << 16;
+
+	private Socket serverSocket;
+
+	// frames waiting to be written by the writer thread
+	private BlockingQueue<byte[]> outgoingFrames;
+
+	// games opened on the connection by ID, null for the free IDs
+	private final GameTransport[] games;
+	private int nextGameId;
+
+	// boolean indicating the connection is being closed on purpose
+	private volatile boolean closing;
+
+	// boolean indicating the connection to the server is up
+	private volatile boolean connected;
+
+	/**
+	 * Creates a C4MultiplexDataComm object, connecting to the server and
+	 * switching the connection to a multiplexed session
+	 * 
+	 * @param serverIP
+	 *            IP address of the server
+	 * @param port
+	 *            Port number of the server
+	 * @throws IOException
+	 *             If the server cannot be reached or refuses to multiplex
+	 */
+	public C4MultiplexDataComm(String serverIP, int port) throws IOException {
+		this.outgoingFrames = new LinkedBlockingQueue<byte[]>();
+		this.games = new GameTransport[MAXIMUM_GAMES];
+
+		serverSocket = new Socket(serverIP, port);
+		serverSocket.setTcpNoDelay(true);
+
+		// ask for a multiplexed session and wait for the server to agree
+		serverSocket.getOutputStream().write(new byte[] { 0x0A, 0x00 });
+		byte[] reply = new byte[MAXIMUM_MESSAGE_SIZE];
+		readFully(serverSocket.getInputStream(), reply);
+		if (reply[0] != 0x0A || reply[1] != 0x00) {
+			serverSocket.close();
+			throw new IOException("Server does not multiplex games.");
+		}
+		connected = true;
+
+		startThread("C4MultiplexWriter", new Runnable() {
+			public void run() {
+				writeFrames();
+			}
+		});
+		startThread("C4MultiplexReader", new Runnable() {
+			public void run() {
+				readFrames();
+			}
+		});
+	}
+
+	/**
+	 * Opens a game on the connection. The game starts once 0x02 0x00 is sent
+	 * on its transport, and its ID is freed when the transport is closed.
+	 * 
+	 * @return Transport of the game
+	 * @throws IllegalStateException
+	 *             If every game ID of the connection is in use
+	 */
+	public synchronized C4Transport openGame() {
+		for (int i = 0; i < MAXIMUM_GAMES; i++) {
+			int gameId = (nextGameId + i) % MAXIMUM_GAMES;
+			if (games[gameId] == null) {
+				nextGameId = gameId + 1;
+				games[gameId] = new GameTransport(gameId);
+				return games[gameId];
+			}
+		}
+		throw new IllegalStateException("Every game ID is in use.");
+	}
+
+	/**
+	 * Closes the connection, ending every game still open on it
+	 */
+	public void close() {
+		closing = true;
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			System.out.println("Error closing connection to server.");
+		}
+	}
+
+	/**
+	 * Loop of the writer thread, sending queued frames in order
+	 */
+	private void writeFrames() {
+		try {
+			OutputStream out = serverSocket.getOutputStream();
+			for (;;)
+				out.write(outgoingFrames.take());
+		} catch (IOException e) {
+			connectionLost(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Loop of the reader thread, completing the request of the game each
+	 * frame answers
+	 */
+	private void readFrames() {
+		try {
+			InputStream in = serverSocket.getInputStream();
+			byte[] frame = new byte[FRAME_SIZE];
+
+			for (;;) {
+				readFully(in, frame);
+				int gameId = (frame[0] & 0xff) << 8 | (frame[1] & 0xff);
+
+				GameTransport game;
+				synchronized (this) {
+					game = games[gameId];
+				}
+				if (game != null)
+					game.replyReceived(frame[2], frame[3]);
+			}
+		} catch (IOException e) {
+			connectionLost(e);
+		}
+	}
+
+	/**
+	 * Reads from the server until a buffer is full
+	 * 
+	 * @param in
+	 *            Input stream of the socket
+	 * @param buffer
+	 *            Buffer receiving the bytes
+	 * @throws IOException
+	 *             If the connection is closed before the buffer is full
+	 */
+	private static void readFully(InputStream in, byte[] buffer)
+			throws IOException {
+		int receivedMessageSize, totalBytesReceived = 0;
+
+		while (totalBytesReceived < buffer.length) {
+			if ((receivedMessageSize = in.read(buffer, totalBytesReceived,
+					buffer.length - totalBytesReceived)) == -1)
+				throw new SocketException("Connection closed prematurely");
+			totalBytesReceived += receivedMessageSize;
+		}
+	}
+
+	/**
+	 * Fails every request waiting for a reply once the connection is lost
+	 * 
+	 * @param cause
+	 *            Error that ended the connection
+	 */
+	private void connectionLost(IOException cause) {
+		connected = false;
+		if (!closing)
+			System.out.println("Error receiving message in client.");
+
+		GameTransport[] open;
+		synchronized (this) {
+			open = games.clone();
+		}
+		for (GameTransport game : open)
+			if (game != null)
+				game.failPending(cause);
+		outgoingFrames.clear();
+	}
+
+	/**
+	 * Starts a daemon thread of the connection
+	 * 
+	 * @param name
+	 *            Name of the thread
+	 * @param task
+	 *            Loop run by the thread
+	 */
+	private static void startThread(String name, Runnable task) {
+		Thread thread = new Thread(task, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Transport of one game of the connection
+	 */
+	private class GameTransport implements C4Transport {
+		private final int gameId;
+
+		// requests of the game waiting for their reply, in the order they
+		// were sent
+		private final ConcurrentLinkedQueue<CompletableFuture<byte[]>> pendingReplies;
+
+		private GameTransport(int gameId) {
+			this.gameId = gameId;
+			this.pendingReplies = new ConcurrentLinkedQueue<CompletableFuture<byte[]>>();
+		}
+
+		/**
+		 * Queues a message of the game for the server. Every message of a
+		 * multiplexed session is answered, so a reply is always awaited.
+		 * 
+		 * @param message
+		 *            Array of bytes containing the message
+		 * @param expectsReply
+		 *            Ignored, the server answers every message
+		 * @return Future completed with the server's reply
+		 * @throws C4InvalidMessageException
+		 *             If the message does not respect the fixed length
+		 */
+		public CompletableFuture<byte[]> sendMessage(byte[] message,
+				boolean expectsReply) throws C4InvalidMessageException {
+			if (message.length != MAXIMUM_MESSAGE_SIZE)
+				throw new C4InvalidMessageException(
+						"Messages must be a length of 2 bytes.");
+
+			CompletableFuture<byte[]> result = new CompletableFuture<byte[]>();
+			if (!connected) {
+				result.completeExceptionally(new SocketException(
+						"Not connected to server"));
+				return result;
+			}
+
+			// register the reply before queueing so it cannot arrive first
+			pendingReplies.add(result);
+			outgoingFrames.add(new byte[] { (byte) (gameId >>> 8),
+					(byte) gameId, message[0], message[1] });
+			return result;
+		}
+
+		/**
+		 * Ends the game on the server and frees its ID once the server
+		 * confirms
+		 */
+		public void close() {
+			try {
+				sendMessage(new byte[] { 0x02, 0x01 }, true).whenComplete(
+						new BiConsumer<byte[], Throwable>() {
+							public void accept(byte[] reply, Throwable e) {
+								release();
+							}
+						});
+			} catch (C4InvalidMessageException e) {
+				System.out.println(e.getMessage());
+			}
+		}
+
+		/**
+		 * Completes the oldest request of the game with a reply
+		 * 
+		 * @param first
+		 *            First byte of the reply
+		 * @param second
+		 *            Second byte of the reply
+		 */
+		private void replyReceived(byte first, byte second) {
+			CompletableFuture<byte[]> reply = pendingReplies.poll();
+			if (reply == null)
+				return;
+			if (first == 0x0A && second == 0x01)
+				reply.completeExceptionally(new C4InvalidMessageException(
+						"Message refused by the server."));
+			else
+				reply.complete(new byte[] { first, second });
+		}
+
+		/**
+		 * Fails every request of the game
+		 * 
+		 * @param cause
+		 *            Error that ended the connection
+		 */
+		private void failPending(IOException cause) {
+			CompletableFuture<byte[]> reply;
+			while ((reply = pendingReplies.poll()) != null)
+				reply.completeExceptionally(cause);
+		}
+
+		/**
+		 * Frees the ID of the game for another game
+		 */
+		private void release() {
+			synchronized (C4MultiplexDataComm.this) {
+				if (games[gameId] == this)
+					games[gameId] = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package client;
+
+import gameExceptions.C4InvalidMessageException;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Carries the messages of a C4Model to whatever plays the other side of the
+ * game, and hands that side's messages back to the model. Both ways use the
+ * 2 byte messages of the server's protocol, so the model does not know
+ * whether it plays a server over the network or an engine in the client.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public interface C4Transport {
+
+	/**
+	 * Queues a message for the other side and returns immediately
+	 * 
+	 * @param message
+	 *            Array of bytes containing the message
+	 * @param expectsReply
+	 *            True if the other side answers this message with a reply,
+	 *            false if it only answers later with pushed messages, if at
+	 *            all
+	 * @return Future completed with the reply, or with the message once sent
+	 *         if no reply is expected
+	 * @throws C4InvalidMessageException
+	 *             If the message is invalid
+	 */
+	CompletableFuture<byte[]> sendMessage(byte[] message, boolean expectsReply)
+			throws C4InvalidMessageException;
+
+	/**
+	 * Closes the transport once the last message was sent
+	 */
+	void close();
+}
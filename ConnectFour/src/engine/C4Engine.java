@@ -0,0 +1,63 @@
+package engine;
+
+import gameExceptions.C4InvalidMoveException;
+import gameLogic.C4Game;
+
+/**
+ * AI playing the second player's moves of games against the server. An
+ * engine is created once from its provider (see C4EngineProvider) and
+ * shared by every session using it, so makeMove() is called from many
+ * threads at once, each on a game of its own.
+ * 
+ * An engine declares its cost, so the server can choose between a cheap
+ * and a strong engine by the load it is under, and C4EngineKitApp checks
+ * the declared latency against the measured one.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public interface C4Engine {
+
+	/**
+	 * Returns the name of the engine with its settings, as logged and shown
+	 * to clients
+	 * 
+	 * @return Name of the engine, such as search:12:500
+	 */
+	String getName();
+
+	/**
+	 * Returns the time the engine is expected to take for a move
+	 * 
+	 * @return Latency of a move in microseconds, at most the engine's time
+	 *         budget
+	 */
+	long getMoveLatencyMicros();
+
+	/**
+	 * Returns the memory the engine holds, shared by every game it plays
+	 * 
+	 * @return Memory in bytes, 0 if the engine holds none
+	 */
+	long getMemoryBytes();
+
+	/**
+	 * Returns the engine configuration the games of the engine are archived
+	 * with
+	 * 
+	 * @return Engine configuration, see C4GameRecord
+	 */
+	int getArchiveConfig();
+
+	/**
+	 * Makes the second player's move in a game
+	 * 
+	 * @param game
+	 *            Game in which the first player moved last and did not win
+	 * @return Message with the column played: 0x00 if the game goes on, 0x03
+	 *         if the move wins and 0x04 if it fills the board
+	 * @throws C4InvalidMoveException
+	 *             If the board is full
+	 */
+	byte[] makeMove(C4Game game) throws C4InvalidMoveException;
+}
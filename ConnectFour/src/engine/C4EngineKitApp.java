@@ -0,0 +1,247 @@
+package engine;
+
+import gameExceptions.C4InvalidMoveException;
+import gameLogic.C4Game;
+import gameLogic.C4Position;
+import gameLogic.C4Threats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Conformance and benchmark kit run against any engine, every engine found
+ * on the class path by default. Each engine plays games as the second player
+ * against a seeded random opponent, so runs are repeatable, and every move
+ * is checked:
+ * 
+ * the reply is 2 bytes and plays a column that was not full; exactly that
+ * move was added to the game; the status is 0x03 if the move won, 0x04 if it
+ * filled the board and 0x00 otherwise.
+ * 
+ * The kit then reports the engine's declared latency and memory against the
+ * measured median and slowest move, its wins, draws and losses, and the
+ * moves where it missed a win it had. A declared latency below the measured
+ * median, by more than a tenth, is a failure too, since the server chooses
+ * engines by it. The application exits with status 1 if any engine fails.
+ * 
+ * Usage: C4EngineKitApp [-games n] [-seed s] [-table bits] [spec...]
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.2
+ */
+public class C4EngineKitApp {
+
+	private static final int DEFAULT_GAMES = 20;
+
+	// size of the table shared by the searching engines, 32 MB
+	private static final int DEFAULT_TABLE_BITS = 22;
+
+	// share by which the measured median may exceed the declared latency,
+	// as a search given a time budget overshoots it a little
+	private static final double LATENCY_TOLERANCE = 0.1;
+
+	// number of cells of the board
+	private static final int CELLS = C4Position.WIDTH * C4Position.HEIGHT;
+
+	/**
+	 * Main method to check engines
+	 * 
+	 * @param args
+	 *            Options followed by the specifications of the engines,
+	 *            see C4EngineRegistry
+	 */
+	public static void main(String[] args) {
+		int games = DEFAULT_GAMES, tableBits = DEFAULT_TABLE_BITS;
+		long seed = 1;
+		List<String> specs = new ArrayList<String>();
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-games"))
+					games = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-seed"))
+					seed = Long.parseLong(args[++i]);
+				else if (args[i].equals("-table"))
+					tableBits = Integer.parseInt(args[++i]);
+				else if (args[i].startsWith("-"))
+					throw new IllegalArgumentException(args[i]);
+				else
+					specs.add(args[i]);
+			}
+			if (games < 1)
+				throw new IllegalArgumentException();
+		} catch (RuntimeException e) {
+			System.out.println("Usage: C4EngineKitApp [-games n] [-seed s] "
+					+ "[-table bits] [spec...]");
+			return;
+		}
+
+		C4EngineRegistry registry = new C4EngineRegistry(tableBits);
+		if (specs.isEmpty())
+			specs = registry.getProviderNames();
+
+		boolean passed = true;
+		System.out.println("Engine\tDeclared us\tMedian us\tSlowest us\t"
+				+ "Memory KB\tWins\tDraws\tLosses\tMissed wins\tResult");
+		for (String spec : specs) {
+			C4Engine engine;
+			try {
+				engine = registry.createEngine(spec);
+			} catch (IllegalArgumentException e) {
+				System.out.println(spec + "\t" + e.getMessage());
+				passed = false;
+				continue;
+			}
+
+			Result result = new Result(games);
+			for (int game = 0; game < games && result.failure == null; game++)
+				playGame(engine, seed + game, result);
+
+			long median = result.medianMicros();
+			if (result.failure == null
+					&& median > engine.getMoveLatencyMicros()
+							* (1 + LATENCY_TOLERANCE))
+				result.failure = "median latency above the declared one";
+			passed &= result.failure == null;
+
+			System.out.println(engine.getName() + "\t"
+					+ engine.getMoveLatencyMicros() + "\t" + median + "\t"
+					+ result.slowestNanos / 1000 + "\t"
+					+ engine.getMemoryBytes() / 1024 + "\t" + result.wins
+					+ "\t" + result.draws + "\t" + result.losses + "\t"
+					+ result.missedWins + "\t"
+					+ (result.failure == null ? "PASS" : "FAIL: "
+							+ result.failure));
+		}
+
+		if (!passed)
+			System.exit(1);
+	}
+
+	/**
+	 * Plays a game of an engine against a random opponent moving first,
+	 * checking every move of the engine
+	 * 
+	 * @param engine
+	 *            Engine checked
+	 * @param seed
+	 *            Seed of the game and of the opponent's moves
+	 * @param result
+	 *            Result the game is added to, its failure set if a move
+	 *            fails a check
+	 */
+	private static void playGame(C4Engine engine, long seed, Result result) {
+		C4Game game = new C4Game(seed);
+		C4Position position = new C4Position();
+		SplittableRandom opponent = new SplittableRandom(~seed);
+
+		try {
+			while (true) {
+				// the opponent plays a random column that is not full
+				int col;
+				do
+					col = opponent.nextInt(C4Position.WIDTH);
+				while (!position.canPlay(col));
+				game.makeMove(col, C4Game.PLAYER_ID);
+				position.play(col);
+				if (position.isWon()) {
+					result.losses++;
+					return;
+				}
+				if (position.isFull()) {
+					result.draws++;
+					return;
+				}
+
+				boolean couldWin = C4Threats.winningMoves(position) != 0;
+				int moveCount = game.getMoveCount();
+
+				long start = System.nanoTime();
+				byte[] reply = engine.makeMove(game);
+				result.addMove(System.nanoTime() - start);
+
+				if (reply == null || reply.length != 2) {
+					result.failure = "reply is not 2 bytes long";
+					return;
+				}
+				col = reply[1];
+				if (col < 0 || col >= C4Position.WIDTH
+						|| !position.canPlay(col)) {
+					result.failure = "column " + col + " cannot be played";
+					return;
+				}
+				if (game.getMoveCount() != moveCount + 1
+						|| game.getMoves()[moveCount] != col) {
+					result.failure = "game does not hold exactly the move";
+					return;
+				}
+
+				position.play(col);
+				boolean won = position.isWon();
+				int status = won ? 0x03 : position.getMoveCount() == CELLS
+						? 0x04 : 0x00;
+				if (reply[0] != status) {
+					result.failure = "status " + reply[0] + " instead of "
+							+ status;
+					return;
+				}
+
+				if (couldWin && !won)
+					result.missedWins++;
+				if (won) {
+					result.wins++;
+					return;
+				}
+				if (status == 0x04) {
+					result.draws++;
+					return;
+				}
+			}
+		} catch (C4InvalidMoveException | RuntimeException e) {
+			result.failure = "move refused or failed: " + e;
+		}
+	}
+
+	/**
+	 * Outcomes, move times and failure of the games of an engine
+	 */
+	private static class Result {
+		private int wins, draws, losses, missedWins;
+		private String failure; // first check failed, null if none
+
+		// time of each move of the engine
+		private long[] moveNanos;
+		private int moves;
+		private long slowestNanos;
+
+		private Result(int games) {
+			moveNanos = new long[games * CELLS / 2];
+		}
+
+		/**
+		 * Adds the time of a move
+		 * 
+		 * @param nanos
+		 *            Time the engine took
+		 */
+		private void addMove(long nanos) {
+			moveNanos[moves++] = nanos;
+			slowestNanos = Math.max(slowestNanos, nanos);
+		}
+
+		/**
+		 * Returns the median time of the moves
+		 * 
+		 * @return Median in microseconds, rounded up, 0 if no move was made
+		 */
+		private long medianMicros() {
+			if (moves == 0)
+				return 0;
+			long[] sorted = Arrays.copyOf(moveNanos, moves);
+			Arrays.sort(sorted);
+			return (sorted[moves / 2] + 999) / 1000;
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package engine;
+
+/**
+ * Service provider creating engines of one kind. Providers are found with
+ * java.util.ServiceLoader, so an engine is deployed by putting its jar on
+ * the class path with a META-INF/services/engine.C4EngineProvider file
+ * naming its provider, without any change to the server. A provider needs a
+ * public constructor without arguments.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public interface C4EngineProvider {
+
+	/**
+	 * Returns the name engines of the provider are asked for with
+	 * 
+	 * @return Name of the provider, such as simple or search
+	 */
+	String getName();
+
+	/**
+	 * Creates an engine
+	 * 
+	 * @param settings
+	 *            Settings of the engine, those not given being 0
+	 * @return Engine
+	 * @throws IllegalArgumentException
+	 *             If the settings are not valid for the engine
+	 */
+	C4Engine createEngine(C4EngineSettings settings);
+}
@@ -0,0 +1,117 @@
+package engine;
+
+import gameLogic.C4TranspositionTable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Engine providers found on the class path, creating engines from
+ * specifications name[:depth[:millis]] such as simple, search:12 or
+ * search:20:1000. Settings left out are the engine's defaults.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4EngineRegistry {
+
+	// providers by name, in the order they were found
+	private final Map<String, C4EngineProvider> providers;
+
+	// size of the transposition table shared by the engines, and the table
+	// once an engine asked for it
+	private final int tableBits;
+	private C4TranspositionTable sharedTable;
+
+	/**
+	 * Creates a C4EngineRegistry holding every provider on the class path
+	 * 
+	 * @param tableBits
+	 *            Base 2 logarithm of the number of entries of the shared
+	 *            transposition table
+	 * @throws ServiceConfigurationError
+	 *             If a provider named on the class path cannot be created
+	 */
+	public C4EngineRegistry(int tableBits) {
+		this.tableBits = tableBits;
+		this.providers = new LinkedHashMap<String, C4EngineProvider>();
+		for (C4EngineProvider provider : ServiceLoader
+				.load(C4EngineProvider.class))
+			if (!providers.containsKey(provider.getName()))
+				providers.put(provider.getName(), provider);
+	}
+
+	/**
+	 * Returns the names of the providers found
+	 * 
+	 * @return Provider names, in the order they were found
+	 */
+	public List<String> getProviderNames() {
+		return new ArrayList<String>(providers.keySet());
+	}
+
+	/**
+	 * Creates an engine from its specification
+	 * 
+	 * @param specification
+	 *            Provider name, optionally followed by :depth and :millis
+	 * @return Engine
+	 * @throws IllegalArgumentException
+	 *             If no provider has the name or the settings are not valid
+	 */
+	public C4Engine createEngine(String specification) {
+		String[] parts = specification.split(":");
+		if (parts.length > 3)
+			throw new IllegalArgumentException("Invalid engine "
+					+ specification + ", expected name[:depth[:millis]].");
+
+		C4EngineProvider provider = providers.get(parts[0]);
+		if (provider == null)
+			throw new IllegalArgumentException("Unknown engine " + parts[0]
+					+ ", available engines are " + providers.keySet() + ".");
+
+		int depth = 0;
+		long timeMillis = 0;
+		try {
+			if (parts.length > 1)
+				depth = Integer.parseInt(parts[1]);
+			if (parts.length > 2)
+				timeMillis = Long.parseLong(parts[2]);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid engine "
+					+ specification + ", expected name[:depth[:millis]].");
+		}
+		if (depth < 0 || timeMillis < 0)
+			throw new IllegalArgumentException("Invalid engine "
+					+ specification + ", settings cannot be negative.");
+
+		return provider.createEngine(new C4EngineSettings(depth, timeMillis,
+				this));
+	}
+
+	/**
+	 * Returns the transposition table shared by the engines, creating it
+	 * the first time it is asked for
+	 * 
+	 * @return Shared transposition table
+	 */
+	public synchronized C4TranspositionTable getSharedTable() {
+		if (sharedTable == null)
+			sharedTable = new C4TranspositionTable(tableBits);
+		return sharedTable;
+	}
+
+	/**
+	 * Returns the transposition table shared by the engines if one of them
+	 * asked for it
+	 * 
+	 * @return Shared transposition table, null if no engine uses it
+	 */
+	public synchronized C4TranspositionTable getSharedTableIfCreated() {
+		return sharedTable;
+	}
+}
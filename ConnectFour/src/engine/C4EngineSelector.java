@@ -0,0 +1,141 @@
+package engine;
+
+import gameExceptions.C4InvalidMoveException;
+import gameLogic.C4Game;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Engines a server plays with, numbered in the order they were configured,
+ * and the policy choosing one for each new game: the engine the client asked
+ * for if it did, else the cheapest engine while the server is loaded, else
+ * the first engine. The load is the number of AI moves being played at the
+ * moment, counted by the engines the selector hands out.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4EngineSelector {
+
+	// engine chosen by the server rather than the client
+	public static final int NO_PREFERENCE = -1;
+
+	private final C4Engine[] engines;
+	private final int cheapest; // index of the engine with the least latency
+	private final int loadThreshold;
+	private final AtomicInteger movesInProgress;
+
+	/**
+	 * Creates a C4EngineSelector
+	 * 
+	 * @param engines
+	 *            Engines of the server, the first being the default
+	 * @param loadThreshold
+	 *            Number of AI moves in progress from which new games get the
+	 *            cheapest engine, 0 to always use the default
+	 */
+	public C4EngineSelector(List<C4Engine> engines, int loadThreshold) {
+		if (engines.isEmpty())
+			throw new IllegalArgumentException("At least one engine is needed.");
+
+		this.engines = new C4Engine[engines.size()];
+		this.loadThreshold = loadThreshold;
+		this.movesInProgress = new AtomicInteger();
+
+		int cheapest = 0;
+		for (int i = 0; i < this.engines.length; i++) {
+			this.engines[i] = new MeteredEngine(engines.get(i));
+			if (engines.get(i).getMoveLatencyMicros() < engines.get(cheapest)
+					.getMoveLatencyMicros())
+				cheapest = i;
+		}
+		this.cheapest = cheapest;
+	}
+
+	/**
+	 * Chooses the engine of a new game
+	 * 
+	 * @param preference
+	 *            Index of the engine the client asked for, NO_PREFERENCE if
+	 *            it did not
+	 * @return Index of the engine
+	 */
+	public int select(int preference) {
+		if (preference >= 0 && preference < engines.length)
+			return preference;
+		if (loadThreshold > 0 && movesInProgress.get() >= loadThreshold)
+			return cheapest;
+		return 0;
+	}
+
+	/**
+	 * Returns an engine, counting its moves in the load
+	 * 
+	 * @param index
+	 *            Index of the engine, as returned by select()
+	 * @return Engine
+	 */
+	public C4Engine getEngine(int index) {
+		return engines[index];
+	}
+
+	/**
+	 * Returns the number of engines
+	 * 
+	 * @return Number of engines, at least 1
+	 */
+	public int getEngineCount() {
+		return engines.length;
+	}
+
+	/**
+	 * Returns the number of AI moves being played
+	 * 
+	 * @return Current load
+	 */
+	public int getMovesInProgress() {
+		return movesInProgress.get();
+	}
+
+	/**
+	 * Engine counting its moves in progress in the load of the selector
+	 */
+	private class MeteredEngine implements C4Engine {
+		private final C4Engine engine;
+
+		private MeteredEngine(C4Engine engine) {
+			this.engine = engine;
+		}
+
+		@Override
+		public String getName() {
+			return engine.getName();
+		}
+
+		@Override
+		public long getMoveLatencyMicros() {
+			return engine.getMoveLatencyMicros();
+		}
+
+		@Override
+		public long getMemoryBytes() {
+			return engine.getMemoryBytes();
+		}
+
+		@Override
+		public int getArchiveConfig() {
+			return engine.getArchiveConfig();
+		}
+
+		@Override
+		public byte[] makeMove(C4Game game) throws C4InvalidMoveException {
+			movesInProgress.incrementAndGet();
+			try {
+				return engine.makeMove(game);
+			} finally {
+				movesInProgress.decrementAndGet();
+			}
+		}
+	}
+}
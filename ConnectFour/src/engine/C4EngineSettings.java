@@ -0,0 +1,63 @@
+package engine;
+
+import gameLogic.C4TranspositionTable;
+
+/**
+ * Settings an engine is created with, parsed from a specification
+ * name[:depth[:millis]] by C4EngineRegistry. Engines needing a transposition
+ * table share the registry's, so every searching engine of a server warms
+ * the same table.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public final class C4EngineSettings {
+
+	private final int depth;
+	private final long timeMillis;
+	private final C4EngineRegistry registry;
+
+	/**
+	 * Creates C4EngineSettings
+	 * 
+	 * @param depth
+	 *            Deepest search in plies, 0 for the engine's default
+	 * @param timeMillis
+	 *            Time budget of each move, 0 for the engine's default
+	 * @param registry
+	 *            Registry holding the shared transposition table
+	 */
+	C4EngineSettings(int depth, long timeMillis, C4EngineRegistry registry) {
+		this.depth = depth;
+		this.timeMillis = timeMillis;
+		this.registry = registry;
+	}
+
+	/**
+	 * Returns the deepest search asked for
+	 * 
+	 * @return Depth in plies, 0 if not given
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Returns the time budget of each move asked for
+	 * 
+	 * @return Time budget in milliseconds, 0 if not given
+	 */
+	public long getTimeMillis() {
+		return timeMillis;
+	}
+
+	/**
+	 * Returns the transposition table shared by the engines, creating it
+	 * the first time it is asked for
+	 * 
+	 * @return Shared transposition table
+	 */
+	public C4TranspositionTable getSharedTable() {
+		return registry.getSharedTable();
+	}
+}
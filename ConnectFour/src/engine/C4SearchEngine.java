@@ -0,0 +1,105 @@
+package engine;
+
+import gameExceptions.C4InvalidMoveException;
+import gameLogic.C4Game;
+import gameLogic.C4Solver;
+import gameLogic.C4TranspositionTable;
+
+import archive.C4GameRecord;
+
+/**
+ * Engine searching ahead with C4Solver, deepening until its depth or its
+ * time budget is reached. Each thread playing a move searches with a solver
+ * of its own, all of them sharing one transposition table.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4SearchEngine implements C4Engine {
+
+	// settings used when the specification does not give them
+	public static final int DEFAULT_DEPTH = 12;
+	public static final long DEFAULT_TIME_MILLIS = 500;
+
+	// deepest search the archive can record, see C4GameRecord
+	private static final int MAXIMUM_DEPTH = 42;
+
+	private final int depth;
+	private final long timeMillis;
+	private final C4TranspositionTable table;
+
+	// search of each thread playing moves
+	private final ThreadLocal<C4Solver> solvers;
+
+	/**
+	 * Provider of the searching engine, taking a depth and a time budget
+	 */
+	public static class Provider implements C4EngineProvider {
+
+		@Override
+		public String getName() {
+			return "search";
+		}
+
+		@Override
+		public C4Engine createEngine(C4EngineSettings settings) {
+			int depth = settings.getDepth() > 0 ? settings.getDepth()
+					: DEFAULT_DEPTH;
+			long timeMillis = settings.getTimeMillis() > 0 ? settings
+					.getTimeMillis() : DEFAULT_TIME_MILLIS;
+			if (depth > MAXIMUM_DEPTH)
+				throw new IllegalArgumentException("Search depth must be at "
+						+ "most " + MAXIMUM_DEPTH + ".");
+			return new C4SearchEngine(depth, timeMillis,
+					settings.getSharedTable());
+		}
+	}
+
+	/**
+	 * Creates a C4SearchEngine
+	 * 
+	 * @param depth
+	 *            Deepest search in plies
+	 * @param timeMillis
+	 *            Time budget of each move
+	 * @param table
+	 *            Transposition table shared by the searches
+	 */
+	public C4SearchEngine(int depth, long timeMillis,
+			final C4TranspositionTable table) {
+		this.depth = depth;
+		this.timeMillis = timeMillis;
+		this.table = table;
+		this.solvers = new ThreadLocal<C4Solver>() {
+			protected C4Solver initialValue() {
+				return new C4Solver(table);
+			}
+		};
+	}
+
+	@Override
+	public String getName() {
+		return "search:" + depth + ":" + timeMillis;
+	}
+
+	@Override
+	public long getMoveLatencyMicros() {
+		// the search stops deepening once its budget is spent
+		return timeMillis * 1000;
+	}
+
+	@Override
+	public long getMemoryBytes() {
+		return table.size() * 8L;
+	}
+
+	@Override
+	public int getArchiveConfig() {
+		return C4GameRecord.SEARCH_ENGINE + depth;
+	}
+
+	@Override
+	public byte[] makeMove(C4Game game) throws C4InvalidMoveException {
+		return game.searchMakeMove(solvers.get(), depth, timeMillis);
+	}
+}
@@ -0,0 +1,67 @@
+package engine;
+
+import gameExceptions.C4InvalidMoveException;
+import gameLogic.C4Game;
+
+import archive.C4GameRecord;
+
+/**
+ * Engine playing the built-in AI of C4Game: a winning move, else a move
+ * blocking the player's win, else a random move drawn from the game's seed.
+ * It holds no state, so one engine serves every game.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4SimpleEngine implements C4Engine {
+
+	// time of a move, a few microseconds once compiled, with room for the
+	// flight recorder event of the move
+	private static final long MOVE_LATENCY_MICROS = 20;
+
+	/**
+	 * Provider of the simple engine, which takes no settings
+	 */
+	public static class Provider implements C4EngineProvider {
+
+		@Override
+		public String getName() {
+			return "simple";
+		}
+
+		@Override
+		public C4Engine createEngine(C4EngineSettings settings) {
+			if (settings.getDepth() != 0 || settings.getTimeMillis() != 0)
+				throw new IllegalArgumentException(
+						"The simple engine takes no settings.");
+			return new C4SimpleEngine();
+		}
+	}
+
+	@Override
+	public String getName() {
+		return "simple";
+	}
+
+	@Override
+	public long getMoveLatencyMicros() {
+		return MOVE_LATENCY_MICROS;
+	}
+
+	@Override
+	public long getMemoryBytes() {
+		return 0;
+	}
+
+	@Override
+	public int getArchiveConfig() {
+		return C4GameRecord.DEFAULT_ENGINE;
+	}
+
+	@Override
+	public byte[] makeMove(C4Game game) throws C4InvalidMoveException {
+		if (game.getMoveCount() == 42)
+			throw new C4InvalidMoveException("The board is full.");
+		return game.artificialIntelligenceMakeMove();
+	}
+}
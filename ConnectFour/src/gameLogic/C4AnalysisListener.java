@@ -0,0 +1,34 @@
+package gameLogic;
+
+/**
+ * Listener of an analysis by C4Analyzer, told of each column's score as
+ * soon as a deeper search of the column is finished. Methods are called from
+ * the analyzer's threads, several columns at once.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public interface C4AnalysisListener {
+
+	/**
+	 * Handles a new score of a column
+	 * 
+	 * @param col
+	 *            Column scored
+	 * @param score
+	 *            Score of playing the column for the player to move, positive
+	 *            if it wins, negative if it loses and 0 if it draws or is not
+	 *            decided yet
+	 * @param depth
+	 *            Number of plies searched, including the column's move
+	 * @param decided
+	 *            True if the score is exact and will not change
+	 */
+	void columnScored(int col, int score, int depth, boolean decided);
+
+	/**
+	 * Handles the end of the analysis, once every column is decided or the
+	 * time budget is spent
+	 */
+	void analysisFinished();
+}
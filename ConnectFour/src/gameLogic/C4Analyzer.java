@@ -0,0 +1,278 @@
+package gameLogic;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scores every column of a position, for hints and coaching. Each playable
+ * column is searched by its own task, all of them in parallel on a shared
+ * transposition table, one ply deeper each pass until the column is decided
+ * or the time budget is spent. The listener is told of a column's score after
+ * every pass, so a caller gets rough scores right away and better ones as
+ * they come.
+ * 
+ * A score is from the point of view of the player to move, as C4Solver
+ * scores: a won column scores the number of that player's stones left
+ * unplayed when the game is won plus one, a lost column the opposite.
+ * getPliesToEnd() turns it into a distance.
+ * 
+ * Columns that win right away, or let the opponent win right away, are told
+ * by C4Threats and scored without a search.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.1
+ */
+public class C4Analyzer {
+
+	// number of cells of the board
+	private static final int CELLS = C4Position.WIDTH * C4Position.HEIGHT;
+
+	private C4TranspositionTable table;
+	private ExecutorService pool;
+
+	// solver of each thread of the pool, reused from one column to the next
+	private ThreadLocal<C4Solver> solvers;
+
+	/**
+	 * Creates a C4Analyzer
+	 * 
+	 * @param table
+	 *            Transposition table, possibly shared with other searches
+	 * @param pool
+	 *            Threads searching the columns
+	 */
+	public C4Analyzer(final C4TranspositionTable table, ExecutorService pool) {
+		this.table = table;
+		this.pool = pool;
+		this.solvers = new ThreadLocal<C4Solver>() {
+			protected C4Solver initialValue() {
+				return new C4Solver(table);
+			}
+		};
+	}
+
+	/**
+	 * Starts analysing a position and returns immediately
+	 * 
+	 * @param position
+	 *            Position to analyse, which must not be won or full
+	 * @param timeMillis
+	 *            Time budget of the analysis
+	 * @param listener
+	 *            Listener told of the scores
+	 * @return Analysis, which can be cancelled
+	 */
+	public Analysis analyze(C4Position position, long timeMillis,
+			C4AnalysisListener listener) {
+		Analysis analysis = new Analysis(position, System.nanoTime()
+				+ timeMillis * 1000000, listener);
+
+		int playable = 0;
+		for (int col = 0; col < C4Position.WIDTH; col++)
+			if (position.canPlay(col))
+				playable++;
+
+		if (playable == 0) {
+			listener.analysisFinished();
+			return analysis;
+		}
+
+		analysis.remaining.set(playable);
+		for (int col = 0; col < C4Position.WIDTH; col++)
+			if (position.canPlay(col))
+				pool.execute(analysis.new ColumnSearch(col));
+		return analysis;
+	}
+
+	/**
+	 * Returns the transposition table of the analyzer
+	 * 
+	 * @return Transposition table
+	 */
+	public C4TranspositionTable getTable() {
+		return table;
+	}
+
+	/**
+	 * Returns the number of plies until the end of a decided game, counting
+	 * the winning move
+	 * 
+	 * @param moveCount
+	 *            Number of moves played in the position analysed
+	 * @param score
+	 *            Score of a column of the position
+	 * @return Plies from the position to the winning move, 0 if the score is
+	 *         a draw or not decided
+	 */
+	public static int getPliesToEnd(int moveCount, int score) {
+		if (score == 0)
+			return 0;
+
+		// a player who can win at move count m scores (CELLS + 1 - m) / 2,
+		// the winner moves at the parity of the position or the next one
+		int winnerParity = score > 0 ? moveCount & 1 : ~moveCount & 1;
+		int winningMoveCount = CELLS + 1 - 2 * Math.abs(score);
+		if ((winningMoveCount & 1) != winnerParity)
+			winningMoveCount--;
+		return winningMoveCount - moveCount + 1;
+	}
+
+	/**
+	 * Analysis of a position under way
+	 */
+	public class Analysis {
+		private final C4Position position;
+		private final long deadline; // in System.nanoTime() units
+		private final C4AnalysisListener listener;
+
+		// moves winning right away and moves not losing right away
+		private final long winning, nonLosing;
+
+		// columns still being searched
+		private final AtomicInteger remaining;
+		private volatile boolean cancelled;
+
+		/**
+		 * Creates an Analysis
+		 * 
+		 * @param position
+		 *            Position analysed
+		 * @param deadline
+		 *            Time the analysis ends
+		 * @param listener
+		 *            Listener told of the scores
+		 */
+		private Analysis(C4Position position, long deadline,
+				C4AnalysisListener listener) {
+			this.position = new C4Position();
+			this.position.copy(position);
+			this.deadline = deadline;
+			this.listener = listener;
+			this.winning = C4Threats.winningMoves(position);
+			this.nonLosing = C4Threats.nonLosingMoves(position);
+			this.remaining = new AtomicInteger();
+		}
+
+		/**
+		 * Stops the analysis after the passes under way. The listener is not
+		 * told of anything from then on, not even the end of the analysis.
+		 */
+		public void cancel() {
+			cancelled = true;
+		}
+
+		/**
+		 * Returns whether every column's search has ended
+		 * 
+		 * @return True if the analysis is finished
+		 */
+		public boolean isFinished() {
+			return remaining.get() == 0;
+		}
+
+		/**
+		 * Search of one column of the analysis by iterative deepening. Each
+		 * run searches one ply deeper than the last and queues the next pass
+		 * behind the other columns, so every column gets its turn however
+		 * many threads the pool has.
+		 */
+		private class ColumnSearch implements Runnable {
+			private final int col;
+			private final C4Position child; // position after the column
+			private int depth; // depth of the last pass
+
+			/**
+			 * Creates a ColumnSearch
+			 * 
+			 * @param col
+			 *            Column searched
+			 */
+			private ColumnSearch(int col) {
+				this.col = col;
+				this.child = new C4Position();
+				this.child.copy(position);
+				this.child.play(col);
+			}
+
+			/**
+			 * Searches the column one ply deeper, queuing the next pass unless
+			 * the column is decided, the deadline passed or the analysis was
+			 * cancelled
+			 */
+			public void run() {
+				boolean again = false;
+				try {
+					again = searchDeeper() && !cancelled
+							&& System.nanoTime() < deadline;
+					if (again)
+						pool.execute(this);
+				} finally {
+					if (!again && remaining.decrementAndGet() == 0
+							&& !cancelled)
+						listener.analysisFinished();
+				}
+			}
+
+			/**
+			 * Searches the column one ply deeper than the last pass and
+			 * reports its score
+			 * 
+			 * @return True if the column is not decided yet
+			 */
+			private boolean searchDeeper() {
+				int moveCount = position.getMoveCount();
+
+				// a winning move needs no search
+				if (C4Threats.isColumnIn(winning, col)) {
+					report((CELLS + 1 - moveCount) / 2, 1, true);
+					return false;
+				}
+
+				// the column fills the board
+				int pliesLeft = CELLS - child.getMoveCount();
+				if (pliesLeft == 0) {
+					report(0, 1, true);
+					return false;
+				}
+
+				// the opponent wins with their next move
+				if (!C4Threats.isColumnIn(nonLosing, col)) {
+					report(-(CELLS - moveCount) / 2, 2, true);
+					return false;
+				}
+
+				C4Solver solver = solvers.get();
+				solver.setDeadline(deadline);
+				try {
+					int score = -solver.search(child, ++depth);
+					if (solver.isAborted())
+						return false;
+
+					// a win or loss within the horizon is forced, a draw only
+					// once the search reaches the end of the game
+					boolean decided = score != 0 || depth == pliesLeft;
+					report(score, depth + 1, decided);
+					return !decided;
+				} finally {
+					solver.setDeadline(Long.MAX_VALUE);
+				}
+			}
+
+			/**
+			 * Tells the listener of the column's score unless the analysis
+			 * was cancelled
+			 * 
+			 * @param score
+			 *            Score of the column
+			 * @param searchedDepth
+			 *            Number of plies searched
+			 * @param decided
+			 *            True if the score is exact
+			 */
+			private void report(int score, int searchedDepth, boolean decided) {
+				if (!cancelled)
+					listener.columnScored(col, score, searchedDepth, decided);
+			}
+		}
+	}
+}
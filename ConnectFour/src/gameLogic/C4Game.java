@@ -2,12 +2,27 @@ package gameLogic;
 
 import gameExceptions.C4InvalidMoveException;
 import gameExceptions.C4InvalidCheckWinException;
+import monitoring.C4AIMoveEvent;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Game logic for the Connect Four board game
  * 
+ * The random moves of the simple AI come from the game's seed: the move
+ * drawn at a ply only depends on the seed and the ply, so a game replayed
+ * from its seed and the player's moves gets the same AI moves, even if it
+ * was parked and resumed in between.
+ * 
+ * The game also keeps its moves on a C4Position, on which the simple AI
+ * finds its winning and blocking moves with C4Threats. The position assumes
+ * the players take turns, so a move out of turn is refused, the player
+ * moving first being PLAYER_ID.
+ * 
  * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
- * @version 1.6
+ * @version 1.14
  */
 public class C4Game {
 	// two dimensional array representing the Connect Four game board
@@ -24,13 +39,47 @@ public class C4Game {
 	// counter for how many moves are being played during the game
 	private int moveCounter;
 
+	// columns played in order, the first moveCounter are the moves on the
+	// board since moves are always removed last played first
+	private byte[] moveHistory;
+
+	// seed of the random moves of the simple AI
+	private final long seed;
+
+	// bitboards of the moves on the board
+	private C4Position position;
+
 	/**
-	 * Creates a C4 game object, initializing instance variables
+	 * Creates a C4 game object with a seed of its own, drawn without any
+	 * state shared between threads
 	 */
 	public C4Game() {
+		this(ThreadLocalRandom.current().nextLong());
+	}
+
+	/**
+	 * Creates a C4 game object whose random moves come from a seed, such as
+	 * the seed of a game being replayed
+	 * 
+	 * @param seed
+	 *            Seed of the random moves of the simple AI
+	 */
+	public C4Game(long seed) {
 		gameBoard = new int[12][13];
 		moveCounter = 0;
 		colCtrs = new int[7];
+		moveHistory = new byte[42];
+		position = new C4Position();
+		this.seed = seed;
+	}
+
+	/**
+	 * Returns the seed of the random moves of the simple AI
+	 * 
+	 * @return Seed of the game
+	 */
+	public long getSeed() {
+		return seed;
 	}
 
 	/**
@@ -42,7 +91,8 @@ public class C4Game {
 	 *            Player making move
 	 * @return True or false depending on if the move was valid or not.
 	 * @throws C4InvalidMoveException
-	 *             If move player is trying to attempt is invalid
+	 *             If move player is trying to attempt is invalid or it is not
+	 *             the player's turn
 	 */
 	public boolean makeMove(int col, int player) throws C4InvalidMoveException {
 
@@ -50,6 +100,11 @@ public class C4Game {
 		if (player != PLAYER_ID && player != SERVER_ID)
 			throw new C4InvalidMoveException("Invalid player ID.");
 
+		// players take turns, the user moving first
+		if (player != ((position.getMoveCount() & 1) == 0 ? PLAYER_ID
+				: SERVER_ID))
+			throw new C4InvalidMoveException("Not the player's turn.");
+
 		// check if column out of range
 		if (col > 6 || col < 0)
 			throw new C4InvalidMoveException(
@@ -67,6 +122,8 @@ public class C4Game {
 
 		// make the move on the game board with the player's ID
 		gameBoard[playerRow][playerColumn] = player;
+		moveHistory[moveCounter] = (byte) col;
+		position.play(col);
 
 		// increment counters for the column played on and the total number of
 		// moves
@@ -78,7 +135,8 @@ public class C4Game {
 	}
 
 	/**
-	 * Removes a move played by a player on the game board.
+	 * Removes a move played by a player on the game board. Moves are removed
+	 * last played first.
 	 * 
 	 * @param col
 	 *            Column to be played in
@@ -109,6 +167,7 @@ public class C4Game {
 
 		// decrement number of total moves
 		moveCounter--;
+		position.undo(col);
 
 		// remove was successful, return true
 		return true;
@@ -149,6 +208,7 @@ public class C4Game {
 		}
 
 		// check upward-right diagonal
+		tokenCtr = 0;
 		for (int i = 0; i < 7; i++) {
 			if (gameBoard[BOTTOM_ROW - (colCtrs[col] - 1) - i + 3][col
 					+ FARTHEST_LEFT + i - 3] == player) {
@@ -159,6 +219,7 @@ public class C4Game {
 		}
 
 		// check row left to right
+		tokenCtr = 0;
 		for (int i = 0; i < 7; i++) {
 			if (gameBoard[BOTTOM_ROW - row][col + FARTHEST_LEFT - 3 + i] == player) {
 				if (++tokenCtr == 4)
@@ -168,6 +229,7 @@ public class C4Game {
 		}
 
 		// check whole column vertically
+		tokenCtr = 0;
 		for (int i = 0; i < 7; i++) {
 			if (gameBoard[BOTTOM_ROW - row - 3 + i][col + FARTHEST_LEFT] == player) {
 				if (++tokenCtr == 4)
@@ -188,56 +250,56 @@ public class C4Game {
 	 */
 	public byte[] artificialIntelligenceMakeMove()
 			throws C4InvalidMoveException {
+		C4AIMoveEvent event = beginMoveEvent("simple");
+		byte[] reply = simpleMakeMove();
+		event.column = reply[1];
+		event.depth = 1;
+		event.commit();
+		return reply;
+	}
+
+	/**
+	 * Move of the simple AI: a winning move, else a move blocking the user's
+	 * win, else a random move
+	 * 
+	 * @return Message with the column played, see
+	 *         artificialIntelligenceMakeMove()
+	 * @throws C4InvalidMoveException
+	 *             If the board is full
+	 */
+	private byte[] simpleMakeMove() throws C4InvalidMoveException {
 		byte move = 0x00;
 
-		/*
-		 * If a win for the server is possible, make a move at that place. Loops
-		 * through all columns, places a move and checks if a win is possible.
-		 * If a win is possible, make the move and end the game. If not, remove
-		 * that move.
-		 */
-		for (int i = 0; i < 7; i++) {
-			if (makeMove(i, SERVER_ID))
-				try {
-					// if server can win
-					if (checkFourConnected(colCtrs[i] - 1, i)) {
-						// return a game over message with the column index
-						return new byte[] { 0x03, (byte) i };
-					} else
-						// remove the move
-						removeMove(i);
-				} catch (C4InvalidCheckWinException e) {
-					System.out.println(e.getMessage());
-				}
+		// if a win for the server is possible, make a move at that place
+		int winningColumn = C4Threats.firstColumn(C4Threats
+				.winningMoves(position));
+		if (winningColumn >= 0) {
+			makeMove(winningColumn, SERVER_ID);
+			try {
+				if (checkFourConnected(colCtrs[winningColumn] - 1,
+						winningColumn))
+					return new byte[] { 0x03, (byte) winningColumn };
+			} catch (C4InvalidCheckWinException e) {
+				System.out.println(e.getMessage());
+			}
+
+			// if total number of moves is 42, send draw game message
+			return new byte[] { (byte) (moveCounter == 42 ? 0x04 : 0x00),
+					(byte) winningColumn };
 		}
 
-		/*
-		 * If a win for the user is possible, make a move at that place. Loops
-		 * through all columns, places a move and checks if a user's win is
-		 * possible. If a user can win, block the user there. If not, remove
-		 * that move.
-		 */
-		for (int i = 0; i < 7; i++) {
-			if (makeMove(i, PLAYER_ID))
-				try {
-					// if user can win
-					if (checkFourConnected(colCtrs[i] - 1, i)) {
-						removeMove(i); // remove user's move
-						makeMove(i, SERVER_ID); // make the server winning move
-
-						// if total number of moves is 42, send draw game
-						// message
-						if (moveCounter == 42)
-							move = 0x04;
-
-						// send message where the server's move is played
-						return new byte[] { move, (byte) i };
-					} else
-						// remove the move
-						removeMove(i);
-				} catch (C4InvalidCheckWinException e) {
-					System.out.println(e.getMessage());
-				}
+		// if a win for the user is possible, block the user there
+		int blockingColumn = C4Threats.firstColumn(C4Threats
+				.forcedMoves(position));
+		if (blockingColumn >= 0) {
+			makeMove(blockingColumn, SERVER_ID);
+
+			// if total number of moves is 42, send draw game message
+			if (moveCounter == 42)
+				move = 0x04;
+
+			// send message where the server's move is played
+			return new byte[] { move, (byte) blockingColumn };
 		}
 
 		// if user nor server can win, make a random move
@@ -252,8 +314,14 @@ public class C4Game {
 				colPossibilities++;
 			}
 
-		// random column where the move will be made
-		whereToMove = (int) Math.abs((Math.random() * colPossibilities)) + 1;
+		// nothing to draw from once the board is full
+		if (colPossibilities == 0)
+			throw new C4InvalidMoveException("Board is full.");
+
+		// random column where the move will be made, drawn from the seed and
+		// the ply
+		whereToMove = new SplittableRandom(seed + moveCounter)
+				.nextInt(colPossibilities) + 1;
 
 		// increments whereToMove for every row that is already full
 		for (int i = 0; i < whereToMove; i++) {
@@ -273,6 +341,91 @@ public class C4Game {
 		return new byte[] { move, (byte) whereToMove };
 	}
 
+	/**
+	 * AI method that searches ahead for the best move with a solver, as deep
+	 * as the time budget allows.
+	 * 
+	 * @param solver
+	 *            Solver searching the game
+	 * @param maximumDepth
+	 *            Deepest search in plies
+	 * @param timeMillis
+	 *            Time budget of the search
+	 * @return Message with the column played: 0x00 if the game goes on, 0x03
+	 *         if the move wins and 0x04 if it fills the board
+	 * @throws C4InvalidMoveException
+	 *             If the game is already over
+	 */
+	public byte[] searchMakeMove(C4Solver solver, int maximumDepth,
+			long timeMillis) throws C4InvalidMoveException {
+		if (moveCounter == 42)
+			throw new C4InvalidMoveException("The board is full.");
+
+		C4AIMoveEvent event = beginMoveEvent("search");
+		long nodes = solver.getNodes(), probes = solver.getProbes(),
+				hits = solver.getHits(), cutoffs = solver.getCutoffs(),
+				firstMoveCutoffs = solver.getMoveOrdering().getFirstMoveCutoffs();
+
+		// the solver plays on a bitboard of the same moves, copying it
+		int col = solver.findBestMove(position, maximumDepth, timeMillis);
+
+		event.end();
+		if (event.shouldCommit()) {
+			event.column = col;
+			event.depth = solver.getLastDepth();
+			event.nodes = solver.getNodes() - nodes;
+			event.probes = solver.getProbes() - probes;
+			event.hits = solver.getHits() - hits;
+			event.cutoffs = solver.getCutoffs() - cutoffs;
+			event.firstMoveCutoffs = solver.getMoveOrdering()
+					.getFirstMoveCutoffs() - firstMoveCutoffs;
+			event.commit();
+		}
+
+		makeMove(col, SERVER_ID);
+
+		try {
+			if (checkFourConnected(colCtrs[col] - 1, col))
+				return new byte[] { 0x03, (byte) col };
+		} catch (C4InvalidCheckWinException e) {
+			System.out.println(e.getMessage());
+		}
+
+		// if total number of moves is 42, send draw game message
+		return new byte[] { (byte) (moveCounter == 42 ? 0x04 : 0x00),
+				(byte) col };
+	}
+
+	/**
+	 * Starts the flight recorder event of an AI move, describing the position
+	 * moved from only if the event is recorded
+	 * 
+	 * @param engine
+	 *            AI making the move
+	 * @return Event started
+	 */
+	private C4AIMoveEvent beginMoveEvent(String engine) {
+		C4AIMoveEvent event = new C4AIMoveEvent();
+		if (event.isEnabled()) {
+			event.engine = engine;
+			event.positionKey = position.getKey();
+			event.moves = C4AIMoveEvent.formatMoves(getMoves());
+		}
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Returns a bitboard of the game, for code searching ahead
+	 * 
+	 * @return Copy of the position after the moves played so far
+	 */
+	public C4Position getPosition() {
+		C4Position copy = new C4Position();
+		copy.copy(position);
+		return copy;
+	}
+
 	/**
 	 * Returns the number of tokens in a specific column
 	 * 
@@ -284,6 +437,24 @@ public class C4Game {
 		return colCtrs[col];
 	}
 
+	/**
+	 * Returns the number of moves played in the game
+	 * 
+	 * @return Number of moves played
+	 */
+	public int getMoveCount() {
+		return moveCounter;
+	}
+
+	/**
+	 * Returns the columns played so far, in order
+	 * 
+	 * @return Moves of the game
+	 */
+	public byte[] getMoves() {
+		return Arrays.copyOf(moveHistory, moveCounter);
+	}
+
 	/**
 	 * String representation of the values of the game board
 	 */
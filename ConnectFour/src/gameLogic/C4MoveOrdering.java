@@ -0,0 +1,348 @@
+package gameLogic;
+
+import java.util.Arrays;
+
+/**
+ * Order in which C4Solver tries the moves of a position, so the best move
+ * tends to come first and the rest are cut off. Moves are ranked by, in
+ * turn:
+ * 
+ * the move of the principal variation of the previous pass of an iterative
+ * deepening search, while the search follows that variation; the number of
+ * cells where the move leaves its player one stone short of four, the
+ * opponent then having to block them, or losing; if the ordering learns,
+ * the killer moves of the ply, the last two columns that cut off a search
+ * at the same ply, then the history of the move, how often and how deep
+ * playing the same cell for the same player cut off a search; and last the
+ * distance of the column to the center, central columns being part of more
+ * lines of four.
+ * 
+ * Winning moves and the moves that must block the opponent are never
+ * ranked: the solver plays or scores them before ordering, see C4Threats.
+ * 
+ * The ordering does not learn by default. On the benchmark corpus the
+ * threats and the center cut the nodes of a solve by almost four, and the
+ * principal variation saves a few more percent in iterative deepening, but
+ * killers and history, outranking the center on weak evidence, searched
+ * more nodes both when solving and when searching to a limited depth. They
+ * are kept for C4BenchmarkApp -learning to measure against.
+ * 
+ * All state is kept in arrays of primitives indexed by ply, the ply being
+ * the number of moves of the position, so ordering allocates nothing. An
+ * ordering belongs to one solver and must only be used by one thread.
+ * 
+ * The ordering counts the searches cut off and how many of them were cut
+ * off by the first move tried, the usual measure of how good an ordering
+ * is.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4MoveOrdering {
+
+	// number of cells of the board
+	private static final int CELLS = C4Position.WIDTH * C4Position.HEIGHT;
+
+	// columns from the center outwards, where moves tend to be better
+	public static final int[] COLUMN_ORDER = { 3, 2, 4, 1, 5, 0, 6 };
+
+	// rank of each column in COLUMN_ORDER
+	private static final int[] CENTER_RANK = { 5, 3, 1, 0, 2, 4, 6 };
+
+	// bits of a move's sort key: principal variation, threats created,
+	// killer slot, history, then the column's distance to the center in the
+	// 3 lowest bits
+	private static final int PV_SHIFT = 62, THREAT_SHIFT = 56,
+			KILLER_SHIFT = 54, HISTORY_SHIFT = 3;
+
+	// history value at which every history value is halved, keeping the
+	// history below 2^51 and recent cutoffs weighing more than old ones
+	private static final int HISTORY_LIMIT = 1 << 24;
+
+	// history slots of each player, one per bit of the bitboards
+	private static final int HISTORY_SLOTS = 64;
+
+	// moves of each ply in the order they are to be tried
+	private final int[][] moves;
+	private final long[] keys; // sort keys of the ply being ordered
+
+	// two killer columns per ply, -1 if none
+	private final int[] killers;
+
+	// history of each cell for each player, the first player's first
+	private final int[] history;
+
+	// principal variation found under each ply (a triangular table, the
+	// line of ply p being stored from index p * (CELLS + 1) + p), and its
+	// length
+	private final int[] pvTable;
+	private final int[] pvEnd;
+
+	// principal variation of the previous pass, indexed by ply, and whether
+	// the search at each ply is still following it
+	private final int[] previousPv;
+	private int previousPvEnd;
+	private final boolean[] followingPv;
+
+	// whether killers and history rank the moves
+	private final boolean learning;
+
+	// searches cut off and those cut off by the first move tried
+	private long cutoffs, firstMoveCutoffs;
+
+	/**
+	 * Creates an empty C4MoveOrdering that does not learn
+	 */
+	public C4MoveOrdering() {
+		this(false);
+	}
+
+	/**
+	 * Creates an empty C4MoveOrdering
+	 * 
+	 * @param learning
+	 *            True to rank moves by the killers and history learnt from
+	 *            the cutoffs of the searches
+	 */
+	public C4MoveOrdering(boolean learning) {
+		this.learning = learning;
+		moves = new int[CELLS + 1][C4Position.WIDTH];
+		keys = new long[C4Position.WIDTH];
+		killers = new int[2 * (CELLS + 1)];
+		history = new int[2 * HISTORY_SLOTS];
+		pvTable = new int[(CELLS + 1) * (CELLS + 1)];
+		pvEnd = new int[CELLS + 1];
+		previousPv = new int[CELLS + 1];
+		followingPv = new boolean[CELLS + 2];
+		clear();
+	}
+
+	/**
+	 * Forgets the killers, the history and the principal variation, so a
+	 * search does not depend on the searches before it
+	 */
+	public void clear() {
+		Arrays.fill(killers, -1);
+		Arrays.fill(history, 0);
+		previousPvEnd = 0;
+		Arrays.fill(followingPv, false);
+	}
+
+	/**
+	 * Orders the moves of a position
+	 * 
+	 * @param position
+	 *            Position moved from
+	 * @param candidates
+	 *            Bitboard of the moves to order, at most one per column, see
+	 *            C4Threats
+	 * @return Number of moves, which getMove() then returns in order
+	 */
+	public int order(C4Position position, long candidates) {
+		int ply = position.getMoveCount();
+		long current = position.getCurrentStones(), mask = position.getMask();
+		int side = (ply & 1) * HISTORY_SLOTS;
+		int pvMove = followingPv[ply] && ply < previousPvEnd ? previousPv[ply]
+				: -1;
+		int count = 0;
+
+		for (int col = 0; col < C4Position.WIDTH; col++) {
+			long cell = candidates & C4Position.columnMask(col);
+			if (cell == 0)
+				continue;
+
+			long threats = C4Threats.winningCells(current | cell, mask | cell);
+			long key = (long) Long.bitCount(threats) << THREAT_SHIFT;
+			if (col == pvMove)
+				key |= 1L << PV_SHIFT;
+			if (learning) {
+				if (col == killers[2 * ply])
+					key |= 2L << KILLER_SHIFT;
+				else if (col == killers[2 * ply + 1])
+					key |= 1L << KILLER_SHIFT;
+				key |= (long) history[side
+						+ Long.numberOfTrailingZeros(cell)] << HISTORY_SHIFT;
+			}
+			key |= C4Position.WIDTH - 1 - CENTER_RANK[col];
+
+			// insertion sort, highest key first
+			int i = count++;
+			while (i > 0 && keys[i - 1] < key) {
+				keys[i] = keys[i - 1];
+				i--;
+			}
+			keys[i] = key;
+		}
+
+		for (int i = 0; i < count; i++)
+			moves[ply][i] = COLUMN_ORDER[C4Position.WIDTH - 1
+					- (int) (keys[i] & 7)];
+		return count;
+	}
+
+	/**
+	 * Returns a move ordered by the last call to order() for a ply
+	 * 
+	 * @param ply
+	 *            Number of moves of the position
+	 * @param index
+	 *            Rank of the move, 0 for the move to try first
+	 * @return Column of the move
+	 */
+	public int getMove(int ply, int index) {
+		return moves[ply][index];
+	}
+
+	/**
+	 * Starts the search of a position, its principal variation being empty
+	 * until a move raises its score
+	 * 
+	 * @param ply
+	 *            Number of moves of the position
+	 */
+	public void enter(int ply) {
+		pvEnd[ply] = ply;
+	}
+
+	/**
+	 * Tells the ordering a move is about to be searched, so the search
+	 * under it follows the previous principal variation only if the move
+	 * is on it
+	 * 
+	 * @param ply
+	 *            Number of moves of the position moved from
+	 * @param col
+	 *            Column of the move
+	 */
+	public void descend(int ply, int col) {
+		followingPv[ply + 1] = followingPv[ply] && ply < previousPvEnd
+				&& previousPv[ply] == col;
+	}
+
+	/**
+	 * Records a move raising the score of a position, making it the first
+	 * move of the position's principal variation
+	 * 
+	 * @param ply
+	 *            Number of moves of the position
+	 * @param col
+	 *            Column of the move
+	 */
+	public void improved(int ply, int col) {
+		int line = ply * (CELLS + 1), childLine = (ply + 1) * (CELLS + 1);
+		pvTable[line + ply] = col;
+
+		int end = ply + 1;
+		if (ply < CELLS)
+			for (; end < pvEnd[ply + 1]; end++)
+				pvTable[line + end] = pvTable[childLine + end];
+		pvEnd[ply] = end;
+	}
+
+	/**
+	 * Records a move cutting off the search of a position, making it a
+	 * killer of the ply and adding to its history if the ordering learns
+	 * 
+	 * @param position
+	 *            Position moved from
+	 * @param col
+	 *            Column of the move
+	 * @param index
+	 *            Rank the move was tried at
+	 * @param depth
+	 *            Number of plies searched under the position
+	 */
+	public void cutoff(C4Position position, int col, int index, int depth) {
+		int ply = position.getMoveCount();
+		cutoffs++;
+		if (index == 0)
+			firstMoveCutoffs++;
+		if (!learning)
+			return;
+
+		if (killers[2 * ply] != col) {
+			killers[2 * ply + 1] = killers[2 * ply];
+			killers[2 * ply] = col;
+		}
+
+		long cell = (position.getMask() + C4Position.bottomMask(col))
+				& C4Position.columnMask(col);
+		int slot = (ply & 1) * HISTORY_SLOTS + Long.numberOfTrailingZeros(cell);
+		history[slot] += depth * depth;
+		if (history[slot] >= HISTORY_LIMIT)
+			for (int i = 0; i < history.length; i++)
+				history[i] >>= 1;
+	}
+
+	/**
+	 * Starts a pass of an iterative deepening search, the principal
+	 * variation of the previous pass being tried first
+	 * 
+	 * @param ply
+	 *            Number of moves of the root position
+	 */
+	public void startPass(int ply) {
+		followingPv[ply] = true;
+	}
+
+	/**
+	 * Ends a finished pass of an iterative deepening search, keeping its
+	 * principal variation for the next pass
+	 * 
+	 * @param ply
+	 *            Number of moves of the root position
+	 */
+	public void endPass(int ply) {
+		int line = ply * (CELLS + 1);
+		for (int i = ply; i < pvEnd[ply]; i++)
+			previousPv[i] = pvTable[line + i];
+		previousPvEnd = pvEnd[ply];
+	}
+
+	/**
+	 * Ends an iterative deepening search, later searches not following its
+	 * principal variation
+	 * 
+	 * @param ply
+	 *            Number of moves of the root position
+	 */
+	public void endSearch(int ply) {
+		followingPv[ply] = false;
+		previousPvEnd = 0;
+	}
+
+	/**
+	 * Returns the number of searches cut off since the last reset
+	 * 
+	 * @return Number of cutoffs
+	 */
+	public long getCutoffs() {
+		return cutoffs;
+	}
+
+	/**
+	 * Returns the number of searches cut off by the first move tried
+	 * 
+	 * @return Number of first move cutoffs
+	 */
+	public long getFirstMoveCutoffs() {
+		return firstMoveCutoffs;
+	}
+
+	/**
+	 * Returns the share of the cutoffs made by the first move tried
+	 * 
+	 * @return Rate between 0 and 1, 0 if there was no cutoff
+	 */
+	public double getFirstMoveCutoffRate() {
+		return cutoffs > 0 ? (double) firstMoveCutoffs / cutoffs : 0;
+	}
+
+	/**
+	 * Resets the statistics of the ordering
+	 */
+	public void resetStatistics() {
+		cutoffs = 0;
+		firstMoveCutoffs = 0;
+	}
+}
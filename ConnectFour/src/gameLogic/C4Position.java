@@ -0,0 +1,324 @@
+package gameLogic;
+
+/**
+ * Connect Four position held in two bitboards, for code that plays through
+ * many positions, such as replaying archived games or searching ahead.
+ * 
+ * Each column takes 7 bits of a long, 6 for its cells from the bottom up and
+ * a spare bit on top so a line of four cannot wrap from one column into the
+ * next. One bitboard holds the stones of the player to move, the other every
+ * stone on the board. Playing a move and checking for four in a row are a
+ * handful of shifts and masks, without any allocation.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.2
+ */
+public class C4Position {
+
+	// size of the board
+	public static final int WIDTH = 7, HEIGHT = 6;
+
+	// bits used by a column, including its spare bit
+	private static final int COLUMN_BITS = HEIGHT + 1;
+
+	// lowest cell of every column
+	private static final long BOTTOM = bottomMask();
+
+	// every cell of the board
+	private static final long BOARD = BOTTOM * ((1L << HEIGHT) - 1);
+
+	// stones of the player to move, and every stone on the board
+	private long current, mask;
+	private int moveCount;
+
+	/**
+	 * Creates an empty C4Position
+	 */
+	public C4Position() {
+	}
+
+	/**
+	 * Creates a C4Position from the moves played from an empty board
+	 * 
+	 * @param moves
+	 *            Columns played in order
+	 * @throws IllegalArgumentException
+	 *             If a move is not legal
+	 */
+	public C4Position(byte[] moves) {
+		for (byte col : moves) {
+			if (col < 0 || col >= WIDTH || !canPlay(col))
+				throw new IllegalArgumentException("Illegal move in column "
+						+ col + ".");
+			play(col);
+		}
+	}
+
+	/**
+	 * Empties the board
+	 */
+	public void reset() {
+		current = 0;
+		mask = 0;
+		moveCount = 0;
+	}
+
+	/**
+	 * Copies another position into this one
+	 * 
+	 * @param other
+	 *            Position to copy
+	 */
+	public void copy(C4Position other) {
+		current = other.current;
+		mask = other.mask;
+		moveCount = other.moveCount;
+	}
+
+	/**
+	 * Returns whether a column can still be played
+	 * 
+	 * @param col
+	 *            Column between 0 and 6
+	 * @return True if the column is not full
+	 */
+	public boolean canPlay(int col) {
+		return (mask & topMask(col)) == 0;
+	}
+
+	/**
+	 * Plays a move for the player to move. The column must not be full.
+	 * 
+	 * @param col
+	 *            Column between 0 and 6
+	 */
+	public void play(int col) {
+		current ^= mask;
+		mask |= mask + bottomMask(col);
+		moveCount++;
+	}
+
+	/**
+	 * Takes back the last move, which was played in a column
+	 * 
+	 * @param col
+	 *            Column of the last move
+	 */
+	public void undo(int col) {
+		mask ^= Long.highestOneBit(mask & columnMask(col));
+		current ^= mask;
+		moveCount--;
+	}
+
+	/**
+	 * Plays a move given as the bitboard of the cell it fills
+	 * 
+	 * @param move
+	 *            Bitboard holding the single cell played
+	 */
+	public void playCell(long move) {
+		current ^= mask;
+		mask |= move;
+		moveCount++;
+	}
+
+	/**
+	 * Returns whether playing a column makes four in a row for the player to
+	 * move. The column must not be full.
+	 * 
+	 * @param col
+	 *            Column between 0 and 6
+	 * @return True if the move wins the game
+	 */
+	public boolean isWinningMove(int col) {
+		long stones = current | (mask + bottomMask(col)) & columnMask(col);
+		return hasFourInARow(stones);
+	}
+
+	/**
+	 * Returns whether the player who made the last move has four in a row
+	 * 
+	 * @return True if the game was won by the last move
+	 */
+	public boolean isWon() {
+		return hasFourInARow(current ^ mask);
+	}
+
+	/**
+	 * Returns whether the board is full
+	 * 
+	 * @return True if all 42 cells are filled
+	 */
+	public boolean isFull() {
+		return moveCount == WIDTH * HEIGHT;
+	}
+
+	/**
+	 * Returns the number of moves played
+	 * 
+	 * @return Number of stones on the board
+	 */
+	public int getMoveCount() {
+		return moveCount;
+	}
+
+	/**
+	 * Returns the number of stones in a column
+	 * 
+	 * @param col
+	 *            Column between 0 and 6
+	 * @return Height of the column
+	 */
+	public int getHeight(int col) {
+		return Long.bitCount(mask & columnMask(col));
+	}
+
+	/**
+	 * Returns the stones of the player to move
+	 * 
+	 * @return Bitboard of the player to move
+	 */
+	public long getCurrentStones() {
+		return current;
+	}
+
+	/**
+	 * Returns every stone on the board
+	 * 
+	 * @return Bitboard of the filled cells
+	 */
+	public long getMask() {
+		return mask;
+	}
+
+	/**
+	 * Returns a key identifying the position. Two positions have the same key
+	 * only if they have the same stones and the same player to move, whatever
+	 * the order their moves were played in. The key always fits in 49 bits.
+	 * 
+	 * @return Key of the position
+	 */
+	public long getKey() {
+		return current + mask + BOTTOM;
+	}
+
+	/**
+	 * Returns the key of the position mirrored left to right, so a position
+	 * and its mirror image can be told to be the same by the smaller of their
+	 * two keys
+	 * 
+	 * @return Key of the mirrored position
+	 */
+	public long getMirrorKey() {
+		// each column of a key is its own 7 bits, the columns are reversed
+		long key = getKey(), mirrored = 0;
+		for (int col = 0; col < WIDTH; col++) {
+			long column = key >>> col * COLUMN_BITS & (1L << COLUMN_BITS) - 1;
+			mirrored |= column << (WIDTH - 1 - col) * COLUMN_BITS;
+		}
+		return mirrored;
+	}
+
+	/**
+	 * Sets the position to the one a key was returned for by getKey()
+	 * 
+	 * @param key
+	 *            Key of the position
+	 */
+	public void setKey(long key) {
+		current = 0;
+		mask = 0;
+
+		// a column of a key is its current stones plus the bit above its
+		// highest stone
+		for (int col = 0; col < WIDTH; col++) {
+			long column = key >>> col * COLUMN_BITS & (1L << COLUMN_BITS) - 1;
+			long top = Long.highestOneBit(column);
+			mask |= top - 1 << col * COLUMN_BITS;
+			current |= column - top << col * COLUMN_BITS;
+		}
+		moveCount = Long.bitCount(mask);
+	}
+
+	/**
+	 * Returns the bitboard of the cells playable on the next move
+	 * 
+	 * @return Lowest empty cell of every column that is not full
+	 */
+	public long getPlayableCells() {
+		return (mask + BOTTOM) & BOARD;
+	}
+
+	/**
+	 * Returns whether a bitboard holds four stones in a row in any direction
+	 * 
+	 * @param stones
+	 *            Bitboard of a player's stones
+	 * @return True if four of them are in a row
+	 */
+	public static boolean hasFourInARow(long stones) {
+		// horizontal
+		long pairs = stones & (stones >>> COLUMN_BITS);
+		if ((pairs & (pairs >>> 2 * COLUMN_BITS)) != 0)
+			return true;
+
+		// diagonal going down to the right
+		pairs = stones & (stones >>> HEIGHT);
+		if ((pairs & (pairs >>> 2 * HEIGHT)) != 0)
+			return true;
+
+		// diagonal going up to the right
+		pairs = stones & (stones >>> (HEIGHT + 2));
+		if ((pairs & (pairs >>> 2 * (HEIGHT + 2))) != 0)
+			return true;
+
+		// vertical
+		pairs = stones & (stones >>> 1);
+		return (pairs & (pairs >>> 2)) != 0;
+	}
+
+	/**
+	 * Returns the bitboard of the bottom cell of a column
+	 * 
+	 * @param col
+	 *            Column between 0 and 6
+	 * @return Bitboard of the cell
+	 */
+	public static long bottomMask(int col) {
+		return 1L << col * COLUMN_BITS;
+	}
+
+	/**
+	 * Returns the bitboard of the top cell of a column
+	 * 
+	 * @param col
+	 *            Column between 0 and 6
+	 * @return Bitboard of the cell
+	 */
+	public static long topMask(int col) {
+		return 1L << (HEIGHT - 1) << col * COLUMN_BITS;
+	}
+
+	/**
+	 * Returns the bitboard of every cell of a column
+	 * 
+	 * @param col
+	 *            Column between 0 and 6
+	 * @return Bitboard of the column
+	 */
+	public static long columnMask(int col) {
+		return ((1L << HEIGHT) - 1) << col * COLUMN_BITS;
+	}
+
+	/**
+	 * Computes the bitboard of the bottom cell of every column
+	 * 
+	 * @return Bitboard of the bottom row
+	 */
+	private static long bottomMask() {
+		long bottom = 0;
+		for (int col = 0; col < WIDTH; col++)
+			bottom |= bottomMask(col);
+		return bottom;
+	}
+}
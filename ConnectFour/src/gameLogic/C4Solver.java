@@ -0,0 +1,438 @@
+package gameLogic;
+
+/**
+ * Negamax search with alpha-beta pruning over C4Position, backed by a
+ * transposition table that may be shared with other solvers.
+ * 
+ * Scores are from the point of view of the player to move: a win is worth
+ * the number of that player's stones left unplayed when it happens, plus
+ * one, so a quicker win scores higher; a loss is the opposite and a draw is
+ * 0. A search limited in depth scores the positions it stops at as 0.
+ * 
+ * A solver keeps per-search state and must only be used by one thread; each
+ * thread searching uses its own solver on the shared table.
+ * 
+ * Only the moves that do not let the opponent win right away are searched,
+ * as told by C4Threats; a position where every move does is scored as lost
+ * without searching further. They are tried in the order of the solver's
+ * C4MoveOrdering, which ranks them by the threats they make and, in
+ * findBestMove(), tries the principal variation of the previous pass first.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.4
+ */
+public class C4Solver {
+
+	// number of cells of the board
+	private static final int CELLS = C4Position.WIDTH * C4Position.HEIGHT;
+
+	// highest and lowest score possible
+	public static final int MAXIMUM_SCORE = (CELLS + 1) / 2 - 3,
+			MINIMUM_SCORE = -CELLS / 2 + 3;
+
+	// nodes searched between two checks of the deadline
+	private static final int DEADLINE_CHECK_NODES = 4096;
+
+	private C4TranspositionTable table;
+
+	// order the moves of each position are tried in
+	private C4MoveOrdering ordering;
+
+	// position at each ply of the search, reused from one search to the next
+	private C4Position[] stack;
+
+	// statistics of the searches since the last reset
+	private long nodes, probes, hits, cutoffs;
+
+	// time after which an iterative deepening search gives up, in
+	// System.nanoTime() units, and whether it did
+	private long deadline;
+	private boolean aborted;
+
+	// depth of the deepest pass finished by the last findBestMove()
+	private int lastDepth;
+
+	/**
+	 * Creates a C4Solver searching with a transposition table
+	 * 
+	 * @param table
+	 *            Transposition table, possibly shared with other solvers
+	 */
+	public C4Solver(C4TranspositionTable table) {
+		this(table, new C4MoveOrdering());
+	}
+
+	/**
+	 * Creates a C4Solver searching with a transposition table and trying
+	 * moves in a specific order
+	 * 
+	 * @param table
+	 *            Transposition table, possibly shared with other solvers
+	 * @param ordering
+	 *            Move ordering, used by this solver only
+	 */
+	public C4Solver(C4TranspositionTable table, C4MoveOrdering ordering) {
+		this.table = table;
+		this.ordering = ordering;
+		this.stack = new C4Position[CELLS + 1];
+		for (int i = 0; i < stack.length; i++)
+			stack[i] = new C4Position();
+		this.deadline = Long.MAX_VALUE;
+	}
+
+	/**
+	 * Solves a position exactly
+	 * 
+	 * @param position
+	 *            Position to solve, which must not be won already
+	 * @return Exact score of the position
+	 */
+	public int solve(C4Position position) {
+		int moveCount = position.getMoveCount();
+		if (C4Threats.winningMoves(position) != 0)
+			return (CELLS + 1 - moveCount) / 2;
+
+		// narrow the score down with null window searches
+		int min = -(CELLS - moveCount) / 2;
+		int max = (CELLS + 1 - moveCount) / 2;
+		while (min < max) {
+			int middle = min + (max - min) / 2;
+			if (middle <= 0 && min / 2 < middle)
+				middle = min / 2;
+			else if (middle >= 0 && max / 2 > middle)
+				middle = max / 2;
+
+			int score = search(position, middle, middle + 1, CELLS);
+			if (score <= middle)
+				max = score;
+			else
+				min = score;
+		}
+		return min;
+	}
+
+	/**
+	 * Searches a position to a limited depth with a full window
+	 * 
+	 * @param position
+	 *            Position to search, which must not be won already
+	 * @param depth
+	 *            Number of plies searched
+	 * @return Score of the position, exact if the depth reaches the end of
+	 *         the game
+	 */
+	public int search(C4Position position, int depth) {
+		return search(position, -CELLS, CELLS, depth);
+	}
+
+	/**
+	 * Searches a position to a limited depth within a window
+	 * 
+	 * @param position
+	 *            Position to search, which must not be won already
+	 * @param alpha
+	 *            Score the player to move is already sure of
+	 * @param beta
+	 *            Score the opponent is already sure to hold the player to
+	 * @param depth
+	 *            Number of plies searched
+	 * @return Score of the position if within the window, otherwise a bound
+	 *         on the side of the window it fell out of
+	 */
+	public int search(C4Position position, int alpha, int beta, int depth) {
+		stack[position.getMoveCount()].copy(position);
+		return negamax(position.getMoveCount(), alpha, beta, depth);
+	}
+
+	/**
+	 * Finds the best move of a position by iterative deepening, searching one
+	 * ply deeper each pass until the maximum depth or the time budget is
+	 * reached. A win found by a pass ends the search early.
+	 * 
+	 * @param position
+	 *            Position to move from, which must not be won or full
+	 * @param maximumDepth
+	 *            Deepest search, in plies
+	 * @param timeMillis
+	 *            Time budget, the deepest pass finished in time is used
+	 * @return Column of the best move
+	 */
+	public int findBestMove(C4Position position, int maximumDepth,
+			long timeMillis) {
+		int moveCount = position.getMoveCount();
+		C4Position root = stack[moveCount];
+		root.copy(position);
+
+		// a winning move needs no search
+		lastDepth = 1;
+		long winning = C4Threats.winningMoves(root);
+		for (int col : C4MoveOrdering.COLUMN_ORDER)
+			if (C4Threats.isColumnIn(winning, col))
+				return col;
+		lastDepth = 0;
+
+		// moves letting the opponent win are only searched if all do
+		long moves = C4Threats.nonLosingMoves(root);
+		if (moves == 0)
+			moves = root.getPlayableCells();
+
+		int bestMove = -1;
+		for (int col : C4MoveOrdering.COLUMN_ORDER)
+			if (C4Threats.isColumnIn(moves, col)) {
+				bestMove = col;
+				break;
+			}
+
+		deadline = System.nanoTime() + timeMillis * 1000000;
+		aborted = false;
+		maximumDepth = Math.min(maximumDepth, CELLS - moveCount);
+
+		try {
+			for (int depth = 1; depth <= maximumDepth; depth++) {
+				int passBest = -1, alpha = -CELLS;
+
+				// the best move of the previous pass is tried first
+				ordering.startPass(moveCount);
+				ordering.enter(moveCount);
+				int count = ordering.order(root, moves);
+				for (int i = 0; i < count; i++) {
+					int col = ordering.getMove(moveCount, i);
+					C4Position child = stack[moveCount + 1];
+					child.copy(root);
+					child.play(col);
+					ordering.descend(moveCount, col);
+					int score = -negamax(moveCount + 1, -CELLS, -alpha,
+							depth - 1);
+					if (aborted)
+						break;
+
+					if (passBest < 0 || score > alpha) {
+						alpha = score;
+						passBest = col;
+						ordering.improved(moveCount, col);
+					}
+				}
+
+				// an unfinished pass is not compared against
+				if (aborted)
+					break;
+				ordering.endPass(moveCount);
+				bestMove = passBest;
+				lastDepth = depth;
+
+				// the game is decided, searching deeper changes nothing
+				if (alpha > 0)
+					break;
+			}
+		} finally {
+			deadline = Long.MAX_VALUE;
+			ordering.endSearch(moveCount);
+		}
+		return bestMove;
+	}
+
+	/**
+	 * Sets the time after which searches give up. A search that gave up
+	 * returns 0 and isAborted() tells so until the next deadline is set.
+	 * 
+	 * @param deadline
+	 *            Time in System.nanoTime() units, Long.MAX_VALUE for none
+	 */
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+		this.aborted = false;
+	}
+
+	/**
+	 * Returns whether a search gave up at the deadline
+	 * 
+	 * @return True if the last search was not finished
+	 */
+	public boolean isAborted() {
+		return aborted;
+	}
+
+	/**
+	 * Returns the depth of the deepest pass finished by the last call to
+	 * findBestMove(), 1 if it played a winning move without searching
+	 * 
+	 * @return Depth in plies, 0 if no pass was finished in time
+	 */
+	public int getLastDepth() {
+		return lastDepth;
+	}
+
+	/**
+	 * Returns the number of positions searched since the last reset
+	 * 
+	 * @return Number of nodes
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Returns the number of transposition table lookups since the last reset
+	 * 
+	 * @return Number of probes
+	 */
+	public long getProbes() {
+		return probes;
+	}
+
+	/**
+	 * Returns the number of lookups that found the position
+	 * 
+	 * @return Number of hits
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of searches cut off by a score above the window
+	 * 
+	 * @return Number of beta cutoffs
+	 */
+	public long getCutoffs() {
+		return cutoffs;
+	}
+
+	/**
+	 * Resets the statistics of the solver
+	 */
+	public void resetStatistics() {
+		nodes = 0;
+		probes = 0;
+		hits = 0;
+		cutoffs = 0;
+		ordering.resetStatistics();
+	}
+
+	/**
+	 * Returns the move ordering of the solver, with its cutoff statistics
+	 * 
+	 * @return Move ordering
+	 */
+	public C4MoveOrdering getMoveOrdering() {
+		return ordering;
+	}
+
+	/**
+	 * Returns the transposition table of the solver
+	 * 
+	 * @return Transposition table
+	 */
+	public C4TranspositionTable getTable() {
+		return table;
+	}
+
+	/**
+	 * Negamax search of the position at a ply of the stack
+	 * 
+	 * @param ply
+	 *            Ply of the position in the stack
+	 * @param alpha
+	 *            Lower end of the window
+	 * @param beta
+	 *            Upper end of the window
+	 * @param depth
+	 *            Number of plies left to search
+	 * @return Score of the position, or a bound outside the window
+	 */
+	private int negamax(int ply, int alpha, int beta, int depth) {
+		C4Position position = stack[ply];
+		nodes++;
+		ordering.enter(ply);
+
+		if ((nodes & DEADLINE_CHECK_NODES - 1) == 0
+				&& deadline != Long.MAX_VALUE && System.nanoTime() > deadline)
+			aborted = true;
+		if (aborted)
+			return 0;
+
+		int moveCount = position.getMoveCount();
+		if (moveCount == CELLS)
+			return 0; // draw, the board is full
+
+		if (C4Threats.winningMoves(position) != 0)
+			return (CELLS + 1 - moveCount) / 2;
+
+		// every move lets the opponent win on their next move
+		long next = C4Threats.nonLosingMoves(position);
+		if (next == 0)
+			return -(CELLS - moveCount) / 2;
+
+		depth = Math.min(depth, CELLS - moveCount);
+		if (depth <= 0)
+			return 0; // unknown, scored as even
+
+		// the opponent cannot win before their second move
+		int min = -(CELLS - 2 - moveCount) / 2;
+		if (alpha < min) {
+			alpha = min;
+			if (alpha >= beta)
+				return alpha;
+		}
+
+		// the player to move cannot win before their next move
+		int max = (CELLS - 1 - moveCount) / 2;
+
+		long key = position.getKey();
+		probes++;
+		long entry = table.probe(key);
+		if (entry != 0 && C4TranspositionTable.getDepth(entry) >= depth) {
+			hits++;
+			int score = C4TranspositionTable.getScore(entry);
+			switch (C4TranspositionTable.getFlag(entry)) {
+			case C4TranspositionTable.EXACT:
+				return score;
+			case C4TranspositionTable.LOWER_BOUND:
+				alpha = Math.max(alpha, score);
+				break;
+			case C4TranspositionTable.UPPER_BOUND:
+				max = Math.min(max, score);
+				break;
+			}
+		}
+
+		if (beta > max) {
+			beta = max;
+			if (alpha >= beta)
+				return beta;
+		}
+		if (alpha >= beta)
+			return alpha;
+
+		int originalAlpha = alpha;
+		C4Position child = stack[ply + 1];
+
+		int count = ordering.order(position, next);
+		for (int i = 0; i < count; i++) {
+			int col = ordering.getMove(ply, i);
+			child.copy(position);
+			child.play(col);
+			ordering.descend(ply, col);
+			int score = -negamax(ply + 1, -beta, -alpha, depth - 1);
+			if (aborted)
+				return 0;
+
+			if (score >= beta) {
+				cutoffs++;
+				ordering.cutoff(position, col, i, depth);
+				table.store(key, depth, C4TranspositionTable.LOWER_BOUND,
+						score);
+				return score;
+			}
+			if (score > alpha) {
+				alpha = score;
+				ordering.improved(ply, col);
+			}
+		}
+
+		table.store(key, depth, alpha > originalAlpha
+				? C4TranspositionTable.EXACT : C4TranspositionTable.UPPER_BOUND,
+				alpha);
+		return alpha;
+	}
+}
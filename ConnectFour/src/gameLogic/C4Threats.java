@@ -0,0 +1,267 @@
+package gameLogic;
+
+/**
+ * Threats of a C4Position computed on its bitboards: the empty cells where
+ * either side would complete four in a row, and from them the moves that win
+ * right away, the moves forced to block the opponent and the moves that do
+ * not hand the opponent a win. Each is a few dozen shifts and masks for the
+ * whole board, instead of trying every column in turn.
+ * 
+ * Moves are returned as bitboards of the cells they fill, at most one per
+ * column; firstColumn() and isColumnIn() turn them into columns.
+ * 
+ * The rows are numbered from 1 at the bottom. When the board fills up, the
+ * first player tends to get the odd rows and the second player the even
+ * rows, so a threat on an odd row is worth most to the first player and one
+ * on an even row to the second player (zugzwang). zugzwangControl() applies
+ * the usual rules of thumb to tell which side that favours.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public final class C4Threats {
+
+	// sides, as returned by zugzwangControl()
+	public static final int NO_PLAYER = 0, FIRST_PLAYER = 1, SECOND_PLAYER = 2;
+
+	// shifts between neighbouring cells: up, right and both diagonals
+	private static final int UP = 1, RIGHT = C4Position.HEIGHT + 1,
+			DOWN_RIGHT = C4Position.HEIGHT, UP_RIGHT = C4Position.HEIGHT + 2;
+
+	// every cell of the board, its bottom row, and the cells of the odd and
+	// even rows
+	private static final long BOARD, BOTTOM, ODD_ROWS, EVEN_ROWS;
+
+	static {
+		long board = 0, bottom = 0, odd = 0;
+		for (int col = 0; col < C4Position.WIDTH; col++) {
+			board |= C4Position.columnMask(col);
+			bottom |= C4Position.bottomMask(col);
+			odd |= 0x15L * C4Position.bottomMask(col);
+		}
+		BOARD = board;
+		BOTTOM = bottom;
+		ODD_ROWS = odd;
+		EVEN_ROWS = board & ~odd;
+	}
+
+	private C4Threats() {
+	}
+
+	/**
+	 * Returns the empty cells where a side would complete four in a row
+	 * 
+	 * @param stones
+	 *            Bitboard of the side's stones
+	 * @param mask
+	 *            Bitboard of every stone on the board
+	 * @return Bitboard of the winning cells, playable or not
+	 */
+	public static long winningCells(long stones, long mask) {
+		// three stones straight below
+		long cells = (stones << UP) & (stones << 2 * UP) & (stones << 3 * UP);
+
+		cells |= lineCells(stones, RIGHT);
+		cells |= lineCells(stones, DOWN_RIGHT);
+		cells |= lineCells(stones, UP_RIGHT);
+
+		return cells & (BOARD ^ mask);
+	}
+
+	/**
+	 * Returns the empty cells where the player to move would complete four
+	 * 
+	 * @param position
+	 *            Position
+	 * @return Bitboard of the cells
+	 */
+	public static long currentWinningCells(C4Position position) {
+		return winningCells(position.getCurrentStones(), position.getMask());
+	}
+
+	/**
+	 * Returns the empty cells where the player who just moved would complete
+	 * four
+	 * 
+	 * @param position
+	 *            Position
+	 * @return Bitboard of the cells
+	 */
+	public static long opponentWinningCells(C4Position position) {
+		return winningCells(
+				position.getCurrentStones() ^ position.getMask(),
+				position.getMask());
+	}
+
+	/**
+	 * Returns the moves winning the game right away for the player to move
+	 * 
+	 * @param position
+	 *            Position
+	 * @return Bitboard of the winning moves
+	 */
+	public static long winningMoves(C4Position position) {
+		return currentWinningCells(position) & position.getPlayableCells();
+	}
+
+	/**
+	 * Returns the moves the player to move must make to stop the opponent
+	 * from winning on their next move. More than one means the opponent wins
+	 * whatever is played, unless the player to move wins first.
+	 * 
+	 * @param position
+	 *            Position
+	 * @return Bitboard of the forced moves, 0 if none
+	 */
+	public static long forcedMoves(C4Position position) {
+		return opponentWinningCells(position) & position.getPlayableCells();
+	}
+
+	/**
+	 * Returns the moves after which the opponent cannot win on their next
+	 * move: the forced move if there is one, otherwise every move that does
+	 * not fill the cell below a winning cell of the opponent. Winning moves of
+	 * the player to move are not looked for.
+	 * 
+	 * @param position
+	 *            Position
+	 * @return Bitboard of the non-losing moves, 0 if every move loses
+	 */
+	public static long nonLosingMoves(C4Position position) {
+		long moves = position.getPlayableCells();
+		long opponentCells = opponentWinningCells(position);
+		long forced = moves & opponentCells;
+
+		if (forced != 0) {
+			// two threats cannot both be blocked
+			if ((forced & (forced - 1)) != 0)
+				return 0;
+			moves = forced;
+		}
+
+		// playing below an opponent's winning cell lets them complete it
+		return moves & ~(opponentCells >>> UP);
+	}
+
+	/**
+	 * Returns whether a side's winning cells make a threat that cannot be
+	 * parried: two of them playable at once, or one playable with another
+	 * straight above it.
+	 * 
+	 * @param cells
+	 *            Winning cells of the side, see winningCells()
+	 * @param mask
+	 *            Bitboard of every stone on the board
+	 * @return True if the side wins unless the other side wins first
+	 */
+	public static boolean isDoubleThreat(long cells, long mask) {
+		long playable = cells & (mask + BOTTOM) & BOARD;
+		return (playable & (playable - 1)) != 0
+				|| (playable & (cells >>> UP)) != 0;
+	}
+
+	/**
+	 * Returns the cells of a bitboard on the odd rows, the first, third and
+	 * fifth from the bottom
+	 * 
+	 * @param cells
+	 *            Bitboard of cells, such as threats
+	 * @return Cells on odd rows
+	 */
+	public static long oddThreats(long cells) {
+		return cells & ODD_ROWS;
+	}
+
+	/**
+	 * Returns the cells of a bitboard on the even rows
+	 * 
+	 * @param cells
+	 *            Bitboard of cells, such as threats
+	 * @return Cells on even rows
+	 */
+	public static long evenThreats(long cells) {
+		return cells & EVEN_ROWS;
+	}
+
+	/**
+	 * Tells which side the threats favour once the board fills up. The first
+	 * player is favoured by an odd threat with no threat of the second player
+	 * below it in its column; failing that, the second player is favoured by
+	 * any even threat. This is a rule of thumb for evaluating and hinting,
+	 * not a proof.
+	 * 
+	 * @param position
+	 *            Position
+	 * @return FIRST_PLAYER, SECOND_PLAYER or NO_PLAYER
+	 */
+	public static int zugzwangControl(C4Position position) {
+		boolean firstToMove = (position.getMoveCount() & 1) == 0;
+		long current = currentWinningCells(position);
+		long opponent = opponentWinningCells(position);
+		long first = firstToMove ? current : opponent;
+		long second = firstToMove ? opponent : current;
+
+		for (int col = 0; col < C4Position.WIDTH; col++) {
+			long odd = first & ODD_ROWS & C4Position.columnMask(col);
+			if (odd == 0)
+				continue;
+
+			// the lowest odd threat counts unless the second player has a
+			// threat under it, which they would get first
+			long lowest = odd & -odd;
+			if ((second & C4Position.columnMask(col) & (lowest - 1)) == 0)
+				return FIRST_PLAYER;
+		}
+
+		return (second & EVEN_ROWS) != 0 ? SECOND_PLAYER : NO_PLAYER;
+	}
+
+	/**
+	 * Returns the leftmost column of a bitboard of moves
+	 * 
+	 * @param moves
+	 *            Bitboard of moves
+	 * @return Column between 0 and 6, -1 if there is no move
+	 */
+	public static int firstColumn(long moves) {
+		if (moves == 0)
+			return -1;
+		return Long.numberOfTrailingZeros(moves) / RIGHT;
+	}
+
+	/**
+	 * Returns whether a bitboard of moves holds a move in a column
+	 * 
+	 * @param moves
+	 *            Bitboard of moves
+	 * @param col
+	 *            Column between 0 and 6
+	 * @return True if the column is one of the moves
+	 */
+	public static boolean isColumnIn(long moves, int col) {
+		return (moves & C4Position.columnMask(col)) != 0;
+	}
+
+	/**
+	 * Returns the cells completing four with three stones on a line in one
+	 * direction, whichever of the four places the missing stone takes
+	 * 
+	 * @param stones
+	 *            Bitboard of the side's stones
+	 * @param shift
+	 *            Shift between neighbouring cells of the line
+	 * @return Bitboard of the cells, filled or not
+	 */
+	private static long lineCells(long stones, int shift) {
+		// two stones on one side of the cell, with a third beyond them or
+		// on the other side
+		long pairs = (stones << shift) & (stones << 2 * shift);
+		long cells = pairs & (stones << 3 * shift);
+		cells |= pairs & (stones >>> shift);
+
+		pairs = (stones >>> shift) & (stones >>> 2 * shift);
+		cells |= pairs & (stones << shift);
+		cells |= pairs & (stones >>> 3 * shift);
+		return cells;
+	}
+}
@@ -0,0 +1,345 @@
+package gameLogic;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.zip.CRC32;
+
+/**
+ * Transposition table remembering the result of searched positions, shared
+ * by every thread searching with C4Solver.
+ * 
+ * Each entry is a single long packing the position's key (49 bits), the
+ * depth it was searched to (6 bits), the kind of bound (2 bits) and the
+ * score (7 bits). Since an entry is read and written as one long, threads
+ * share the table without locks and a reader never sees half of an entry.
+ * An empty entry is 0, which no key can be.
+ * 
+ * The table can be saved to a file and restored, so a restarted server
+ * starts with the table it had. A saved table starts with a header (magic
+ * "C4TT", version, number of entries, CRC32 of the entries) followed by the
+ * entries, and is only restored if the header and checksum match.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.1
+ */
+public class C4TranspositionTable {
+
+	// kinds of score stored in an entry
+	public static final int EXACT = 1, LOWER_BOUND = 2, UPPER_BOUND = 3;
+
+	// layout of an entry
+	private static final int SCORE_BITS = 7, FLAG_BITS = 2, DEPTH_BITS = 6;
+	private static final int FLAG_SHIFT = SCORE_BITS,
+			DEPTH_SHIFT = FLAG_SHIFT + FLAG_BITS,
+			KEY_SHIFT = DEPTH_SHIFT + DEPTH_BITS;
+	private static final int SCORE_OFFSET = 1 << SCORE_BITS - 1;
+
+	// header of a saved table
+	private static final int MAGIC = 0x43345454, VERSION = 1;
+	private static final int HEADER_SIZE = 24;
+
+	// entries written to or read from a file at once
+	private static final int CHUNK_ENTRIES = 64 * 1024;
+
+	// largest table, 2^30 entries taking 8 GB
+	private static final int MAX_SIZE_BITS = 30;
+
+	private AtomicLongArray entries;
+	private int indexShift; // shift taking a hashed key to an index
+
+	/**
+	 * Creates an empty C4TranspositionTable
+	 * 
+	 * @param sizeBits
+	 *            Base 2 logarithm of the number of entries, each taking 8
+	 *            bytes
+	 */
+	public C4TranspositionTable(int sizeBits) {
+		if (sizeBits < 1 || sizeBits > MAX_SIZE_BITS)
+			throw new IllegalArgumentException("Table size must be between "
+					+ "2^1 and 2^30 entries.");
+
+		entries = new AtomicLongArray(1 << sizeBits);
+		indexShift = 64 - sizeBits;
+	}
+
+	/**
+	 * Returns the number of entries of the table
+	 * 
+	 * @return Number of entries
+	 */
+	public int size() {
+		return entries.length();
+	}
+
+	/**
+	 * Returns the entry of a position
+	 * 
+	 * @param key
+	 *            Key of the position
+	 * @return Entry of the position, 0 if the position is not in the table
+	 */
+	public long probe(long key) {
+		long entry = entries.get(index(key));
+		return entry != 0 && getKey(entry) == key ? entry : 0;
+	}
+
+	/**
+	 * Stores the result of a search. An entry searched deeper for the same
+	 * position is kept.
+	 * 
+	 * @param key
+	 *            Key of the position
+	 * @param depth
+	 *            Depth the position was searched to
+	 * @param flag
+	 *            Kind of score: EXACT, LOWER_BOUND or UPPER_BOUND
+	 * @param score
+	 *            Score of the position
+	 */
+	public void store(long key, int depth, int flag, int score) {
+		int index = index(key);
+		long old = entries.get(index);
+		if (old != 0 && getKey(old) == key && getDepth(old) > depth)
+			return;
+
+		// written without a fence, a stale entry is only a missed hit
+		entries.lazySet(index, key << KEY_SHIFT | (long) depth << DEPTH_SHIFT
+				| (long) flag << FLAG_SHIFT | (score + SCORE_OFFSET));
+	}
+
+	/**
+	 * Empties the table
+	 */
+	public void clear() {
+		for (int i = 0; i < entries.length(); i++)
+			entries.set(i, 0);
+	}
+
+	/**
+	 * Returns the number of entries in use
+	 * 
+	 * @return Number of positions in the table
+	 */
+	public int getUsedEntries() {
+		int used = 0;
+		for (int i = 0; i < entries.length(); i++)
+			if (entries.get(i) != 0)
+				used++;
+		return used;
+	}
+
+	/**
+	 * Returns the key of the position of an entry
+	 * 
+	 * @param entry
+	 *            Entry of the table
+	 * @return Key of the position
+	 */
+	public static long getKey(long entry) {
+		return entry >>> KEY_SHIFT;
+	}
+
+	/**
+	 * Returns the depth an entry was searched to
+	 * 
+	 * @param entry
+	 *            Entry of the table
+	 * @return Depth in plies
+	 */
+	public static int getDepth(long entry) {
+		return (int) (entry >>> DEPTH_SHIFT) & (1 << DEPTH_BITS) - 1;
+	}
+
+	/**
+	 * Returns the kind of score of an entry
+	 * 
+	 * @param entry
+	 *            Entry of the table
+	 * @return EXACT, LOWER_BOUND or UPPER_BOUND
+	 */
+	public static int getFlag(long entry) {
+		return (int) (entry >>> FLAG_SHIFT) & (1 << FLAG_BITS) - 1;
+	}
+
+	/**
+	 * Returns the score of an entry
+	 * 
+	 * @param entry
+	 *            Entry of the table
+	 * @return Score of the position
+	 */
+	public static int getScore(long entry) {
+		return (int) (entry & (1 << SCORE_BITS) - 1) - SCORE_OFFSET;
+	}
+
+	/**
+	 * Saves the table to a file. The table is written to a temporary file
+	 * first and moved in place, so a crash while saving leaves the previous
+	 * file intact. Searches may go on while the table is saved.
+	 * 
+	 * @param file
+	 *            File the table is saved to
+	 * @throws IOException
+	 *             If the file could not be written
+	 */
+	public void save(File file) throws IOException {
+		File temporary = new File(file.getPath() + ".tmp");
+		FileChannel channel = FileChannel.open(temporary.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+
+		try {
+			ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_ENTRIES * 8)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			CRC32 checksum = new CRC32();
+
+			// entries first, the header with their checksum last
+			channel.position(HEADER_SIZE);
+			for (int first = 0; first < entries.length(); first += CHUNK_ENTRIES) {
+				int end = Math.min(entries.length(), first + CHUNK_ENTRIES);
+				chunk.clear();
+				for (int i = first; i < end; i++)
+					chunk.putLong(entries.get(i));
+				chunk.flip();
+				checksum.update(chunk.duplicate());
+				while (chunk.hasRemaining())
+					channel.write(chunk);
+			}
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(
+					ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putLong(entries.length())
+					.putLong(checksum.getValue());
+			header.flip();
+			while (header.hasRemaining())
+				channel.write(header, header.position());
+			channel.force(false);
+		} finally {
+			channel.close();
+		}
+
+		Files.move(temporary.toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Restores a table saved to a file. The file is read in chunks twice,
+	 * once to verify its checksum and once to copy the entries, so a
+	 * corrupted file leaves the table as it was and tables of any size load
+	 * without mapping the whole file. A file saved from a table of another
+	 * size is rehashed into this one.
+	 * 
+	 * @param file
+	 *            File the table was saved to
+	 * @return Number of entries restored
+	 * @throws IOException
+	 *             If the file could not be read, is not a saved table or is
+	 *             corrupted
+	 */
+	public int load(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ);
+
+		try {
+			if (channel.size() < HEADER_SIZE)
+				throw new IOException("Not a transposition table.");
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(
+					ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, header, 0);
+
+			if (header.getInt() != MAGIC)
+				throw new IOException("Not a transposition table.");
+			if (header.getInt() != VERSION)
+				throw new IOException("Unsupported transposition table version.");
+
+			long count = header.getLong();
+			long expectedChecksum = header.getLong();
+			if (count <= 0 || count > 1 << MAX_SIZE_BITS)
+				throw new IOException("Not a transposition table.");
+			if (channel.size() != HEADER_SIZE + count * 8)
+				throw new IOException("Transposition table is truncated.");
+
+			ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_ENTRIES * 8)
+					.order(ByteOrder.LITTLE_ENDIAN);
+
+			// verify every entry before touching the table
+			CRC32 checksum = new CRC32();
+			for (int first = 0; first < count; first += CHUNK_ENTRIES) {
+				int end = (int) Math.min(count, first + CHUNK_ENTRIES);
+				chunk.clear().limit((end - first) * 8);
+				readFully(channel, chunk, HEADER_SIZE + first * 8L);
+				checksum.update(chunk);
+			}
+			if (checksum.getValue() != expectedChecksum)
+				throw new IOException("Transposition table checksum mismatch.");
+
+			// same size, every entry goes back to its own index, otherwise
+			// the entries are rehashed
+			boolean sameSize = count == entries.length();
+			int restored = 0;
+			for (int first = 0; first < count; first += CHUNK_ENTRIES) {
+				int end = (int) Math.min(count, first + CHUNK_ENTRIES);
+				chunk.clear().limit((end - first) * 8);
+				readFully(channel, chunk, HEADER_SIZE + first * 8L);
+				for (int i = first; i < end; i++) {
+					long entry = chunk.getLong();
+					if (sameSize)
+						entries.lazySet(i, entry);
+					else if (entry != 0)
+						store(getKey(entry), getDepth(entry), getFlag(entry),
+								getScore(entry));
+					if (entry != 0)
+						restored++;
+				}
+			}
+			return restored;
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Reads a file into a buffer from a position until the buffer is full,
+	 * leaving it flipped for reading
+	 * 
+	 * @param channel
+	 *            File read
+	 * @param buffer
+	 *            Buffer filled up to its limit
+	 * @param position
+	 *            Position in the file of the first byte read
+	 * @throws IOException
+	 *             If the file could not be read or ends too soon
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer buffer,
+			long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0)
+				throw new IOException("Transposition table is truncated.");
+			position += read;
+		}
+		buffer.flip();
+	}
+
+	/**
+	 * Returns the index of a position's entry
+	 * 
+	 * @param key
+	 *            Key of the position
+	 * @return Index in the table
+	 */
+	private int index(long key) {
+		return (int) (key * 0x9e3779b97f4a7c15L >>> indexShift);
+	}
+}
@@ -0,0 +1,472 @@
+package gui;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import javax.swing.ImageIcon;
+import javax.swing.JComponent;
+import javax.swing.Timer;
+
+/**
+ * Connect Four board drawn by a single component. The token images are
+ * scaled once into images compatible with the screen, a click is turned into
+ * a column from the mouse position and only the cells that changed are
+ * repainted. A token played can be shown dropping down its column, every
+ * falling token being moved by the same timer. A short hint, such as the
+ * score of playing a column, can be shown at the top of each column.
+ * 
+ * A click on a column that is not full is reported to the action listeners
+ * with the column as the action command.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.1
+ */
+public class C4BoardPanel extends JComponent {
+
+	private static final long serialVersionUID = 2734914361856409851L;
+
+	// size of the board and of a cell in pixels
+	private static final int COLUMNS = 7, ROWS = 6, CELL_SIZE = 75;
+
+	// content of a cell, index into the token images
+	private static final int EMPTY = 0, PLAYER = 1, SERVER = 2;
+
+	// pixels a falling token moves on each tick of the timer
+	private static final int DROP_STEP = 15, DROP_DELAY = 15;
+
+	// no column hovered or no token falling
+	private static final int NONE = -1;
+
+	// height of the band a hint is written in, and its colours
+	private static final int HINT_HEIGHT = 18;
+	private static final Color HINT_BACKGROUND = new Color(0, 0, 0, 160),
+			HINT_FOREGROUND = Color.WHITE;
+	private static final Font HINT_FONT = new Font(Font.SANS_SERIF,
+			Font.BOLD, 12);
+
+	// images of an empty cell, a player's token and a server's token
+	private final Image[] images;
+
+	// content of each cell, row 0 at the top, and tokens in each column
+	private final int[] cells;
+	private final int[] heights;
+
+	// column under the mouse, NONE if the mouse is outside of the board
+	private int hoverColumn;
+
+	// for each column, the y coordinate of its falling token and the row it
+	// falls to, NONE if no token is falling in the column
+	private final int[] dropY, dropRow;
+	private final Timer dropTimer;
+	private boolean animated;
+
+	// hint shown at the top of each column, null for none
+	private final String[] hints;
+
+	/**
+	 * Creates an empty C4BoardPanel
+	 */
+	public C4BoardPanel() {
+		images = new Image[3];
+		images[EMPTY] = loadImage("/images/connect4_clear.jpg");
+		images[PLAYER] = loadImage("/images/connect4_player.jpg");
+		images[SERVER] = loadImage("/images/connect4_server.jpg");
+
+		cells = new int[COLUMNS * ROWS];
+		heights = new int[COLUMNS];
+		dropY = new int[COLUMNS];
+		dropRow = new int[COLUMNS];
+		Arrays.fill(dropRow, NONE);
+		hints = new String[COLUMNS];
+		hoverColumn = NONE;
+		animated = true;
+
+		dropTimer = new Timer(DROP_DELAY, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				moveFallingTokens();
+			}
+		});
+
+		setPreferredSize(new Dimension(COLUMNS * CELL_SIZE, ROWS * CELL_SIZE));
+		setOpaque(true);
+
+		// one listener for the whole board, the column is found from x
+		MouseAdapter mouseListener = new MouseAdapter() {
+			public void mouseMoved(MouseEvent e) {
+				setHoverColumn(columnAt(e.getX()));
+			}
+
+			public void mouseExited(MouseEvent e) {
+				setHoverColumn(NONE);
+			}
+
+			public void mouseReleased(MouseEvent e) {
+				int col = columnAt(e.getX());
+				if (col != NONE && contains(e.getPoint())
+						&& heights[col] < ROWS)
+					fireColumnClicked(col);
+			}
+		};
+		addMouseListener(mouseListener);
+		addMouseMotionListener(mouseListener);
+	}
+
+	/**
+	 * Adds a listener told of the columns clicked
+	 * 
+	 * @param listener
+	 *            Listener receiving the column as the action command
+	 */
+	public void addActionListener(ActionListener listener) {
+		listenerList.add(ActionListener.class, listener);
+	}
+
+	/**
+	 * Removes a listener told of the columns clicked
+	 * 
+	 * @param listener
+	 *            Listener to remove
+	 */
+	public void removeActionListener(ActionListener listener) {
+		listenerList.remove(ActionListener.class, listener);
+	}
+
+	/**
+	 * Sets whether played tokens are shown dropping down their column
+	 * 
+	 * @param animated
+	 *            True to animate the tokens played
+	 */
+	public void setAnimated(boolean animated) {
+		this.animated = animated;
+		if (!animated)
+			finishFallingTokens();
+	}
+
+	/**
+	 * Returns whether played tokens are shown dropping down their column
+	 * 
+	 * @return True if the tokens played are animated
+	 */
+	public boolean isAnimated() {
+		return animated;
+	}
+
+	/**
+	 * Places a token on the board
+	 * 
+	 * @param position
+	 *            Index of the cell, row by row from the top left
+	 * @param colour
+	 *            0 for the player's token, 1 for the server's token
+	 */
+	public void placeToken(int position, int colour) {
+		placeToken(position, colour, true);
+	}
+
+	/**
+	 * Places a token on the board, without animating it if many tokens are
+	 * placed at once
+	 * 
+	 * @param position
+	 *            Index of the cell, row by row from the top left
+	 * @param colour
+	 *            0 for the player's token, 1 for the server's token
+	 * @param animate
+	 *            False to show the token in place right away, even if tokens
+	 *            are animated
+	 */
+	public void placeToken(int position, int colour, boolean animate) {
+		int col = position % COLUMNS, row = position / COLUMNS;
+
+		// a token still falling in the column lands right away
+		if (dropRow[col] != NONE)
+			landToken(col);
+
+		cells[position] = colour == 0 ? PLAYER : SERVER;
+		heights[col] = Math.max(heights[col], ROWS - row);
+
+		if (animate && animated && isShowing()) {
+			dropRow[col] = row;
+			dropY[col] = -CELL_SIZE;
+			if (!dropTimer.isRunning())
+				dropTimer.start();
+		} else
+			repaintCell(col, row);
+
+		// the hovered cell moved up the column
+		if (col == hoverColumn)
+			repaintColumnTop(col);
+	}
+
+	/**
+	 * Shows a hint at the top of a column
+	 * 
+	 * @param col
+	 *            Column of the hint
+	 * @param hint
+	 *            Short text, null to remove the column's hint
+	 */
+	public void setHint(int col, String hint) {
+		hints[col] = hint;
+		repaint(col * CELL_SIZE, 0, CELL_SIZE, HINT_HEIGHT);
+	}
+
+	/**
+	 * Removes the hints of every column
+	 */
+	public void clearHints() {
+		for (int col = 0; col < COLUMNS; col++)
+			if (hints[col] != null)
+				setHint(col, null);
+	}
+
+	/**
+	 * Empties the board
+	 */
+	public void reset() {
+		dropTimer.stop();
+		Arrays.fill(dropRow, NONE);
+		Arrays.fill(hints, null);
+		Arrays.fill(cells, EMPTY);
+		Arrays.fill(heights, 0);
+		repaint();
+	}
+
+	/**
+	 * Paints the cells within the clip, and the falling tokens
+	 * 
+	 * @param g
+	 *            Graphics to paint with
+	 */
+	@Override
+	protected void paintComponent(Graphics g) {
+		Rectangle clip = g.getClipBounds();
+		if (clip == null)
+			clip = new Rectangle(0, 0, getWidth(), getHeight());
+
+		int firstCol = Math.max(0, clip.x / CELL_SIZE);
+		int lastCol = Math.min(COLUMNS - 1, (clip.x + clip.width - 1)
+				/ CELL_SIZE);
+		int firstRow = Math.max(0, clip.y / CELL_SIZE);
+		int lastRow = Math.min(ROWS - 1, (clip.y + clip.height - 1)
+				/ CELL_SIZE);
+
+		for (int col = firstCol; col <= lastCol; col++) {
+			int hoverRow = col == hoverColumn && heights[col] < ROWS ? ROWS - 1
+					- heights[col] : NONE;
+
+			for (int row = firstRow; row <= lastRow; row++) {
+				int content = cells[row * COLUMNS + col];
+
+				// the cell a token is falling to stays empty until it lands
+				if (row == dropRow[col])
+					content = EMPTY;
+				else if (row == hoverRow)
+					content = PLAYER;
+
+				g.drawImage(images[content], col * CELL_SIZE, row * CELL_SIZE,
+						null);
+			}
+
+			if (dropRow[col] != NONE)
+				g.drawImage(images[cells[dropRow[col] * COLUMNS + col]], col
+						* CELL_SIZE, dropY[col], null);
+
+			if (hints[col] != null && firstRow == 0)
+				paintHint(g, col);
+		}
+	}
+
+	/**
+	 * Paints the hint of a column in a band at the top of the column
+	 * 
+	 * @param g
+	 *            Graphics to paint with
+	 * @param col
+	 *            Column of the hint
+	 */
+	private void paintHint(Graphics g, int col) {
+		int x = col * CELL_SIZE;
+		g.setColor(HINT_BACKGROUND);
+		g.fillRect(x, 0, CELL_SIZE, HINT_HEIGHT);
+
+		g.setFont(HINT_FONT);
+		FontMetrics metrics = g.getFontMetrics();
+		g.setColor(HINT_FOREGROUND);
+		g.drawString(hints[col],
+				x + (CELL_SIZE - metrics.stringWidth(hints[col])) / 2,
+				(HINT_HEIGHT + metrics.getAscent() - metrics.getDescent()) / 2);
+	}
+
+	/**
+	 * Moves every falling token one step down, stopping the timer once they
+	 * have all landed
+	 */
+	private void moveFallingTokens() {
+		boolean falling = false;
+
+		for (int col = 0; col < COLUMNS; col++) {
+			if (dropRow[col] == NONE)
+				continue;
+
+			int oldY = dropY[col];
+			dropY[col] = Math.min(oldY + DROP_STEP, dropRow[col] * CELL_SIZE);
+			if (dropY[col] == dropRow[col] * CELL_SIZE)
+				landToken(col);
+			else
+				falling = true;
+
+			// the token's old and new places, both within the column
+			repaint(col * CELL_SIZE, oldY, CELL_SIZE, dropY[col] - oldY
+					+ CELL_SIZE);
+		}
+
+		if (!falling)
+			dropTimer.stop();
+	}
+
+	/**
+	 * Lands every falling token at once
+	 */
+	private void finishFallingTokens() {
+		dropTimer.stop();
+		for (int col = 0; col < COLUMNS; col++)
+			if (dropRow[col] != NONE) {
+				landToken(col);
+				repaint(col * CELL_SIZE, 0, CELL_SIZE, ROWS * CELL_SIZE);
+			}
+	}
+
+	/**
+	 * Ends the fall of the token of a column, repainting the cell it lands in
+	 * 
+	 * @param col
+	 *            Column of the falling token
+	 */
+	private void landToken(int col) {
+		int row = dropRow[col];
+		dropRow[col] = NONE;
+		repaintCell(col, row);
+	}
+
+	/**
+	 * Changes the column under the mouse, repainting the cells that show it
+	 * 
+	 * @param col
+	 *            Column under the mouse, NONE if outside of the board
+	 */
+	private void setHoverColumn(int col) {
+		if (col == hoverColumn)
+			return;
+
+		int oldColumn = hoverColumn;
+		hoverColumn = col;
+		if (oldColumn != NONE)
+			repaintColumnTop(oldColumn);
+		if (col != NONE)
+			repaintColumnTop(col);
+	}
+
+	/**
+	 * Repaints the two cells at the top of the tokens of a column, the
+	 * hovered cell being one of them
+	 * 
+	 * @param col
+	 *            Column to repaint
+	 */
+	private void repaintColumnTop(int col) {
+		int row = Math.max(0, ROWS - 2 - heights[col]);
+		repaint(col * CELL_SIZE, row * CELL_SIZE, CELL_SIZE,
+				Math.min(2, ROWS - row) * CELL_SIZE);
+	}
+
+	/**
+	 * Repaints a single cell
+	 * 
+	 * @param col
+	 *            Column of the cell
+	 * @param row
+	 *            Row of the cell, 0 at the top
+	 */
+	private void repaintCell(int col, int row) {
+		repaint(col * CELL_SIZE, row * CELL_SIZE, CELL_SIZE, CELL_SIZE);
+	}
+
+	/**
+	 * Returns the column at an x coordinate
+	 * 
+	 * @param x
+	 *            X coordinate within the board
+	 * @return Column, NONE if outside of the board
+	 */
+	private int columnAt(int x) {
+		int col = x / CELL_SIZE;
+		return x < 0 || col >= COLUMNS ? NONE : col;
+	}
+
+	/**
+	 * Tells the action listeners a column was clicked
+	 * 
+	 * @param col
+	 *            Column clicked
+	 */
+	private void fireColumnClicked(int col) {
+		Object[] listeners = listenerList.getListenerList();
+		ActionEvent event = null;
+
+		// listeners are stored as class and listener pairs
+		for (int i = listeners.length - 2; i >= 0; i -= 2)
+			if (listeners[i] == ActionListener.class) {
+				if (event == null)
+					event = new ActionEvent(this, ActionEvent.ACTION_PERFORMED,
+							Integer.toString(col));
+				((ActionListener) listeners[i + 1]).actionPerformed(event);
+			}
+	}
+
+	/**
+	 * Loads an image and scales it to a cell, once, into an image that draws
+	 * without conversion
+	 * 
+	 * @param path
+	 *            Path of the image resource
+	 * @return Image the size of a cell
+	 */
+	private Image loadImage(String path) {
+		Image source = new ImageIcon(getClass().getResource(path)).getImage();
+		BufferedImage scaled;
+
+		if (GraphicsEnvironment.isHeadless())
+			scaled = new BufferedImage(CELL_SIZE, CELL_SIZE,
+					BufferedImage.TYPE_INT_RGB);
+		else {
+			GraphicsConfiguration configuration = GraphicsEnvironment
+					.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+					.getDefaultConfiguration();
+			scaled = configuration.createCompatibleImage(CELL_SIZE, CELL_SIZE);
+		}
+
+		Graphics2D g = scaled.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+				RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+		g.drawImage(source, 0, 0, CELL_SIZE, CELL_SIZE, null);
+		g.dispose();
+		return scaled;
+	}
+}
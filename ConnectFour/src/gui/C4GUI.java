@@ -3,48 +3,41 @@ package gui;
 import gameExceptions.C4InvalidMessageException;
 import gameExceptions.C4InvalidMoveException;
 
-import java.awt.Dimension;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
-import java.awt.event.MouseAdapter;
-import java.awt.event.MouseEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.util.Observable;
-import java.util.Observer;
+import java.util.List;
 
-import javax.swing.BorderFactory;
-import javax.swing.ImageIcon;
-import javax.swing.JButton;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JFrame;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.WindowConstants;
-import javax.swing.border.Border;
 
+import client.C4GameEvent;
+import client.C4GameListener;
 import client.C4Model;
 
 /**
  * Serves as the view and controller for a Connect Four game application
  * 
  * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
- * @version 1.4
+ * @version 1.8
  */
-public class C4GUI extends JFrame implements Observer {
+public class C4GUI extends JFrame implements C4GameListener {
 
 	// instance variables
 	private static final long serialVersionUID = -6218323746697753249L;
-	private JButton[] theButtons = null;
-	private ImageIcon clearImage; // default image with no token inside
-	private ImageIcon serverImage; // image that contains a black token
-	private ImageIcon playerImage; // image that contains a red token
-	private Border border;
-	private int[] playedMove;
+	private C4BoardPanel board; // board drawing the tokens of the game
+
+	// time budget of the analysis of each position when hints are shown
+	private static final long HINT_MILLIS = 300;
 	private C4Model model;
 
 	/**
@@ -58,17 +51,7 @@ public class C4GUI extends JFrame implements Observer {
 
 		this.model = model;
 
-		// specific images for the buttons
-		serverImage = new ImageIcon(this.getClass().getResource(
-				"/images/connect4_server.jpg"));
-		playerImage = new ImageIcon(this.getClass().getResource(
-				"/images/connect4_player.jpg"));
-		clearImage = new ImageIcon(this.getClass().getResource(
-				"/images/connect4_clear.jpg"));
-
-		border = BorderFactory.createEmptyBorder();
-
-		// create the GUI with buttons and menu
+		// create the GUI with the board and menu
 		initialize();
 		this.setTitle("Connect Four");
 		pack();
@@ -77,7 +60,7 @@ public class C4GUI extends JFrame implements Observer {
 	}
 
 	/**
-	 * Creates the GUI with buttons, event listeners and menus
+	 * Creates the GUI with the board, its event listener and menus
 	 */
 	private void initialize() {
 		GridBagLayout gridBagLayout = new GridBagLayout();
@@ -88,12 +71,15 @@ public class C4GUI extends JFrame implements Observer {
 		// event listener for when user clicks on the close button
 		this.addWindowListener(new WindowAdapter() {
 			public void windowClosing(WindowEvent e) {
-				model.showExitGameDialog();
+				showExitGameDialog();
 			}
 		});
 
-		// creates and places buttons within layout
-		createAndPlaceButtons();
+		// creates the board and places it within layout, a single listener
+		// receives the column of every click
+		board = new C4BoardPanel();
+		board.addActionListener(new MoveListener());
+		add(board, makeConstraints(0, 0, 1, 1));
 
 		// creates the menu bar
 		this.setJMenuBar(createMenuBar());
@@ -103,72 +89,6 @@ public class C4GUI extends JFrame implements Observer {
 
 	}
 
-	/**
-	 * Creates all the buttons and places them within the GUI using specific
-	 * GridBag constraints. Adds action listeners and mouse over listeners to
-	 * each button.
-	 */
-	private void createAndPlaceButtons() {
-		theButtons = new JButton[42]; // array of JButtons
-
-		// create action listener to be set to each button
-		MoveListener buttonListener = new MoveListener();
-
-		// loops creating a button, setting its properties and even listeners
-		for (int i = 0; i < theButtons.length; i++) {
-
-			// create a new JButton using the default image
-			theButtons[i] = new JButton(clearImage);
-
-			// add an action command associating a String to its column position
-			theButtons[i].setActionCommand(i % 7 + "");
-
-			// add action listener
-			theButtons[i].addActionListener(buttonListener);
-
-			// set the preferred size and border for the buttons
-			theButtons[i].setPreferredSize(new Dimension(75, 75));
-			theButtons[i].setBorder(border);
-
-			// add mouse over listener that changes images as mouse hovers over
-			theButtons[i].addMouseListener(new MouseAdapter() {
-				public void mouseEntered(MouseEvent evt) {
-					((JButton) evt.getSource()).setIcon(playerImage);
-				}
-
-				public void mouseExited(MouseEvent evt) {
-					((JButton) evt.getSource()).setIcon(clearImage);
-				}
-			});
-		}
-
-		// Sets the GridBag constraints for each button
-		for (int i = 0; i < 7; i++) {
-			add(theButtons[i], makeConstraints(i, 0, 1, 1));
-		}
-
-		for (int i = 0; i < 7; i++) {
-			add(theButtons[i + 7], makeConstraints(i, 1, 1, 1));
-		}
-
-		for (int i = 0; i < 7; i++) {
-			add(theButtons[i + 14], makeConstraints(i, 2, 1, 1));
-		}
-
-		for (int i = 0; i < 7; i++) {
-			add(theButtons[i + 21], makeConstraints(i, 3, 1, 1));
-		}
-
-		for (int i = 0; i < 7; i++) {
-			add(theButtons[i + 28], makeConstraints(i, 4, 1, 1));
-		}
-
-		for (int i = 0; i < 7; i++) {
-			add(theButtons[i + 35], makeConstraints(i, 5, 1, 1));
-		}
-
-	}
-
 	/**
 	 * Creates the menu bar for the GUI and its menu items
 	 * 
@@ -198,7 +118,24 @@ public class C4GUI extends JFrame implements Observer {
 			@Override
 			public void actionPerformed(ActionEvent e) {
 				// display dialog asking if user wants to play a new game
-				model.showNewGameDialog();
+				showNewGameDialog();
+			}
+		});
+		menu.add(menuItem);
+
+		// create Play Online menuItem and its action listener
+		menuItem = new JMenuItem("Play Online Opponent", KeyEvent.VK_O);
+		menuItem.getAccessibleContext().setAccessibleDescription(
+				"Play against another player");
+		menuItem.setToolTipText("Play against another player");
+		// other players are only found through a server
+		menuItem.setEnabled(model.isOnline());
+		menuItem.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				// ask the server to pair the user with another player
+				model.sendForMatch();
+				setTitle("Connect Four - Waiting for an opponent...");
 			}
 		});
 		menu.add(menuItem);
@@ -220,6 +157,37 @@ public class C4GUI extends JFrame implements Observer {
 		});
 		menu.add(menuItem);
 
+		// create Animate Moves menu item turning the drop animation on or off
+		final JCheckBoxMenuItem animateItem = new JCheckBoxMenuItem(
+				"Animate Moves", board.isAnimated());
+		animateItem.setMnemonic(KeyEvent.VK_M);
+		animateItem.getAccessibleContext().setAccessibleDescription(
+				"Show tokens dropping down the board");
+		animateItem.setToolTipText("Show tokens dropping down the board");
+		animateItem.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				board.setAnimated(animateItem.isSelected());
+			}
+		});
+		menu.add(animateItem);
+
+		// create Show Hints menu item scoring every column on the player's
+		// turn
+		final JCheckBoxMenuItem hintItem = new JCheckBoxMenuItem("Show Hints");
+		hintItem.setMnemonic(KeyEvent.VK_H);
+		hintItem.getAccessibleContext().setAccessibleDescription(
+				"Show how good each column is");
+		hintItem.setToolTipText("Show how good each column is");
+		hintItem.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				board.clearHints();
+				model.setHintMode(hintItem.isSelected(), HINT_MILLIS);
+			}
+		});
+		menu.add(hintItem);
+
 		// add a separator line in the menu
 		menu.addSeparator();
 
@@ -232,7 +200,7 @@ public class C4GUI extends JFrame implements Observer {
 			@Override
 			public void actionPerformed(ActionEvent e) {
 				// displays dialog prompting user if they want to end game
-				model.showExitGameDialog();
+				showExitGameDialog();
 			}
 		});
 		menu.add(menuItem);
@@ -285,93 +253,162 @@ public class C4GUI extends JFrame implements Observer {
 	}
 
 	/**
-	 * Changes the colour of a button according to the player that made the move
-	 * and remove its event listeners
+	 * Displays a confirm dialog the first time the game application is run.
+	 * Prompts the user if they want to play the game, creating the GUI if they
+	 * do.
 	 * 
-	 * @param move
-	 *            Array containing the id of the player making the move and the
-	 *            column
+	 * @param model
+	 *            Model of the game, connected to the server
 	 */
-	private void formatButtons(int[] move) {
-		int colour = playedMove[0];
-		int position = playedMove[1];
-
-		// player has made a move, change image to red
-		if (colour == 0)
-			theButtons[position].setIcon(playerImage);
-		// server has made a move, change image to black
-		else if (colour == 1)
-			theButtons[position].setIcon(serverImage);
+	public static void showFirstGameDialog(C4Model model) {
+		// offer to resume the game left unfinished by the last client
+		long resumeToken = model.isOnline() ? C4Model.getSavedResumeToken()
+				: 0;
+		if (resumeToken != 0
+				&& JOptionPane.showConfirmDialog(null,
+						"Resume your unfinished game?", "Resume Game?",
+						JOptionPane.YES_NO_OPTION, JOptionPane.PLAIN_MESSAGE) == JOptionPane.YES_OPTION) {
+			model.setListener(new C4GUI(model));
+			model.resumeGame(resumeToken);
+			return;
+		}
 
-		// remove mouse listener from the button for the mouse over events
-		theButtons[position].removeMouseListener(theButtons[position]
-				.getMouseListeners()[1]);
+		int result = JOptionPane.showConfirmDialog(null,
+				"Are you sure you want to play Connect Four?", "Play Game?",
+				JOptionPane.YES_NO_OPTION, JOptionPane.PLAIN_MESSAGE);
 
-		// remove action listener from the button so player cannot make a move
-		theButtons[position].removeActionListener(theButtons[position]
-				.getActionListeners()[0]);
+		if (result == JOptionPane.YES_OPTION) {
+			// create the GUI and display it, listening to the model
+			model.setListener(new C4GUI(model));
 
+			// send message to server to start a new game
+			model.sendForNewGame();
+		} else {
+			// send message to server to end the game
+			model.sendForEndGame();
+		}
 	}
 
 	/**
-	 * Resets the GUI, adding all event listeners back to the buttons and
-	 * changing the icon to its default.
+	 * Displays a confirm dialog asking if user wants to exit. Yes, game is
+	 * ended and exited. No, game continues for playing.
 	 */
-	private void resetGUI() {
-		// create action listener to be set to each button
-		MoveListener buttonListener = new MoveListener();
-
-		// loops through all buttons
-		for (int i = 0; i < theButtons.length; i++) {
-
-			// if a mouse listener was added, remove it
-			if (theButtons[i].getMouseListeners().length > 1)
-				theButtons[i].removeMouseListener(theButtons[i]
-						.getMouseListeners()[1]);
-
-			// if an action listener was added, remove it
-			if (theButtons[i].getActionListeners().length > 0)
-				theButtons[i].removeActionListener(theButtons[i]
-						.getActionListeners()[0]);
-
-			// set icon to its default image
-			theButtons[i].setIcon(clearImage);
+	private void showExitGameDialog() {
+		int result = JOptionPane.showConfirmDialog(null,
+				"Are you sure you want to exit?", "End Game",
+				JOptionPane.YES_NO_OPTION, JOptionPane.PLAIN_MESSAGE);
+
+		if (result == JOptionPane.YES_OPTION) {
+			// sends message to server to end the game
+			model.sendForEndGame();
+		} else {
+			// continue playing
+		}
+	}
 
-			// add event listeners
-			theButtons[i].addActionListener(buttonListener);
-			theButtons[i].addMouseListener(new MouseAdapter() {
-				public void mouseEntered(MouseEvent evt) {
-					((JButton) evt.getSource()).setIcon(playerImage);
-				}
+	/**
+	 * Displays a confirm dialog prompting the user if they want to play a new
+	 * game.
+	 */
+	private void showNewGameDialog() {
+		int result = JOptionPane.showConfirmDialog(null,
+				"Are you sure you want to play a new game?", "New Game",
+				JOptionPane.YES_NO_OPTION, JOptionPane.PLAIN_MESSAGE);
+
+		if (result == JOptionPane.YES_OPTION) {
+			// sends message to server to start a new game
+			model.sendForNewGame();
+		} else {
+			// continue playing
+		}
+	}
 
-				public void mouseExited(MouseEvent evt) {
-					((JButton) evt.getSource()).setIcon(clearImage);
-				}
+	/**
+	 * Displays a confirm dialog indicating a game has ended. Prompts the user
+	 * if they want to play a new game or not.
+	 * 
+	 * @param event
+	 *            Event of the end of the game
+	 */
+	private void showGameOverDialog(C4GameEvent event) {
+		String text;
+		switch (event.getOutcome()) {
+		case C4GameEvent.WON:
+			text = "Congratulations! You have won!\nWould you like to play again?";
+			break;
+		case C4GameEvent.LOST:
+			text = event.isMatch() ? "Your opponent is victorious!\nWould you like to play again?"
+					: "Server is victorious!\nWould you like to make another attempt?";
+			break;
+		case C4GameEvent.DRAW:
+			text = "This game is a draw, board is full\nWould you like to play again?";
+			break;
+		default:
+			text = "Your opponent has left the game.\nWould you like to play again?";
+		}
 
-			});
+		int result = JOptionPane.showConfirmDialog(null, text, "Game Over",
+				JOptionPane.YES_NO_OPTION, JOptionPane.PLAIN_MESSAGE);
 
+		if (result == JOptionPane.YES_OPTION) {
+			// send message to server to start a new game, against another
+			// player if the game that ended was a match
+			model.playAgain();
+		} else {
+			// send message to server to end the game
+			model.sendForEndGame();
 		}
 	}
 
 	/**
-	 * Method that communicates with the model when the GUI needs to be updated
+	 * Returns the hint of a column scored by an analysis
+	 * 
+	 * @param event
+	 *            Event of the column scored
+	 * @return Short text telling how good the column is
+	 */
+	private static String formatHint(C4GameEvent event) {
+		if (!event.isDecided())
+			return "? (" + event.getDepth() + ")";
+		else if (event.getScore() > 0)
+			return "Win " + event.getPliesToEnd();
+		else if (event.getScore() < 0)
+			return "Loss " + event.getPliesToEnd();
+		else
+			return "Draw";
+	}
+
+	/**
+	 * Updates the GUI with the changes of the game. A batch of many moves, such
+	 * as a whole game at once, is shown without animation.
+	 * 
+	 * @param events
+	 *            Events since the previous update
 	 */
 	@Override
-	public void update(Observable o, Object arg) {
-		if (o instanceof C4Model) {
-			C4Model model = (C4Model) o;
-
-			// if no arg, a move is being played. Update GUI accordingly
-			if (arg == null) {
-				playedMove = model.getPreviousMove();
-				formatButtons(playedMove);
-			}
-			// if a "reset" is being sent, reset the GUI
-			else if (((String) arg).equals("reset")) {
-				resetGUI();
-			}
-			// if a "close" is being sent, close the window
-			else if (((String) arg).equals("close")) {
+	public void gameChanged(List<C4GameEvent> events) {
+		boolean animate = events.size() == 1;
+
+		for (C4GameEvent event : events) {
+			switch (event.getType()) {
+			case C4GameEvent.MOVE_PLAYED:
+				// hints are for the position the player moved from
+				if (event.getSide() == C4GameEvent.PLAYER)
+					board.clearHints();
+				board.placeToken(event.getPosition(), event.getSide(), animate);
+				break;
+			case C4GameEvent.COLUMN_SCORED:
+				board.setHint(event.getColumn(), formatHint(event));
+				break;
+			case C4GameEvent.GAME_RESET:
+				board.reset();
+				setTitle("Connect Four");
+				break;
+			case C4GameEvent.GAME_OVER:
+				showGameOverDialog(event);
+				break;
+			case C4GameEvent.SHUTDOWN:
+				// close the window
 				dispose();
 				System.exit(0);
 			}
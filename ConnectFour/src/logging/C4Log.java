@@ -0,0 +1,268 @@
+package logging;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Log of the server and the router. Messages are formatted and written by a
+ * background thread from a bounded C4LogBuffer, so logging costs a thread
+ * no more than filling a slot of the buffer and never makes it wait for the
+ * console or a file. Messages are parameterized, each {} of the text being
+ * replaced by the next argument when the message is written:
+ * 
+ * C4Log.info("Game {} started", gameId);
+ * 
+ * Messages below the level set are discarded before reaching the buffer.
+ * The log writes to the standard output until configure() is called, and
+ * writes out the messages left in the buffer when the application exits.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public final class C4Log {
+
+	// levels of the messages, from the least to the most severe
+	public static final int DEBUG = 0, INFO = 1, WARN = 2, ERROR = 3,
+			OFF = 4;
+
+	// number of messages the buffer holds, 8192
+	private static final int BUFFER_BITS = 13;
+
+	// longest wait for the writer when the application exits
+	private static final long CLOSE_TIMEOUT_MILLIS = 2000;
+
+	private static volatile int level = INFO;
+	private static volatile C4LogBuffer buffer;
+
+	static {
+		buffer = new C4LogBuffer(BUFFER_BITS, new OutputStreamWriter(
+				System.out, StandardCharsets.UTF_8));
+		Runtime.getRuntime().addShutdownHook(new Thread("C4LogClose") {
+			public void run() {
+				buffer.close(CLOSE_TIMEOUT_MILLIS);
+			}
+		});
+	}
+
+	/**
+	 * Not instantiable
+	 */
+	private C4Log() {
+	}
+
+	/**
+	 * Sets the level of the log and where it is written. The messages logged
+	 * before are written where they were headed.
+	 * 
+	 * @param newLevel
+	 *            Lowest level of the messages written
+	 * @param fileName
+	 *            File the messages are appended to, null for the standard
+	 *            output
+	 * @throws IOException
+	 *             If the file cannot be opened
+	 */
+	public static synchronized void configure(int newLevel, String fileName)
+			throws IOException {
+		level = newLevel;
+		if (fileName == null)
+			return;
+
+		Writer output = new OutputStreamWriter(new FileOutputStream(fileName,
+				true), StandardCharsets.UTF_8);
+		C4LogBuffer previous = buffer;
+		buffer = new C4LogBuffer(BUFFER_BITS, output);
+		previous.close(CLOSE_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * Returns the level of a level name, such as "info"
+	 * 
+	 * @param name
+	 *            Name of the level, in any case
+	 * @return Level
+	 * @throws IllegalArgumentException
+	 *             If the name is not a level
+	 */
+	public static int parseLevel(String name) {
+		String[] names = { "debug", "info", "warn", "error", "off" };
+		for (int i = 0; i < names.length; i++)
+			if (names[i].equalsIgnoreCase(name))
+				return i;
+		throw new IllegalArgumentException("Unknown log level " + name + ".");
+	}
+
+	/**
+	 * Returns whether messages of a level are written, for callers having to
+	 * work out the arguments of a message
+	 * 
+	 * @param messageLevel
+	 *            Level of the message
+	 * @return True if the message would be written
+	 */
+	public static boolean isEnabled(int messageLevel) {
+		return messageLevel >= level;
+	}
+
+	/**
+	 * Returns the number of messages dropped because the buffer was full
+	 * 
+	 * @return Number of messages dropped by the current buffer
+	 */
+	public static long getDroppedCount() {
+		return buffer.getDroppedCount();
+	}
+
+	/**
+	 * Logs a message of a level
+	 * 
+	 * @param messageLevel
+	 *            Level of the message
+	 * @param format
+	 *            Text of the message, with a {} for each argument
+	 * @param arg0
+	 *            First argument, null if none
+	 * @param arg1
+	 *            Second argument, null if none
+	 * @param arg2
+	 *            Third argument, null if none
+	 */
+	public static void log(int messageLevel, String format, Object arg0,
+			Object arg1, Object arg2) {
+		if (messageLevel >= level)
+			buffer.add(messageLevel, format, arg0, arg1, arg2);
+	}
+
+	/**
+	 * Logs a debugging message
+	 * 
+	 * @param format
+	 *            Text of the message
+	 */
+	public static void debug(String format) {
+		log(DEBUG, format, null, null, null);
+	}
+
+	/**
+	 * Logs a debugging message with an argument
+	 * 
+	 * @param format
+	 *            Text of the message, with a {} for the argument
+	 * @param arg0
+	 *            Argument
+	 */
+	public static void debug(String format, Object arg0) {
+		log(DEBUG, format, arg0, null, null);
+	}
+
+	/**
+	 * Logs an informational message
+	 * 
+	 * @param format
+	 *            Text of the message
+	 */
+	public static void info(String format) {
+		log(INFO, format, null, null, null);
+	}
+
+	/**
+	 * Logs an informational message with an argument
+	 * 
+	 * @param format
+	 *            Text of the message, with a {} for the argument
+	 * @param arg0
+	 *            Argument
+	 */
+	public static void info(String format, Object arg0) {
+		log(INFO, format, arg0, null, null);
+	}
+
+	/**
+	 * Logs an informational message with two arguments
+	 * 
+	 * @param format
+	 *            Text of the message, with a {} for each argument
+	 * @param arg0
+	 *            First argument
+	 * @param arg1
+	 *            Second argument
+	 */
+	public static void info(String format, Object arg0, Object arg1) {
+		log(INFO, format, arg0, arg1, null);
+	}
+
+	/**
+	 * Logs a warning
+	 * 
+	 * @param format
+	 *            Text of the message
+	 */
+	public static void warn(String format) {
+		log(WARN, format, null, null, null);
+	}
+
+	/**
+	 * Logs a warning with an argument
+	 * 
+	 * @param format
+	 *            Text of the message, with a {} for the argument
+	 * @param arg0
+	 *            Argument
+	 */
+	public static void warn(String format, Object arg0) {
+		log(WARN, format, arg0, null, null);
+	}
+
+	/**
+	 * Logs a warning with two arguments
+	 * 
+	 * @param format
+	 *            Text of the message, with a {} for each argument
+	 * @param arg0
+	 *            First argument
+	 * @param arg1
+	 *            Second argument
+	 */
+	public static void warn(String format, Object arg0, Object arg1) {
+		log(WARN, format, arg0, arg1, null);
+	}
+
+	/**
+	 * Logs an error
+	 * 
+	 * @param format
+	 *            Text of the message
+	 */
+	public static void error(String format) {
+		log(ERROR, format, null, null, null);
+	}
+
+	/**
+	 * Logs an error with an argument
+	 * 
+	 * @param format
+	 *            Text of the message, with a {} for the argument
+	 * @param arg0
+	 *            Argument
+	 */
+	public static void error(String format, Object arg0) {
+		log(ERROR, format, arg0, null, null);
+	}
+
+	/**
+	 * Logs an error with two arguments
+	 * 
+	 * @param format
+	 *            Text of the message, with a {} for each argument
+	 * @param arg0
+	 *            First argument
+	 * @param arg1
+	 *            Second argument
+	 */
+	public static void error(String format, Object arg0, Object arg1) {
+		log(ERROR, format, arg0, arg1, null);
+	}
+}
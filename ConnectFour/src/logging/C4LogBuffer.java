@@ -0,0 +1,265 @@
+package logging;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded ring buffer of log messages, written out by a single background
+ * thread. Any number of threads log at once without a lock: a thread claims
+ * the next slot by compare-and-set, fills it with the message's format and
+ * arguments and publishes it. Formatting and writing are left to the writer
+ * thread, which takes every published message in order and writes them in
+ * one batch.
+ * 
+ * A thread never waits for the writer. When the buffer is full the message
+ * is dropped and counted, and the writer reports how many messages were
+ * dropped once it catches up.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4LogBuffer {
+
+	// names of the levels, as written
+	private static final String[] LEVEL_NAMES = { "DEBUG", "INFO", "WARN",
+			"ERROR" };
+
+	// time the writer sleeps when there is nothing to write
+	private static final long IDLE_NANOS = 10 * 1000000L;
+
+	// messages written at most in one batch, so slots are freed steadily
+	private static final int MAXIMUM_BATCH = 1024;
+
+	private final Entry[] entries;
+	private final int mask;
+
+	// sequence of the message each slot holds plus one, set once the slot is
+	// filled, so the writer knows it can take it
+	private final AtomicLongArray published;
+
+	// next sequence to claim, and next sequence the writer takes; every
+	// sequence between them is claimed and not written yet
+	private final AtomicLong head;
+	private volatile long tail;
+
+	// messages dropped since the buffer was created, and the number the
+	// writer reported last
+	private final AtomicLong dropped;
+	private long droppedReported;
+
+	private final Writer output;
+	private final Thread writer;
+	private volatile boolean closed;
+
+	/**
+	 * Creates a C4LogBuffer and starts its writer thread
+	 * 
+	 * @param sizeBits
+	 *            Base 2 logarithm of the number of messages held
+	 * @param output
+	 *            Destination of the messages, only used by the writer thread
+	 */
+	public C4LogBuffer(int sizeBits, Writer output) {
+		if (sizeBits < 1 || sizeBits > 24)
+			throw new IllegalArgumentException("Log buffer size must be "
+					+ "between 2^1 and 2^24 messages.");
+
+		int size = 1 << sizeBits;
+		this.entries = new Entry[size];
+		for (int i = 0; i < size; i++)
+			entries[i] = new Entry();
+		this.mask = size - 1;
+		this.published = new AtomicLongArray(size);
+		this.head = new AtomicLong();
+		this.dropped = new AtomicLong();
+		this.output = output;
+
+		this.writer = new Thread(new Runnable() {
+			public void run() {
+				writeMessages();
+			}
+		}, "C4LogWriter");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Adds a message to the buffer, or drops it if the buffer is full. The
+	 * arguments replace the {} of the format in order once the message is
+	 * written, so they must not change until then.
+	 * 
+	 * @param level
+	 *            Level of the message, see C4Log
+	 * @param format
+	 *            Text of the message
+	 * @param arg0
+	 *            First argument, null if none
+	 * @param arg1
+	 *            Second argument, null if none
+	 * @param arg2
+	 *            Third argument, null if none
+	 * @return True if the message was added, false if it was dropped
+	 */
+	public boolean add(int level, String format, Object arg0, Object arg1,
+			Object arg2) {
+		long sequence;
+		do {
+			sequence = head.get();
+			if (sequence - tail > mask || closed) {
+				dropped.incrementAndGet();
+				return false;
+			}
+		} while (!head.compareAndSet(sequence, sequence + 1));
+
+		int index = (int) sequence & mask;
+		Entry entry = entries[index];
+		entry.time = System.currentTimeMillis();
+		entry.level = level;
+		entry.thread = Thread.currentThread().getName();
+		entry.format = format;
+		entry.arg0 = arg0;
+		entry.arg1 = arg1;
+		entry.arg2 = arg2;
+		published.lazySet(index, sequence + 1);
+		return true;
+	}
+
+	/**
+	 * Returns the number of messages dropped because the buffer was full
+	 * 
+	 * @return Number of messages dropped
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * Stops taking messages and waits for the writer to write the ones
+	 * already added
+	 * 
+	 * @param timeoutMillis
+	 *            Longest wait for the writer
+	 */
+	public void close(long timeoutMillis) {
+		closed = true;
+		LockSupport.unpark(writer);
+		try {
+			writer.join(timeoutMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Writes the messages as they are published until the buffer is closed
+	 * and empty
+	 */
+	private void writeMessages() {
+		StringBuilder text = new StringBuilder(4096);
+		SimpleDateFormat dateFormat = new SimpleDateFormat(
+				"yyyy-MM-dd HH:mm:ss.SSS");
+		Date date = new Date();
+
+		while (true) {
+			long next = tail;
+			int count = 0;
+			text.setLength(0);
+
+			while (count < MAXIMUM_BATCH) {
+				int index = (int) next & mask;
+				if (published.get(index) != next + 1)
+					break;
+
+				Entry entry = entries[index];
+				date.setTime(entry.time);
+				text.append(dateFormat.format(date)).append(' ')
+						.append(LEVEL_NAMES[entry.level]).append(" [")
+						.append(entry.thread).append("] ");
+				format(text, entry);
+				text.append(System.lineSeparator());
+
+				// let the arguments be collected and the slot be claimed
+				entry.clear();
+				next++;
+				count++;
+			}
+			tail = next;
+
+			long droppedCount = dropped.get();
+			if (droppedCount != droppedReported) {
+				date.setTime(System.currentTimeMillis());
+				text.append(dateFormat.format(date)).append(" WARN [")
+						.append(Thread.currentThread().getName()).append("] ")
+						.append(droppedCount - droppedReported)
+						.append(" log messages dropped, buffer full")
+						.append(System.lineSeparator());
+				droppedReported = droppedCount;
+			}
+
+			if (text.length() > 0) {
+				try {
+					output.write(text.toString());
+					output.flush();
+				} catch (IOException e) {
+					// nowhere left to report it, the messages are lost
+				}
+			}
+
+			if (count == MAXIMUM_BATCH)
+				continue;
+			if (closed && head.get() == tail)
+				break;
+			if (count == 0)
+				LockSupport.parkNanos(IDLE_NANOS);
+		}
+	}
+
+	/**
+	 * Appends a message's format with its arguments in place of the {}
+	 * 
+	 * @param text
+	 *            Text the message is appended to
+	 * @param entry
+	 *            Message to format
+	 */
+	private static void format(StringBuilder text, Entry entry) {
+		String format = entry.format;
+		int start = 0, argument = 0;
+		int brace;
+		while (argument < 3 && (brace = format.indexOf("{}", start)) >= 0) {
+			text.append(format, start, brace);
+			text.append(argument == 0 ? entry.arg0 : argument == 1 ? entry.arg1
+					: entry.arg2);
+			argument++;
+			start = brace + 2;
+		}
+		text.append(format, start, format.length());
+	}
+
+	/**
+	 * Slot of the buffer, reused by every message passing through it
+	 */
+	private static class Entry {
+		private long time;
+		private int level;
+		private String thread;
+		private String format;
+		private Object arg0, arg1, arg2;
+
+		/**
+		 * Forgets the message held
+		 */
+		private void clear() {
+			thread = null;
+			format = null;
+			arg0 = null;
+			arg1 = null;
+			arg2 = null;
+		}
+	}
+}
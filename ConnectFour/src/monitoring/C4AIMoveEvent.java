@@ -0,0 +1,82 @@
+package monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of one move of the AI, lasting as long as the AI
+ * took to choose it. Searching AIs fill in the statistics of their search,
+ * the simple AI leaves them at 0. The moves played lead to the position the
+ * AI moved from and can be handed to C4SolverApp as they are.
+ * 
+ * Events are only filled in when shouldCommit() is true, so a move costs
+ * next to nothing more when recording is off.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.1
+ */
+@Name("connectfour.AIMove")
+@Label("AI Move")
+@Category({ "Connect Four", "AI" })
+@Description("Move chosen by the AI with the statistics of its search")
+@StackTrace(false)
+public class C4AIMoveEvent extends Event {
+
+	@Label("Engine")
+	@Description("AI choosing the move, simple or search")
+	public String engine;
+
+	@Label("Position Key")
+	@Description("Key of the position the AI moved from, see C4Position")
+	public long positionKey;
+
+	@Label("Moves")
+	@Description("Columns played before the move, numbered from 1")
+	public String moves;
+
+	@Label("Depth")
+	@Description("Deepest search finished, in plies")
+	public int depth;
+
+	@Label("Nodes")
+	@Description("Positions searched")
+	public long nodes;
+
+	@Label("Table Probes")
+	@Description("Transposition table lookups")
+	public long probes;
+
+	@Label("Table Hits")
+	@Description("Lookups that found the position")
+	public long hits;
+
+	@Label("Cutoffs")
+	@Description("Searches cut off by a score above the window")
+	public long cutoffs;
+
+	@Label("First Move Cutoffs")
+	@Description("Cutoffs made by the first move tried, see C4MoveOrdering")
+	public long firstMoveCutoffs;
+
+	@Label("Column")
+	@Description("Column played, numbered from 0")
+	public int column;
+
+	/**
+	 * Writes moves the way C4SolverApp reads them
+	 * 
+	 * @param moves
+	 *            Columns played in order, numbered from 0
+	 * @return Columns numbered from 1, as in "4453"
+	 */
+	public static String formatMoves(byte[] moves) {
+		char[] text = new char[moves.length];
+		for (int i = 0; i < moves.length; i++)
+			text[i] = (char) ('1' + moves[i]);
+		return new String(text);
+	}
+}
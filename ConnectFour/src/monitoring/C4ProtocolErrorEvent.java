@@ -0,0 +1,33 @@
+package monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a message refused by the server, either as
+ * malformed or as a move that is not legal.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+@Name("connectfour.ProtocolError")
+@Label("Protocol Error")
+@Category({ "Connect Four", "Server" })
+@Description("Message from a client refused by the server")
+@StackTrace(false)
+public class C4ProtocolErrorEvent extends Event {
+
+	@Label("Client Address")
+	public String clientAddress;
+
+	@Label("Message")
+	@Description("Message refused, in hexadecimal")
+	public String message;
+
+	@Label("Error")
+	public String error;
+}
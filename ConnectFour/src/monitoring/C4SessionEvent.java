@@ -0,0 +1,52 @@
+package monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a client's session on the server, lasting from
+ * the connection to the closing of its socket, with what the client did and
+ * why the session ended.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.1
+ */
+@Name("connectfour.Session")
+@Label("Session")
+@Category({ "Connect Four", "Server" })
+@Description("Session of a client from connection to close")
+@StackTrace(false)
+public class C4SessionEvent extends Event {
+
+	// reasons a session ends
+	public static final String CLIENT_QUIT = "client quit",
+			CONNECTION_LOST = "connection lost",
+			IDLE_TIMEOUT = "idle timeout", MOVE_TIMEOUT = "move timeout",
+			TOO_MANY_REFUSED = "too many messages refused";
+
+	@Label("Client Address")
+	public String clientAddress;
+
+	@Label("Messages")
+	@Description("Messages received from the client")
+	public int messages;
+
+	@Label("Games")
+	@Description("Games started against the AI")
+	public int games;
+
+	@Label("Lobby Joins")
+	@Description("Times the client asked to play another player")
+	public int lobbyJoins;
+
+	@Label("Protocol Errors")
+	@Description("Messages refused as invalid")
+	public int protocolErrors;
+
+	@Label("End Reason")
+	public String endReason;
+}
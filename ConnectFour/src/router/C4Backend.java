@@ -0,0 +1,219 @@
+package router;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Backend C4ServerApp process behind the router. Keeps the state used for
+ * routing: whether the backend passes its health checks, whether it is being
+ * drained for a restart and how many connections are still spliced to it.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.1
+ */
+public class C4Backend {
+
+	private final String name; // name of the backend, its host and port
+	private final InetSocketAddress address; // address of the backend
+
+	// spectator port of a launched backend, 0 for the server's default
+	private final int spectatorPort;
+
+	// boolean indicating that the last health check succeeded
+	private volatile boolean healthy;
+
+	// boolean indicating that the backend receives no new sessions
+	private volatile boolean draining;
+
+	// number of client connections currently routed to the backend
+	private final AtomicInteger activeConnections;
+
+	// process of the backend when it was launched by the router
+	private Process process;
+
+	/**
+	 * Creates a C4Backend object for a server listening at a specific address
+	 * 
+	 * @param host
+	 *            Host name or IP address of the backend
+	 * @param port
+	 *            Port number of the backend
+	 */
+	public C4Backend(String host, int port) {
+		this(host, port, 0);
+	}
+
+	/**
+	 * Creates a C4Backend object for a server listening at a specific address,
+	 * which accepts spectators on a specific port once launched
+	 * 
+	 * @param host
+	 *            Host name or IP address of the backend
+	 * @param port
+	 *            Port number of the backend
+	 * @param spectatorPort
+	 *            Spectator port of the backend, 0 for the server's default
+	 */
+	public C4Backend(String host, int port, int spectatorPort) {
+		this.name = host + ":" + port;
+		this.spectatorPort = spectatorPort;
+		this.address = new InetSocketAddress(host, port);
+		this.healthy = true;
+		this.draining = false;
+		this.activeConnections = new AtomicInteger();
+	}
+
+	/**
+	 * Launches a C4ServerApp process for this backend using the same Java
+	 * runtime and class path as the router.
+	 * 
+	 * @throws IOException
+	 *             If the process could not be started
+	 */
+	public synchronized void launch() throws IOException {
+		String java = System.getProperty("java.home") + File.separator
+				+ "bin" + File.separator + "java";
+
+		ProcessBuilder builder = new ProcessBuilder(java, "-cp",
+				System.getProperty("java.class.path"), "server.C4ServerApp",
+				Integer.toString(address.getPort()));
+		if (spectatorPort != 0) {
+			builder.command().add("-spectator-port");
+			builder.command().add(Integer.toString(spectatorPort));
+		}
+
+		// backend output goes to the router's console
+		builder.redirectErrorStream(true);
+		builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+
+		process = builder.start();
+	}
+
+	/**
+	 * Stops the process of the backend if it was launched by the router
+	 * 
+	 * @return True if a process was stopped
+	 */
+	public synchronized boolean stopProcess() {
+		if (process == null)
+			return false;
+
+		process.destroy();
+		try {
+			process.waitFor();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		process = null;
+		return true;
+	}
+
+	/**
+	 * Returns whether the backend was launched by the router
+	 * 
+	 * @return True if the router owns the backend's process
+	 */
+	public synchronized boolean isLaunched() {
+		return process != null;
+	}
+
+	/**
+	 * Returns whether new sessions can be routed to this backend
+	 * 
+	 * @return True if the backend is healthy and not draining
+	 */
+	public boolean isAcceptingSessions() {
+		return healthy && !draining;
+	}
+
+	/**
+	 * Returns the name of the backend, its host and port
+	 * 
+	 * @return Name of the backend
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the address at which the backend accepts sessions
+	 * 
+	 * @return Address of the backend
+	 */
+	public InetSocketAddress getAddress() {
+		return address;
+	}
+
+	/**
+	 * Returns whether the last health check of the backend succeeded
+	 * 
+	 * @return True if the backend is up
+	 */
+	public boolean isHealthy() {
+		return healthy;
+	}
+
+	/**
+	 * Sets the result of the last health check of the backend
+	 * 
+	 * @param healthy
+	 *            True if the backend is up
+	 */
+	public void setHealthy(boolean healthy) {
+		this.healthy = healthy;
+	}
+
+	/**
+	 * Returns whether the backend is being drained
+	 * 
+	 * @return True if no new session is routed to the backend
+	 */
+	public boolean isDraining() {
+		return draining;
+	}
+
+	/**
+	 * Sets whether new sessions stop being routed to the backend
+	 * 
+	 * @param draining
+	 *            True to drain the backend
+	 */
+	public void setDraining(boolean draining) {
+		this.draining = draining;
+	}
+
+	/**
+	 * Returns the number of connections currently routed to the backend
+	 * 
+	 * @return Number of active connections
+	 */
+	public int getActiveConnections() {
+		return activeConnections.get();
+	}
+
+	/**
+	 * Counts a connection routed to the backend
+	 */
+	void connectionOpened() {
+		activeConnections.incrementAndGet();
+	}
+
+	/**
+	 * Counts a connection to the backend that was closed
+	 */
+	void connectionClosed() {
+		activeConnections.decrementAndGet();
+	}
+
+	/**
+	 * String representation of the state of the backend
+	 */
+	@Override
+	public String toString() {
+		return name + (healthy ? " up" : " down")
+				+ (draining ? ", draining" : "") + ", "
+				+ activeConnections.get() + " connection(s)";
+	}
+}
@@ -0,0 +1,91 @@
+package router;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring mapping session IDs to backends. Every backend is
+ * placed on the ring many times (virtual nodes) so that sessions spread
+ * evenly, and adding or removing a backend only moves the sessions that
+ * hashed to it.
+ * 
+ * A ring is immutable, the router builds a new one whenever the set of
+ * backends accepting new sessions changes.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4HashRing {
+
+	// number of points each backend occupies on the ring
+	private static final int VIRTUAL_NODES = 128;
+
+	// points of the ring, sorted by hash
+	private final TreeMap<Long, C4Backend> ring;
+
+	/**
+	 * Creates a C4HashRing containing specific backends
+	 * 
+	 * @param backends
+	 *            Backends that can receive new sessions
+	 */
+	public C4HashRing(List<C4Backend> backends) {
+		ring = new TreeMap<Long, C4Backend>();
+
+		for (C4Backend backend : backends)
+			for (int i = 0; i < VIRTUAL_NODES; i++)
+				ring.put(hash(backend.getName() + "#" + i), backend);
+	}
+
+	/**
+	 * Returns the backend owning a session ID, the first point of the ring at
+	 * or after the hash of the ID.
+	 * 
+	 * @param sessionId
+	 *            ID of the session being routed
+	 * @return Backend owning the session, null if the ring is empty
+	 */
+	public C4Backend route(String sessionId) {
+		if (ring.isEmpty())
+			return null;
+
+		Map.Entry<Long, C4Backend> entry = ring.ceilingEntry(hash(sessionId));
+
+		// wrap around to the start of the ring
+		if (entry == null)
+			entry = ring.firstEntry();
+
+		return entry.getValue();
+	}
+
+	/**
+	 * Returns whether the ring has no backend
+	 * 
+	 * @return True if no backend can receive sessions
+	 */
+	public boolean isEmpty() {
+		return ring.isEmpty();
+	}
+
+	/**
+	 * 64 bit FNV-1a hash of a string followed by a final mix so that similar
+	 * keys (such as consecutive virtual nodes) land far apart on the ring.
+	 * 
+	 * @param key
+	 *            String to hash
+	 * @return Position of the key on the ring
+	 */
+	private static long hash(String key) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < key.length(); i++) {
+			h ^= key.charAt(i);
+			h *= 0x100000001b3L;
+		}
+
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,604 @@
+package router;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import logging.C4Log;
+
+import server.C4ParkedGameStore;
+
+/**
+ * Front router that accepts clients on the public port and splices each
+ * connection to one of several backend C4ServerApp processes. Backends are
+ * chosen by consistent hashing on the client's address and port, which
+ * differ for every connection, so adding, removing or draining a backend only
+ * moves the sessions that belonged to it.
+ * 
+ * The router reads a client's first message before choosing its backend. A
+ * client resuming a parked game sends its resume token first, whose high bits
+ * are the port of the backend that issued it (see C4ParkedGameStore), and is
+ * sent back to that backend while it is up.
+ * 
+ * All connections are served by a single selector thread. Bytes are moved
+ * between the two sockets of a connection through one direct buffer per
+ * direction, without ever being copied onto the heap. When one side ends its
+ * stream, the end is passed on to the other side once its bytes are
+ * delivered, and the connection is closed once both directions are done.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.4
+ */
+public class C4Router {
+
+	// size of the buffer of each direction of a spliced connection
+	private static final int SPLICE_BUFFER_SIZE = 4096;
+
+	// length of a client's first message, and of a resume message, 0x09 0x01
+	// followed by the token
+	private static final int MESSAGE_SIZE = 2, RESUME_MESSAGE_SIZE = 10;
+
+	// delay between two health checks and timeout of a single check
+	private static final int HEALTH_CHECK_INTERVAL_MILLIS = 2000,
+			HEALTH_CHECK_TIMEOUT_MILLIS = 1000;
+
+	private int publicPort; // port on which clients connect
+	private List<C4Backend> backends; // every backend behind the router
+
+	// ring of the backends currently accepting new sessions
+	private volatile C4HashRing ring;
+
+	private Selector selector;
+	private ServerSocketChannel serverChannel;
+
+	/**
+	 * Creates a C4Router object that routes clients connecting on a public port
+	 * to specific backends.
+	 * 
+	 * @param publicPort
+	 *            Port number that clients connect to
+	 * @param backends
+	 *            Backend servers that sessions are routed to
+	 */
+	public C4Router(int publicPort, List<C4Backend> backends) {
+		this.publicPort = publicPort;
+		this.backends = backends;
+		rebuildRing();
+	}
+
+	/**
+	 * Returns the backends behind the router
+	 * 
+	 * @return List of backends
+	 */
+	public List<C4Backend> getBackends() {
+		return backends;
+	}
+
+	/**
+	 * Stops routing new sessions to a backend. Sessions already spliced to it
+	 * keep running until their clients disconnect.
+	 * 
+	 * @param backend
+	 *            Backend to drain
+	 */
+	public void drain(C4Backend backend) {
+		backend.setDraining(true);
+		rebuildRing();
+		C4Log.info("Draining {}", backend.toString());
+	}
+
+	/**
+	 * Routes new sessions to a backend again after it was drained
+	 * 
+	 * @param backend
+	 *            Backend to enable
+	 */
+	public void enable(C4Backend backend) {
+		backend.setDraining(false);
+		rebuildRing();
+		C4Log.info("Enabled {}", backend.toString());
+	}
+
+	/**
+	 * Drains a backend launched by the router, waits for its last session to
+	 * end, then restarts its process and routes sessions to it once it passes
+	 * a health check. No game in progress is dropped.
+	 * 
+	 * @param backend
+	 *            Backend to restart
+	 * @throws IOException
+	 *             If the new process could not be started
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for the backend
+	 */
+	public void restart(C4Backend backend) throws IOException,
+			InterruptedException {
+		drain(backend);
+
+		// let every game in progress on the backend finish
+		while (backend.getActiveConnections() > 0)
+			Thread.sleep(HEALTH_CHECK_INTERVAL_MILLIS);
+
+		backend.stopProcess();
+		backend.launch();
+
+		// wait until the new process serves the protocol
+		while (!checkHealth(backend))
+			Thread.sleep(HEALTH_CHECK_INTERVAL_MILLIS / 4);
+
+		backend.setHealthy(true);
+		enable(backend);
+	}
+
+	/**
+	 * Starts the router: the health checking thread and the selector loop that
+	 * accepts and splices connections. Runs forever.
+	 */
+	public void start() {
+		try {
+			selector = Selector.open();
+			serverChannel = ServerSocketChannel.open();
+			serverChannel.bind(new InetSocketAddress(publicPort));
+			serverChannel.configureBlocking(false);
+			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+			C4Log.info("Router listening on port {} for {} backend(s)",
+					publicPort, backends.size());
+		} catch (IOException e) {
+			C4Log.error("Error opening the router's port.");
+			return;
+		}
+
+		startHealthChecks();
+
+		for (;;) {
+			try {
+				selector.select();
+			} catch (IOException e) {
+				C4Log.error("Error selecting connections.");
+				return;
+			}
+
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while (keys.hasNext()) {
+				SelectionKey key = keys.next();
+				keys.remove();
+
+				try {
+					if (!key.isValid())
+						continue;
+
+					if (key.isAcceptable())
+						acceptClient();
+					else if (key.isConnectable())
+						finishBackendConnect(key);
+					else if (isRouting(key))
+						routeClient(key);
+					else {
+						if (key.isReadable())
+							readFrom(key);
+						if (key.isValid() && key.isWritable())
+							writeTo(key);
+					}
+				} catch (IOException | CancelledKeyException e) {
+					// a socket failed, tear down the whole connection
+					Object attachment = key.attachment();
+					if (attachment instanceof Endpoint)
+						((Endpoint) attachment).connection.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Accepts a client, reading its first message before choosing its
+	 * backend.
+	 * 
+	 * @throws IOException
+	 *             If the client could not be accepted
+	 */
+	private void acceptClient() throws IOException {
+		SocketChannel client = serverChannel.accept();
+		if (client == null)
+			return;
+
+		client.configureBlocking(false);
+		client.socket().setTcpNoDelay(true);
+
+		// the session is identified by the client's address and port
+		String sessionId = client.getRemoteAddress().toString();
+		Connection connection = new Connection(client, sessionId);
+		connection.clientEnd.key = client.register(selector,
+				SelectionKey.OP_READ, connection.clientEnd);
+	}
+
+	/**
+	 * Returns whether a key is of a client whose first message is being read
+	 * 
+	 * @param key
+	 *            Key of a spliced or routed channel
+	 * @return True if the client has no backend yet
+	 */
+	private static boolean isRouting(SelectionKey key) {
+		return ((Endpoint) key.attachment()).connection.backendEnd == null;
+	}
+
+	/**
+	 * Reads the first message of a client not yet routed, then starts
+	 * connecting it to a backend: the backend that issued the token of a
+	 * resume message if it is up, else the backend owning the session.
+	 * 
+	 * @param key
+	 *            Key of the client channel
+	 * @throws IOException
+	 *             If the client socket fails
+	 */
+	private void routeClient(SelectionKey key) throws IOException {
+		Endpoint client = (Endpoint) key.attachment();
+		ByteBuffer buffer = client.buffer;
+
+		if (client.channel.read(buffer) == -1) {
+			client.connection.close();
+			return;
+		}
+
+		// wait for the whole first message
+		boolean resume = buffer.position() >= MESSAGE_SIZE
+				&& buffer.get(0) == 0x09 && buffer.get(1) == 0x01;
+		if (buffer.position() < (resume ? RESUME_MESSAGE_SIZE : MESSAGE_SIZE))
+			return;
+
+		// the message is forwarded once the backend is connected
+		key.interestOps(0);
+		if (resume) {
+			int port = C4ParkedGameStore.getServerId(buffer
+					.getLong(MESSAGE_SIZE));
+			for (C4Backend backend : backends)
+				if (backend.getAddress().getPort() == port
+						&& backend.isHealthy())
+					client.connection.resumeBackend = backend;
+		}
+		connectToBackend(client.connection);
+	}
+
+	/**
+	 * Starts a non-blocking connection to the backend holding the game the
+	 * client resumes, or else to the backend owning the session. If no backend
+	 * is available, the client is disconnected.
+	 * 
+	 * @param connection
+	 *            Connection to route
+	 * @throws IOException
+	 *             If the client socket fails
+	 */
+	private void connectToBackend(Connection connection) throws IOException {
+		// a draining backend still takes back the games parked on it
+		C4Backend backend = connection.resumeBackend;
+		connection.resumeBackend = null;
+		if (backend == null)
+			backend = ring.route(connection.sessionId);
+
+		// no backend is accepting sessions, or every attempt failed
+		if (backend == null || connection.attempts++ >= backends.size()) {
+			C4Log.warn("No backend available for {}", connection.sessionId);
+			connection.close();
+			return;
+		}
+
+		SocketChannel channel = SocketChannel.open();
+		boolean connected;
+		try {
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			connected = channel.connect(backend.getAddress());
+		} catch (IOException e) {
+			// refused right away, nothing counted against the backend yet
+			channel.close();
+			backendFailed(connection, backend);
+			return;
+		}
+
+		// the connection counts against the backend until it is closed
+		connection.backend = backend;
+		connection.backendEnd = new Endpoint(connection, channel);
+		backend.connectionOpened();
+
+		if (connected)
+			startSplicing(connection);
+		else
+			channel.register(selector, SelectionKey.OP_CONNECT,
+					connection.backendEnd);
+	}
+
+	/**
+	 * Completes the connection to a backend. When the backend refuses, it is
+	 * marked down and the session is routed again.
+	 * 
+	 * @param key
+	 *            Key of the backend channel
+	 * @throws IOException
+	 *             If the client socket fails
+	 */
+	private void finishBackendConnect(SelectionKey key) throws IOException {
+		Connection connection = ((Endpoint) key.attachment()).connection;
+
+		try {
+			connection.backendEnd.channel.finishConnect();
+		} catch (IOException e) {
+			key.cancel();
+			connection.backendEnd.channel.close();
+			connection.backend.connectionClosed();
+
+			C4Backend backend = connection.backend;
+			connection.backend = null;
+			connection.backendEnd = null;
+			backendFailed(connection, backend);
+			return;
+		}
+
+		startSplicing(connection);
+	}
+
+	/**
+	 * Marks a backend that refused a connection down and routes the session
+	 * again without it
+	 * 
+	 * @param connection
+	 *            Connection to route again
+	 * @param backend
+	 *            Backend that refused the connection
+	 * @throws IOException
+	 *             If the client socket fails
+	 */
+	private void backendFailed(Connection connection, C4Backend backend)
+			throws IOException {
+		backend.setHealthy(false);
+		rebuildRing();
+		C4Log.warn("Backend {} refused a connection, marked down",
+				backend.getName());
+		connectToBackend(connection);
+	}
+
+	/**
+	 * Registers both sockets of a connection for reading once the backend is
+	 * connected, forwarding the client's first message.
+	 * 
+	 * @param connection
+	 *            Connection whose bytes start flowing
+	 * @throws IOException
+	 *             If a socket could not be registered
+	 */
+	private void startSplicing(Connection connection) throws IOException {
+		connection.clientEnd.key = connection.clientEnd.channel.register(
+				selector, SelectionKey.OP_READ, connection.clientEnd);
+		connection.backendEnd.key = connection.backendEnd.channel.register(
+				selector, SelectionKey.OP_READ, connection.backendEnd);
+		flush(connection.clientEnd);
+	}
+
+	/**
+	 * Reads available bytes from one side of a connection into its buffer and
+	 * forwards them to the other side.
+	 * 
+	 * @param key
+	 *            Key of the readable channel
+	 * @throws IOException
+	 *             If either socket fails
+	 */
+	private void readFrom(SelectionKey key) throws IOException {
+		Endpoint source = (Endpoint) key.attachment();
+
+		if (source.channel.read(source.buffer) == -1) {
+			// peer closed, pass it on once the bytes it sent are delivered
+			source.closed = true;
+			key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+		}
+
+		flush(source);
+	}
+
+	/**
+	 * Writes pending bytes to a side of a connection whose socket was full.
+	 * 
+	 * @param key
+	 *            Key of the writable channel
+	 * @throws IOException
+	 *             If either socket fails
+	 */
+	private void writeTo(SelectionKey key) throws IOException {
+		flush(((Endpoint) key.attachment()).peer());
+	}
+
+	/**
+	 * Forwards the bytes buffered from a source to its peer. If the peer cannot
+	 * take them all, reading from the source is suspended until it can, so a
+	 * slow side never makes the router buffer more than one buffer. Once a
+	 * source that ended its stream is flushed, the peer's output is shut down,
+	 * and the connection closed if the peer's stream had ended too.
+	 * 
+	 * @param source
+	 *            Side of the connection whose buffer is flushed
+	 * @throws IOException
+	 *             If the peer's socket fails
+	 */
+	private void flush(Endpoint source) throws IOException {
+		Endpoint target = source.peer();
+
+		source.buffer.flip();
+		target.channel.write(source.buffer);
+		source.buffer.compact();
+
+		boolean pending = source.buffer.position() > 0;
+
+		if (pending) {
+			// wait for the target to be writable, stop reading the source
+			target.key.interestOps(target.key.interestOps()
+					| SelectionKey.OP_WRITE);
+			source.key.interestOps(source.key.interestOps()
+					& ~SelectionKey.OP_READ);
+		} else {
+			if (target.key.isValid())
+				target.key.interestOps(target.key.interestOps()
+						& ~SelectionKey.OP_WRITE);
+
+			if (!source.closed)
+				source.key.interestOps(source.key.interestOps()
+						| SelectionKey.OP_READ);
+			else if (!source.drained) {
+				// the other direction may still carry a reply, such as the
+				// answer to a client's last message
+				source.drained = true;
+				target.channel.shutdownOutput();
+				if (target.drained)
+					source.connection.close();
+			}
+		}
+	}
+
+	/**
+	 * Starts the thread that periodically checks every backend and rebuilds the
+	 * ring when one goes up or down.
+	 */
+	private void startHealthChecks() {
+		Thread healthThread = new Thread(new Runnable() {
+			public void run() {
+				for (;;) {
+					boolean changed = false;
+
+					for (C4Backend backend : backends) {
+						boolean healthy = checkHealth(backend);
+						if (healthy != backend.isHealthy()) {
+							backend.setHealthy(healthy);
+							changed = true;
+							C4Log.info("Backend {}", backend.toString());
+						}
+					}
+
+					if (changed)
+						rebuildRing();
+
+					try {
+						Thread.sleep(HEALTH_CHECK_INTERVAL_MILLIS);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		}, "C4RouterHealth");
+		healthThread.setDaemon(true);
+		healthThread.start();
+	}
+
+	/**
+	 * Checks that a backend serves the protocol by opening a session and
+	 * ending it right away, which the backend only logs when debugging.
+	 * 
+	 * @param backend
+	 *            Backend to check
+	 * @return True if the backend answered the end of session message
+	 */
+	private boolean checkHealth(C4Backend backend) {
+		try (Socket socket = new Socket()) {
+			socket.connect(backend.getAddress(), HEALTH_CHECK_TIMEOUT_MILLIS);
+			socket.setSoTimeout(HEALTH_CHECK_TIMEOUT_MILLIS);
+
+			OutputStream out = socket.getOutputStream();
+			InputStream in = socket.getInputStream();
+
+			// ask to end the session, the server answers with a close message
+			out.write(new byte[] { 0x02, 0x01 });
+			return in.read() == 0x01 && in.read() == 0x02;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Rebuilds the ring from the backends currently accepting sessions
+	 */
+	private synchronized void rebuildRing() {
+		List<C4Backend> accepting = new ArrayList<C4Backend>();
+		for (C4Backend backend : backends)
+			if (backend.isAcceptingSessions())
+				accepting.add(backend);
+
+		ring = new C4HashRing(accepting);
+	}
+
+	/**
+	 * Client connection spliced to a backend
+	 */
+	private static class Connection {
+		private final String sessionId;
+		private final Endpoint clientEnd;
+		private Endpoint backendEnd;
+		private C4Backend backend;
+		private C4Backend resumeBackend; // backend holding a resumed game
+		private int attempts; // number of backends tried so far
+		private boolean closed;
+
+		private Connection(SocketChannel client, String sessionId) {
+			this.sessionId = sessionId;
+			this.clientEnd = new Endpoint(this, client);
+		}
+
+		/**
+		 * Closes both sockets of the connection
+		 */
+		private void close() {
+			if (closed)
+				return;
+			closed = true;
+
+			clientEnd.close();
+			if (backendEnd != null) {
+				backendEnd.close();
+				backend.connectionClosed();
+			}
+		}
+	}
+
+	/**
+	 * One side of a spliced connection, holding the bytes read from it that
+	 * are waiting to be written to the other side.
+	 */
+	private static class Endpoint {
+		private final Connection connection;
+		private final SocketChannel channel;
+		private final ByteBuffer buffer;
+		private SelectionKey key;
+		private boolean closed; // end of stream reached on this side
+		private boolean drained; // end of stream passed on to the other side
+
+		private Endpoint(Connection connection, SocketChannel channel) {
+			this.connection = connection;
+			this.channel = channel;
+			this.buffer = ByteBuffer.allocateDirect(SPLICE_BUFFER_SIZE);
+		}
+
+		private Endpoint peer() {
+			return this == connection.clientEnd ? connection.backendEnd
+					: connection.clientEnd;
+		}
+
+		private void close() {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				C4Log.warn("Error closing routed socket.");
+			}
+		}
+	}
+}
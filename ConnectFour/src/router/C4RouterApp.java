@@ -0,0 +1,164 @@
+package router;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import logging.C4Log;
+
+/**
+ * Runs the front router in front of several Connect Four servers. Backends are
+ * either given as host:port pairs or launched by the router as local
+ * processes.
+ * 
+ * Usage: C4RouterApp publicPort (host:port ... | -spawn count firstPort
+ * [firstSpectatorPort])
+ * 
+ * Launched backends listen on consecutive ports from firstPort and accept
+ * spectators on consecutive ports from firstSpectatorPort, by default the
+ * first port after the backends' own.
+ * 
+ * While running, the router reads commands from the console: status,
+ * drain n, enable n, restart n (for launched backends) and quit.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.2
+ */
+public class C4RouterApp {
+
+	/**
+	 * Main method to start the router
+	 * 
+	 * @param args
+	 *            Public port followed by the backends
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.out.println("Usage: C4RouterApp publicPort "
+					+ "(host:port ... | -spawn count firstPort "
+					+ "[firstSpectatorPort])");
+			return;
+		}
+
+		int publicPort = Integer.parseInt(args[0]);
+		List<C4Backend> backends = new ArrayList<C4Backend>();
+
+		try {
+			if (args[1].equals("-spawn")) {
+				// launch local backends on consecutive ports, their spectator
+				// ports in a range of their own so none takes another's port
+				int count = Integer.parseInt(args[2]);
+				int firstPort = Integer.parseInt(args[3]);
+				int firstSpectatorPort = firstPort + count;
+				if (args.length > 4)
+					firstSpectatorPort = Integer.parseInt(args[4]);
+
+				for (int i = 0; i < count; i++) {
+					C4Backend backend = new C4Backend("127.0.0.1", firstPort
+							+ i, firstSpectatorPort + i);
+					backend.launch();
+					backends.add(backend);
+				}
+			} else {
+				for (int i = 1; i < args.length; i++) {
+					String[] hostAndPort = args[i].split(":");
+					backends.add(new C4Backend(hostAndPort[0], Integer
+							.parseInt(hostAndPort[1])));
+				}
+			}
+		} catch (IOException e) {
+			C4Log.error("Error launching backend: {}", e.getMessage());
+			stopBackends(backends);
+			return;
+		}
+
+		final C4Router router = new C4Router(publicPort, backends);
+
+		// stop launched backends along with the router
+		final List<C4Backend> launched = backends;
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				stopBackends(launched);
+			}
+		});
+
+		// read operator commands from the console
+		Thread console = new Thread(new Runnable() {
+			public void run() {
+				readCommands(router);
+			}
+		}, "C4RouterConsole");
+		console.setDaemon(true);
+		console.start();
+
+		router.start();
+	}
+
+	/**
+	 * Reads and runs console commands until the console is closed
+	 * 
+	 * @param router
+	 *            Router the commands apply to
+	 */
+	private static void readCommands(final C4Router router) {
+		BufferedReader console = new BufferedReader(new InputStreamReader(
+				System.in));
+		String line;
+
+		try {
+			while ((line = console.readLine()) != null) {
+				String[] command = line.trim().split("\\s+");
+				List<C4Backend> backends = router.getBackends();
+
+				if (command[0].equals("status")) {
+					for (int i = 0; i < backends.size(); i++)
+						System.out.println(i + ": " + backends.get(i));
+				} else if (command[0].equals("quit")) {
+					System.exit(0);
+				} else if (command.length == 2
+						&& command[1].matches("\\d+")
+						&& Integer.parseInt(command[1]) < backends.size()) {
+					final C4Backend backend = backends.get(Integer
+							.parseInt(command[1]));
+
+					if (command[0].equals("drain"))
+						router.drain(backend);
+					else if (command[0].equals("enable"))
+						router.enable(backend);
+					else if (command[0].equals("restart")
+							&& backend.isLaunched()) {
+						// restarting waits for games to end, keep the console
+						// available in the meantime
+						new Thread(new Runnable() {
+							public void run() {
+								try {
+									router.restart(backend);
+								} catch (IOException | InterruptedException e) {
+									System.out.println("Error restarting "
+											+ backend.getName());
+								}
+							}
+						}).start();
+					} else
+						System.out.println("Unknown command: " + line);
+				} else
+					System.out.println("Unknown command: " + line);
+			}
+		} catch (IOException e) {
+			System.out.println("Error reading console.");
+		}
+	}
+
+	/**
+	 * Stops the processes of the backends launched by the router
+	 * 
+	 * @param backends
+	 *            Backends to stop
+	 */
+	private static void stopBackends(List<C4Backend> backends) {
+		for (C4Backend backend : backends)
+			backend.stopProcess();
+	}
+}
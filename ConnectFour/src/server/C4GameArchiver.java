@@ -0,0 +1,122 @@
+package server;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import archive.C4ArchiveWriter;
+import archive.C4GameRecord;
+
+import logging.C4Log;
+
+/**
+ * Archives every game finished on the server. Sessions only queue their
+ * finished games; a single archiving thread feeds them to the archive writer,
+ * so compressing a segment never delays a session.
+ * 
+ * Each run of the server writes its own archive file, named after the time
+ * the server started, in the archive directory.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.1
+ */
+public class C4GameArchiver implements Runnable {
+
+	// record queued to stop the archiving thread
+	private static final C4GameRecord END_OF_GAMES = new C4GameRecord(
+			new byte[0], C4GameRecord.ABANDONED, 0, 0, 0);
+
+	private File file; // archive being written
+	private C4ArchiveWriter writer;
+	private BlockingQueue<C4GameRecord> finishedGames;
+	private Thread thread;
+
+	/**
+	 * Creates a C4GameArchiver object writing a new archive in a directory
+	 * 
+	 * @param directory
+	 *            Directory of the archives
+	 * @throws IOException
+	 *             If the archive could not be created
+	 */
+	public C4GameArchiver(File directory) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Cannot create archive directory "
+					+ directory);
+
+		String name = new SimpleDateFormat("yyyyMMdd-HHmmss")
+				.format(new Date());
+		this.file = new File(directory, "games-" + name + ".c4a");
+		this.writer = new C4ArchiveWriter(file);
+		this.finishedGames = new LinkedBlockingQueue<C4GameRecord>();
+	}
+
+	/**
+	 * Starts the archiving thread
+	 */
+	public void start() {
+		thread = new Thread(this, "C4GameArchiver");
+		thread.setDaemon(true);
+		thread.start();
+		C4Log.info("Archiving games to {}", file);
+	}
+
+	/**
+	 * Queues a finished game to be archived
+	 * 
+	 * @param record
+	 *            Game to be archived
+	 */
+	public void archive(C4GameRecord record) {
+		finishedGames.add(record);
+	}
+
+	/**
+	 * Archives the games still queued and closes the archive
+	 */
+	public void stop() {
+		finishedGames.add(END_OF_GAMES);
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Loop of the archiving thread
+	 */
+	@Override
+	public void run() {
+		boolean failed = false; // games are dropped once the archive failed
+
+		try {
+			for (;;) {
+				C4GameRecord record = finishedGames.take();
+				if (record == END_OF_GAMES)
+					break;
+
+				if (!failed)
+					try {
+						writer.write(record);
+					} catch (IOException e) {
+						C4Log.error("Error archiving games: {}", e.getMessage());
+						failed = true;
+					}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		try {
+			writer.close();
+			C4Log.info("Archived {} games to {}", writer.getRecordCount(),
+					file);
+		} catch (IOException e) {
+			C4Log.error("Error closing game archive.");
+		}
+	}
+}
@@ -0,0 +1,222 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import archive.C4GameRecord;
+
+/**
+ * Feed of a game being played on the server that spectators can watch. The
+ * threads playing the game only append moves and set the status, which costs
+ * the same however many spectators are watching. Encoding the events and
+ * writing them to spectators is done by the spectator server's thread.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4GameFeed {
+
+	// status of the game, a final status is also the outcome of the game in
+	// the archive
+	public static final byte IN_PROGRESS = 0,
+			FIRST_PLAYER_WON = (byte) C4GameRecord.FIRST_PLAYER_WON,
+			SECOND_PLAYER_WON = (byte) C4GameRecord.SECOND_PLAYER_WON,
+			DRAW = (byte) C4GameRecord.DRAW,
+			ABANDONED = (byte) C4GameRecord.ABANDONED;
+
+	private final int gameId; // ID spectators use to join the game
+	private final C4SpectatorServer spectatorServer;
+
+	// columns played so far, published by the volatile move count
+	private final byte[] moves;
+	private volatile int moveCount;
+	private volatile byte status;
+
+	// number of spectators, only changed by the spectator server's thread
+	private volatile int spectatorCount;
+
+	// state below is only used by the spectator server's thread
+
+	// spectators watching the game
+	final List<Spectator> spectators = new ArrayList<Spectator>();
+
+	// move events encoded once and shared by every spectator
+	private final ByteBuffer[] encodedMoves;
+
+	// last snapshot encoded and the number of moves it contains
+	private ByteBuffer snapshot;
+	private int snapshotMoveCount = -1;
+	private byte snapshotStatus;
+
+	/**
+	 * Creates a C4GameFeed object for a new game
+	 * 
+	 * @param gameId
+	 *            ID of the game
+	 * @param spectatorServer
+	 *            Spectator server broadcasting the game
+	 */
+	C4GameFeed(int gameId, C4SpectatorServer spectatorServer) {
+		this.gameId = gameId;
+		this.spectatorServer = spectatorServer;
+		this.moves = new byte[42];
+		this.encodedMoves = new ByteBuffer[42];
+		this.moveCount = 0;
+		this.status = IN_PROGRESS;
+	}
+
+	/**
+	 * Returns the ID spectators use to join the game
+	 * 
+	 * @return ID of the game
+	 */
+	public int getGameId() {
+		return gameId;
+	}
+
+	/**
+	 * Adds a move to the feed. Must be called by the game's threads in the
+	 * order moves are played.
+	 * 
+	 * @param col
+	 *            Column played
+	 */
+	public void moveMade(int col) {
+		int count = moveCount;
+		if (count == moves.length || status != IN_PROGRESS)
+			return;
+
+		moves[count] = (byte) col;
+		moveCount = count + 1; // publishes the move to the spectator thread
+		spectatorServer.feedChanged(this);
+	}
+
+	/**
+	 * Ends the feed with the final status of the game
+	 * 
+	 * @param finalStatus
+	 *            Status the game ended with
+	 */
+	public void finish(byte finalStatus) {
+		if (status != IN_PROGRESS)
+			return;
+
+		status = finalStatus;
+		spectatorServer.feedChanged(this);
+	}
+
+	/**
+	 * Returns whether the game is over
+	 * 
+	 * @return True if the game has a final status
+	 */
+	public boolean isFinished() {
+		return status != IN_PROGRESS;
+	}
+
+	/**
+	 * Returns the number of moves published to spectators
+	 * 
+	 * @return Number of moves played
+	 */
+	int getMoveCount() {
+		return moveCount;
+	}
+
+	/**
+	 * Returns the status of the game
+	 * 
+	 * @return Status of the game
+	 */
+	byte getStatus() {
+		return status;
+	}
+
+	/**
+	 * Returns the number of spectators watching the game
+	 * 
+	 * @return Number of spectators
+	 */
+	int getSpectatorCount() {
+		return spectatorCount;
+	}
+
+	/**
+	 * Counts a spectator joining the game
+	 */
+	void spectatorAdded() {
+		spectatorCount++;
+	}
+
+	/**
+	 * Counts a spectator leaving the game
+	 */
+	void spectatorRemoved() {
+		spectatorCount--;
+	}
+
+	/**
+	 * Returns the shared, read-only frame of a move: 0x11, move number, column.
+	 * Only called by the spectator server's thread.
+	 * 
+	 * @param index
+	 *            Index of the move
+	 * @return Frame of the move, positioned at its start
+	 */
+	ByteBuffer getMoveFrame(int index) {
+		if (encodedMoves[index] == null) {
+			ByteBuffer frame = ByteBuffer.allocateDirect(3);
+			frame.put((byte) 0x11).put((byte) (index + 1)).put(moves[index]);
+			frame.flip();
+			encodedMoves[index] = frame.asReadOnlyBuffer();
+		}
+		return encodedMoves[index].duplicate();
+	}
+
+	/**
+	 * Returns the shared, read-only snapshot of the game: 0x10, status, number
+	 * of moves, then the columns packed two per byte. Only called by the
+	 * spectator server's thread.
+	 * 
+	 * @param count
+	 *            Number of moves in the snapshot
+	 * @param currentStatus
+	 *            Status of the game in the snapshot
+	 * @return Frame of the snapshot, positioned at its start
+	 */
+	ByteBuffer getSnapshotFrame(int count, byte currentStatus) {
+		if (count != snapshotMoveCount || currentStatus != snapshotStatus) {
+			ByteBuffer frame = ByteBuffer.allocateDirect(3 + (count + 1) / 2);
+			frame.put((byte) 0x10).put(currentStatus).put((byte) count);
+			for (int i = 0; i < count; i += 2) {
+				int second = i + 1 < count ? moves[i + 1] : 0;
+				frame.put((byte) (moves[i] << 4 | second));
+			}
+			frame.flip();
+
+			snapshot = frame.asReadOnlyBuffer();
+			snapshotMoveCount = count;
+			snapshotStatus = currentStatus;
+		}
+		return snapshot.duplicate();
+	}
+
+	/**
+	 * Spectator of a game, only used by the spectator server's thread
+	 */
+	static class Spectator {
+		final SocketChannel channel;
+		C4GameFeed feed; // game watched, null until the ID was received
+		ByteBuffer request = ByteBuffer.allocate(4); // ID of the game
+		ByteBuffer pending; // frame partially written to the spectator
+		int sentMoves; // number of moves sent to the spectator
+		byte sentStatus = IN_PROGRESS; // last status sent to the spectator
+		boolean needsSnapshot = true; // spectator must be resynchronized
+
+		Spectator(SocketChannel channel) {
+			this.channel = channel;
+		}
+	}
+}
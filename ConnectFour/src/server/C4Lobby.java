@@ -0,0 +1,143 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Matchmaking lobby pairing clients who want to play against another human.
+ * Waiting players are kept in rating buckets; a bucket holds at most one
+ * waiting player since a second one is paired with the first right away.
+ * 
+ * Joining and leaving are lock-free: a player takes a waiting opponent out of
+ * a bucket, or parks itself in an empty one, with a single compare-and-set.
+ * Pairing therefore costs a handful of atomic operations however many
+ * players are connected. Two players parking at the same time in
+ * neighbouring buckets could each miss the other, so a player that parked
+ * looks at the neighbouring buckets again and, if someone waits there,
+ * leaves its bucket to join again.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.1
+ */
+public class C4Lobby {
+
+	// number of rating buckets, ratings above the last bucket are clamped
+	public static final int RATING_BUCKETS = 8;
+
+	// how many buckets away from its own a player may find an opponent
+	private static final int BUCKET_SPREAD = 1;
+
+	// player waiting in each bucket, null when the bucket is empty
+	private final AtomicReferenceArray<C4ServerSession> waiting;
+
+	/**
+	 * Creates an empty C4Lobby
+	 */
+	public C4Lobby() {
+		waiting = new AtomicReferenceArray<C4ServerSession>(RATING_BUCKETS);
+	}
+
+	/**
+	 * Pairs a player with a waiting opponent of similar rating, or parks the
+	 * player until an opponent joins.
+	 * 
+	 * @param player
+	 *            Session of the player joining the lobby
+	 * @param rating
+	 *            Rating bucket of the player
+	 * @return Opponent the player was paired with, or null if the player is
+	 *         now waiting in the lobby
+	 */
+	public C4ServerSession join(C4ServerSession player, int rating) {
+		int bucket = clampRating(rating);
+
+		for (;;) {
+			// look for an opponent in the player's bucket first, then in the
+			// neighbouring ones
+			for (int distance = 0; distance <= BUCKET_SPREAD; distance++) {
+				C4ServerSession opponent = take(bucket - distance, player);
+				if (opponent == null && distance > 0)
+					opponent = take(bucket + distance, player);
+				if (opponent != null)
+					return opponent;
+			}
+
+			// nobody to play with, wait in the player's bucket unless another
+			// player parked there in the meantime
+			if (!waiting.compareAndSet(bucket, null, player))
+				continue;
+
+			// a player parking next door meanwhile may have missed this one,
+			// join again to take them unless this one was taken first
+			if (!hasNeighbour(bucket, player)
+					|| !waiting.compareAndSet(bucket, player, null))
+				return null;
+		}
+	}
+
+	/**
+	 * Returns whether another player waits in a bucket next to a player's
+	 * 
+	 * @param bucket
+	 *            Bucket of the player
+	 * @param player
+	 *            Player looking for an opponent
+	 * @return True if a neighbouring bucket holds a player
+	 */
+	private boolean hasNeighbour(int bucket, C4ServerSession player) {
+		for (int distance = 1; distance <= BUCKET_SPREAD; distance++)
+			for (int neighbour = bucket - distance; neighbour <= bucket
+					+ distance; neighbour += 2 * distance)
+				if (neighbour >= 0 && neighbour < RATING_BUCKETS) {
+					C4ServerSession other = waiting.get(neighbour);
+					if (other != null && other != player)
+						return true;
+				}
+		return false;
+	}
+
+	/**
+	 * Removes a player waiting in the lobby
+	 * 
+	 * @param player
+	 *            Session of the player leaving
+	 * @param rating
+	 *            Rating bucket the player joined with
+	 * @return True if the player was still waiting, false if it had already
+	 *         been paired
+	 */
+	public boolean leave(C4ServerSession player, int rating) {
+		return waiting.compareAndSet(clampRating(rating), player, null);
+	}
+
+	/**
+	 * Takes the player waiting in a bucket, if any
+	 * 
+	 * @param bucket
+	 *            Bucket to take a player from
+	 * @param player
+	 *            Player looking for an opponent, never taken from the bucket
+	 * @return Player taken from the bucket, or null if it was empty
+	 */
+	private C4ServerSession take(int bucket, C4ServerSession player) {
+		if (bucket < 0 || bucket >= RATING_BUCKETS)
+			return null;
+
+		C4ServerSession opponent = waiting.get(bucket);
+		if (opponent != null && opponent != player
+				&& waiting.compareAndSet(bucket, opponent, null))
+			return opponent;
+
+		return null;
+	}
+
+	/**
+	 * Clamps a rating to the range of the buckets
+	 * 
+	 * @param rating
+	 *            Rating sent by the client
+	 * @return Index of the rating's bucket
+	 */
+	private static int clampRating(int rating) {
+		return Math.max(0, Math.min(RATING_BUCKETS - 1, rating));
+	}
+}
@@ -0,0 +1,209 @@
+package server;
+
+import gameExceptions.C4InvalidCheckWinException;
+import gameExceptions.C4InvalidMoveException;
+import gameLogic.C4Game;
+
+import archive.C4GameRecord;
+
+/**
+ * Game between two human players paired by the lobby. Every move is validated
+ * against a shared C4Game and relayed to the opponent with a frame pushed
+ * directly on the opponent's socket by the thread of the player who moved, so
+ * no other thread is involved in a move. Both players' move clocks are
+ * started and stopped while holding the match's lock, so a move and the
+ * opponent's reply, played on two threads, cannot leave a clock running out
+ * of turn.
+ * 
+ * Frames pushed by the server to the players:
+ * 0x06 0x00 paired, you move first / 0x06 0x01 paired, opponent moves first,
+ * 0x00 col opponent played col, 0x03 col opponent won playing col,
+ * 0x04 col opponent filled the board playing col, 0x02 0x00 you won,
+ * 0x07 0x00 you filled the board, 0x07 0x01 opponent left the match.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.3
+ */
+public class C4Match {
+
+	// game shared by both players, the first player plays with PLAYER_ID and
+	// the second with SERVER_ID
+	private C4Game game;
+
+	private C4ServerSession firstPlayer, secondPlayer;
+	private C4ServerSession playerToMove; // player whose turn it is
+	private boolean finished; // boolean indicating the match is over
+
+	// feed broadcasting the match to spectators
+	private C4GameFeed feed;
+
+	// server archiving the match once it is over
+	private C4Server server;
+	private long startTime; // time the match started
+
+	/**
+	 * Creates a C4Match object between two paired players
+	 * 
+	 * @param firstPlayer
+	 *            Player making the first move
+	 * @param secondPlayer
+	 *            Player making the second move
+	 * @param feed
+	 *            Feed broadcasting the match to spectators
+	 * @param server
+	 *            Server archiving the match once it is over
+	 */
+	public C4Match(C4ServerSession firstPlayer, C4ServerSession secondPlayer,
+			C4GameFeed feed, C4Server server) {
+		this.startTime = System.currentTimeMillis();
+		this.game = new C4Game(server.newGameSeed(startTime));
+		this.firstPlayer = firstPlayer;
+		this.secondPlayer = secondPlayer;
+		this.playerToMove = firstPlayer;
+		this.finished = false;
+		this.feed = feed;
+		this.server = server;
+	}
+
+	/**
+	 * Starts the match, telling each player who moves first and starting the
+	 * first player's clock, unless a player already left it. The frames are
+	 * written outside of the lock, so a slow player does not hold up the
+	 * other.
+	 */
+	public void start() {
+		synchronized (this) {
+			if (finished)
+				return;
+			firstPlayer.startMoveClock();
+		}
+
+		firstPlayer.pushMessage(new byte[] { 0x06, 0x00 });
+		secondPlayer.pushMessage(new byte[] { 0x06, 0x01 });
+	}
+
+	/**
+	 * Plays a player's move on the shared game and relays it to the opponent.
+	 * 
+	 * @param player
+	 *            Player making the move
+	 * @param col
+	 *            Column played
+	 * @return Message for the player who moved, null if the game goes on
+	 * @throws C4InvalidMoveException
+	 *             If the match is over, it is not the player's turn or the
+	 *             move is not legal
+	 */
+	public byte[] playMove(C4ServerSession player, int col)
+			throws C4InvalidMoveException {
+		C4ServerSession opponent;
+		byte[] opponentMessage, playerMessage = null;
+
+		synchronized (this) {
+			if (finished)
+				throw new C4InvalidMoveException("Match is over.");
+
+			if (player != playerToMove)
+				throw new C4InvalidMoveException("Not the player's turn.");
+
+			int playerId = player == firstPlayer ? C4Game.PLAYER_ID
+					: C4Game.SERVER_ID;
+
+			// make move returns false when the column is full
+			if (!game.makeMove(col, playerId))
+				throw new C4InvalidMoveException("Column is full.");
+
+			opponent = getOpponent(player);
+			feed.moveMade(col);
+
+			try {
+				if (game.checkFourConnected(game.getRowInColumn(col) - 1, col)) {
+					// the player won
+					finish(player == firstPlayer
+							? C4GameFeed.FIRST_PLAYER_WON
+							: C4GameFeed.SECOND_PLAYER_WON);
+					playerMessage = new byte[] { 0x02, 0x00 };
+					opponentMessage = new byte[] { 0x03, (byte) col };
+				} else if (game.getMoveCount() == 42) {
+					// the board is full
+					finish(C4GameFeed.DRAW);
+					playerMessage = new byte[] { 0x07, 0x00 };
+					opponentMessage = new byte[] { 0x04, (byte) col };
+				} else {
+					// opponent's turn
+					playerToMove = opponent;
+					opponentMessage = new byte[] { 0x00, (byte) col };
+				}
+			} catch (C4InvalidCheckWinException e) {
+				throw new C4InvalidMoveException(e.getMessage(), e);
+			}
+
+			// the move was accepted, the clock passes to the opponent
+			player.stopMoveClock();
+			if (!finished)
+				opponent.startMoveClock();
+		}
+
+		// relay the move outside of the lock, straight to the opponent
+		opponent.pushMessage(opponentMessage);
+
+		return playerMessage;
+	}
+
+	/**
+	 * Removes a player from the match, which ends it and tells the opponent
+	 * they were left alone.
+	 * 
+	 * @param player
+	 *            Player leaving the match
+	 */
+	public void leave(C4ServerSession player) {
+		C4ServerSession opponent = getOpponent(player);
+		synchronized (this) {
+			if (finished)
+				return;
+			finish(C4GameFeed.ABANDONED);
+			opponent.stopMoveClock();
+		}
+
+		opponent.pushMessage(new byte[] { 0x07, 0x01 });
+	}
+
+	/**
+	 * Returns whether the match is over
+	 * 
+	 * @return True if the match was won, drawn or left
+	 */
+	public synchronized boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * Ends the match, closing its feed and archiving it. Must be called while
+	 * holding the match's lock.
+	 * 
+	 * @param status
+	 *            Final status of the match
+	 */
+	private void finish(byte status) {
+		finished = true;
+		feed.finish(status);
+
+		// a match left before any move is not worth keeping
+		if (game.getMoveCount() > 0)
+			server.archiveGame(new C4GameRecord(game.getMoves(), status,
+					C4GameRecord.HUMAN_OPPONENT, startTime, System
+							.currentTimeMillis()));
+	}
+
+	/**
+	 * Returns the opponent of a player of the match
+	 * 
+	 * @param player
+	 *            Player of the match
+	 * @return Opponent of the player
+	 */
+	private C4ServerSession getOpponent(C4ServerSession player) {
+		return player == firstPlayer ? secondPlayer : firstPlayer;
+	}
+}
@@ -0,0 +1,520 @@
+package server;
+
+import gameExceptions.C4InvalidCheckWinException;
+import gameExceptions.C4InvalidMessageException;
+import gameExceptions.C4InvalidMoveException;
+import gameLogic.C4Game;
+
+import archive.C4GameRecord;
+
+import engine.C4Engine;
+import engine.C4EngineSelector;
+
+import logging.C4Log;
+
+import monitoring.C4ProtocolErrorEvent;
+import monitoring.C4SessionEvent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves many games against the AI over a single client connection. A
+ * session becomes multiplexed when its client sends 0x0A 0x00 before playing,
+ * which the server acknowledges with 0x0A 0x00. From then on every frame in
+ * both directions is 4 bytes long: the 2 byte big-endian ID of the game,
+ * chosen by the client, followed by a message of the usual protocol.
+ * 
+ * A game is started with 0x02 0x00, played with 0x00 col and ended with
+ * 0x02 0x01, which only ends that game; the connection closing ends them all.
+ * 0x0B index chooses the engine of the games then started under the ID.
+ * The server replies as it would on a connection of its own. Matches,
+ * analyses and resuming are not available, a refused message being answered
+ * with 0x0A 0x01 for its game, in order with the game's other replies.
+ * 
+ * The session's thread only reads frames and queues them to their game. Each
+ * game with queued messages is run on the server's multiplex workers one
+ * message at a time, going back to the end of the workers' queue if more are
+ * waiting, so games are served in turn however many messages a single game
+ * queues, and a game's messages are still handled in order. A game with
+ * too many messages queued refuses the next ones, the refusals being queued
+ * too so the client matches every reply to its message, and a client that
+ * keeps sending regardless is disconnected.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.4
+ */
+public class C4MultiplexSession implements Runnable {
+
+	// length of every frame of a multiplexed session
+	private static final int FRAME_SIZE = 4;
+
+	// messages a single game may have queued, more being refused
+	private static final int MAXIMUM_QUEUED_MESSAGES = 16;
+
+	// message queued to every game when the connection is gone
+	private static final byte[] CLOSE_MESSAGE = new byte[0];
+
+	// message queued in place of a message refused as too many were queued,
+	// up to as many again as the messages a game may have queued
+	private static final byte[] REFUSED_MESSAGE = new byte[0];
+
+	private Socket clientSocket; // socket for the client
+	private InputStream in;
+	private OutputStream out;
+
+	// server running the session, holding the services shared by sessions
+	private C4Server server;
+
+	// timer wheel tracking the idle timeout
+	private C4TimerWheel timerWheel;
+	private long idleTimeoutMillis;
+	private volatile long lastActivityMillis;
+	private volatile C4TimerWheel.Timeout idleTimer;
+
+	// boolean indicating the connection is over
+	private volatile boolean sessionEnded;
+
+	// games of the session by ID, only touched by the session's thread
+	private Map<Integer, MultiplexedGame> games;
+
+	// flight recorder event of the session, carried over from the session
+	// the client switched from, and the errors counted by the workers
+	private C4SessionEvent sessionEvent;
+	private AtomicInteger protocolErrors;
+	private volatile String endReason;
+
+	// lock guarding writes to the client, which come from every worker
+	private final Object writeLock = new Object();
+
+	/**
+	 * Creates a C4MultiplexSession object for a client that asked for it
+	 * 
+	 * @param socket
+	 *            Socket of the client
+	 * @param server
+	 *            Server running the session
+	 * @param sessionEvent
+	 *            Flight recorder event of the session, begun when the client
+	 *            connected
+	 */
+	C4MultiplexSession(Socket socket, C4Server server,
+			C4SessionEvent sessionEvent) {
+		this.clientSocket = socket;
+		this.server = server;
+		this.timerWheel = server.getTimerWheel();
+		this.idleTimeoutMillis = server.getIdleTimeoutMillis();
+		this.games = new HashMap<Integer, MultiplexedGame>();
+		this.sessionEvent = sessionEvent;
+		this.protocolErrors = new AtomicInteger();
+	}
+
+	/**
+	 * Reads the frames of the client until the connection is closed, then
+	 * ends every game of the session
+	 */
+	@Override
+	public void run() {
+		try {
+			in = clientSocket.getInputStream();
+			out = clientSocket.getOutputStream();
+		} catch (IOException e) {
+			C4Log.error("Error creating Input/Output streams.");
+			sessionEnded = true;
+		}
+
+		lastActivityMillis = timerWheel.currentTimeMillis();
+		scheduleIdleTimer(idleTimeoutMillis);
+
+		byte[] frame = new byte[FRAME_SIZE];
+		while (!sessionEnded) {
+			try {
+				readFully(frame);
+			} catch (IOException e) {
+				if (!sessionEnded)
+					C4Log.warn("Error receiving messages.");
+				break;
+			}
+
+			lastActivityMillis = timerWheel.currentTimeMillis();
+			sessionEvent.messages++;
+
+			int gameId = (frame[0] & 0xff) << 8 | (frame[1] & 0xff);
+			MultiplexedGame game = games.get(gameId);
+			if (game == null) {
+				game = new MultiplexedGame(gameId);
+				games.put(gameId, game);
+			}
+			if (frame[2] == 0x02 && frame[3] == 0x00)
+				sessionEvent.games++;
+
+			if (!game.queue(new byte[] { frame[2], frame[3] })) {
+				// the game's worker replies once earlier messages are handled
+				recordRefusal(gameId, frame[2], frame[3],
+						"Too many messages queued for the game.");
+				if (!game.queue(REFUSED_MESSAGE)) {
+					C4Log.warn("Closing multiplexed session with {}, too many "
+							+ "messages refused", clientSocket.getInetAddress()
+							.getHostAddress());
+					endReason = C4SessionEvent.TOO_MANY_REFUSED;
+					break;
+				}
+			}
+		}
+
+		// connection is over, every game ends on its worker
+		sessionEnded = true;
+		if (idleTimer != null)
+			idleTimer.cancel();
+		for (MultiplexedGame game : games.values())
+			game.queue(CLOSE_MESSAGE);
+		C4Log.info("Multiplexed session with {} ended, {} games",
+				clientSocket.getInetAddress().getHostAddress(),
+				sessionEvent.games);
+		closeSocket();
+		recordSessionEnd();
+	}
+
+	/**
+	 * Reads a frame from the client
+	 * 
+	 * @param frame
+	 *            Buffer receiving the frame
+	 * @throws IOException
+	 *             If the connection is closed before the frame is received
+	 */
+	private void readFully(byte[] frame) throws IOException {
+		int receivedMessageSize, totalBytesReceived = 0;
+
+		while (totalBytesReceived < frame.length) {
+			if ((receivedMessageSize = in.read(frame, totalBytesReceived,
+					frame.length - totalBytesReceived)) == -1)
+				throw new SocketException("Connection closed prematurely.");
+			totalBytesReceived += receivedMessageSize;
+		}
+	}
+
+	/**
+	 * Schedules the idle timeout of the session, as C4ServerSession does
+	 * 
+	 * @param delayMillis
+	 *            Delay before checking the session for inactivity
+	 */
+	private void scheduleIdleTimer(long delayMillis) {
+		idleTimer = timerWheel.schedule(new Runnable() {
+			public void run() {
+				if (sessionEnded)
+					return;
+
+				long idleMillis = timerWheel.currentTimeMillis()
+						- lastActivityMillis;
+
+				if (idleMillis >= idleTimeoutMillis) {
+					C4Log.info("Closing idle session with {}", clientSocket
+							.getInetAddress().getHostAddress());
+					endReason = C4SessionEvent.IDLE_TIMEOUT;
+					sessionEnded = true;
+					try {
+						clientSocket.close();
+					} catch (IOException e) {
+						C4Log.warn("Error closing client socket.");
+					}
+				} else
+					scheduleIdleTimer(idleTimeoutMillis - idleMillis);
+			}
+		}, delayMillis);
+	}
+
+	/**
+	 * Sends a message of a game to the client
+	 * 
+	 * @param gameId
+	 *            ID of the game
+	 * @param message
+	 *            2 byte message of the game
+	 */
+	private void sendMessage(int gameId, byte[] message) {
+		byte[] frame = new byte[] { (byte) (gameId >>> 8), (byte) gameId,
+				message[0], message[1] };
+		try {
+			synchronized (writeLock) {
+				out.write(frame);
+			}
+		} catch (IOException e) {
+			if (!sessionEnded)
+				C4Log.warn("Failed to send message to client");
+		}
+	}
+
+	/**
+	 * Answers a refused message of a game with 0x0A 0x01, recording it in a
+	 * flight recorder event
+	 * 
+	 * @param gameId
+	 *            ID of the game
+	 * @param first
+	 *            First byte of the refused message
+	 * @param second
+	 *            Second byte of the refused message
+	 * @param error
+	 *            Reason the message was refused
+	 */
+	private void refuse(int gameId, byte first, byte second, String error) {
+		recordRefusal(gameId, first, second, error);
+		sendMessage(gameId, new byte[] { 0x0A, 0x01 });
+	}
+
+	/**
+	 * Logs a refused message of a game and records it in a flight recorder
+	 * event, without answering it
+	 * 
+	 * @param gameId
+	 *            ID of the game
+	 * @param first
+	 *            First byte of the refused message
+	 * @param second
+	 *            Second byte of the refused message
+	 * @param error
+	 *            Reason the message was refused
+	 */
+	private void recordRefusal(int gameId, byte first, byte second,
+			String error) {
+		C4Log.log(C4Log.WARN, "Refused message from {} for game {}: {}",
+				clientSocket.getInetAddress().getHostAddress(), gameId, error);
+		protocolErrors.incrementAndGet();
+
+		C4ProtocolErrorEvent event = new C4ProtocolErrorEvent();
+		if (event.shouldCommit()) {
+			event.clientAddress = clientSocket.getInetAddress()
+					.getHostAddress();
+			event.message = String.format("%04x %02x %02x", gameId, first,
+					second);
+			event.error = error;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Commits the flight recorder event of the session once it is over
+	 */
+	private void recordSessionEnd() {
+		sessionEvent.end();
+		if (sessionEvent.shouldCommit()) {
+			sessionEvent.clientAddress = clientSocket.getInetAddress()
+					.getHostAddress();
+			sessionEvent.protocolErrors += protocolErrors.get();
+			sessionEvent.endReason = endReason != null ? endReason
+					: C4SessionEvent.CONNECTION_LOST;
+			sessionEvent.commit();
+		}
+	}
+
+	/**
+	 * Closes the socket and its input/output streams
+	 */
+	private void closeSocket() {
+		try {
+			if (in != null)
+				in.close();
+			if (out != null)
+				out.close();
+			clientSocket.close();
+		} catch (IOException e) {
+			C4Log.warn("Error closing client socket.");
+		}
+	}
+
+	/**
+	 * Game of the session, run on the multiplex workers one message at a
+	 * time. Its state is only touched by the worker running it, a game never
+	 * running on two workers at once.
+	 */
+	private class MultiplexedGame implements Runnable {
+		private final int gameId;
+
+		// messages waiting to be handled and whether the game is queued to
+		// the workers, both guarded by the game
+		private final ArrayDeque<byte[]> inbox;
+		private boolean scheduled;
+
+		// game played, its feed and the time it started, null when no game
+		// is in progress
+		private C4Game game;
+		private C4GameFeed feed;
+		private long gameStartTime;
+
+		// engine playing the game and the index of the engine the client
+		// asked for
+		private C4Engine engine;
+		private int enginePreference;
+
+		private MultiplexedGame(int gameId) {
+			this.gameId = gameId;
+			this.inbox = new ArrayDeque<byte[]>();
+			this.enginePreference = C4EngineSelector.NO_PREFERENCE;
+		}
+
+		/**
+		 * Queues a message to the game, handing the game to the workers
+		 * unless it is already waiting for one
+		 * 
+		 * @param message
+		 *            Message of the client, REFUSED_MESSAGE or CLOSE_MESSAGE
+		 * @return False if too many messages are queued already
+		 */
+		private boolean queue(byte[] message) {
+			int limit = message == REFUSED_MESSAGE ? 2 * MAXIMUM_QUEUED_MESSAGES
+					: MAXIMUM_QUEUED_MESSAGES;
+			synchronized (this) {
+				if (message != CLOSE_MESSAGE && inbox.size() >= limit)
+					return false;
+				inbox.add(message);
+				if (scheduled)
+					return true;
+				scheduled = true;
+			}
+			server.getMultiplexWorkers().execute(this);
+			return true;
+		}
+
+		/**
+		 * Handles the oldest queued message, then goes back to the end of
+		 * the workers' queue if another one is waiting
+		 */
+		@Override
+		public void run() {
+			byte[] message;
+			synchronized (this) {
+				message = inbox.poll();
+			}
+
+			if (message == CLOSE_MESSAGE)
+				abandonGame();
+			else if (message == REFUSED_MESSAGE)
+				sendMessage(gameId, new byte[] { 0x0A, 0x01 });
+			else {
+				try {
+					byte[] reply = interpretMessage(message);
+					if (reply != null)
+						sendMessage(gameId, reply);
+				} catch (C4InvalidMessageException | C4InvalidMoveException e) {
+					refuse(gameId, message[0], message[1], e.getMessage());
+				}
+			}
+
+			synchronized (this) {
+				if (inbox.isEmpty()) {
+					scheduled = false;
+					return;
+				}
+			}
+			server.getMultiplexWorkers().execute(this);
+		}
+
+		/**
+		 * Interprets a message of the game, as C4ServerSession does for a
+		 * game against the AI
+		 * 
+		 * @param message
+		 *            Message to be interpreted
+		 * @return Reply to the client, null if none
+		 * @throws C4InvalidMessageException
+		 *             If the message is invalid
+		 * @throws C4InvalidMoveException
+		 *             If the move is invalid
+		 */
+		private byte[] interpretMessage(byte[] message)
+				throws C4InvalidMessageException, C4InvalidMoveException {
+			if (message[0] == 0x00) {
+				if (game == null || feed.isFinished())
+					throw new C4InvalidMoveException("No game is being played.");
+
+				// user makes a move at a specified column
+				if (!game.makeMove(message[1], C4Game.PLAYER_ID))
+					throw new C4InvalidMoveException("Column is full.");
+				feed.moveMade(message[1]);
+				try {
+					if (game.checkFourConnected(
+							game.getRowInColumn(message[1]) - 1, message[1])) {
+						endGame(C4GameFeed.FIRST_PLAYER_WON);
+						return new byte[] { 0x02, 0x00 };
+					}
+				} catch (C4InvalidCheckWinException e) {
+					C4Log.error(e.getMessage());
+				}
+
+				// server makes a move in response to user's play
+				byte[] reply = engine.makeMove(game);
+				feed.moveMade(reply[1]);
+				if (reply[0] == 0x03)
+					endGame(C4GameFeed.SECOND_PLAYER_WON);
+				else if (reply[0] == 0x04)
+					endGame(C4GameFeed.DRAW);
+				return reply;
+			} else if (message[0] == 0x02 && message[1] == 0x00) {
+				// client wants to play a new game under this ID
+				abandonGame();
+				gameStartTime = System.currentTimeMillis();
+				game = new C4Game(server.newGameSeed(gameStartTime));
+				engine = server.getEngines().getEngine(
+						server.getEngines().select(enginePreference));
+				feed = server.getSpectatorServer().openFeed();
+				C4Log.log(C4Log.DEBUG, "Game {} started against {}",
+						feed.getGameId(), engine.getName(), null);
+				return new byte[] { 0x01, 0x01 };
+			} else if (message[0] == 0x02 && message[1] == 0x01) {
+				// client is done with this game only
+				abandonGame();
+				return new byte[] { 0x01, 0x02 };
+			} else if (message[0] == 0x0B) {
+				// client chooses the engine of the next games under this ID
+				if (message[1] == (byte) 0xFF)
+					enginePreference = C4EngineSelector.NO_PREFERENCE;
+				else if ((message[1] & 0xff) < server.getEngines()
+						.getEngineCount())
+					enginePreference = message[1] & 0xff;
+				else
+					throw new C4InvalidMessageException("Unknown engine.");
+				return new byte[] { 0x0B, message[1] };
+			} else
+				throw new C4InvalidMessageException(
+						"Message not available in a multiplexed session.");
+		}
+
+		/**
+		 * Ends the game in progress, if any, archiving it if any move was
+		 * played
+		 */
+		private void abandonGame() {
+			if (feed != null && !feed.isFinished()) {
+				if (game.getMoveCount() > 0)
+					endGame(C4GameFeed.ABANDONED);
+				else
+					feed.finish(C4GameFeed.ABANDONED);
+			}
+			game = null;
+			feed = null;
+		}
+
+		/**
+		 * Ends the game with its final status, closing its feed and archiving
+		 * it
+		 * 
+		 * @param status
+		 *            Final status of the game
+		 */
+		private void endGame(byte status) {
+			feed.finish(status);
+			server.archiveGame(new C4GameRecord(game.getMoves(), status,
+					engine.getArchiveConfig(), gameStartTime, System.currentTimeMillis(),
+					game.getSeed()));
+		}
+	}
+}
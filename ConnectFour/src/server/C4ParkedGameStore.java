@@ -0,0 +1,459 @@
+package server;
+
+import gameLogic.C4Position;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Store of the games against the AI whose player went away, kept until the
+ * player comes back with the game's resume token or the game expires. A
+ * parked game holds no session, thread or socket: it is a 64 byte slot of
+ * a direct buffer outside the heap, so a server can keep millions of them
+ * without the garbage collector ever seeing them.
+ * 
+ * The slots form an open addressing hash table keyed by the token, a 64 bit
+ * number whose 16 high bits are the ID of the server that issued it and whose
+ * 48 other bits are random, so it cannot be guessed. A router in front of
+ * several servers reads the ID to send a player coming back to the server
+ * holding the game. A slot holds:
+ * 
+ * 0 token, 0 if the slot is free; 8 time the game expires; 16 time the game
+ * started; 24 index of the engine playing the game (see C4EngineSelector);
+ * 28 unused; 29 number of moves played; 30 moves, two per byte; 56 seed of the
+ * game's random moves.
+ * 
+ * The moves give the position and the order it was played in, which the
+ * archive needs once the game ends. Removed slots are filled by moving back
+ * the slots after them, so lookups never go through deleted entries.
+ * 
+ * The store lives only as long as the server, which takes every game out
+ * with removeAll when it stops, so the games are archived rather than lost.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.4
+ */
+public class C4ParkedGameStore {
+
+	// layout of a slot
+	private static final int SLOT_SIZE = 64;
+	private static final int TOKEN = 0, EXPIRY = 8, START_TIME = 16,
+			ENGINE = 24, MOVE_COUNT = 29,
+			MOVES = 30, SEED = 56;
+
+	// shift taking a token to the ID of the server that issued it
+	private static final int SERVER_ID_SHIFT = 48;
+
+	// largest share of the slots used, so probe sequences stay short
+	private static final double MAXIMUM_LOAD = 0.75;
+
+	// slots swept for expired games before the lock is released
+	private static final int SWEEP_CHUNK = 64 * 1024;
+
+	private final ByteBuffer slots;
+	private final int mask;
+	private final int shift; // shift taking a hashed token to a slot
+	private final int maximumGames;
+	private final long expiryMillis;
+	private final int serverId;
+	private final SecureRandom random;
+
+	private int games;
+
+	/**
+	 * Creates an empty C4ParkedGameStore
+	 * 
+	 * @param sizeBits
+	 *            Base 2 logarithm of the number of slots, each taking 64
+	 *            bytes off the heap
+	 * @param expiryMillis
+	 *            Time a parked game is kept
+	 */
+	public C4ParkedGameStore(int sizeBits, long expiryMillis) {
+		this(sizeBits, expiryMillis, 0);
+	}
+
+	/**
+	 * Creates an empty C4ParkedGameStore whose tokens carry a server ID
+	 * 
+	 * @param sizeBits
+	 *            Base 2 logarithm of the number of slots, each taking 64
+	 *            bytes off the heap
+	 * @param expiryMillis
+	 *            Time a parked game is kept
+	 * @param serverId
+	 *            ID of the server put in the high bits of the tokens, from 0
+	 *            to 65535
+	 */
+	public C4ParkedGameStore(int sizeBits, long expiryMillis, int serverId) {
+		if (sizeBits < 1 || sizeBits > 24)
+			throw new IllegalArgumentException("Parked game store size must "
+					+ "be between 2^1 and 2^24 slots.");
+		if (serverId < 0 || serverId > 0xFFFF)
+			throw new IllegalArgumentException("Server ID must be between 0 "
+					+ "and 65535.");
+
+		this.slots = ByteBuffer.allocateDirect(SLOT_SIZE << sizeBits);
+		this.mask = (1 << sizeBits) - 1;
+		this.shift = 64 - sizeBits;
+		this.maximumGames = (int) ((1 << sizeBits) * MAXIMUM_LOAD);
+		this.expiryMillis = expiryMillis;
+		this.serverId = serverId;
+		this.random = new SecureRandom();
+	}
+
+	/**
+	 * Returns a new resume token, which no game of the store has
+	 * 
+	 * @return Token, never 0
+	 */
+	public long newToken() {
+		long token;
+		do
+			token = (long) serverId << SERVER_ID_SHIFT | random.nextLong()
+					>>> 64 - SERVER_ID_SHIFT;
+		while (token == 0 || contains(token));
+		return token;
+	}
+
+	/**
+	 * Returns the ID of the server that issued a token
+	 * 
+	 * @param token
+	 *            Resume token
+	 * @return Server ID, from 0 to 65535
+	 */
+	public static int getServerId(long token) {
+		return (int) (token >>> SERVER_ID_SHIFT);
+	}
+
+	/**
+	 * Parks a game until it is resumed or expires
+	 * 
+	 * @param token
+	 *            Resume token of the game
+	 * @param game
+	 *            Game to park, which is not over
+	 * @return True if the game was parked, false if the store is full or
+	 *         already holds the token
+	 */
+	public synchronized boolean park(long token, ParkedGame game) {
+		if (token == 0 || games >= maximumGames)
+			return false;
+
+		int index = home(token);
+		long stored;
+		while ((stored = slots.getLong(offset(index) + TOKEN)) != 0) {
+			if (stored == token)
+				return false;
+			index = (index + 1) & mask;
+		}
+
+		int base = offset(index);
+		slots.putLong(base + TOKEN, token);
+		slots.putLong(base + EXPIRY, System.currentTimeMillis()
+				+ expiryMillis);
+		slots.putLong(base + START_TIME, game.startTime);
+		slots.putInt(base + ENGINE, game.engine);
+		slots.put(base + MOVE_COUNT, (byte) game.moves.length);
+		slots.putLong(base + SEED, game.seed);
+		for (int i = 0; i < (C4Position.WIDTH * C4Position.HEIGHT + 1) / 2; i++) {
+			int low = 2 * i < game.moves.length ? game.moves[2 * i] : 0;
+			int high = 2 * i + 1 < game.moves.length ? game.moves[2 * i + 1]
+					: 0;
+			slots.put(base + MOVES + i, (byte) (low | high << 4));
+		}
+		games++;
+		return true;
+	}
+
+	/**
+	 * Takes a game out of the store to resume it. A game that expired but was
+	 * not swept yet is handed to the same consumer as the sweeps.
+	 * 
+	 * @param token
+	 *            Resume token of the game
+	 * @param expired
+	 *            Consumer of the game if it expired, called without the lock
+	 * @return Game parked with the token, null if there is none or it
+	 *         expired
+	 */
+	public ParkedGame resume(long token, Consumer<ParkedGame> expired) {
+		if (token == 0)
+			return null;
+
+		ParkedGame game;
+		boolean gameExpired;
+		synchronized (this) {
+			int index = find(token);
+			if (index < 0)
+				return null;
+
+			game = read(index);
+			gameExpired = slots.getLong(offset(index) + EXPIRY) <= System
+					.currentTimeMillis();
+			remove(index);
+			games--;
+		}
+
+		if (!gameExpired)
+			return game;
+		expired.accept(game);
+		return null;
+	}
+
+	/**
+	 * Removes every game that expired, handing each to a consumer, such as
+	 * the archive. The lock is released every few thousand slots, so parking
+	 * and resuming games wait little for a sweep of a large store.
+	 * 
+	 * @param expired
+	 *            Consumer of the expired games, called without the lock
+	 * @return Number of games expired
+	 */
+	public int expire(Consumer<ParkedGame> expired) {
+		return removeUntil(System.currentTimeMillis(), expired);
+	}
+
+	/**
+	 * Removes every game, expired or not, handing each to a consumer, such as
+	 * the archive when the server stops
+	 * 
+	 * @param removed
+	 *            Consumer of the games, called without the lock
+	 * @return Number of games removed
+	 */
+	public int removeAll(Consumer<ParkedGame> removed) {
+		return removeUntil(Long.MAX_VALUE, removed);
+	}
+
+	/**
+	 * Removes every game expiring by some time, a few thousand slots at a time
+	 * 
+	 * @param time
+	 *            Time by which the games removed expire
+	 * @param removed
+	 *            Consumer of the games removed, called without the lock
+	 * @return Number of games removed
+	 */
+	private int removeUntil(long time, Consumer<ParkedGame> removed) {
+		int count = 0;
+
+		for (int start = 0; start <= mask; start += SWEEP_CHUNK) {
+			List<ParkedGame> chunk = new ArrayList<ParkedGame>();
+
+			synchronized (this) {
+				int end = Math.min(mask + 1, start + SWEEP_CHUNK);
+				int index = start;
+				while (index < end) {
+					int base = offset(index);
+					if (slots.getLong(base + TOKEN) != 0
+							&& slots.getLong(base + EXPIRY) <= time) {
+						chunk.add(read(index));
+						remove(index);
+						games--;
+
+						// a slot moved back into this one is checked too
+						continue;
+					}
+					index++;
+				}
+			}
+
+			for (ParkedGame game : chunk)
+				removed.accept(game);
+			count += chunk.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of games parked
+	 * 
+	 * @return Number of games
+	 */
+	public synchronized int size() {
+		return games;
+	}
+
+	/**
+	 * Returns the number of games the store can hold
+	 * 
+	 * @return Largest number of games
+	 */
+	public int capacity() {
+		return maximumGames;
+	}
+
+	/**
+	 * Returns whether a token is in use
+	 * 
+	 * @param token
+	 *            Token to look for
+	 * @return True if a game is parked with the token
+	 */
+	private synchronized boolean contains(long token) {
+		return find(token) >= 0;
+	}
+
+	/**
+	 * Finds the slot of a token
+	 * 
+	 * @param token
+	 *            Token to look for
+	 * @return Index of the slot, -1 if no slot holds the token
+	 */
+	private int find(long token) {
+		int index = home(token);
+		long stored;
+		while ((stored = slots.getLong(offset(index) + TOKEN)) != 0) {
+			if (stored == token)
+				return index;
+			index = (index + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Frees a slot, moving back the slots after it that would no longer be
+	 * found past the gap
+	 * 
+	 * @param index
+	 *            Index of the slot to free
+	 */
+	private void remove(int index) {
+		int gap = index;
+		int next = index;
+		while (true) {
+			next = (next + 1) & mask;
+			long token = slots.getLong(offset(next) + TOKEN);
+			if (token == 0)
+				break;
+
+			// a slot whose home lies cyclically after the gap, up to itself,
+			// is still found and stays
+			int home = home(token);
+			if (gap <= next ? gap < home && home <= next : gap < home
+					|| home <= next)
+				continue;
+
+			for (int i = 0; i < SLOT_SIZE; i += 8)
+				slots.putLong(offset(gap) + i, slots.getLong(offset(next) + i));
+			gap = next;
+		}
+
+		for (int i = 0; i < SLOT_SIZE; i += 8)
+			slots.putLong(offset(gap) + i, 0);
+	}
+
+	/**
+	 * Reads the game of a slot
+	 * 
+	 * @param index
+	 *            Index of the slot
+	 * @return Game of the slot
+	 */
+	private ParkedGame read(int index) {
+		int base = offset(index);
+		byte[] moves = new byte[slots.get(base + MOVE_COUNT)];
+		for (int i = 0; i < moves.length; i++) {
+			int pair = slots.get(base + MOVES + i / 2);
+			moves[i] = (byte) ((i & 1) == 0 ? pair & 0x0f : pair >> 4 & 0x0f);
+		}
+		return new ParkedGame(moves, slots.getInt(base + ENGINE),
+				slots.getLong(base + START_TIME), slots.getLong(base + SEED));
+	}
+
+	/**
+	 * Returns the slot a token is looked for first
+	 * 
+	 * @param token
+	 *            Token
+	 * @return Index of the slot
+	 */
+	private int home(long token) {
+		// the token is random but for its server ID, the multiplication
+		// spreads the random bits over the high bits
+		return (int) (token * 0x9E3779B97F4A7C15L >>> shift);
+	}
+
+	/**
+	 * Returns the offset of a slot in the buffer
+	 * 
+	 * @param index
+	 *            Index of the slot
+	 * @return Offset of its first byte
+	 */
+	private static int offset(int index) {
+		return index * SLOT_SIZE;
+	}
+
+	/**
+	 * Game against the AI taken out of the store or about to be put in it
+	 */
+	public static final class ParkedGame {
+		private final byte[] moves;
+		private final int engine;
+		private final long startTime;
+		private final long seed;
+
+		/**
+		 * Creates a ParkedGame
+		 * 
+		 * @param moves
+		 *            Columns played in order, the player moving first
+		 * @param engine
+		 *            Index of the engine playing the game, see
+		 *            C4EngineSelector
+		 * @param startTime
+		 *            Time the game started
+		 * @param seed
+		 *            Seed of the game's random moves
+		 */
+		public ParkedGame(byte[] moves, int engine, long startTime, long seed) {
+			this.moves = moves;
+			this.engine = engine;
+			this.startTime = startTime;
+			this.seed = seed;
+		}
+
+		/**
+		 * Returns the moves of the game
+		 * 
+		 * @return Columns played in order
+		 */
+		public byte[] getMoves() {
+			return moves;
+		}
+
+		/**
+		 * Returns the engine playing the game
+		 * 
+		 * @return Index of the engine, see C4EngineSelector
+		 */
+		public int getEngine() {
+			return engine;
+		}
+
+		/**
+		 * Returns the time the game started
+		 * 
+		 * @return Time in milliseconds since the epoch
+		 */
+		public long getStartTime() {
+			return startTime;
+		}
+
+		/**
+		 * Returns the seed of the game's random moves
+		 * 
+		 * @return Seed of the game
+		 */
+		public long getSeed() {
+			return seed;
+		}
+	}
+}
@@ -1,15 +1,32 @@
 package server;
 
 import gameExceptions.C4InvalidMoveException;
+import gameLogic.C4Analyzer;
+import gameLogic.C4TranspositionTable;
 
 import java.net.*;
 import java.io.*;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+
+import archive.C4GameRecord;
+
+import engine.C4Engine;
+import engine.C4EngineSelector;
+import engine.C4SimpleEngine;
+
+import logging.C4Log;
 
 /**
- * Iterative server that will run forever, servicing one client at a time
+ * Server that will run forever, servicing every connected client on its own
+ * session thread
  * 
  * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
- * @version 1.5
+ * @version 1.16
  */
 public class C4Server {
 
@@ -18,6 +35,79 @@ public class C4Server {
 	private int serverPort; // port number
 	private ServerSocket serverSocket; // socket of the server
 
+	// default time a session may stay silent before it is closed
+	public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+	// duration of a tick of the timer wheel
+	private static final long TIMER_TICK_MILLIS = 100;
+
+	// timer wheel shared by every session for their deadlines
+	private C4TimerWheel timerWheel;
+
+	// idle timeout and move clock of every session, 0 disables the clock
+	private long idleTimeoutMillis, moveTimeoutMillis;
+
+	// threads running the sessions of the connected clients
+	private ExecutorService sessionThreads;
+
+	// lobby pairing players who want to play against each other
+	private C4Lobby lobby;
+
+	// server broadcasting games in progress to spectators
+	private C4SpectatorServer spectatorServer;
+
+	// archiver of finished games, null if games are not archived
+	private C4GameArchiver archiver;
+	private File archiveDirectory;
+
+	// engines playing the games against the AI and the policy choosing the
+	// engine of each game, the built-in AI unless others are configured
+	private C4EngineSelector engines;
+
+	// transposition table shared by the searching engines, the file it is
+	// saved to and how often, 0 to only save it on shutdown
+	private C4TranspositionTable transpositionTable;
+	private File tableFile;
+	private long tableSaveIntervalMillis;
+
+	// size of the analyzer's own table when the AI has none, 8 MB
+	private static final int ANALYSIS_TABLE_BITS = 20;
+
+	// analyzer scoring the columns of the players' positions, created on the
+	// first analysis
+	private C4Analyzer analyzer;
+
+	// threads running the games of the multiplexed sessions, as many as the
+	// processors and created on first use
+	private ExecutorService multiplexWorkers;
+
+	// default size of the parked game store, 64K slots taking 4 MB, and
+	// time a parked game is kept
+	public static final int DEFAULT_PARK_BITS = 16;
+	public static final long DEFAULT_PARK_MILLIS = 24 * 60 * 60 * 1000L;
+
+	// time between two sweeps of the parked games for expired ones
+	private static final long PARK_SWEEP_MILLIS = 60 * 1000;
+
+	// games against the AI kept for their player to resume, with the store's
+	// settings until it is created
+	private C4ParkedGameStore parkedGames;
+	private int parkBits = DEFAULT_PARK_BITS;
+	private long parkMillis = DEFAULT_PARK_MILLIS;
+
+	// key the seeds of the server's games are derived from, which lets the
+	// archive store them in a byte
+	private final long seedKey = new SecureRandom().nextLong();
+
+	// archives the parked games that expired or are left when the server
+	// stops as abandoned
+	private final Consumer<C4ParkedGameStore.ParkedGame> parkedGameArchiver =
+			new Consumer<C4ParkedGameStore.ParkedGame>() {
+				public void accept(C4ParkedGameStore.ParkedGame game) {
+					archiveParkedGame(game);
+				}
+			};
+
 	/**
 	 * Creates a C4Server object with a specified port number from which it will
 	 * accept clients.
@@ -26,45 +116,409 @@ public class C4Server {
 	 *            Port number that the server will be accepting clients from
 	 */
 	public C4Server(int port) {
+		this(port, DEFAULT_IDLE_TIMEOUT_MILLIS, 0, port + 1, null);
+	}
+
+	/**
+	 * Creates a C4Server object with a specified port number from which it will
+	 * accept clients, and the timeouts applied to each session.
+	 * 
+	 * @param port
+	 *            Port number that the server will be accepting clients from
+	 * @param idleTimeoutMillis
+	 *            Time without any message after which a session is closed
+	 * @param moveTimeoutMillis
+	 *            Time a player has to make each move, 0 for no move clock
+	 * @param spectatorPort
+	 *            Port number on which spectators connect
+	 * @param archiveDirectory
+	 *            Directory in which finished games are archived, null to not
+	 *            archive games
+	 */
+	public C4Server(int port, long idleTimeoutMillis, long moveTimeoutMillis,
+			int spectatorPort, File archiveDirectory) {
 		this.serverPort = port;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.moveTimeoutMillis = moveTimeoutMillis;
 		byteBuffer = new byte[2];
 		receivedMessageSize = 0;
+		timerWheel = new C4TimerWheel(TIMER_TICK_MILLIS);
+		sessionThreads = Executors.newCachedThreadPool();
+		lobby = new C4Lobby();
+		spectatorServer = new C4SpectatorServer(spectatorPort);
+		this.archiveDirectory = archiveDirectory;
+		engines = new C4EngineSelector(
+				Collections.<C4Engine> singletonList(new C4SimpleEngine()), 0);
 	}
 
 	/**
-	 * Starts the server with an infinite loop that handles clients one at a
-	 * time
+	 * Starts the server with an infinite loop that accepts clients and hands
+	 * each of them to a session thread
 	 */
 	public void start() {
+		// open the client and spectator ports before starting anything else,
+		// saying which one could not be bound
 		try {
-			// create a socket with a specified port number
 			serverSocket = new ServerSocket(serverPort);
+		} catch (IOException e) {
+			C4Log.error("Error listening on port {}: {}", serverPort,
+					e.getMessage());
+			return;
+		}
+		try {
+			spectatorServer.start();
+		} catch (IOException e) {
+			C4Log.error("Error listening for spectators on port {}: {}",
+					spectatorServer.getPort(), e.getMessage());
+			try {
+				serverSocket.close();
+			} catch (IOException closeError) {
+				// the server is not starting anyway
+			}
+			return;
+		}
+
+		try {
+			// start the timer wheel that reaps idle sessions
+			timerWheel.start();
+
+			// warm the searching AI up with the table saved by the last run
+			if (transpositionTable != null && tableFile != null)
+				startTableSnapshots();
+
+			// keep the games of players who went away, until they expire
+			// tokens carry the port so a router finds the server again
+			parkedGames = new C4ParkedGameStore(parkBits, parkMillis,
+					serverPort);
+			scheduleParkSweep();
+
+			// start archiving finished games, closing the archive on shutdown
+			// once the parked games, which go with the process, are archived
+			if (archiveDirectory != null) {
+				archiver = new C4GameArchiver(archiveDirectory);
+				archiver.start();
+				Runtime.getRuntime().addShutdownHook(
+						new Thread(new Runnable() {
+							public void run() {
+								int parked = parkedGames
+										.removeAll(parkedGameArchiver);
+								if (parked > 0)
+									C4Log.info("{} parked games archived on "
+											+ "shutdown", parked);
+								archiver.stop();
+							}
+						}));
+			}
 
 			// display server's IP address for user to know where to connect
-			System.out.println("Server started, listening at "
-					+ InetAddress.getLocalHost().getHostAddress() + " on port "
-					+ serverPort + "\n");
+			C4Log.info("Server started, listening at {} on port {}",
+					InetAddress.getLocalHost().getHostAddress(), serverPort);
 
-			// run forever handling clients one at a time
+			// run forever accepting clients
 			for (;;) {
-				System.out.println("Waiting for connection...");
+				C4Log.debug("Waiting for connection...");
 
 				// block until a single client connects to server
 				Socket clientSocket = serverSocket.accept();
 
-				// display client information that the server is handling
-				System.out.println("Connected! Handling client at "
-						+ clientSocket.getInetAddress().getHostAddress()
-						+ " on port " + serverPort + "\n");
+				// the session logs the client once it knows what it wants
+				C4Log.debug("Connected to {}", clientSocket.getInetAddress()
+						.getHostAddress());
 
 				// create a new server session when client is handled
 				C4ServerSession serverSession = new C4ServerSession(
-						clientSocket);
+						clientSocket, this);
+
+				// run the session on its own thread
+				sessionThreads.execute(serverSession);
 			}
 		} catch (IOException e) {
-			System.out.println("Error connecting to client.");
+			C4Log.error("Error connecting to client.");
 		} catch (C4InvalidMoveException e) {
-			System.out.println(e.getMessage());
+			C4Log.error(e.getMessage());
+		}
+	}
+
+	/**
+	 * Sets the engines playing the games against the AI instead of the
+	 * built-in AI. Must be called before the server starts.
+	 * 
+	 * @param engines
+	 *            Engines of the server and the policy choosing between them
+	 * @param table
+	 *            Transposition table shared by the searching engines, null
+	 *            if none of them searches
+	 */
+	public void setEngines(C4EngineSelector engines, C4TranspositionTable table) {
+		this.engines = engines;
+		this.transpositionTable = table;
+	}
+
+	/**
+	 * Saves the transposition table to a file on shutdown and periodically,
+	 * and restores it from that file on startup. Must be called before the
+	 * server starts.
+	 * 
+	 * @param file
+	 *            File the table is saved to
+	 * @param intervalMillis
+	 *            Time between two saves, 0 to only save on shutdown
+	 */
+	public void setTableSnapshot(File file, long intervalMillis) {
+		this.tableFile = file;
+		this.tableSaveIntervalMillis = intervalMillis;
+	}
+
+	/**
+	 * Sets the size of the store of parked games and how long a game is kept
+	 * in it. Must be called before the server starts.
+	 * 
+	 * @param sizeBits
+	 *            Base 2 logarithm of the number of slots of the store
+	 * @param expiryMillis
+	 *            Time a parked game is kept
+	 */
+	public void setParking(int sizeBits, long expiryMillis) {
+		this.parkBits = sizeBits;
+		this.parkMillis = expiryMillis;
+	}
+
+	/**
+	 * Schedules the next sweep of the parked games, archiving the games that
+	 * expired as abandoned. The sweep itself is handed off the timer wheel
+	 * thread.
+	 */
+	private void scheduleParkSweep() {
+		timerWheel.schedule(new Runnable() {
+			public void run() {
+				sessionThreads.execute(new Runnable() {
+					public void run() {
+						int expired = parkedGames.expire(parkedGameArchiver);
+						if (expired > 0)
+							C4Log.info("{} parked games expired", expired);
+						scheduleParkSweep();
+					}
+				});
+			}
+		}, PARK_SWEEP_MILLIS);
+	}
+
+	/**
+	 * Archives a parked game that expired, or was still parked when the server
+	 * stopped, as abandoned
+	 * 
+	 * @param game
+	 *            Game taken out of the parked game store
+	 */
+	private void archiveParkedGame(C4ParkedGameStore.ParkedGame game) {
+		int engineConfig = engines.getEngine(game.getEngine())
+				.getArchiveConfig();
+		archiveGame(new C4GameRecord(game.getMoves(), C4GameFeed.ABANDONED,
+				engineConfig, game.getStartTime(), System.currentTimeMillis(),
+				game.getSeed()));
+	}
+
+	/**
+	 * Restores the transposition table saved by the last run, then saves it
+	 * on shutdown and on the snapshot interval
+	 */
+	private void startTableSnapshots() {
+		if (tableFile.exists()) {
+			long start = System.nanoTime();
+			try {
+				int restored = transpositionTable.load(tableFile);
+				C4Log.log(C4Log.INFO, "Restored {} positions from {} in {} ms",
+						restored, tableFile, (System.nanoTime() - start) / 1000000);
+			} catch (IOException e) {
+				C4Log.error("Error restoring transposition table: {}",
+						e.getMessage());
+			}
+		}
+
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			public void run() {
+				saveTable();
+			}
+		}));
+
+		if (tableSaveIntervalMillis > 0)
+			scheduleTableSave();
+	}
+
+	/**
+	 * Schedules the next periodic save of the transposition table. The save
+	 * itself is handed off the timer wheel thread.
+	 */
+	private void scheduleTableSave() {
+		timerWheel.schedule(new Runnable() {
+			public void run() {
+				sessionThreads.execute(new Runnable() {
+					public void run() {
+						saveTable();
+						scheduleTableSave();
+					}
+				});
+			}
+		}, tableSaveIntervalMillis);
+	}
+
+	/**
+	 * Saves the transposition table to its file
+	 */
+	private synchronized void saveTable() {
+		long start = System.nanoTime();
+		try {
+			transpositionTable.save(tableFile);
+			C4Log.info("Saved transposition table to {} in {} ms", tableFile,
+					(System.nanoTime() - start) / 1000000);
+		} catch (IOException e) {
+			C4Log.error("Error saving transposition table: {}",
+					e.getMessage());
 		}
 	}
+
+	/**
+	 * Returns the timer wheel on which sessions schedule their deadlines
+	 * 
+	 * @return Timer wheel of the server
+	 */
+	C4TimerWheel getTimerWheel() {
+		return timerWheel;
+	}
+
+	/**
+	 * Returns the time without any message after which a session is closed
+	 * 
+	 * @return Idle timeout in milliseconds
+	 */
+	long getIdleTimeoutMillis() {
+		return idleTimeoutMillis;
+	}
+
+	/**
+	 * Returns the time a player has to make each move
+	 * 
+	 * @return Move clock in milliseconds, 0 if disabled
+	 */
+	long getMoveTimeoutMillis() {
+		return moveTimeoutMillis;
+	}
+
+	/**
+	 * Returns the lobby pairing players against each other
+	 * 
+	 * @return Lobby of the server
+	 */
+	C4Lobby getLobby() {
+		return lobby;
+	}
+
+	/**
+	 * Returns the server broadcasting games to spectators
+	 * 
+	 * @return Spectator server
+	 */
+	C4SpectatorServer getSpectatorServer() {
+		return spectatorServer;
+	}
+
+	/**
+	 * Returns the engines playing the games against the AI
+	 * 
+	 * @return Engines of the server and the policy choosing between them
+	 */
+	C4EngineSelector getEngines() {
+		return engines;
+	}
+
+	/**
+	 * Returns the store of the games parked for their player to resume
+	 * 
+	 * @return Parked game store
+	 */
+	C4ParkedGameStore getParkedGames() {
+		return parkedGames;
+	}
+
+	/**
+	 * Returns the seed of a new game, derived from the server's key and the
+	 * time the game started (see C4GameRecord.deriveSeed)
+	 * 
+	 * @param startTime
+	 *            Time the game started
+	 * @return Seed of the game
+	 */
+	long newGameSeed(long startTime) {
+		return C4GameRecord.deriveSeed(seedKey, startTime);
+	}
+
+	/**
+	 * Takes a parked game out of the store to resume it, archiving it instead
+	 * if it expired
+	 * 
+	 * @param token
+	 *            Resume token of the game
+	 * @return Game parked with the token, null if there is none or it
+	 *         expired
+	 */
+	C4ParkedGameStore.ParkedGame resumeParkedGame(long token) {
+		return parkedGames.resume(token, parkedGameArchiver);
+	}
+
+	/**
+	 * Returns the analyzer scoring the columns of a position, sharing the
+	 * searching engines' table if there is one. Its threads are as many as the
+	 * processors, so analyses never take more than the machine has.
+	 * 
+	 * @return Analyzer of the server
+	 */
+	synchronized C4Analyzer getAnalyzer() {
+		if (analyzer == null) {
+			C4TranspositionTable table = transpositionTable != null
+					? transpositionTable
+					: new C4TranspositionTable(ANALYSIS_TABLE_BITS);
+			analyzer = new C4Analyzer(table, Executors.newFixedThreadPool(
+					Runtime.getRuntime().availableProcessors(),
+					new ThreadFactory() {
+						public Thread newThread(Runnable task) {
+							Thread thread = new Thread(task, "C4Analyzer");
+							thread.setDaemon(true);
+							return thread;
+						}
+					}));
+		}
+		return analyzer;
+	}
+
+	/**
+	 * Returns the workers running the games of the multiplexed sessions. Games
+	 * of every multiplexed connection share them, waiting for a worker in the
+	 * order they have a message to handle.
+	 * 
+	 * @return Multiplex workers of the server
+	 */
+	synchronized ExecutorService getMultiplexWorkers() {
+		if (multiplexWorkers == null) {
+			multiplexWorkers = Executors.newFixedThreadPool(Runtime
+					.getRuntime().availableProcessors(), new ThreadFactory() {
+				public Thread newThread(Runnable task) {
+					Thread thread = new Thread(task, "C4MultiplexWorker");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return multiplexWorkers;
+	}
+
+	/**
+	 * Archives a finished game, if games are archived
+	 * 
+	 * @param record
+	 *            Game to be archived
+	 */
+	void archiveGame(C4GameRecord record) {
+		if (archiver != null)
+			archiver.archive(record);
+	}
 }
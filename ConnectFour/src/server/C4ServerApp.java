@@ -1,30 +1,182 @@
 package server;
 
+import gameLogic.C4TranspositionTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import engine.C4Engine;
+import engine.C4EngineRegistry;
+import engine.C4EngineSelector;
+
+import logging.C4Log;
+
 /**
  * Runs a server for a Connect Four game.
  * 
+ * The server emits flight recorder events for each AI move, session and
+ * refused message (see the monitoring package). They cost next to nothing
+ * unless a recording is started, for instance with
+ * -XX:StartFlightRecording=filename=server.jfr, and can be read with
+ * jfr print --events "connectfour.*" server.jfr.
+ * 
+ * The AI is played by the engines given with -engine name[:depth[:millis]],
+ * found on the class path (see C4EngineProvider), the first being the
+ * default and the client choosing among the others by their order. With
+ * -engine-load n, new games get the engine with the least latency while n
+ * AI moves are in progress. -search depth [millis] is short for -engine
+ * search:depth:millis.
+ * 
+ * Spectators connect on the port after the client port unless another is
+ * given as the fourth argument or with -spectator-port n.
+ * 
  * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
- * @version 1.3
+ * @version 1.10
  */
 public class C4ServerApp {
 
+	// default time budget of a searching AI move and size of the table
+	// shared by the searching engines
+	private static final long DEFAULT_SEARCH_MILLIS = 500;
+	private static final int DEFAULT_TABLE_BITS = 22;
+
 	/**
 	 * Main method to start the server
 	 * 
 	 * @param args
+	 *            Optional port, idle timeout in seconds, move clock in
+	 *            seconds (0 disables the move clock), spectator port and
+	 *            directory in which finished games are archived, followed by
+	 *            any of the options -engine spec, -engine-load n,
+	 *            -search depth [millis], -spectator-port n, -table-bits n,
+	 *            -table-file file, -table-minutes n, -log-level level,
+	 *            -log-file file, -park-bits n and -park-hours n
 	 */
 	public static void main(String[] args) {
 		// default port is set to 50000
 		int port = 50000;
+		long idleTimeoutMillis = C4Server.DEFAULT_IDLE_TIMEOUT_MILLIS;
+		long moveTimeoutMillis = 0;
+
+		// engines of the server, the built-in AI unless any is given, and
+		// the options of their shared table
+		List<String> engineSpecs = new ArrayList<String>();
+		int engineLoad = 0, tableBits = DEFAULT_TABLE_BITS;
+		long tableMinutes = 0;
+		File tableFile = null;
+
+		// messages of the server are written asynchronously, see C4Log
+		int logLevel = C4Log.INFO;
+		String logFile = null;
+
+		// spectator port given as an option, overriding the positional one
+		int spectatorPortOption = 0;
+
+		// size of the store of parked games and how long they are kept
+		int parkBits = C4Server.DEFAULT_PARK_BITS;
+		long parkHours = C4Server.DEFAULT_PARK_MILLIS / (60 * 60 * 1000);
+
+		// options start at the first argument beginning with a dash
+		int positionalCount = 0;
+		while (positionalCount < args.length
+				&& !args[positionalCount].startsWith("-"))
+			positionalCount++;
+
+		for (int i = positionalCount; i < args.length; i++) {
+			if (args[i].equals("-search")) {
+				int searchDepth = Integer.parseInt(args[++i]);
+				long searchMillis = DEFAULT_SEARCH_MILLIS;
+				if (i + 1 < args.length && !args[i + 1].startsWith("-"))
+					searchMillis = Long.parseLong(args[++i]);
+				engineSpecs.add("search:" + searchDepth + ":" + searchMillis);
+			} else if (args[i].equals("-engine"))
+				engineSpecs.add(args[++i]);
+			else if (args[i].equals("-engine-load"))
+				engineLoad = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-spectator-port"))
+				spectatorPortOption = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-table-bits"))
+				tableBits = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-table-file"))
+				tableFile = new File(args[++i]);
+			else if (args[i].equals("-table-minutes"))
+				tableMinutes = Long.parseLong(args[++i]);
+			else if (args[i].equals("-log-level"))
+				logLevel = C4Log.parseLevel(args[++i]);
+			else if (args[i].equals("-log-file"))
+				logFile = args[++i];
+			else if (args[i].equals("-park-bits"))
+				parkBits = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-park-hours"))
+				parkHours = Long.parseLong(args[++i]);
+			else {
+				System.out.println("Unknown option " + args[i]);
+				return;
+			}
+		}
+
+		try {
+			C4Log.configure(logLevel, logFile);
+		} catch (IOException e) {
+			System.out.println("Error opening log file: " + e.getMessage());
+			return;
+		}
 
 		// if specifying a specific port through argument list, set the port
-		if (args.length != 0)
+		if (positionalCount != 0)
 			port = Integer.parseInt(args[0]);
 
+		// optional idle timeout of the sessions
+		if (positionalCount > 1)
+			idleTimeoutMillis = Long.parseLong(args[1]) * 1000;
+
+		// optional move clock of the players
+		if (positionalCount > 2)
+			moveTimeoutMillis = Long.parseLong(args[2]) * 1000;
+
+		// spectators connect on the next port unless specified
+		int spectatorPort = port + 1;
+		if (positionalCount > 3)
+			spectatorPort = Integer.parseInt(args[3]);
+		if (spectatorPortOption != 0)
+			spectatorPort = spectatorPortOption;
+
+		// games are only archived if a directory is specified
+		File archiveDirectory = null;
+		if (positionalCount > 4)
+			archiveDirectory = new File(args[4]);
+
 		// create an instance of a C4Server
-		C4Server server = new C4Server(port);
+		C4Server server = new C4Server(port, idleTimeoutMillis,
+				moveTimeoutMillis, spectatorPort, archiveDirectory);
+		server.setParking(parkBits, parkHours * 60 * 60 * 1000);
+
+		// engines of the server, the searching ones sharing one
+		// transposition table, which may be kept across restarts
+		if (engineSpecs.isEmpty())
+			engineSpecs.add("simple");
+		C4EngineRegistry registry = new C4EngineRegistry(tableBits);
+		List<C4Engine> engines = new ArrayList<C4Engine>();
+		try {
+			for (String spec : engineSpecs)
+				engines.add(registry.createEngine(spec));
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			return;
+		}
+		for (int i = 0; i < engines.size(); i++)
+			C4Log.log(C4Log.INFO, "Engine {} is {}, taking {} us a move", i,
+					engines.get(i).getName(), engines.get(i)
+							.getMoveLatencyMicros());
+
+		C4TranspositionTable table = registry.getSharedTableIfCreated();
+		server.setEngines(new C4EngineSelector(engines, engineLoad), table);
+		if (table != null && tableFile != null)
+			server.setTableSnapshot(tableFile, tableMinutes * 60 * 1000);
 
 		// start the server
 		server.start();
 	}
-}
\ No newline at end of file
+}
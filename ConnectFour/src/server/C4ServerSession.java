@@ -3,43 +3,156 @@ package server;
 import gameExceptions.C4InvalidMessageException;
 import gameExceptions.C4InvalidMoveException;
 import gameExceptions.C4InvalidCheckWinException;
+import gameLogic.C4AnalysisListener;
+import gameLogic.C4Analyzer;
 import gameLogic.C4Game;
 
+import archive.C4GameRecord;
+
+import engine.C4Engine;
+import engine.C4EngineSelector;
+
+import logging.C4Log;
+
+import monitoring.C4ProtocolErrorEvent;
+import monitoring.C4SessionEvent;
+
 import java.net.*; // for Socket, ServerSocket, and InetAddress
 import java.io.*; // for IOException and Input/OutputStream
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Defines a server session for a single C4 game, only created when a client
- * connects to a server
+ * connects to a server. A session either plays against the server's AI or,
+ * after joining the lobby, against another human player.
+ * 
+ * Against the AI, the client may ask for the score of every column with
+ * 0x08 budget, the budget being in units of 10 ms (0 for the default). The
+ * scores are pushed as 4 byte frames 0x08 col|flags score depth as the
+ * analysis deepens, flags 0x08 meaning the score is decided, and the analysis
+ * ends with 0x08 0x07 0x00 0x00. Any other message cancels the analysis.
+ * 
+ * A game against the AI can be parked and resumed later. The client asks
+ * for the game's resume token with 0x09 0x00 and gets 0x09 0x00 followed by
+ * the 8 byte token, 0 if the game cannot be parked. If the connection is
+ * then lost or the session is idle for too long, the game is parked instead
+ * of abandoned. Sending 0x09 0x01 followed by the token, on any connection,
+ * resumes the game: the server replies 0x09 0x01 with the number of moves
+ * played and the moves, or 0x09 0x02 if the token is unknown or expired.
+ * 
+ * The server plays with the engine it chooses for each new game (see
+ * C4EngineSelector) unless the client asks for one with 0x0B index, index
+ * being the engine's position in the server's configuration, or 0xFF to
+ * leave the choice to the server again. The server replies 0x0B index and
+ * the engine plays the client's next games.
+ * 
+ * A client playing many games at once sends 0x0A 0x00 and gets 0x0A 0x00
+ * back, the connection then being served by a C4MultiplexSession.
  * 
  * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
- * @version 1.5
+ * @version 1.19
  */
-public class C4ServerSession {
+public class C4ServerSession implements Runnable {
 
 	private static final int MAXIMUM_MESSAGE_SIZE = 2;
+
+	// length of a resume message, 0x09 0x01 followed by the token
+	private static final int RESUME_MESSAGE_SIZE = 10;
 	Socket clientSocket; // socket for the client
 	// boolean indicating that the server will be ending
-	private boolean sessionEnded;
+	private volatile boolean sessionEnded;
+
+	// boolean indicating the client switched to a multiplexed session
+	private boolean multiplexed;
 	private byte[] serverMessage; // message that server will send
 	private C4Game game;
 	private InputStream in;
 	private OutputStream out;
 
+	// server running the session, holding the services shared by sessions
+	private C4Server server;
+
+	// timer wheel tracking the idle timeout and the move clock
+	private C4TimerWheel timerWheel;
+
+	// time without any message after which the session is reaped, and time
+	// the player has to make a move (0 if the move clock is disabled)
+	private long idleTimeoutMillis, moveTimeoutMillis;
+
+	// wheel time of the last message received from the client
+	private volatile long lastActivityMillis;
+
+	// pending idle timeout and move clock of the session
+	private volatile C4TimerWheel.Timeout idleTimer, moveTimer;
+
+	// match against another player, null when playing against the AI
+	private volatile C4Match match;
+
+	// feed broadcasting the game against the AI to spectators
+	private C4GameFeed feed;
+
+	// time the game against the AI started
+	private long gameStartTime;
+
+	// engine playing the game against the AI and its index, chosen by the
+	// server when the game starts unless it was resumed, and the index of the
+	// engine the client asked for
+	private C4Engine engine;
+	private int engineIndex;
+	private int enginePreference;
+
+	// token the game against the AI is resumed with if parked, 0 if the
+	// client did not ask for one
+	private long resumeToken;
+
+	// analysis of the player's position under way, null if none
+	private volatile C4Analyzer.Analysis analysis;
+
+	// time budget of an analysis when the client does not give one
+	private static final long DEFAULT_ANALYSIS_MILLIS = 200;
+
+	// rating bucket the player is waiting in, -1 if not in the lobby, and the
+	// match handed over by the player who takes this one out of the lobby
+	private volatile int lobbyRating;
+	private volatile CompletableFuture<C4Match> pairing;
+
+	// flight recorder event of the session, the last message received and
+	// why the session ended, null until it does
+	private C4SessionEvent sessionEvent;
+	private byte[] lastMessage;
+	private volatile String endReason;
+
+	// lock guarding writes to the client, which may come from the thread of
+	// the opponent in a match
+	private final Object writeLock = new Object();
+
 	/**
 	 * Creates a C4ServerSession object
 	 * 
 	 * @param socket
 	 *            Socket of the client
+	 * @param server
+	 *            Server running the session
 	 * @throws C4InvalidMoveException
 	 */
-	public C4ServerSession(Socket socket) throws C4InvalidMoveException {
+	public C4ServerSession(Socket socket, C4Server server)
+			throws C4InvalidMoveException {
 		this.clientSocket = socket;
 		this.sessionEnded = false;
+		this.server = server;
+		this.timerWheel = server.getTimerWheel();
+		this.idleTimeoutMillis = server.getIdleTimeoutMillis();
+		this.moveTimeoutMillis = server.getMoveTimeoutMillis();
+		this.lobbyRating = -1;
+		this.enginePreference = C4EngineSelector.NO_PREFERENCE;
+	}
 
-		// once object is created, run the session
+	/**
+	 * Runs the session on the thread it was handed to
+	 */
+	@Override
+	public void run() {
 		runSession();
-
 	}
 
 	/**
@@ -47,29 +160,173 @@ public class C4ServerSession {
 	 * the client.
 	 */
 	private void runSession() {
+		sessionEvent = new C4SessionEvent();
+		sessionEvent.begin();
+
 		try {
 			in = clientSocket.getInputStream();
 			out = clientSocket.getOutputStream();
 		} catch (IOException ioe) {
-			System.out.println("Error creating Input/Output streams.");
+			C4Log.error("Error creating Input/Output streams.");
+			sessionEnded = true;
 		}
 
+		// start watching the session for inactivity
+		lastActivityMillis = timerWheel.currentTimeMillis();
+		scheduleIdleTimer(idleTimeoutMillis);
+
 		// keep running until the session will end
-		do {
+		while (!sessionEnded) {
 			try {
 				// receive message from client
 				receiveMessage();
 
-				// send message to client
-				sendMessage(serverMessage);
+				// send message to client unless the connection was lost
+				if (serverMessage != null)
+					sendMessage(serverMessage);
 
 			} catch (C4InvalidMessageException | C4InvalidMoveException e) {
-				System.out.println(e.getMessage());
+				C4Log.warn("Refused message from {}: {}", clientSocket
+						.getInetAddress().getHostAddress(), e.getMessage());
+				recordProtocolError(e.getMessage());
 			}
-		} while (!sessionEnded);
+		}
+
+		// session has ended, leave the lobby or match, keep the game for the
+		// player to come back to, release its timers and close the socket
+		stopAnalysis();
+		leaveLobbyAndMatch();
+		parkGame();
+		abandonFeed();
+		cancelTimers();
+
+		// the connection carries on with many games at once
+		if (multiplexed) {
+			new C4MultiplexSession(clientSocket, server, sessionEvent).run();
+			return;
+		}
 
-		// session has ended, close the socket
 		closeSocket();
+		recordSessionEnd();
+	}
+
+	/**
+	 * Commits the flight recorder event of the session once it is over
+	 */
+	private void recordSessionEnd() {
+		sessionEvent.end();
+		if (sessionEvent.shouldCommit()) {
+			sessionEvent.clientAddress = clientSocket.getInetAddress()
+					.getHostAddress();
+			sessionEvent.endReason = endReason != null ? endReason
+					: C4SessionEvent.CONNECTION_LOST;
+			sessionEvent.commit();
+		}
+	}
+
+	/**
+	 * Records the last message received as refused, in a flight recorder
+	 * event
+	 * 
+	 * @param error
+	 *            Reason the message was refused
+	 */
+	private void recordProtocolError(String error) {
+		sessionEvent.protocolErrors++;
+
+		C4ProtocolErrorEvent event = new C4ProtocolErrorEvent();
+		if (event.shouldCommit()) {
+			event.clientAddress = clientSocket.getInetAddress()
+					.getHostAddress();
+			event.message = lastMessage != null ? String.format("%02x %02x",
+					lastMessage[0], lastMessage[1]) : "";
+			event.error = error;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Schedules the idle timeout of the session. When it expires, the session
+	 * is closed if no message was received in the meantime, otherwise it is
+	 * scheduled again for the remaining time.
+	 * 
+	 * @param delayMillis
+	 *            Delay before checking the session for inactivity
+	 */
+	private void scheduleIdleTimer(long delayMillis) {
+		idleTimer = timerWheel.schedule(new Runnable() {
+			public void run() {
+				// session already over, nothing left to watch
+				if (sessionEnded)
+					return;
+
+				long idleMillis = timerWheel.currentTimeMillis()
+						- lastActivityMillis;
+
+				if (idleMillis >= idleTimeoutMillis) {
+					C4Log.info("Closing idle session with {}", clientSocket
+							.getInetAddress().getHostAddress());
+					expireSession(C4SessionEvent.IDLE_TIMEOUT);
+				} else
+					scheduleIdleTimer(idleTimeoutMillis - idleMillis);
+			}
+		}, delayMillis);
+	}
+
+	/**
+	 * Starts the player's move clock, if enabled. If the player does not move
+	 * before it expires, their flag falls and the session is closed. In a
+	 * match, the clocks are only started and stopped while holding the match's
+	 * lock, since both players' threads start and stop them.
+	 */
+	void startMoveClock() {
+		if (moveTimeoutMillis <= 0)
+			return;
+
+		stopMoveClock();
+		moveTimer = timerWheel.schedule(new Runnable() {
+			public void run() {
+				C4Log.info("Player at {} ran out of time, game forfeited.",
+						clientSocket.getInetAddress().getHostAddress());
+				expireSession(C4SessionEvent.MOVE_TIMEOUT);
+			}
+		}, moveTimeoutMillis);
+	}
+
+	/**
+	 * Stops the player's move clock if it is running, see startMoveClock()
+	 */
+	void stopMoveClock() {
+		if (moveTimer != null) {
+			moveTimer.cancel();
+			moveTimer = null;
+		}
+	}
+
+	/**
+	 * Cancels every pending timer of the session
+	 */
+	private void cancelTimers() {
+		stopMoveClock();
+		if (idleTimer != null)
+			idleTimer.cancel();
+	}
+
+	/**
+	 * Ends the session from the timer wheel thread. Closing the socket unblocks
+	 * the session's pending read, which then ends the message loop.
+	 * 
+	 * @param reason
+	 *            Reason the session ends, see C4SessionEvent
+	 */
+	private void expireSession(String reason) {
+		endReason = reason;
+		sessionEnded = true;
+		try {
+			clientSocket.close();
+		} catch (IOException e) {
+			C4Log.warn("Error closing client socket.");
+		}
 	}
 
 	/**
@@ -84,27 +341,75 @@ public class C4ServerSession {
 			C4InvalidMoveException {
 		byte[] byteBuffer = new byte[MAXIMUM_MESSAGE_SIZE];
 
-		int receivedMessageSize, totalBytesReceived = 0;
 		try {
 			in = clientSocket.getInputStream();
+			readFully(byteBuffer, 0);
 
-			while (totalBytesReceived < MAXIMUM_MESSAGE_SIZE) {
-				if ((receivedMessageSize = in.read(byteBuffer,
-						totalBytesReceived, MAXIMUM_MESSAGE_SIZE
-								- totalBytesReceived)) == -1)
-					throw new SocketException("Connection closed prematurely.");
-				totalBytesReceived += receivedMessageSize;
+			// a resume message carries the token after its first 2 bytes
+			if (byteBuffer[0] == 0x09 && byteBuffer[1] == 0x01) {
+				byte[] resumeMessage = new byte[RESUME_MESSAGE_SIZE];
+				System.arraycopy(byteBuffer, 0, resumeMessage, 0,
+						MAXIMUM_MESSAGE_SIZE);
+				readFully(resumeMessage, MAXIMUM_MESSAGE_SIZE);
+				byteBuffer = resumeMessage;
 			}
 
+			// the client is active, push back its idle timeout
+			lastActivityMillis = timerWheel.currentTimeMillis();
+			lastMessage = byteBuffer;
+			if (sessionEvent.messages++ == 0)
+				logClient(byteBuffer);
+
 			// interpret the message sent from client
 			interpretMessage(byteBuffer);
 
 		} catch (IOException e) {
-			System.out.println("Error receiving messages.");
+			// connection lost or closed by a timer, end the session instead
+			// of reading from a dead socket again
+			if (!sessionEnded)
+				C4Log.warn("Error receiving messages.");
+			sessionEnded = true;
+			serverMessage = null;
 		}
 
 	}
 
+	/**
+	 * Logs the client handled by the session once its first message arrives.
+	 * A session ended by its first message, such as a router's health check,
+	 * is only logged when debugging.
+	 * 
+	 * @param message
+	 *            First message of the client
+	 */
+	private void logClient(byte[] message) {
+		C4Log.log(message[0] == 0x02 && message[1] == 0x01 ? C4Log.DEBUG
+				: C4Log.INFO, "Connected! Handling client at {} on port {}",
+				clientSocket.getInetAddress().getHostAddress(),
+				clientSocket.getLocalPort(), null);
+	}
+
+	/**
+	 * Reads from the client until a buffer is full
+	 * 
+	 * @param buffer
+	 *            Buffer receiving the bytes
+	 * @param offset
+	 *            Number of bytes of the buffer already received
+	 * @throws IOException
+	 *             If the connection is closed before the buffer is full
+	 */
+	private void readFully(byte[] buffer, int offset) throws IOException {
+		int receivedMessageSize, totalBytesReceived = offset;
+
+		while (totalBytesReceived < buffer.length) {
+			if ((receivedMessageSize = in.read(buffer, totalBytesReceived,
+					buffer.length - totalBytesReceived)) == -1)
+				throw new SocketException("Connection closed prematurely.");
+			totalBytesReceived += receivedMessageSize;
+		}
+	}
+
 	/**
 	 * Interprets the message sent from the client.
 	 * 
@@ -119,50 +424,409 @@ public class C4ServerSession {
 			throws C4InvalidMessageException, C4InvalidMoveException {
 
 		// if message length is not the fixed length, throw an exception
-		if (message.length != MAXIMUM_MESSAGE_SIZE)
+		if (message.length != MAXIMUM_MESSAGE_SIZE
+				&& message.length != RESUME_MESSAGE_SIZE)
 			throw new C4InvalidMessageException(
 					"Messages must be of 2 byte length.");
 
 		byte firstByte = message[0]; // first byte in the array
 		byte secondByte; // second byte in the array
 
-		if (firstByte == 0x00) {
-			// user makes a move at a specified column
-			game.makeMove(message[1], C4Game.PLAYER_ID);
+		// only send a reply if the message calls for one
+		serverMessage = null;
+
+		// the position analysed is about to change or is asked for again
+		stopAnalysis();
+
+		if (firstByte == 0x00 && match != null) {
+			// play the move in the match, relaying it to the opponent and
+			// handing the clock over to them
+			serverMessage = match.playMove(this, message[1]);
+		} else if (firstByte == 0x00) {
+			if (game == null || feed == null || feed.isFinished())
+				throw new C4InvalidMoveException("No game is being played.");
+
+			// user makes a move at a specified column, a refused move leaving
+			// the player's clock running and the AI not moving
+			if (!game.makeMove(message[1], C4Game.PLAYER_ID))
+				throw new C4InvalidMoveException("Column is full.");
+			feed.moveMade(message[1]);
+
+			// player has moved, stop their clock
+			stopMoveClock();
 			try {
 				if (game.checkFourConnected(
-						game.getRowInColumn(message[1]) - 1, message[1]))
+						game.getRowInColumn(message[1]) - 1, message[1])) {
 					// send message to client indicating user has won
 					serverMessage = new byte[] { 0x02, 0x00 };
-				else {
+					endGame(C4GameFeed.FIRST_PLAYER_WON);
+				} else {
 					// server makes a move in response to user's play
-					serverMessage = game.artificialIntelligenceMakeMove();
+					serverMessage = engine.makeMove(game);
+					feed.moveMade(serverMessage[1]);
+
+					// game continues, it is the player's turn again
+					if (serverMessage[0] == 0x00)
+						startMoveClock();
+					else if (serverMessage[0] == 0x03)
+						endGame(C4GameFeed.SECOND_PLAYER_WON);
+					else if (serverMessage[0] == 0x04)
+						endGame(C4GameFeed.DRAW);
 				}
 			} catch (C4InvalidCheckWinException e) {
-				System.out.println(e.getMessage());
+				C4Log.error(e.getMessage());
 			}
 		} else if (firstByte == 0x02) {
 			secondByte = message[1];
+
+			// a new game or the end of the session ends any match or game
+			leaveLobbyAndMatch();
+			abandonFeed();
+
 			if (secondByte == 0x00) {
 				// client wants to play a new game
-				game = new C4Game(); // create new game
+				// create new game, its seed derived from when it started
+				gameStartTime = System.currentTimeMillis();
+				game = new C4Game(server.newGameSeed(gameStartTime));
+				engineIndex = server.getEngines().select(enginePreference);
+				engine = server.getEngines().getEngine(engineIndex);
+				resumeToken = 0;
+				sessionEvent.games++;
+
+				// let spectators watch the new game
+				feed = server.getSpectatorServer().openFeed();
+				C4Log.log(C4Log.INFO, "Game {} started with seed {} against {}",
+						feed.getGameId(), Long.toHexString(game.getSeed()),
+						engine.getName());
 				// send message to client to reset GUI
 				serverMessage = new byte[] { 0x01, 0x01 };
+
+				// player makes the first move of the new game
+				startMoveClock();
 			} else if (secondByte == 0x01) {
 				// user does not want to play again
 
 				// send message to close application
 				serverMessage = new byte[] { 0x01, 0x02 };
+				endReason = C4SessionEvent.CLIENT_QUIT;
 				sessionEnded = true; // end the session
+				stopMoveClock();
 
 			} else
 				throw new C4InvalidMessageException("Invalid message.");
+		} else if (firstByte == 0x05) {
+			// client wants to play another human, second byte is its rating
+			leaveLobbyAndMatch();
+			abandonFeed();
+			stopMoveClock();
+			sessionEvent.lobbyJoins++;
+			joinLobby(message[1]);
+		} else if (firstByte == 0x08) {
+			// client asks for the score of every column, pushed as they come
+			startAnalysis((message[1] & 0xff) * 10L);
+		} else if (firstByte == 0x09 && message[1] == 0x00) {
+			// client asks for the token to resume the game with if it leaves
+			serverMessage = tokenMessage();
+		} else if (firstByte == 0x09 && message[1] == 0x01) {
+			// client comes back to a parked game
+			leaveLobbyAndMatch();
+			abandonFeed();
+			stopMoveClock();
+			serverMessage = resumeGame(message);
+		} else if (firstByte == 0x0B) {
+			// client chooses the engine of its next games
+			enginePreference = chooseEngine(message[1]);
+			serverMessage = new byte[] { 0x0B, message[1] };
+		} else if (firstByte == 0x0A && message[1] == 0x00) {
+			// client plays many games on this connection from now on, the
+			// games of its multiplexed session being separate from this one's
+			leaveLobbyAndMatch();
+			abandonFeed();
+			stopMoveClock();
+			serverMessage = new byte[] { 0x0A, 0x00 };
+			multiplexed = true;
+			sessionEnded = true;
 		} else
 			throw new C4InvalidMessageException(
 					"Invalid first byte in message.");
 
 	}
 
+	/**
+	 * Returns the engine a client asks for
+	 * 
+	 * @param index
+	 *            Second byte of a 0x0B message, the index of an engine of the
+	 *            server or 0xFF
+	 * @return Index of the engine, NO_PREFERENCE for 0xFF
+	 * @throws C4InvalidMessageException
+	 *             If the server has no engine with the index
+	 */
+	private int chooseEngine(byte index) throws C4InvalidMessageException {
+		if (index == (byte) 0xFF)
+			return C4EngineSelector.NO_PREFERENCE;
+		if ((index & 0xff) >= server.getEngines().getEngineCount())
+			throw new C4InvalidMessageException("Unknown engine.");
+		return index & 0xff;
+	}
+
+	/**
+	 * Joins the lobby with a specific rating. If an opponent is waiting, the
+	 * match starts right away, otherwise the session waits for the next player
+	 * to join. No message is sent until the match starts.
+	 * 
+	 * @param rating
+	 *            Rating bucket of the player
+	 */
+	private void joinLobby(int rating) {
+		// set up before joining, an opponent may pair with the player as soon
+		// as it waits in the lobby
+		pairing = new CompletableFuture<C4Match>();
+		lobbyRating = rating;
+
+		C4ServerSession opponent = server.getLobby().join(this, rating);
+
+		// wait in the lobby for an opponent
+		if (opponent == null)
+			return;
+		lobbyRating = -1;
+
+		// the player who waited moves first
+		C4GameFeed matchFeed = server.getSpectatorServer().openFeed();
+		C4Log.info("Game {} started", matchFeed.getGameId());
+		C4Match newMatch = new C4Match(opponent, this, matchFeed, server);
+		opponent.setMatch(newMatch);
+		this.match = newMatch;
+		newMatch.start();
+
+		// the opponent may leave the match once told it started
+		opponent.matchStarted(newMatch);
+	}
+
+	/**
+	 * Leaves the lobby if the player is waiting in it, and the match if the
+	 * player is in one, telling the opponent the match is over.
+	 */
+	private void leaveLobbyAndMatch() {
+		int rating = lobbyRating;
+		if (rating >= 0 && !server.getLobby().leave(this, rating))
+			// another player took this one out of the lobby, wait for the
+			// match being set up so the opponent is told about leaving it
+			pairing.join();
+		lobbyRating = -1;
+
+		C4Match currentMatch = match;
+		if (currentMatch != null) {
+			match = null;
+			currentMatch.leave(this);
+		}
+	}
+
+	/**
+	 * Returns the message giving the client the token of the game against
+	 * the AI, drawing the token the first time it is asked for
+	 * 
+	 * @return Message 0x09 0x00 followed by the token, 0 if the game cannot
+	 *         be parked
+	 */
+	private byte[] tokenMessage() {
+		boolean parkable = match == null && feed != null && !feed.isFinished();
+		if (parkable && resumeToken == 0)
+			resumeToken = server.getParkedGames().newToken();
+
+		long token = parkable ? resumeToken : 0;
+		byte[] message = new byte[RESUME_MESSAGE_SIZE];
+		message[0] = 0x09;
+		for (int i = 0; i < 8; i++)
+			message[2 + i] = (byte) (token >>> 56 - 8 * i);
+		return message;
+	}
+
+	/**
+	 * Parks the game against the AI if the client holds its token and went
+	 * away without ending it, so the game is not abandoned
+	 */
+	private void parkGame() {
+		if (resumeToken == 0 || match != null || feed == null
+				|| feed.isFinished()
+				|| C4SessionEvent.CLIENT_QUIT.equals(endReason)
+				|| C4SessionEvent.MOVE_TIMEOUT.equals(endReason))
+			return;
+
+		if (!server.getParkedGames().park(
+				resumeToken,
+				new C4ParkedGameStore.ParkedGame(game.getMoves(), engineIndex,
+						gameStartTime, game.getSeed()))) {
+			C4Log.warn("Parked game store full, game {} abandoned",
+					feed.getGameId());
+			return;
+		}
+
+		// the game is over for spectators, it is archived once it ends
+		C4Log.info("Game {} parked", feed.getGameId());
+		feed.finish(C4GameFeed.ABANDONED);
+		feed = null;
+	}
+
+	/**
+	 * Resumes a parked game, replaying its moves
+	 * 
+	 * @param message
+	 *            Message 0x09 0x01 followed by the token
+	 * @return Message 0x09 0x01 with the number of moves and the moves, or
+	 *         0x09 0x02 if no game is parked with the token
+	 * @throws C4InvalidMessageException
+	 *             If the message does not hold a token
+	 * @throws C4InvalidMoveException
+	 *             If a move of the parked game is not legal
+	 */
+	private byte[] resumeGame(byte[] message) throws C4InvalidMessageException,
+			C4InvalidMoveException {
+		if (message.length != RESUME_MESSAGE_SIZE)
+			throw new C4InvalidMessageException("Invalid resume message.");
+
+		long token = 0;
+		for (int i = 2; i < RESUME_MESSAGE_SIZE; i++)
+			token = token << 8 | (message[i] & 0xff);
+
+		C4ParkedGameStore.ParkedGame parked = server.resumeParkedGame(token);
+		if (parked == null)
+			return new byte[] { 0x09, 0x02 };
+
+		// replay the game, the player having moved first
+		byte[] moves = parked.getMoves();
+		game = new C4Game(parked.getSeed());
+		feed = server.getSpectatorServer().openFeed();
+		for (int i = 0; i < moves.length; i++) {
+			game.makeMove(moves[i], (i & 1) == 0 ? C4Game.PLAYER_ID
+					: C4Game.SERVER_ID);
+			feed.moveMade(moves[i]);
+		}
+		gameStartTime = parked.getStartTime();
+		engineIndex = parked.getEngine();
+		engine = server.getEngines().getEngine(engineIndex);
+		resumeToken = token;
+		C4Log.info("Game {} resumed after {} moves", feed.getGameId(),
+				moves.length);
+
+		// player's turn, their clock starts again
+		startMoveClock();
+
+		byte[] reply = new byte[3 + moves.length];
+		reply[0] = 0x09;
+		reply[1] = 0x01;
+		reply[2] = (byte) moves.length;
+		System.arraycopy(moves, 0, reply, 3, moves.length);
+		return reply;
+	}
+
+	/**
+	 * Ends the feed of the game against the AI if it is still in progress,
+	 * archiving the game if any move was played
+	 */
+	private void abandonFeed() {
+		if (feed != null) {
+			if (!feed.isFinished() && game.getMoveCount() > 0)
+				endGame(C4GameFeed.ABANDONED);
+			else
+				feed.finish(C4GameFeed.ABANDONED);
+			feed = null;
+		}
+	}
+
+	/**
+	 * Ends the game against the AI with its final status, closing its feed and
+	 * archiving it
+	 * 
+	 * @param status
+	 *            Final status of the game
+	 */
+	private void endGame(byte status) {
+		feed.finish(status);
+		server.archiveGame(new C4GameRecord(game.getMoves(), status,
+				engine.getArchiveConfig(), gameStartTime, System.currentTimeMillis(),
+				game.getSeed()));
+	}
+
+	/**
+	 * Starts analysing the game against the AI, pushing the scores of the
+	 * columns to the client from the analyzer's threads. A game that is over
+	 * or a match is not analysed, the analysis ending right away.
+	 * 
+	 * @param timeMillis
+	 *            Time budget of the analysis, 0 for the default
+	 */
+	private void startAnalysis(long timeMillis) {
+		final byte[] endFrame = new byte[] { 0x08, 0x07, 0x00, 0x00 };
+
+		if (match != null || game == null || feed == null || feed.isFinished()) {
+			sendMessage(endFrame);
+			return;
+		}
+
+		analysis = server.getAnalyzer().analyze(game.getPosition(),
+				timeMillis > 0 ? timeMillis : DEFAULT_ANALYSIS_MILLIS,
+				new C4AnalysisListener() {
+					public void columnScored(int col, int score, int depth,
+							boolean decided) {
+						pushMessage(new byte[] { 0x08,
+								(byte) (col | (decided ? 0x08 : 0)),
+								(byte) score, (byte) depth });
+					}
+
+					public void analysisFinished() {
+						pushMessage(endFrame);
+					}
+				});
+	}
+
+	/**
+	 * Cancels the analysis under way, if any, nothing more of it being
+	 * pushed
+	 */
+	private void stopAnalysis() {
+		C4Analyzer.Analysis current = analysis;
+		if (current != null) {
+			analysis = null;
+			current.cancel();
+		}
+	}
+
+	/**
+	 * Sets the match of a player paired while waiting in the lobby, so the
+	 * player's moves go to it
+	 * 
+	 * @param match
+	 *            Match the player was paired in
+	 */
+	void setMatch(C4Match match) {
+		this.match = match;
+	}
+
+	/**
+	 * Hands the started match over to a player paired while waiting in the
+	 * lobby, taking the player out of the lobby. Leaving the lobby waits for
+	 * this, so the opponent is told the match started before it is left.
+	 * 
+	 * @param match
+	 *            Match the player was paired in
+	 */
+	void matchStarted(C4Match match) {
+		lobbyRating = -1;
+		pairing.complete(match);
+	}
+
+	/**
+	 * Pushes a message to the client from another thread than the session's,
+	 * such as the thread of the opponent in a match.
+	 * 
+	 * @param message
+	 *            Message to be sent to the client
+	 */
+	void pushMessage(byte[] message) {
+		sendMessage(message);
+	}
+
 	/**
 	 * Sends a message to the client
 	 * 
@@ -171,10 +835,13 @@ public class C4ServerSession {
 	 */
 	private void sendMessage(byte[] message) {
 		try {
-			out.write(message);
+			// messages pushed by other threads must not interleave
+			synchronized (writeLock) {
+				out.write(message);
+			}
 
 		} catch (IOException e) {
-			System.out.println("Failed to send message to client");
+			C4Log.warn("Failed to send message to client");
 		}
 
 	}
@@ -189,7 +856,7 @@ public class C4ServerSession {
 			clientSocket.close();
 
 		} catch (IOException e) {
-			System.out.println("Error closing client socket.");
+			C4Log.warn("Error closing client socket.");
 		}
 	}
 
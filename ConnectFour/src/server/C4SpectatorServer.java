@@ -0,0 +1,327 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import logging.C4Log;
+
+import server.C4GameFeed.Spectator;
+
+/**
+ * Broadcasts games in progress to spectators. A spectator connects to the
+ * spectator port and sends the 4 byte ID of a game. It receives a snapshot of
+ * the game followed by an event for every move and one for the end of the
+ * game, after which it is disconnected.
+ * 
+ * Frames sent to spectators: 0x10 status count packed-columns (snapshot, two
+ * columns per byte), 0x11 number column (move), 0x12 status (game over) and
+ * 0x13 0x00 (unknown game).
+ * 
+ * A single thread serves every spectator with non-blocking writes. Each event
+ * is encoded once into a read-only buffer shared by all spectators of the
+ * game. A spectator that cannot keep up is never queued more than one frame:
+ * once it falls too far behind, it is sent a fresh snapshot instead of the
+ * moves it missed, so slow spectators never hold memory or delay the game.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.2
+ */
+public class C4SpectatorServer implements Runnable {
+
+	// number of moves a spectator may fall behind before it is resynchronized
+	private static final int MAXIMUM_LAG = 8;
+
+	// frames of the final status of a game, shared by every spectator
+	private static final ByteBuffer[] STATUS_FRAMES = new ByteBuffer[5];
+
+	// frame telling a spectator the game it asked for does not exist
+	private static final ByteBuffer UNKNOWN_GAME_FRAME = ByteBuffer.wrap(
+			new byte[] { 0x13, 0x00 }).asReadOnlyBuffer();
+
+	static {
+		for (int i = 0; i < STATUS_FRAMES.length; i++)
+			STATUS_FRAMES[i] = ByteBuffer.wrap(new byte[] { 0x12, (byte) i })
+					.asReadOnlyBuffer();
+	}
+
+	private int port; // port on which spectators connect
+	private Selector selector;
+	private ServerSocketChannel serverChannel;
+
+	// games in progress by ID
+	private final ConcurrentHashMap<Integer, C4GameFeed> games;
+
+	// ID of the last game opened
+	private final AtomicInteger lastGameId;
+
+	// feeds that changed since the spectator thread last looked at them
+	private final ConcurrentLinkedQueue<C4GameFeed> changedFeeds;
+
+	// buffer receiving the bytes subscribed spectators send, which are ignored
+	private final ByteBuffer discardBuffer = ByteBuffer.allocate(64);
+
+	/**
+	 * Creates a C4SpectatorServer object accepting spectators on a specific
+	 * port
+	 * 
+	 * @param port
+	 *            Port number on which spectators connect
+	 */
+	public C4SpectatorServer(int port) {
+		this.port = port;
+		this.games = new ConcurrentHashMap<Integer, C4GameFeed>();
+		this.lastGameId = new AtomicInteger();
+		this.changedFeeds = new ConcurrentLinkedQueue<C4GameFeed>();
+	}
+
+	/**
+	 * Opens the spectator port and starts the thread serving spectators
+	 * 
+	 * @throws IOException
+	 *             If the spectator port could not be opened
+	 */
+	public void start() throws IOException {
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(new InetSocketAddress(port));
+		serverChannel.configureBlocking(false);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+		Thread thread = new Thread(this, "C4SpectatorServer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Returns the port on which spectators connect
+	 * 
+	 * @return Spectator port
+	 */
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Opens the feed of a new game that spectators can join
+	 * 
+	 * @return Feed of the game
+	 */
+	public C4GameFeed openFeed() {
+		C4GameFeed feed = new C4GameFeed(lastGameId.incrementAndGet(), this);
+		games.put(feed.getGameId(), feed);
+		return feed;
+	}
+
+	/**
+	 * Called by the game's threads when a feed changed. Only queues the feed
+	 * and wakes the spectator thread, and only if someone watches the game.
+	 * 
+	 * @param feed
+	 *            Feed that changed
+	 */
+	void feedChanged(C4GameFeed feed) {
+		if (feed.isFinished())
+			games.remove(feed.getGameId());
+
+		if (feed.getSpectatorCount() > 0) {
+			changedFeeds.offer(feed);
+			selector.wakeup();
+		}
+	}
+
+	/**
+	 * Loop of the spectator thread
+	 */
+	@Override
+	public void run() {
+		for (;;) {
+			try {
+				selector.select();
+			} catch (IOException e) {
+				C4Log.error("Error selecting spectators.");
+				return;
+			}
+
+			// send the new events of the games that changed
+			C4GameFeed feed;
+			while ((feed = changedFeeds.poll()) != null) {
+				List<Spectator> spectators = feed.spectators;
+
+				// backwards since a spectator may be removed while pumping
+				for (int i = spectators.size() - 1; i >= 0; i--)
+					pump(spectators.get(i));
+			}
+
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while (keys.hasNext()) {
+				SelectionKey key = keys.next();
+				keys.remove();
+
+				Spectator spectator = (Spectator) key.attachment();
+				try {
+					if (!key.isValid())
+						continue;
+
+					if (key.isAcceptable())
+						acceptSpectator();
+					else {
+						if (key.isReadable())
+							readRequest(spectator);
+						if (key.isValid() && key.isWritable())
+							pump(spectator);
+					}
+				} catch (IOException | CancelledKeyException e) {
+					if (spectator != null)
+						close(spectator);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Accepts a spectator and waits for the ID of the game it wants to watch
+	 * 
+	 * @throws IOException
+	 *             If the spectator could not be accepted
+	 */
+	private void acceptSpectator() throws IOException {
+		SocketChannel channel = serverChannel.accept();
+		if (channel == null)
+			return;
+
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		channel.register(selector, SelectionKey.OP_READ, new Spectator(
+				channel));
+	}
+
+	/**
+	 * Reads the ID of the game a spectator asks for and subscribes it to the
+	 * game. Anything a subscribed spectator sends is ignored.
+	 * 
+	 * @param spectator
+	 *            Spectator that sent bytes
+	 * @throws IOException
+	 *             If the spectator's socket fails
+	 */
+	private void readRequest(Spectator spectator) throws IOException {
+		ByteBuffer request = spectator.request;
+		if (spectator.feed != null) {
+			request = discardBuffer;
+			request.clear();
+		}
+
+		if (spectator.channel.read(request) == -1) {
+			close(spectator);
+			return;
+		}
+
+		if (spectator.feed != null || request.hasRemaining())
+			return;
+
+		request.flip();
+		C4GameFeed feed = games.get(request.getInt());
+
+		if (feed == null) {
+			// unknown or finished game, tell the spectator and let it go
+			spectator.channel.write(UNKNOWN_GAME_FRAME.duplicate());
+			close(spectator);
+			return;
+		}
+
+		spectator.feed = feed;
+		feed.spectators.add(spectator);
+		feed.spectatorAdded();
+		pump(spectator);
+	}
+
+	/**
+	 * Writes to a spectator the frames it is missing, until it is up to date
+	 * or its socket is full. A full socket leaves a single pending frame and
+	 * the spectator is resumed when it becomes writable.
+	 * 
+	 * @param spectator
+	 *            Spectator to bring up to date
+	 */
+	private void pump(Spectator spectator) {
+		SelectionKey key = spectator.channel.keyFor(selector);
+
+		try {
+			for (;;) {
+				if (spectator.pending != null) {
+					spectator.channel.write(spectator.pending);
+
+					if (spectator.pending.hasRemaining()) {
+						// socket full, wait until the spectator reads
+						key.interestOps(SelectionKey.OP_READ
+								| SelectionKey.OP_WRITE);
+						return;
+					}
+					spectator.pending = null;
+				}
+
+				C4GameFeed feed = spectator.feed;
+
+				// status first, every move of a finished game is published
+				// before its status
+				byte status = feed.getStatus();
+				int moveCount = feed.getMoveCount();
+
+				if (spectator.needsSnapshot
+						|| moveCount - spectator.sentMoves > MAXIMUM_LAG) {
+					// new or lagging spectator, send the whole board
+					spectator.pending = feed.getSnapshotFrame(moveCount,
+							status);
+					spectator.sentMoves = moveCount;
+					spectator.sentStatus = status;
+					spectator.needsSnapshot = false;
+				} else if (spectator.sentMoves < moveCount) {
+					spectator.pending = feed
+							.getMoveFrame(spectator.sentMoves++);
+				} else if (spectator.sentStatus != status) {
+					spectator.pending = STATUS_FRAMES[status].duplicate();
+					spectator.sentStatus = status;
+				} else {
+					// up to date, a finished game has nothing more to send
+					if (status != C4GameFeed.IN_PROGRESS)
+						close(spectator);
+					else
+						key.interestOps(SelectionKey.OP_READ);
+					return;
+				}
+			}
+		} catch (IOException | CancelledKeyException e) {
+			close(spectator);
+		}
+	}
+
+	/**
+	 * Disconnects a spectator and removes it from its game
+	 * 
+	 * @param spectator
+	 *            Spectator to disconnect
+	 */
+	private void close(Spectator spectator) {
+		if (spectator.feed != null) {
+			if (spectator.feed.spectators.remove(spectator))
+				spectator.feed.spectatorRemoved();
+		}
+
+		try {
+			spectator.channel.close();
+		} catch (IOException e) {
+			C4Log.warn("Error closing spectator socket.");
+		}
+	}
+}
@@ -0,0 +1,339 @@
+package server;
+
+import logging.C4Log;
+
+/**
+ * Hierarchical timer wheel that tracks deadlines for every server session
+ * (idle timeouts, move clocks and scheduled cleanup) on a single thread.
+ * Scheduling and cancelling a timeout are constant time operations, so the
+ * wheel can hold hundreds of thousands of deadlines without a thread or an
+ * executor task per session.
+ * 
+ * The wheel has four levels of 64 slots. A timeout is placed on the lowest
+ * level whose span covers its deadline and is cascaded down one level each
+ * time the wheel enters the block that contains it. Timeouts further away
+ * than the top level are parked in the last slot of the top level and
+ * cascaded again until they are in range.
+ * 
+ * Expired tasks run on the wheel thread and must be short (closing a socket,
+ * flagging a session); anything longer should be handed off.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.1
+ */
+public class C4TimerWheel {
+
+	// number of bits used to index a slot in one level of the wheel
+	private static final int SLOT_BITS = 6;
+
+	// number of slots per level and the mask to find a slot from a tick
+	private static final int SLOTS = 1 << SLOT_BITS, SLOT_MASK = SLOTS - 1;
+
+	// number of levels in the wheel
+	private static final int LEVELS = 4;
+
+	// duration of a tick in milliseconds
+	private final long tickMillis;
+
+	// heads of the doubly linked lists of timeouts for every slot
+	private final Timeout[][] wheel;
+
+	// current tick of the wheel, only advanced by the wheel thread
+	private long currentTick;
+
+	// time at which the wheel was created, tick 0
+	private final long startNanos;
+
+	// number of pending timeouts in the wheel
+	private int pendingTimeouts;
+
+	// thread that advances the wheel and runs expired tasks
+	private Thread wheelThread;
+
+	// boolean indicating that the wheel thread should stop
+	private volatile boolean stopped;
+
+	/**
+	 * Creates a C4TimerWheel with a specific tick duration. Deadlines are
+	 * rounded up to the next tick.
+	 * 
+	 * @param tickMillis
+	 *            Duration of a tick in milliseconds
+	 */
+	public C4TimerWheel(long tickMillis) {
+		if (tickMillis <= 0)
+			throw new IllegalArgumentException(
+					"Tick duration must be greater than 0.");
+
+		this.tickMillis = tickMillis;
+		this.wheel = new Timeout[LEVELS][SLOTS];
+		this.currentTick = 0;
+		this.pendingTimeouts = 0;
+		this.startNanos = System.nanoTime();
+	}
+
+	/**
+	 * Starts the daemon thread that advances the wheel
+	 */
+	public synchronized void start() {
+		if (wheelThread != null)
+			return;
+
+		wheelThread = new Thread(new Runnable() {
+			public void run() {
+				runWheel();
+			}
+		}, "C4TimerWheel");
+		wheelThread.setDaemon(true);
+		wheelThread.start();
+	}
+
+	/**
+	 * Stops the wheel thread. Pending timeouts never expire.
+	 */
+	public void stop() {
+		stopped = true;
+		if (wheelThread != null)
+			wheelThread.interrupt();
+	}
+
+	/**
+	 * Schedules a task to be run once a delay has elapsed.
+	 * 
+	 * @param task
+	 *            Task to run on the wheel thread when the timeout expires
+	 * @param delayMillis
+	 *            Delay in milliseconds before the task is run
+	 * @return Handle that can be used to cancel the timeout
+	 */
+	public Timeout schedule(Runnable task, long delayMillis) {
+		Timeout timeout = new Timeout(this, task);
+
+		// round the deadline up to the next tick so it never expires early
+		long deadline = (currentTimeMillis() + Math.max(0, delayMillis)
+				+ tickMillis - 1) / tickMillis;
+
+		synchronized (this) {
+			// a timeout always waits for at least one tick of the wheel
+			timeout.deadline = Math.max(deadline, currentTick + 1);
+			place(timeout);
+			pendingTimeouts++;
+		}
+		return timeout;
+	}
+
+	/**
+	 * Returns the number of timeouts waiting to expire
+	 * 
+	 * @return Number of pending timeouts
+	 */
+	public synchronized int getPendingTimeouts() {
+		return pendingTimeouts;
+	}
+
+	/**
+	 * Returns the current time of the wheel in milliseconds, measured from when
+	 * the wheel was created. Useful to compare against deadlines without going
+	 * through the system clock.
+	 * 
+	 * @return Milliseconds elapsed since the wheel was created
+	 */
+	public long currentTimeMillis() {
+		return (System.nanoTime() - startNanos) / 1000000L;
+	}
+
+	/**
+	 * Loop of the wheel thread, advancing one tick at a time and catching up on
+	 * ticks missed while tasks were running.
+	 */
+	private void runWheel() {
+		while (!stopped) {
+			long targetTick = currentTimeMillis() / tickMillis;
+
+			// expire every tick that has elapsed since the last pass
+			while (currentTick < targetTick && !stopped)
+				tick();
+
+			try {
+				long sleepMillis = (currentTick + 1) * tickMillis
+						- currentTimeMillis();
+				if (sleepMillis > 0)
+					Thread.sleep(sleepMillis);
+			} catch (InterruptedException e) {
+				// woken up by stop()
+			}
+		}
+	}
+
+	/**
+	 * Advances the wheel by one tick, cascading the higher levels whose block
+	 * starts at the new tick and running the tasks that expire on it.
+	 */
+	private void tick() {
+		Timeout expired;
+
+		synchronized (this) {
+			currentTick++;
+
+			// cascade from the highest level down so a timeout can fall
+			// through several levels in the same tick
+			for (int level = LEVELS - 1; level > 0; level--) {
+				if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0)
+					cascade(level,
+							(int) (currentTick >>> (SLOT_BITS * level))
+									& SLOT_MASK);
+			}
+
+			// detach the lowest level slot for this tick
+			int slot = (int) currentTick & SLOT_MASK;
+			expired = wheel[0][slot];
+			wheel[0][slot] = null;
+
+			for (Timeout t = expired; t != null; t = t.next) {
+				t.slotLevel = -1;
+				pendingTimeouts--;
+			}
+		}
+
+		// run the expired tasks outside of the lock
+		while (expired != null) {
+			Timeout next = expired.next;
+			expired.next = null;
+			expired.prev = null;
+			if (!expired.cancelled) {
+				try {
+					expired.task.run();
+				} catch (RuntimeException e) {
+					C4Log.error("Timer task failed: {}", e.getMessage());
+				}
+			}
+			expired = next;
+		}
+	}
+
+	/**
+	 * Moves every timeout of a slot to the level that now covers it.
+	 * 
+	 * @param level
+	 *            Level of the slot
+	 * @param slot
+	 *            Index of the slot within its level
+	 */
+	private void cascade(int level, int slot) {
+		Timeout t = wheel[level][slot];
+		wheel[level][slot] = null;
+
+		while (t != null) {
+			Timeout next = t.next;
+			t.next = null;
+			t.prev = null;
+			place(t);
+			t = next;
+		}
+	}
+
+	/**
+	 * Places a timeout on the lowest level whose span covers its deadline.
+	 * Must be called while holding the lock of the wheel.
+	 * 
+	 * @param timeout
+	 *            Timeout to place
+	 */
+	private void place(Timeout timeout) {
+		long deadline = Math.max(timeout.deadline, currentTick);
+		int level = 0;
+		long slotTick = deadline;
+
+		// find the level where the deadline is less than a full rotation away
+		while (level < LEVELS) {
+			int shift = SLOT_BITS * level;
+			if ((deadline >>> shift) - (currentTick >>> shift) < SLOTS)
+				break;
+			level++;
+		}
+
+		// deadline beyond the span of the wheel, park it in the farthest slot
+		// of the top level and cascade it again once it is reached
+		if (level == LEVELS) {
+			level = LEVELS - 1;
+			int shift = SLOT_BITS * level;
+			slotTick = ((currentTick >>> shift) + SLOT_MASK) << shift;
+		}
+
+		int slot = (int) (slotTick >>> (SLOT_BITS * level)) & SLOT_MASK;
+
+		// push the timeout at the head of the slot's list
+		Timeout head = wheel[level][slot];
+		timeout.next = head;
+		timeout.prev = null;
+		if (head != null)
+			head.prev = timeout;
+		wheel[level][slot] = timeout;
+		timeout.slotLevel = level;
+		timeout.slotIndex = slot;
+	}
+
+	/**
+	 * Removes a timeout from the wheel in constant time
+	 * 
+	 * @param timeout
+	 *            Timeout to remove
+	 * @return True if the timeout was still pending, false otherwise
+	 */
+	private synchronized boolean remove(Timeout timeout) {
+		if (timeout.slotLevel < 0)
+			return false;
+
+		if (timeout.prev != null)
+			timeout.prev.next = timeout.next;
+		else
+			wheel[timeout.slotLevel][timeout.slotIndex] = timeout.next;
+
+		if (timeout.next != null)
+			timeout.next.prev = timeout.prev;
+
+		timeout.next = null;
+		timeout.prev = null;
+		timeout.slotLevel = -1;
+		pendingTimeouts--;
+		return true;
+	}
+
+	/**
+	 * Handle to a task scheduled on the wheel. Each timeout is an intrusive
+	 * node of the list of its slot so it can be cancelled without searching.
+	 */
+	public static final class Timeout {
+		private final C4TimerWheel timerWheel;
+		private final Runnable task;
+		private long deadline; // tick at which the timeout expires
+		private Timeout prev, next; // neighbours in the slot's list
+		private int slotLevel = -1, slotIndex; // position within the wheel
+		private volatile boolean cancelled;
+
+		private Timeout(C4TimerWheel timerWheel, Runnable task) {
+			this.timerWheel = timerWheel;
+			this.task = task;
+		}
+
+		/**
+		 * Cancels the timeout so that its task is never run
+		 * 
+		 * @return True if the timeout was pending, false if it had already
+		 *         expired or been cancelled
+		 */
+		public boolean cancel() {
+			cancelled = true;
+			return timerWheel.remove(this);
+		}
+
+		/**
+		 * Returns whether the timeout was cancelled
+		 * 
+		 * @return True if the timeout was cancelled
+		 */
+		public boolean isCancelled() {
+			return cancelled;
+		}
+	}
+}
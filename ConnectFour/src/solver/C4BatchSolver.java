@@ -0,0 +1,298 @@
+package solver;
+
+import gameLogic.C4Position;
+import gameLogic.C4Solver;
+import gameLogic.C4TranspositionTable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Solves a stream of positions exactly on a pool of workers, each with its
+ * own C4Solver on a shared transposition table. A position is a line of
+ * moves, columns numbered from 1 as in "4453"; anything after the moves on
+ * the line is kept as the result's annotation. Blank lines and lines
+ * starting with # are skipped.
+ * 
+ * Positions are read as the workers take them, never more than a few per
+ * worker ahead, so an input of any size is solved in constant memory. Every
+ * result goes through a single writer thread to the sink, as soon as it is
+ * solved or, if the order is kept, as soon as every position before it is.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4BatchSolver {
+
+	// number of cells of the board
+	private static final int CELLS = C4Position.WIDTH * C4Position.HEIGHT;
+
+	// positions read ahead of the workers, per worker
+	private static final int READ_AHEAD = 16;
+
+	private int threads;
+	private boolean ordered;
+	private C4TranspositionTable table;
+
+	/**
+	 * Creates a C4BatchSolver
+	 * 
+	 * @param threads
+	 *            Number of workers
+	 * @param ordered
+	 *            True if the results are handed to the sink in the order of
+	 *            the input, false if as they are solved
+	 * @param table
+	 *            Transposition table shared by the workers
+	 */
+	public C4BatchSolver(int threads, boolean ordered,
+			C4TranspositionTable table) {
+		if (threads < 1)
+			throw new IllegalArgumentException(
+					"There must be at least one worker.");
+		this.threads = threads;
+		this.ordered = ordered;
+		this.table = table;
+	}
+
+	/**
+	 * Solves every position of the input, returning once every result was
+	 * handed to the sink
+	 * 
+	 * @param input
+	 *            Positions, one per line
+	 * @param sink
+	 *            Receiver of the results
+	 * @return Number of positions read
+	 * @throws IOException
+	 *             If the input cannot be read
+	 */
+	public long solveAll(BufferedReader input, C4ResultSink sink)
+			throws IOException {
+		ExecutorService workers = Executors.newFixedThreadPool(threads,
+				new ThreadFactory() {
+					public Thread newThread(Runnable task) {
+						Thread thread = new Thread(task, "C4SolverWorker");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		final ThreadLocal<C4Solver> solvers = new ThreadLocal<C4Solver>() {
+			protected C4Solver initialValue() {
+				return new C4Solver(table);
+			}
+		};
+		final Semaphore readAhead = new Semaphore(threads * READ_AHEAD);
+		final Writer writer = new Writer(sink, readAhead);
+		writer.start();
+
+		long count = 0;
+		try {
+			String line;
+			while ((line = input.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+
+				readAhead.acquireUninterruptibly();
+				final long sequence = count++;
+				final String text = line;
+				workers.execute(new Runnable() {
+					public void run() {
+						C4SolveResult result;
+						try {
+							result = solveLine(sequence, text, solvers.get());
+						} catch (RuntimeException e) {
+							// the writer waits for every position read
+							result = new C4SolveResult(sequence, text, "",
+									"Solver failed: " + e);
+						}
+						writer.results.add(result);
+					}
+				});
+			}
+		} finally {
+			workers.shutdown();
+			writer.finish(count);
+			boolean interrupted = false;
+			while (true) {
+				try {
+					writer.join();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+		return count;
+	}
+
+	/**
+	 * Solves the position of an input line
+	 * 
+	 * @param sequence
+	 *            Index of the position in the input
+	 * @param line
+	 *            Line holding the moves and an optional annotation
+	 * @param solver
+	 *            Solver of the calling thread
+	 * @return Result of the position
+	 */
+	private static C4SolveResult solveLine(long sequence, String line,
+			C4Solver solver) {
+		int end = 0;
+		while (end < line.length() && !Character.isWhitespace(line.charAt(end)))
+			end++;
+		String moves = line.substring(0, end);
+		String annotation = line.substring(end).trim();
+
+		C4Position position;
+		try {
+			position = parsePosition(moves);
+		} catch (IllegalArgumentException e) {
+			return new C4SolveResult(sequence, moves, annotation,
+					e.getMessage());
+		}
+
+		// a full board is a draw, with nothing to search
+		if (position.isFull())
+			return new C4SolveResult(sequence, moves, annotation, 0, 0, 0);
+
+		long start = System.nanoTime();
+		solver.resetStatistics();
+		int score = solver.solve(position);
+		return new C4SolveResult(sequence, moves, annotation, score,
+				solver.getNodes(), System.nanoTime() - start);
+	}
+
+	/**
+	 * Plays a string of moves from an empty board
+	 * 
+	 * @param moves
+	 *            Columns played in order, numbered from 1
+	 * @return Position reached, which is not won
+	 * @throws IllegalArgumentException
+	 *             If a move is not a column, is played in a full column or is
+	 *             played after the game was won
+	 */
+	public static C4Position parsePosition(String moves) {
+		if (moves.length() > CELLS)
+			throw new IllegalArgumentException("More moves than cells.");
+
+		C4Position position = new C4Position();
+		for (int i = 0; i < moves.length(); i++) {
+			int col = moves.charAt(i) - '1';
+			if (col < 0 || col >= C4Position.WIDTH)
+				throw new IllegalArgumentException("Move " + (i + 1)
+						+ " is not a column.");
+			if (!position.canPlay(col))
+				throw new IllegalArgumentException("Move " + (i + 1)
+						+ " is played in a full column.");
+			if (position.isWinningMove(col))
+				throw new IllegalArgumentException("Move " + (i + 1)
+						+ " wins the game.");
+			position.play(col);
+		}
+		return position;
+	}
+
+	/**
+	 * Thread handing the results to the sink, reordering them first if the
+	 * order is kept, and flushing the sink whenever it runs out of results
+	 */
+	private class Writer extends Thread {
+		private final C4ResultSink sink;
+		private final Semaphore readAhead;
+		private final BlockingQueue<C4SolveResult> results;
+
+		// number of positions read, known once the input is read
+		private volatile long total = -1;
+
+		/**
+		 * Creates a Writer
+		 * 
+		 * @param sink
+		 *            Receiver of the results
+		 * @param readAhead
+		 *            Permits of the positions read ahead, released as their
+		 *            results are written
+		 */
+		private Writer(C4ResultSink sink, Semaphore readAhead) {
+			super("C4SolverWriter");
+			this.sink = sink;
+			this.readAhead = readAhead;
+			this.results = new LinkedBlockingQueue<C4SolveResult>();
+		}
+
+		/**
+		 * Tells the writer how many results to expect
+		 * 
+		 * @param count
+		 *            Number of positions read
+		 */
+		private void finish(long count) {
+			total = count;
+
+			// wake the writer up in case it waits for a result
+			interrupt();
+		}
+
+		/**
+		 * Writes the results until every position read was written
+		 */
+		public void run() {
+			// results solved ahead of the next in order, if the order is kept
+			Map<Long, C4SolveResult> waiting = new HashMap<Long, C4SolveResult>();
+			long written = 0;
+
+			while (total < 0 || written < total) {
+				C4SolveResult result = results.poll();
+				if (result == null) {
+					sink.flush();
+					try {
+						result = results.take();
+					} catch (InterruptedException e) {
+						continue;
+					}
+				}
+
+				if (!ordered) {
+					write(result);
+					written++;
+					continue;
+				}
+
+				waiting.put(result.getSequence(), result);
+				while ((result = waiting.remove(written)) != null) {
+					write(result);
+					written++;
+				}
+			}
+			sink.flush();
+		}
+
+		/**
+		 * Hands a result to the sink and lets another position be read
+		 * 
+		 * @param result
+		 *            Result to write
+		 */
+		private void write(C4SolveResult result) {
+			try {
+				sink.resultSolved(result);
+			} finally {
+				readAhead.release();
+			}
+		}
+	}
+}
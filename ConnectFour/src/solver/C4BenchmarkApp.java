@@ -0,0 +1,365 @@
+package solver;
+
+import gameLogic.C4MoveOrdering;
+import gameLogic.C4Position;
+import gameLogic.C4Solver;
+import gameLogic.C4TranspositionTable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Solves the benchmark corpus and reports, for each category of positions,
+ * the mean time and nodes taken to solve a position, the nodes searched per
+ * second and whether every score is the expected one. A change to the
+ * search is measured by running the benchmark before and after it.
+ * 
+ * Each position is solved on an empty transposition table, so its time and
+ * nodes do not depend on the positions solved before it. The end and middle
+ * positions are solved once untimed first, so the timed runs measure
+ * compiled code.
+ * 
+ * The summary of each category is appended to a CSV file, labelled with the
+ * label given or the time of the run, so runs of different versions can be
+ * compared side by side. A file written with other columns, by an older
+ * version, is never appended to: the benchmark stops before solving
+ * anything, and another file can be given with -csv. The application exits
+ * with status 1 if a score is not the expected one.
+ * 
+ * The share of the cutoffs made by the first move tried tells how good the
+ * move ordering is; -learning runs the benchmark with the killers and
+ * history of C4MoveOrdering.
+ * 
+ * Usage: C4BenchmarkApp [-corpus file] [-category name] [-runs n] [-table
+ * bits] [-label name] [-csv file] [-learning]
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.2
+ */
+public class C4BenchmarkApp {
+	private static final String DEFAULT_CORPUS = "benchmark/positions.txt";
+	private static final String DEFAULT_CSV = "benchmark/results.csv";
+
+	// size of the transposition table, 32 MB
+	private static final int DEFAULT_TABLE_BITS = 22;
+
+	private static final String CSV_HEADER = "label,category,positions,"
+			+ "correct,mean_micros,mean_nodes,nodes_per_second,"
+			+ "first_move_cutoff_rate";
+
+	/**
+	 * Main method to run the benchmark
+	 * 
+	 * @param args
+	 *            Options of the run
+	 */
+	public static void main(String[] args) {
+		String corpus = DEFAULT_CORPUS;
+		String csv = DEFAULT_CSV;
+		String category = null;
+		String label = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss")
+				.format(new Date());
+		int runs = 1;
+		int tableBits = DEFAULT_TABLE_BITS;
+		boolean learning = false;
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-corpus"))
+					corpus = args[++i];
+				else if (args[i].equals("-category"))
+					category = args[++i];
+				else if (args[i].equals("-runs"))
+					runs = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-table"))
+					tableBits = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-label"))
+					label = args[++i];
+				else if (args[i].equals("-csv"))
+					csv = args[++i];
+				else if (args[i].equals("-learning"))
+					learning = true;
+				else
+					throw new IllegalArgumentException(args[i]);
+			}
+			if (runs < 1 || label.indexOf(',') >= 0)
+				throw new IllegalArgumentException();
+		} catch (RuntimeException e) {
+			System.out.println("Usage: C4BenchmarkApp [-corpus file] "
+					+ "[-category name] [-runs n] [-table bits] "
+					+ "[-label name] [-csv file] [-learning]");
+			return;
+		}
+
+		// positions of each category, in the order of the corpus
+		Map<String, List<Entry>> categories;
+		try {
+			categories = readCorpus(new File(corpus), category);
+		} catch (IOException | IllegalArgumentException e) {
+			System.out.println("Error reading corpus " + corpus + ": "
+					+ e.getMessage());
+			return;
+		}
+		if (categories.isEmpty()) {
+			System.out.println("No position to solve.");
+			return;
+		}
+
+		// fail before the run rather than lose its results
+		try {
+			checkHeader(new File(csv));
+		} catch (IOException e) {
+			System.out.println("Error writing results: " + e.getMessage());
+			System.exit(1);
+		}
+
+		C4TranspositionTable table = new C4TranspositionTable(tableBits);
+		C4Solver solver = new C4Solver(table, new C4MoveOrdering(learning));
+
+		for (Map.Entry<String, List<Entry>> entry : categories.entrySet())
+			if (!entry.getKey().startsWith("begin"))
+				for (Entry position : entry.getValue()) {
+					clear(solver);
+					solver.solve(position.position);
+				}
+
+		List<String> rows = new ArrayList<String>();
+		long allPositions = 0, allCorrect = 0, allNodes = 0, allNanos = 0;
+		long allCutoffs = 0, allFirstMoveCutoffs = 0;
+		System.out.println("Category\tPositions\tCorrect\tMean time (us)\t"
+				+ "Mean nodes\tNodes/s\tFirst move cutoffs");
+
+		for (Map.Entry<String, List<Entry>> entry : categories.entrySet()) {
+			long correct = 0, nodes = 0, nanos = 0;
+			long cutoffs = 0, firstMoveCutoffs = 0;
+			for (Entry position : entry.getValue()) {
+				int score = 0;
+				for (int run = 0; run < runs; run++) {
+					clear(solver);
+					long start = System.nanoTime();
+					score = solver.solve(position.position);
+					nanos += System.nanoTime() - start;
+					nodes += solver.getNodes();
+					cutoffs += solver.getMoveOrdering().getCutoffs();
+					firstMoveCutoffs += solver.getMoveOrdering()
+							.getFirstMoveCutoffs();
+				}
+
+				if (score == position.expected)
+					correct++;
+				else
+					System.out.println(position.moves + " scored " + score
+							+ ", expected " + position.expected);
+			}
+
+			int positions = entry.getValue().size();
+			rows.add(report(label, entry.getKey(), positions, correct, nodes,
+					nanos, (long) positions * runs, cutoffs, firstMoveCutoffs));
+			allPositions += positions;
+			allCorrect += correct;
+			allNodes += nodes;
+			allNanos += nanos;
+			allCutoffs += cutoffs;
+			allFirstMoveCutoffs += firstMoveCutoffs;
+		}
+		rows.add(report(label, "all", allPositions, allCorrect, allNodes,
+				allNanos, allPositions * runs, allCutoffs, allFirstMoveCutoffs));
+
+		try {
+			writeResults(new File(csv), rows);
+			System.out.println("Results appended to " + csv);
+		} catch (IOException e) {
+			System.out.println("Error writing results: " + e.getMessage());
+		}
+
+		if (allCorrect < allPositions)
+			System.exit(1);
+	}
+
+	/**
+	 * Empties the transposition table and resets the statistics of a solver
+	 * before a position is solved
+	 * 
+	 * @param solver
+	 *            Solver about to solve a position
+	 */
+	private static void clear(C4Solver solver) {
+		solver.getTable().clear();
+		solver.getMoveOrdering().clear();
+		solver.resetStatistics();
+	}
+
+	/**
+	 * Prints the summary of a category and returns it as a CSV row
+	 * 
+	 * @param label
+	 *            Label of the run
+	 * @param category
+	 *            Category summarized
+	 * @param positions
+	 *            Number of positions of the category
+	 * @param correct
+	 *            Number of positions with the expected score
+	 * @param nodes
+	 *            Nodes searched by every solve
+	 * @param nanos
+	 *            Time taken by every solve
+	 * @param solves
+	 *            Number of solves, the positions times the runs
+	 * @param cutoffs
+	 *            Cutoffs of every solve
+	 * @param firstMoveCutoffs
+	 *            Cutoffs made by the first move tried
+	 * @return CSV row of the category
+	 */
+	private static String report(String label, String category,
+			long positions, long correct, long nodes, long nanos, long solves,
+			long cutoffs, long firstMoveCutoffs) {
+		long meanMicros = nanos / solves / 1000;
+		long meanNodes = nodes / solves;
+		long nodesPerSecond = nanos > 0 ? (long) (nodes * 1e9 / nanos) : 0;
+		String firstMoveRate = String.format(Locale.ROOT, "%.3f",
+				cutoffs > 0 ? (double) firstMoveCutoffs / cutoffs : 0);
+
+		System.out.println(category + "\t" + positions + "\t" + correct + "\t"
+				+ meanMicros + "\t" + meanNodes + "\t" + nodesPerSecond + "\t"
+				+ firstMoveRate);
+		return label + "," + category + "," + positions + "," + correct + ","
+				+ meanMicros + "," + meanNodes + "," + nodesPerSecond + ","
+				+ firstMoveRate;
+	}
+
+	/**
+	 * Reads the positions of the corpus
+	 * 
+	 * @param file
+	 *            Corpus, one "moves score category" line per position
+	 * @param only
+	 *            Category to keep, null to keep every one
+	 * @return Positions of each category, in the order of the corpus
+	 * @throws IOException
+	 *             If the corpus cannot be read
+	 * @throws IllegalArgumentException
+	 *             If a line is not a valid position
+	 */
+	private static Map<String, List<Entry>> readCorpus(File file, String only)
+			throws IOException {
+		Map<String, List<Entry>> categories = new LinkedHashMap<String, List<Entry>>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), StandardCharsets.UTF_8));
+		try {
+			String line;
+			int number = 0;
+			while ((line = reader.readLine()) != null) {
+				number++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+
+				String[] fields = line.split("\\s+");
+				if (fields.length != 3)
+					throw new IllegalArgumentException("Line " + number
+							+ " is not \"moves score category\".");
+				if (only != null && !fields[2].equals(only))
+					continue;
+
+				Entry entry = new Entry();
+				entry.moves = fields[0];
+				try {
+					entry.position = C4BatchSolver.parsePosition(fields[0]);
+					entry.expected = Integer.parseInt(fields[1]);
+				} catch (IllegalArgumentException e) {
+					throw new IllegalArgumentException("Line " + number + ": "
+							+ e.getMessage());
+				}
+
+				List<Entry> entries = categories.get(fields[2]);
+				if (entries == null) {
+					entries = new ArrayList<Entry>();
+					categories.put(fields[2], entries);
+				}
+				entries.add(entry);
+			}
+		} finally {
+			reader.close();
+		}
+		return categories;
+	}
+
+	/**
+	 * Checks that rows can be appended to the CSV file of results, the file
+	 * being new or having the same columns
+	 * 
+	 * @param file
+	 *            CSV file
+	 * @return True if the file already holds the header
+	 * @throws IOException
+	 *             If the file has other columns or cannot be read
+	 */
+	private static boolean checkHeader(File file) throws IOException {
+		if (file.length() == 0)
+			return false;
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), StandardCharsets.UTF_8));
+		try {
+			if (!CSV_HEADER.equals(reader.readLine()))
+				throw new IOException(file + " has other columns than "
+						+ CSV_HEADER + ", give another file with -csv.");
+		} finally {
+			reader.close();
+		}
+		return true;
+	}
+
+	/**
+	 * Appends rows to the CSV file of results, writing the header first if
+	 * the file is new
+	 * 
+	 * @param file
+	 *            CSV file
+	 * @param rows
+	 *            Rows to append
+	 * @throws IOException
+	 *             If the file has other columns or cannot be written
+	 */
+	private static void writeResults(File file, List<String> rows)
+			throws IOException {
+		boolean exists = checkHeader(file);
+		PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+				new FileOutputStream(file, true), StandardCharsets.UTF_8));
+		try {
+			if (!exists)
+				writer.println(CSV_HEADER);
+			for (String row : rows)
+				writer.println(row);
+		} finally {
+			writer.close();
+		}
+		if (writer.checkError())
+			throw new IOException("Write failed.");
+	}
+
+	/**
+	 * Position of the corpus with its expected score
+	 */
+	private static class Entry {
+		private String moves;
+		private C4Position position;
+		private int expected;
+	}
+}
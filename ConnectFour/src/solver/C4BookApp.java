@@ -0,0 +1,221 @@
+package solver;
+
+import gameLogic.C4Position;
+import gameLogic.C4TranspositionTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds and looks up opening books from the command line. The coordinator
+ * hands the positions out to workers run on this or other machines (see
+ * C4BookCoordinator); -spawn starts that many workers as processes on this
+ * machine, enough to build a book on a single box. -root builds the book of
+ * the positions following an opening only, so a book can also be split into
+ * the books of its openings.
+ * 
+ * Usage:
+ * C4BookApp coordinator -ply n -book file [-root moves] [-port p]
+ * [-bind address] [-checkpoint file] [-unit n] [-spawn n]
+ * C4BookApp worker [-host h] [-port p] [-threads n] [-table bits]
+ * C4BookApp lookup -book file moves...
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4BookApp {
+
+	// port the coordinator listens on unless specified
+	private static final int DEFAULT_PORT = 50100;
+
+	// positions handed to a worker at once
+	private static final int DEFAULT_UNIT_SIZE = 16;
+
+	// size of the transposition table of a worker process, 32 MB
+	private static final int DEFAULT_TABLE_BITS = 22;
+
+	/**
+	 * Main method to run a coordinator, a worker or a lookup
+	 * 
+	 * @param args
+	 *            Mode followed by its options
+	 */
+	public static void main(String[] args) {
+		try {
+			if (args.length > 0 && args[0].equals("coordinator"))
+				coordinator(args);
+			else if (args.length > 0 && args[0].equals("worker"))
+				worker(args);
+			else if (args.length > 0 && args[0].equals("lookup"))
+				lookup(args);
+			else
+				throw new IllegalArgumentException();
+		} catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+			if (e.getMessage() != null)
+				System.out.println(e.getMessage());
+			System.out.println("Usage: C4BookApp coordinator -ply n -book file "
+					+ "[-root moves] [-port p] [-bind address] [-checkpoint file] [-unit n] "
+					+ "[-spawn n]");
+			System.out.println("       C4BookApp worker [-host h] [-port p] "
+					+ "[-threads n] [-table bits]");
+			System.out.println("       C4BookApp lookup -book file moves...");
+		} catch (IOException e) {
+			System.out.println("Error building book: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Builds a book, handing the positions out to the workers
+	 * 
+	 * @param args
+	 *            Options of the coordinator
+	 * @throws IOException
+	 *             If the socket, the checkpoint or the book cannot be used
+	 */
+	private static void coordinator(String[] args) throws IOException {
+		int ply = -1, port = DEFAULT_PORT, unitSize = DEFAULT_UNIT_SIZE;
+		int spawn = 0;
+		File bookFile = null, checkpointFile = null;
+		C4Position root = new C4Position();
+		InetAddress bindAddress = null;
+
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("-ply"))
+				ply = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-book"))
+				bookFile = new File(args[++i]);
+			else if (args[i].equals("-root"))
+				root = C4BatchSolver.parsePosition(args[++i]);
+			else if (args[i].equals("-port"))
+				port = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-bind"))
+				bindAddress = InetAddress.getByName(args[++i]);
+			else if (args[i].equals("-checkpoint"))
+				checkpointFile = new File(args[++i]);
+			else if (args[i].equals("-unit"))
+				unitSize = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-spawn"))
+				spawn = Integer.parseInt(args[++i]);
+			else
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+		}
+		if (ply < 0 || bookFile == null)
+			throw new IllegalArgumentException("A ply and a book are needed.");
+		if (checkpointFile == null)
+			checkpointFile = new File(bookFile.getPath() + ".checkpoint");
+
+		long start = System.nanoTime();
+		C4BookCoordinator coordinator = new C4BookCoordinator(root, ply,
+				unitSize, checkpointFile);
+		coordinator.prepare();
+
+		// workers on other machines need -bind 0.0.0.0
+		ServerSocket serverSocket = new ServerSocket(port, 50,
+				bindAddress != null ? bindAddress
+						: InetAddress.getLoopbackAddress());
+		List<Process> workers = new ArrayList<Process>();
+		for (int i = 0; i < spawn; i++)
+			workers.add(spawnWorker(port));
+
+		C4OpeningBook book = coordinator.build(serverSocket);
+		book.save(bookFile);
+		System.out.println(book.size() + " positions written to " + bookFile
+				+ " in " + (System.nanoTime() - start) / 1000000 + " ms");
+
+		// the workers leave once told the book is done
+		for (Process worker : workers)
+			try {
+				worker.waitFor();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+	}
+
+	/**
+	 * Starts a worker process on this machine, with the same Java and class
+	 * path as this one
+	 * 
+	 * @param port
+	 *            Port of the coordinator
+	 * @return Worker process
+	 * @throws IOException
+	 *             If the process cannot be started
+	 */
+	private static Process spawnWorker(int port) throws IOException {
+		String java = System.getProperty("java.home") + File.separator + "bin"
+				+ File.separator + "java";
+		ProcessBuilder builder = new ProcessBuilder(java, "-cp",
+				System.getProperty("java.class.path"), C4BookApp.class
+						.getName(), "worker", "-port", String.valueOf(port),
+				"-threads", "1");
+		builder.inheritIO();
+		return builder.start();
+	}
+
+	/**
+	 * Solves the units handed out by a coordinator until it is done
+	 * 
+	 * @param args
+	 *            Options of the worker
+	 */
+	private static void worker(String[] args) {
+		String host = InetAddress.getLoopbackAddress().getHostAddress();
+		int port = DEFAULT_PORT, tableBits = DEFAULT_TABLE_BITS;
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("-host"))
+				host = args[++i];
+			else if (args[i].equals("-port"))
+				port = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-threads"))
+				threads = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-table"))
+				tableBits = Integer.parseInt(args[++i]);
+			else
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+		}
+
+		// one connection per thread, all on one table
+		C4TranspositionTable table = new C4TranspositionTable(tableBits);
+		Thread[] connections = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			connections[i] = new Thread(new C4BookWorker(host, port, table),
+					"C4BookWorker-" + i);
+			connections[i].start();
+		}
+		for (Thread connection : connections)
+			try {
+				connection.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+	}
+
+	/**
+	 * Prints the score of positions found in a book
+	 * 
+	 * @param args
+	 *            Book followed by positions, columns numbered from 1
+	 * @throws IOException
+	 *             If the book cannot be read
+	 */
+	private static void lookup(String[] args) throws IOException {
+		if (args.length < 3 || !args[1].equals("-book"))
+			throw new IllegalArgumentException("A book is needed.");
+
+		C4OpeningBook book = C4OpeningBook.load(new File(args[2]));
+		for (int i = 3; i < args.length; i++) {
+			C4Position position = C4BatchSolver.parsePosition(args[i]);
+			int score = book.getScore(position);
+			System.out.println(args[i] + " "
+					+ (score == C4OpeningBook.UNKNOWN ? "unknown" : score));
+		}
+	}
+}
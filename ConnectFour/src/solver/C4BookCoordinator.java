@@ -0,0 +1,454 @@
+package solver;
+
+import gameLogic.C4Position;
+import gameLogic.C4Threats;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds an opening book with worker processes (see C4BookWorker) connected
+ * over sockets, so the solving can be spread over as many processes and
+ * machines as there are.
+ * 
+ * The coordinator enumerates every position up to the book's ply from a root
+ * position, the empty board for a full book, a position and its mirror image
+ * counted once. Only the positions of the last ply are
+ * solved by the workers, in units of a few positions handed out to whichever
+ * worker asks next; the scores of the earlier plies follow from them by
+ * negamax once every unit is in. Positions where the player to move wins
+ * right away are scored on the spot and not played past.
+ * 
+ * Every score received is appended to a checkpoint file, which a restarted
+ * coordinator reads back so only the positions left are handed out. Scores
+ * are exact whatever the ply of the book, so a checkpoint also serves a book
+ * built to another ply. A unit whose worker disconnects is handed out again.
+ * 
+ * The protocol is a line of text each way: "SOLVE key key ..." with the keys
+ * of the positions in hexadecimal, answered by "SCORES score score ...", and
+ * "DONE" once the book is finished.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4BookCoordinator {
+
+	// number of cells of the board
+	private static final int CELLS = C4Position.WIDTH * C4Position.HEIGHT;
+
+	// score of a position not solved yet
+	private static final byte UNSOLVED = Byte.MIN_VALUE;
+
+	// how often an idle connection checks whether the book is finished
+	private static final long POLL_MILLIS = 1000;
+
+	private final C4Position root;
+	private final int maximumPly;
+	private final int unitSize;
+	private final File checkpointFile;
+
+	// number of plies from the root to the last ply
+	private final int depth;
+
+	// canonical keys of the positions of each ply from the root, sorted, and
+	// their scores
+	private long[][] keys;
+	private byte[][] scores;
+
+	// units waiting for a worker, as the index of their first position in
+	// the last ply
+	private final BlockingQueue<Integer> units;
+	private CountDownLatch unitsLeft;
+
+	private DataOutputStream checkpoint;
+	private int solved, toSolve;
+
+	/**
+	 * Creates a C4BookCoordinator
+	 * 
+	 * @param root
+	 *            Position the book starts from, which must not be won
+	 * @param maximumPly
+	 *            Deepest ply of the positions of the book, counted from the
+	 *            empty board
+	 * @param unitSize
+	 *            Number of positions handed to a worker at once
+	 * @param checkpointFile
+	 *            File the scores received are appended to
+	 */
+	public C4BookCoordinator(C4Position root, int maximumPly, int unitSize,
+			File checkpointFile) {
+		if (maximumPly < root.getMoveCount() || maximumPly >= CELLS)
+			throw new IllegalArgumentException("Book ply must be between "
+					+ root.getMoveCount() + " and " + (CELLS - 1) + ".");
+		if (unitSize < 1)
+			throw new IllegalArgumentException(
+					"A unit must hold at least one position.");
+		this.root = new C4Position();
+		this.root.copy(root);
+		this.maximumPly = maximumPly;
+		this.depth = maximumPly - root.getMoveCount();
+		this.unitSize = unitSize;
+		this.checkpointFile = checkpointFile;
+		this.units = new LinkedBlockingQueue<Integer>();
+	}
+
+	/**
+	 * Enumerates the positions of the book and reads back the scores of a
+	 * previous run from the checkpoint
+	 * 
+	 * @throws IOException
+	 *             If the checkpoint cannot be read
+	 */
+	public void prepare() throws IOException {
+		enumerate();
+		int restored = readCheckpoint();
+
+		long[] last = keys[depth];
+		byte[] lastScores = scores[depth];
+		for (int i = 0; i < last.length; i++)
+			if (lastScores[i] == UNSOLVED)
+				toSolve++;
+
+		int count = 0;
+		for (int first = 0; first < last.length; first += unitSize)
+			for (int i = first; i < Math.min(last.length, first + unitSize); i++)
+				if (lastScores[i] == UNSOLVED) {
+					units.add(first);
+					count++;
+					break;
+				}
+		unitsLeft = new CountDownLatch(count);
+
+		int positions = 0;
+		for (long[] plyKeys : keys)
+			positions += plyKeys.length;
+		System.out.println(positions + " positions up to ply " + maximumPly
+				+ ", " + last.length + " at the last ply, " + restored
+				+ " restored from the checkpoint, " + toSolve + " to solve in "
+				+ count + " units");
+	}
+
+	/**
+	 * Hands out the units to the workers connecting to a socket until every
+	 * unit is solved, then finishes the book
+	 * 
+	 * @param serverSocket
+	 *            Socket the workers connect to, closed once the book is
+	 *            finished
+	 * @return Book of every position up to the ply
+	 * @throws IOException
+	 *             If the checkpoint cannot be written
+	 */
+	public C4OpeningBook build(final ServerSocket serverSocket)
+			throws IOException {
+		checkpoint = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(checkpointFile, true)));
+
+		try {
+			Thread acceptor = new Thread(new Runnable() {
+				public void run() {
+					acceptWorkers(serverSocket);
+				}
+			}, "C4BookAcceptor");
+			acceptor.setDaemon(true);
+			acceptor.start();
+
+			boolean interrupted = false;
+			while (true) {
+				try {
+					unitsLeft.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		} finally {
+			synchronized (this) {
+				checkpoint.close();
+			}
+			serverSocket.close();
+		}
+
+		return derive();
+	}
+
+	/**
+	 * Enumerates the positions of every ply, keeping one of each position
+	 * and its mirror image
+	 */
+	private void enumerate() {
+		keys = new long[depth + 1][];
+		scores = new byte[depth + 1][];
+		C4Position position = new C4Position(), child = new C4Position();
+		keys[0] = new long[] { C4OpeningBook.canonicalKey(root) };
+
+		for (int ply = 0; ply <= depth; ply++) {
+			scores[ply] = new byte[keys[ply].length];
+			Arrays.fill(scores[ply], UNSOLVED);
+			Set<Long> next = new HashSet<Long>();
+
+			for (int i = 0; i < keys[ply].length; i++) {
+				position.setKey(keys[ply][i]);
+				if (C4Threats.winningMoves(position) != 0) {
+					scores[ply][i] = (byte) ((CELLS + 1 - position
+							.getMoveCount()) / 2);
+					continue;
+				}
+				if (ply == depth)
+					continue;
+
+				for (int col = 0; col < C4Position.WIDTH; col++)
+					if (position.canPlay(col)) {
+						child.copy(position);
+						child.play(col);
+						next.add(C4OpeningBook.canonicalKey(child));
+					}
+			}
+
+			if (ply < depth) {
+				long[] nextKeys = new long[next.size()];
+				int n = 0;
+				for (long key : next)
+					nextKeys[n++] = key;
+				Arrays.sort(nextKeys);
+				keys[ply + 1] = nextKeys;
+			}
+		}
+	}
+
+	/**
+	 * Reads back the scores of the last ply saved by a previous run
+	 * 
+	 * @return Number of scores restored
+	 * @throws IOException
+	 *             If the checkpoint cannot be read
+	 */
+	private int readCheckpoint() throws IOException {
+		DataInputStream in;
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(checkpointFile)));
+		} catch (FileNotFoundException e) {
+			return 0; // first run
+		}
+
+		int restored = 0;
+		try {
+			while (true) {
+				long entry = in.readLong();
+				int index = Arrays.binarySearch(keys[depth],
+						C4OpeningBook.getKey(entry));
+				if (index >= 0 && scores[depth][index] == UNSOLVED) {
+					scores[depth][index] = (byte) C4OpeningBook
+							.getScore(entry);
+					restored++;
+				}
+			}
+		} catch (EOFException e) {
+			// end of the checkpoint, or an entry cut short by a crash
+		} finally {
+			in.close();
+		}
+		return restored;
+	}
+
+	/**
+	 * Accepts workers until the socket is closed, each served by a thread of
+	 * its own
+	 * 
+	 * @param serverSocket
+	 *            Socket the workers connect to
+	 */
+	private void acceptWorkers(ServerSocket serverSocket) {
+		try {
+			while (true) {
+				final Socket socket = serverSocket.accept();
+				Thread thread = new Thread(new Runnable() {
+					public void run() {
+						serveWorker(socket);
+					}
+				}, "C4BookConnection");
+				thread.setDaemon(true);
+				thread.start();
+			}
+		} catch (IOException e) {
+			// the socket is closed once the book is finished
+		}
+	}
+
+	/**
+	 * Hands units to a worker until every unit is solved or the worker
+	 * disconnects
+	 * 
+	 * @param socket
+	 *            Connection to the worker
+	 */
+	private void serveWorker(Socket socket) {
+		String worker = socket.getRemoteSocketAddress().toString();
+		Integer unit = null;
+
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(
+					socket.getInputStream(), StandardCharsets.US_ASCII));
+			PrintWriter out = new PrintWriter(new OutputStreamWriter(
+					socket.getOutputStream(), StandardCharsets.US_ASCII));
+
+			while (true) {
+				unit = units.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if (unit == null) {
+					if (unitsLeft.getCount() == 0)
+						break;
+					continue;
+				}
+
+				int first = unit, end = Math.min(keys[depth].length,
+						first + unitSize);
+				StringBuilder request = new StringBuilder("SOLVE");
+				for (int i = first; i < end; i++)
+					if (scores[depth][i] == UNSOLVED)
+						request.append(' ').append(
+								Long.toHexString(keys[depth][i]));
+				out.println(request);
+				out.flush();
+
+				String reply = in.readLine();
+				if (reply == null)
+					throw new SocketException("Worker disconnected");
+				unitSolved(first, end, reply);
+				unit = null;
+			}
+
+			out.println("DONE");
+			out.flush();
+		} catch (IOException | IllegalArgumentException e) {
+			System.out.println("Worker " + worker + " lost: " + e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			// a unit the worker did not finish goes to another worker
+			if (unit != null)
+				units.add(unit);
+			try {
+				socket.close();
+			} catch (IOException e) {
+				System.out.println("Error closing connection to worker.");
+			}
+		}
+	}
+
+	/**
+	 * Records the scores of a unit and appends them to the checkpoint
+	 * 
+	 * @param first
+	 *            Index of the first position of the unit in the last ply
+	 * @param end
+	 *            Index after the last position of the unit
+	 * @param reply
+	 *            Reply of the worker
+	 * @throws IOException
+	 *             If the checkpoint cannot be written
+	 * @throws IllegalArgumentException
+	 *             If the reply does not hold a score for each position
+	 */
+	private void unitSolved(int first, int end, String reply)
+			throws IOException {
+		String[] fields = reply.split(" ");
+		if (!fields[0].equals("SCORES"))
+			throw new IllegalArgumentException("Unexpected reply " + reply);
+
+		int field = 1;
+		int[] unitScores = new int[end - first];
+		for (int i = first; i < end; i++)
+			if (scores[depth][i] == UNSOLVED) {
+				if (field >= fields.length)
+					throw new IllegalArgumentException("Missing scores");
+				unitScores[i - first] = Integer.parseInt(fields[field++]);
+			}
+
+		synchronized (this) {
+			int before = solved;
+			for (int i = first; i < end; i++)
+				if (scores[depth][i] == UNSOLVED) {
+					scores[depth][i] = (byte) unitScores[i - first];
+					checkpoint.writeLong(C4OpeningBook.entry(
+							keys[depth][i], unitScores[i - first]));
+					solved++;
+				}
+			checkpoint.flush();
+
+			// progress every tenth of the positions
+			if (solved * 10L / toSolve != before * 10L / toSolve)
+				System.out.println(solved + " of " + toSolve
+						+ " positions solved");
+		}
+		unitsLeft.countDown();
+	}
+
+	/**
+	 * Scores the positions before the last ply from the positions they lead
+	 * to, and gathers every score into a book
+	 * 
+	 * @return Book of every position up to the ply
+	 */
+	private C4OpeningBook derive() {
+		C4Position position = new C4Position(), child = new C4Position();
+		int total = 0;
+
+		for (int ply = depth - 1; ply >= 0; ply--) {
+			for (int i = 0; i < keys[ply].length; i++) {
+				if (scores[ply][i] != UNSOLVED)
+					continue;
+
+				// no move wins right away, every child is in the next ply
+				position.setKey(keys[ply][i]);
+				int best = -CELLS;
+				for (int col = 0; col < C4Position.WIDTH; col++)
+					if (position.canPlay(col)) {
+						child.copy(position);
+						child.play(col);
+						int index = Arrays.binarySearch(keys[ply + 1],
+								C4OpeningBook.canonicalKey(child));
+						best = Math.max(best, -scores[ply + 1][index]);
+					}
+				scores[ply][i] = (byte) best;
+			}
+		}
+
+		for (long[] plyKeys : keys)
+			total += plyKeys.length;
+		long[] entries = new long[total];
+		int n = 0;
+		for (int ply = 0; ply <= depth; ply++)
+			for (int i = 0; i < keys[ply].length; i++)
+				entries[n++] = C4OpeningBook.entry(keys[ply][i],
+						scores[ply][i]);
+		Arrays.sort(entries);
+		return new C4OpeningBook(maximumPly, entries);
+	}
+}
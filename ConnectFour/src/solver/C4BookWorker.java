@@ -0,0 +1,138 @@
+package solver;
+
+import gameLogic.C4Position;
+import gameLogic.C4Solver;
+import gameLogic.C4TranspositionTable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Connection of a worker process to a C4BookCoordinator, solving the units
+ * it is handed one after the other until the coordinator is done. A process
+ * may open several connections, one per thread, with solvers sharing a
+ * transposition table.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4BookWorker implements Runnable {
+
+	// how long to keep trying to reach a coordinator that is not up yet
+	private static final long CONNECT_MILLIS = 30 * 1000;
+	private static final long RETRY_MILLIS = 500;
+
+	private String host;
+	private int port;
+	private C4Solver solver;
+
+	/**
+	 * Creates a C4BookWorker
+	 * 
+	 * @param host
+	 *            Host of the coordinator
+	 * @param port
+	 *            Port of the coordinator
+	 * @param table
+	 *            Transposition table, possibly shared with other workers of
+	 *            the process
+	 */
+	public C4BookWorker(String host, int port, C4TranspositionTable table) {
+		this.host = host;
+		this.port = port;
+		this.solver = new C4Solver(table);
+	}
+
+	/**
+	 * Solves units until the coordinator is done or the connection is lost
+	 */
+	public void run() {
+		Socket socket;
+		try {
+			socket = connect();
+		} catch (IOException e) {
+			System.out.println("Error connecting to coordinator: "
+					+ e.getMessage());
+			return;
+		}
+
+		int units = 0;
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(
+					socket.getInputStream(), StandardCharsets.US_ASCII));
+			PrintWriter out = new PrintWriter(new OutputStreamWriter(
+					socket.getOutputStream(), StandardCharsets.US_ASCII));
+
+			String request;
+			while ((request = in.readLine()) != null
+					&& !request.equals("DONE")) {
+				out.println(solveUnit(request));
+				out.flush();
+				units++;
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			System.out.println("Error communicating with coordinator: "
+					+ e.getMessage());
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				System.out.println("Error closing connection to coordinator.");
+			}
+		}
+		System.out.println(Thread.currentThread().getName() + " solved "
+				+ units + " units");
+	}
+
+	/**
+	 * Solves the positions of a unit
+	 * 
+	 * @param request
+	 *            Line "SOLVE key key ..." from the coordinator
+	 * @return Line "SCORES score score ..." answering it
+	 */
+	private String solveUnit(String request) {
+		String[] fields = request.split(" ");
+		if (!fields[0].equals("SOLVE"))
+			throw new IllegalArgumentException("Unexpected request " + request);
+
+		C4Position position = new C4Position();
+		StringBuilder reply = new StringBuilder("SCORES");
+		for (int i = 1; i < fields.length; i++) {
+			position.setKey(Long.parseLong(fields[i], 16));
+			reply.append(' ').append(solver.solve(position));
+		}
+		return reply.toString();
+	}
+
+	/**
+	 * Connects to the coordinator, waiting for it to come up if need be
+	 * 
+	 * @return Connected socket
+	 * @throws IOException
+	 *             If the coordinator could not be reached in time
+	 */
+	private Socket connect() throws IOException {
+		long deadline = System.currentTimeMillis() + CONNECT_MILLIS;
+		while (true) {
+			try {
+				return new Socket(host, port);
+			} catch (ConnectException e) {
+				if (System.currentTimeMillis() > deadline)
+					throw e;
+				try {
+					Thread.sleep(RETRY_MILLIS);
+				} catch (InterruptedException interrupted) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
+			}
+		}
+	}
+}
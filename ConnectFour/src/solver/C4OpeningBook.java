@@ -0,0 +1,247 @@
+package solver;
+
+import gameLogic.C4Position;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Opening book holding the exact score of every position up to a ply, as
+ * built by C4BookCoordinator. A position and its mirror image share one
+ * entry, under the smaller of their two keys.
+ * 
+ * Each entry is a single long packing the position's key (49 bits) and its
+ * score (7 bits), and the entries are sorted so a position is found by a
+ * binary search. A book file starts with a header (magic "C4BK", version,
+ * maximum ply, number of entries, CRC32 of the entries) followed by the
+ * entries.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4OpeningBook {
+
+	// score of a position the book does not hold
+	public static final int UNKNOWN = Integer.MIN_VALUE;
+
+	// layout of an entry
+	private static final int SCORE_BITS = 7;
+	private static final int SCORE_OFFSET = 1 << SCORE_BITS - 1;
+
+	// header of a book file
+	private static final int MAGIC = 0x4334424b, VERSION = 1;
+	private static final int HEADER_SIZE = 24;
+
+	// entries written to a file at once
+	private static final int CHUNK_ENTRIES = 64 * 1024;
+
+	private final int maximumPly;
+	private final long[] entries; // sorted by key
+
+	/**
+	 * Creates a C4OpeningBook
+	 * 
+	 * @param maximumPly
+	 *            Deepest ply of the positions of the book
+	 * @param entries
+	 *            Entries of the book, see entry(), sorted
+	 */
+	C4OpeningBook(int maximumPly, long[] entries) {
+		this.maximumPly = maximumPly;
+		this.entries = entries;
+	}
+
+	/**
+	 * Returns the exact score of a position
+	 * 
+	 * @param position
+	 *            Position to look up
+	 * @return Score for the player to move, see C4Solver, or UNKNOWN if the
+	 *         position is not in the book
+	 */
+	public int getScore(C4Position position) {
+		if (position.getMoveCount() > maximumPly)
+			return UNKNOWN;
+
+		long key = canonicalKey(position);
+		int index = Arrays.binarySearch(entries, key << SCORE_BITS);
+		if (index < 0)
+			index = -index - 1;
+		if (index < entries.length && getKey(entries[index]) == key)
+			return getScore(entries[index]);
+		return UNKNOWN;
+	}
+
+	/**
+	 * Returns the deepest ply of the positions of the book
+	 * 
+	 * @return Number of moves of the deepest positions
+	 */
+	public int getMaximumPly() {
+		return maximumPly;
+	}
+
+	/**
+	 * Returns the number of positions of the book, mirror images counted once
+	 * 
+	 * @return Number of entries
+	 */
+	public int size() {
+		return entries.length;
+	}
+
+	/**
+	 * Returns the key a position is stored under: the smaller of its key and
+	 * the key of its mirror image
+	 * 
+	 * @param position
+	 *            Position
+	 * @return Key shared by the position and its mirror image
+	 */
+	public static long canonicalKey(C4Position position) {
+		return Math.min(position.getKey(), position.getMirrorKey());
+	}
+
+	/**
+	 * Packs the key and score of a position into an entry
+	 * 
+	 * @param key
+	 *            Canonical key of the position
+	 * @param score
+	 *            Exact score of the position
+	 * @return Entry of the position
+	 */
+	static long entry(long key, int score) {
+		return key << SCORE_BITS | (score + SCORE_OFFSET);
+	}
+
+	/**
+	 * Returns the key of the position of an entry
+	 * 
+	 * @param entry
+	 *            Entry of the book
+	 * @return Canonical key of the position
+	 */
+	static long getKey(long entry) {
+		return entry >>> SCORE_BITS;
+	}
+
+	/**
+	 * Returns the score of an entry
+	 * 
+	 * @param entry
+	 *            Entry of the book
+	 * @return Score of the position
+	 */
+	static int getScore(long entry) {
+		return (int) (entry & (1 << SCORE_BITS) - 1) - SCORE_OFFSET;
+	}
+
+	/**
+	 * Saves the book to a file. The book is written to a temporary file first
+	 * and moved in place, so a crash while saving leaves the previous file
+	 * intact.
+	 * 
+	 * @param file
+	 *            File the book is saved to
+	 * @throws IOException
+	 *             If the file could not be written
+	 */
+	public void save(File file) throws IOException {
+		File temporary = new File(file.getPath() + ".tmp");
+		FileChannel channel = FileChannel.open(temporary.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+
+		try {
+			ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_ENTRIES * 8)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			CRC32 checksum = new CRC32();
+
+			// entries first, the header with their checksum last
+			channel.position(HEADER_SIZE);
+			for (int first = 0; first < entries.length; first += CHUNK_ENTRIES) {
+				int end = Math.min(entries.length, first + CHUNK_ENTRIES);
+				chunk.clear();
+				for (int i = first; i < end; i++)
+					chunk.putLong(entries[i]);
+				chunk.flip();
+				checksum.update(chunk.duplicate());
+				while (chunk.hasRemaining())
+					channel.write(chunk);
+			}
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(
+					ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(maximumPly)
+					.putInt(entries.length).putLong(checksum.getValue());
+			header.flip();
+			while (header.hasRemaining())
+				channel.write(header, header.position());
+			channel.force(false);
+		} finally {
+			channel.close();
+		}
+
+		Files.move(temporary.toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Loads a book saved to a file
+	 * 
+	 * @param file
+	 *            File the book was saved to
+	 * @return Book of the file
+	 * @throws IOException
+	 *             If the file could not be read, is not a book or is
+	 *             corrupted
+	 */
+	public static C4OpeningBook load(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ);
+
+		try {
+			if (channel.size() < HEADER_SIZE)
+				throw new IOException("Not an opening book.");
+
+			MappedByteBuffer mapped = channel.map(
+					FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+			if (mapped.getInt() != MAGIC)
+				throw new IOException("Not an opening book.");
+			if (mapped.getInt() != VERSION)
+				throw new IOException("Unsupported opening book version.");
+
+			int maximumPly = mapped.getInt();
+			int count = mapped.getInt();
+			long expectedChecksum = mapped.getLong();
+			if (count < 0 || channel.size() != HEADER_SIZE + count * 8L)
+				throw new IOException("Opening book is truncated.");
+
+			CRC32 checksum = new CRC32();
+			checksum.update(mapped.duplicate());
+			if (checksum.getValue() != expectedChecksum)
+				throw new IOException("Opening book checksum mismatch.");
+
+			long[] entries = new long[count];
+			LongBuffer saved = mapped.asLongBuffer();
+			saved.get(entries);
+			return new C4OpeningBook(maximumPly, entries);
+		} finally {
+			channel.close();
+		}
+	}
+}
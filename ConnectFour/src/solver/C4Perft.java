@@ -0,0 +1,331 @@
+package solver;
+
+import gameExceptions.C4InvalidCheckWinException;
+import gameExceptions.C4InvalidMoveException;
+import gameLogic.C4Game;
+import gameLogic.C4Position;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Enumerates the game tree to a depth by making and removing every move with
+ * C4Game, counting the positions and the wins of each ply. Games stop at a
+ * win. Every move is also played on a C4Position and both must agree on
+ * which columns can be played and which moves win; each disagreement is
+ * counted as a mismatch.
+ * 
+ * Without a set of positions every sequence of moves is counted. With one,
+ * a position reached again by another order of the same moves is neither
+ * counted nor played past, so the counts are of distinct positions, which
+ * are known (OEIS A212693) and checked by C4PerftApp.
+ * 
+ * The first plies are split into tasks of a fork-join pool, each enumerating
+ * the subtree of one opening on a game of its own.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4Perft {
+
+	// number of cells of the board
+	private static final int CELLS = C4Position.WIDTH * C4Position.HEIGHT;
+
+	// plies split into tasks, giving up to 7^3 tasks
+	private static final int SPLIT_PLIES = 3;
+
+	private ForkJoinPool pool;
+
+	/**
+	 * Creates a C4Perft using every core of the machine
+	 */
+	public C4Perft() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a C4Perft running on a specific pool
+	 * 
+	 * @param pool
+	 *            Pool enumerating the positions
+	 */
+	public C4Perft(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Enumerates the positions up to a depth
+	 * 
+	 * @param depth
+	 *            Number of plies enumerated, at most 42
+	 * @param transpositions
+	 *            Set of the positions reached so far, to count each position
+	 *            once, or null to count every sequence of moves
+	 * @return Counts of the enumeration
+	 */
+	public Counts count(int depth, C4PositionSet transpositions) {
+		if (depth < 0 || depth > CELLS)
+			throw new IllegalArgumentException("Depth must be between 0 and "
+					+ CELLS + ".");
+
+		if (transpositions != null)
+			transpositions.add(new C4Position().getKey());
+		Counts counts = depth == 0 ? new Counts(depth) : pool
+				.invoke(new PerftTask(new byte[0], depth, transpositions));
+		counts.positions[0]++;
+		return counts;
+	}
+
+	/**
+	 * Counts of an enumeration
+	 */
+	public static final class Counts {
+		private final long[] positions, wins;
+		private long moves, mismatches;
+
+		/**
+		 * Creates empty Counts
+		 * 
+		 * @param depth
+		 *            Number of plies enumerated
+		 */
+		private Counts(int depth) {
+			positions = new long[depth + 1];
+			wins = new long[depth + 1];
+		}
+
+		/**
+		 * Returns the number of positions of a ply, the empty board being the
+		 * only position of ply 0
+		 * 
+		 * @param ply
+		 *            Number of moves played
+		 * @return Number of positions, including the ones won by their last
+		 *         move
+		 */
+		public long getPositions(int ply) {
+			return positions[ply];
+		}
+
+		/**
+		 * Returns the number of positions of a ply won by their last move
+		 * 
+		 * @param ply
+		 *            Number of moves played
+		 * @return Number of wins
+		 */
+		public long getWins(int ply) {
+			return wins[ply];
+		}
+
+		/**
+		 * Returns the number of moves made, each of which was also removed,
+		 * including the moves reaching a position counted already
+		 * 
+		 * @return Number of moves
+		 */
+		public long getMoves() {
+			return moves;
+		}
+
+		/**
+		 * Returns the number of times C4Game and C4Position disagreed
+		 * 
+		 * @return Number of mismatches, 0 if both agreed on every move
+		 */
+		public long getMismatches() {
+			return mismatches;
+		}
+
+		/**
+		 * Returns the deepest ply enumerated
+		 * 
+		 * @return Depth of the enumeration
+		 */
+		public int getDepth() {
+			return positions.length - 1;
+		}
+
+		/**
+		 * Adds the counts of another part of the enumeration
+		 * 
+		 * @param other
+		 *            Counts to add
+		 */
+		private void add(Counts other) {
+			for (int ply = 0; ply < positions.length; ply++) {
+				positions[ply] += other.positions[ply];
+				wins[ply] += other.wins[ply];
+			}
+			moves += other.moves;
+			mismatches += other.mismatches;
+		}
+	}
+
+	/**
+	 * Task enumerating the subtree of an opening, forking a task per move
+	 * while the opening is shorter than SPLIT_PLIES
+	 */
+	private static class PerftTask extends RecursiveTask<Counts> {
+		private static final long serialVersionUID = 1L;
+
+		private final byte[] opening;
+		private final int depth;
+		private final C4PositionSet transpositions;
+
+		// game and bitboards of the position being enumerated, and the
+		// counts of the task
+		private C4Game game;
+		private C4Position position;
+		private Counts counts;
+
+		private PerftTask(byte[] opening, int depth,
+				C4PositionSet transpositions) {
+			this.opening = opening;
+			this.depth = depth;
+			this.transpositions = transpositions;
+		}
+
+		@Override
+		protected Counts compute() {
+			game = new C4Game(0);
+			position = new C4Position();
+			counts = new Counts(depth);
+
+			try {
+				for (int i = 0; i < opening.length; i++) {
+					game.makeMove(opening[i], player(i));
+					position.play(opening[i]);
+				}
+
+				if (opening.length < SPLIT_PLIES)
+					split();
+				else
+					enumerate(opening.length);
+			} catch (C4InvalidMoveException | C4InvalidCheckWinException e) {
+				throw new IllegalStateException("C4Game refused a move: "
+						+ e.getMessage());
+			}
+			return counts;
+		}
+
+		/**
+		 * Plays every move of the opening's position, forking a task for
+		 * each position to enumerate past
+		 * 
+		 * @throws C4InvalidMoveException
+		 *             If C4Game refuses a move
+		 * @throws C4InvalidCheckWinException
+		 *             If C4Game cannot check a move for a win
+		 */
+		private void split() throws C4InvalidMoveException,
+				C4InvalidCheckWinException {
+			List<PerftTask> tasks = new ArrayList<PerftTask>();
+			int ply = opening.length;
+
+			for (int col = 0; col < C4Position.WIDTH; col++)
+				if (play(col, ply)) {
+					byte[] next = new byte[ply + 1];
+					System.arraycopy(opening, 0, next, 0, ply);
+					next[ply] = (byte) col;
+					tasks.add(new PerftTask(next, depth, transpositions));
+					undo(col);
+				}
+
+			invokeAll(tasks);
+			for (PerftTask task : tasks)
+				counts.add(task.join());
+		}
+
+		/**
+		 * Enumerates the positions after the current one
+		 * 
+		 * @param ply
+		 *            Number of moves of the current position
+		 * @throws C4InvalidMoveException
+		 *             If C4Game refuses a move
+		 * @throws C4InvalidCheckWinException
+		 *             If C4Game cannot check a move for a win
+		 */
+		private void enumerate(int ply) throws C4InvalidMoveException,
+				C4InvalidCheckWinException {
+			if (ply == depth)
+				return;
+
+			for (int col = 0; col < C4Position.WIDTH; col++)
+				if (play(col, ply)) {
+					enumerate(ply + 1);
+					undo(col);
+				}
+		}
+
+		/**
+		 * Makes a move on both boards and counts the position reached
+		 * 
+		 * @param col
+		 *            Column played
+		 * @param ply
+		 *            Number of moves before the move
+		 * @return True if the position reached is to be played past, false
+		 *         if the move could not be made, won, was the last of the
+		 *         enumeration or reached a position already counted
+		 * @throws C4InvalidMoveException
+		 *             If C4Game refuses a move
+		 * @throws C4InvalidCheckWinException
+		 *             If C4Game cannot check a move for a win
+		 */
+		private boolean play(int col, int ply) throws C4InvalidMoveException,
+				C4InvalidCheckWinException {
+			boolean played = game.makeMove(col, player(ply));
+			if (played != position.canPlay(col))
+				counts.mismatches++;
+			if (!played)
+				return false;
+			position.play(col);
+			counts.moves++;
+
+			boolean won = game.checkFourConnected(
+					game.getRowInColumn(col) - 1, col);
+			if (won != position.isWon())
+				counts.mismatches++;
+
+			// a transposition was counted and played past already
+			if (transpositions == null || transpositions.add(position.getKey())) {
+				counts.positions[ply + 1]++;
+				if (won)
+					counts.wins[ply + 1]++;
+				else if (ply + 1 < depth)
+					return true;
+			}
+
+			undo(col);
+			return false;
+		}
+
+		/**
+		 * Removes the last move from both boards
+		 * 
+		 * @param col
+		 *            Column of the last move
+		 * @throws C4InvalidMoveException
+		 *             If C4Game refuses to remove the move
+		 */
+		private void undo(int col) throws C4InvalidMoveException {
+			game.removeMove(col);
+			position.undo(col);
+		}
+
+		/**
+		 * Returns the player making a move
+		 * 
+		 * @param ply
+		 *            Number of moves before the move
+		 * @return PLAYER_ID for the first player, SERVER_ID for the second
+		 */
+		private static int player(int ply) {
+			return (ply & 1) == 0 ? C4Game.PLAYER_ID : C4Game.SERVER_ID;
+		}
+	}
+}
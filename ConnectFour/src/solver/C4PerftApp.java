@@ -0,0 +1,100 @@
+package solver;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Counts the positions and wins of every ply up to a depth with C4Perft, as
+ * a check of the move making and win detection of C4Game and C4Position and
+ * as a benchmark of their speed. With -dedup the positions are counted once
+ * however they were reached, in an off-heap set of 2^bits slots, and the
+ * counts are checked against the known numbers of positions; without it
+ * every sequence of moves is counted.
+ * 
+ * Usage: C4PerftApp [-depth n] [-dedup bits] [-threads n]
+ * 
+ * The exit status is 1 if a count is wrong or C4Game and C4Position
+ * disagreed on a move.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4PerftApp {
+
+	// number of distinct positions after each ply (OEIS A212693)
+	private static final long[] KNOWN_POSITIONS = { 1, 7, 49, 238, 1120,
+			4263, 16422, 54859, 184275, 558186, 1662623, 4568683 };
+
+	private static final int DEFAULT_DEPTH = 8;
+
+	/**
+	 * Main method to count the positions up to a depth
+	 * 
+	 * @param args
+	 *            Options
+	 */
+	public static void main(String[] args) {
+		int depth = DEFAULT_DEPTH, dedupBits = 0;
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-depth"))
+					depth = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-dedup"))
+					dedupBits = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-threads"))
+					threads = Integer.parseInt(args[++i]);
+				else
+					throw new IllegalArgumentException(args[i]);
+			}
+		} catch (RuntimeException e) {
+			System.out.println("Usage: C4PerftApp [-depth n] [-dedup bits] "
+					+ "[-threads n]");
+			return;
+		}
+
+		C4PositionSet transpositions = dedupBits > 0 ? new C4PositionSet(
+				dedupBits) : null;
+		ForkJoinPool pool = new ForkJoinPool(threads);
+
+		long start = System.nanoTime();
+		C4Perft.Counts counts;
+		try {
+			counts = new C4Perft(pool).count(depth, transpositions);
+		} catch (IllegalArgumentException | IllegalStateException e) {
+			System.out.println("Error counting positions: " + e.getMessage());
+			System.exit(1);
+			return;
+		} finally {
+			pool.shutdown();
+		}
+		long nanos = Math.max(1, System.nanoTime() - start);
+
+		boolean correct = counts.getMismatches() == 0;
+		System.out.println("Ply\tPositions\tWins\tExpected");
+		for (int ply = 0; ply <= depth; ply++) {
+			String expected = "";
+			if (transpositions != null && ply < KNOWN_POSITIONS.length) {
+				boolean match = counts.getPositions(ply) == KNOWN_POSITIONS[ply];
+				expected = KNOWN_POSITIONS[ply] + (match ? "" : " MISMATCH");
+				correct &= match;
+			}
+			System.out.println(ply + "\t" + counts.getPositions(ply) + "\t"
+					+ counts.getWins(ply) + "\t" + expected);
+		}
+
+		long moves = counts.getMoves();
+		System.out.println(moves + " moves made and removed in " + nanos
+				/ 1000000 + " ms (" + (long) (moves * 1e9 / nanos)
+				+ " moves/s, " + threads + " threads)");
+		if (transpositions != null)
+			System.out.println(transpositions.size() + " positions in a set of "
+					+ transpositions.capacity() + " slots");
+		if (counts.getMismatches() != 0)
+			System.out.println(counts.getMismatches()
+					+ " moves where C4Game and C4Position disagree");
+
+		if (!correct)
+			System.exit(1);
+	}
+}
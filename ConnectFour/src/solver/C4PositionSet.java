@@ -0,0 +1,101 @@
+package solver;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Set of position keys (see C4Position.getKey()) kept in a direct buffer off
+ * the heap, so enumerations of tens of millions of positions neither fill
+ * the heap nor keep the garbage collector busy.
+ * 
+ * The set is an open addressing hash table of longs, 0 marking a free slot,
+ * which no key can be. Keys are added with a compare and swap on their slot,
+ * so any number of threads add to the set without locks and exactly one of
+ * them is told it added a key. Keys are never removed.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4PositionSet {
+
+	// view of the buffer as longs, with atomic access
+	private static final VarHandle SLOTS = MethodHandles
+			.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+	private final ByteBuffer slots;
+	private final int mask;
+	private final int shift; // shift taking a hashed key to a slot
+	private final LongAdder size;
+
+	/**
+	 * Creates an empty C4PositionSet
+	 * 
+	 * @param sizeBits
+	 *            Base 2 logarithm of the number of slots, each taking 8 bytes
+	 *            off the heap
+	 */
+	public C4PositionSet(int sizeBits) {
+		if (sizeBits < 1 || sizeBits > 27)
+			throw new IllegalArgumentException("Position set size must be "
+					+ "between 2^1 and 2^27 slots.");
+
+		this.slots = ByteBuffer.allocateDirect(8 << sizeBits).order(
+				ByteOrder.nativeOrder());
+		this.mask = (1 << sizeBits) - 1;
+		this.shift = 64 - sizeBits;
+		this.size = new LongAdder();
+	}
+
+	/**
+	 * Adds a key to the set
+	 * 
+	 * @param key
+	 *            Key of a position, never 0
+	 * @return True if the key was added, false if it was already in the set
+	 * @throws IllegalStateException
+	 *             If every slot is taken
+	 */
+	public boolean add(long key) {
+		int index = (int) (key * 0x9e3779b97f4a7c15L >>> shift);
+
+		for (int probe = 0; probe <= mask;) {
+			int offset = (index + probe & mask) << 3;
+			long slot = (long) SLOTS.getVolatile(slots, offset);
+			if (slot == key)
+				return false;
+			if (slot != 0) {
+				probe++;
+				continue;
+			}
+
+			// the slot is free unless another thread takes it first, in which
+			// case it is looked at again
+			if (SLOTS.compareAndSet(slots, offset, 0L, key)) {
+				size.increment();
+				return true;
+			}
+		}
+		throw new IllegalStateException("Position set is full.");
+	}
+
+	/**
+	 * Returns the number of keys in the set
+	 * 
+	 * @return Number of keys added
+	 */
+	public long size() {
+		return size.sum();
+	}
+
+	/**
+	 * Returns the number of slots of the set
+	 * 
+	 * @return Number of keys the set can hold
+	 */
+	public int capacity() {
+		return mask + 1;
+	}
+}
@@ -0,0 +1,25 @@
+package solver;
+
+/**
+ * Receiver of the results of a C4BatchSolver. Methods are only called from
+ * the solver's writer thread, one result at a time.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public interface C4ResultSink {
+
+	/**
+	 * Handles the result of a position
+	 * 
+	 * @param result
+	 *            Result of the position
+	 */
+	void resultSolved(C4SolveResult result);
+
+	/**
+	 * Called whenever no more result is waiting, so buffered output can be
+	 * written out while the workers solve the next positions
+	 */
+	void flush();
+}
@@ -0,0 +1,153 @@
+package solver;
+
+/**
+ * Result of solving one position of a batch: the exact score with the nodes
+ * searched and the time taken, or why the position could not be solved.
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public final class C4SolveResult {
+	private final long sequence;
+	private final String moves;
+	private final String annotation;
+	private final int score;
+	private final long nodes;
+	private final long nanos;
+	private final String error;
+
+	/**
+	 * Creates the C4SolveResult of a solved position
+	 * 
+	 * @param sequence
+	 *            Index of the position in the input, from 0
+	 * @param moves
+	 *            Moves of the position, as read
+	 * @param annotation
+	 *            Rest of the input line after the moves, possibly empty
+	 * @param score
+	 *            Exact score of the position, see C4Solver
+	 * @param nodes
+	 *            Number of positions searched
+	 * @param nanos
+	 *            Time taken to solve the position, in nanoseconds
+	 */
+	C4SolveResult(long sequence, String moves, String annotation, int score,
+			long nodes, long nanos) {
+		this.sequence = sequence;
+		this.moves = moves;
+		this.annotation = annotation;
+		this.score = score;
+		this.nodes = nodes;
+		this.nanos = nanos;
+		this.error = null;
+	}
+
+	/**
+	 * Creates the C4SolveResult of a position that could not be solved
+	 * 
+	 * @param sequence
+	 *            Index of the position in the input, from 0
+	 * @param moves
+	 *            Moves of the position, as read
+	 * @param annotation
+	 *            Rest of the input line after the moves, possibly empty
+	 * @param error
+	 *            Reason the position was not solved
+	 */
+	C4SolveResult(long sequence, String moves, String annotation, String error) {
+		this.sequence = sequence;
+		this.moves = moves;
+		this.annotation = annotation;
+		this.score = 0;
+		this.nodes = 0;
+		this.nanos = 0;
+		this.error = error;
+	}
+
+	/**
+	 * Returns the index of the position in the input
+	 * 
+	 * @return Index, from 0
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Returns the moves of the position as read, columns numbered from 1
+	 * 
+	 * @return Moves of the position
+	 */
+	public String getMoves() {
+		return moves;
+	}
+
+	/**
+	 * Returns the rest of the input line after the moves, such as an expected
+	 * score
+	 * 
+	 * @return Annotation of the position, empty if there is none
+	 */
+	public String getAnnotation() {
+		return annotation;
+	}
+
+	/**
+	 * Returns the exact score of the position
+	 * 
+	 * @return Score for the player to move, see C4Solver
+	 */
+	public int getScore() {
+		return score;
+	}
+
+	/**
+	 * Returns the number of positions searched to solve the position
+	 * 
+	 * @return Number of nodes
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Returns the time taken to solve the position
+	 * 
+	 * @return Time in nanoseconds
+	 */
+	public long getNanos() {
+		return nanos;
+	}
+
+	/**
+	 * Returns whether the position was solved
+	 * 
+	 * @return True if the score is valid
+	 */
+	public boolean isSolved() {
+		return error == null;
+	}
+
+	/**
+	 * Returns why the position could not be solved
+	 * 
+	 * @return Reason, null if the position was solved
+	 */
+	public String getError() {
+		return error;
+	}
+
+	/**
+	 * Returns the result as an output line: the moves followed by the score,
+	 * the nodes and the time in microseconds, or by the reason the position
+	 * was not solved
+	 * 
+	 * @return Line describing the result
+	 */
+	public String toString() {
+		if (error != null)
+			return moves + " invalid: " + error;
+		return moves + " " + score + " " + nodes + " " + nanos / 1000;
+	}
+}
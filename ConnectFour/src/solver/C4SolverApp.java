@@ -0,0 +1,107 @@
+package solver;
+
+import gameLogic.C4TranspositionTable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Solves positions exactly from the command line. Positions are read from a
+ * file or the standard input, one string of moves per line with columns
+ * numbered from 1, and each result is written as soon as it is solved as
+ * "moves score nodes microseconds". A summary is written to the standard
+ * error once the input is solved.
+ * 
+ * Usage: C4SolverApp [-threads n] [-ordered] [-table bits] [file]
+ * 
+ * @author Anthony-Virgil Bermejo, Kim Parise, George Lambadas
+ * @version 1.0
+ */
+public class C4SolverApp {
+
+	// size of the shared transposition table, 32 MB
+	private static final int DEFAULT_TABLE_BITS = 22;
+
+	/**
+	 * Main method to solve a file or stream of positions
+	 * 
+	 * @param args
+	 *            Options and the optional file of positions
+	 */
+	public static void main(String[] args) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean ordered = false;
+		int tableBits = DEFAULT_TABLE_BITS;
+		String fileName = null;
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-threads"))
+					threads = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-ordered"))
+					ordered = true;
+				else if (args[i].equals("-table"))
+					tableBits = Integer.parseInt(args[++i]);
+				else if (fileName == null && !args[i].startsWith("-"))
+					fileName = args[i];
+				else
+					throw new IllegalArgumentException(args[i]);
+			}
+		} catch (RuntimeException e) {
+			System.out.println("Usage: C4SolverApp [-threads n] [-ordered] "
+					+ "[-table bits] [file]");
+			return;
+		}
+
+		final PrintWriter out = new PrintWriter(new BufferedWriter(
+				new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
+				64 * 1024));
+		final long[] totals = new long[3]; // solved, invalid, nodes
+
+		long start = System.nanoTime();
+		long count;
+		try {
+			InputStream in = fileName != null ? new FileInputStream(fileName)
+					: System.in;
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					in, StandardCharsets.UTF_8));
+			try {
+				C4BatchSolver solver = new C4BatchSolver(threads, ordered,
+						new C4TranspositionTable(tableBits));
+				count = solver.solveAll(reader, new C4ResultSink() {
+					public void resultSolved(C4SolveResult result) {
+						out.println(result);
+						if (result.isSolved()) {
+							totals[0]++;
+							totals[2] += result.getNodes();
+						} else
+							totals[1]++;
+					}
+
+					public void flush() {
+						out.flush();
+					}
+				});
+			} finally {
+				reader.close();
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			out.flush();
+			System.out.println("Error solving positions: " + e.getMessage());
+			return;
+		}
+
+		long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+		System.err.println(count + " positions, " + totals[0] + " solved, "
+				+ totals[1] + " invalid, " + totals[2] + " nodes in " + millis
+				+ " ms (" + totals[2] * 1000 / millis + " nodes/s, "
+				+ threads + " threads)");
+	}
+}